@@ -0,0 +1,62 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.android;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import playn.core.gl.GL20;
+import playn.core.gl.GL20Buffer;
+
+/**
+ * {@link GL20Buffer}s which stream their staging arrays to GL directly. Android's GL bindings
+ * accept array-backed NIO buffers, so there is no need to first copy the data into a direct
+ * buffer.
+ */
+class AndroidGLBuffer {
+
+  static class FloatImpl extends GL20Buffer.FloatImpl {
+    private FloatBuffer wrapped;
+
+    FloatImpl(GL20 gl, int capacity) {
+      super(gl, capacity);
+    }
+
+    @Override
+    protected Buffer streamBuffer() {
+      // our staging array is replaced when we're expanded
+      if (wrapped == null || wrapped.array() != array()) wrapped = FloatBuffer.wrap(array());
+      wrapped.position(0);
+      return wrapped;
+    }
+  }
+
+  static class ShortImpl extends GL20Buffer.ShortImpl {
+    private ShortBuffer wrapped;
+
+    ShortImpl(GL20 gl, int capacity) {
+      super(gl, capacity);
+    }
+
+    @Override
+    protected Buffer streamBuffer() {
+      if (wrapped == null || wrapped.array() != array()) wrapped = ShortBuffer.wrap(array());
+      wrapped.position(0);
+      return wrapped;
+    }
+  }
+}
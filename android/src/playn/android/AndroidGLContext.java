@@ -22,6 +22,7 @@ import android.opengl.GLUtils;
 
 import playn.core.gl.GL20;
 import playn.core.gl.GL20Context;
+import playn.core.gl.GLBuffer;
 
 class AndroidGLContext extends GL20Context {
 
@@ -43,6 +44,16 @@ class AndroidGLContext extends GL20Context {
     super(platform, gfx, platform.activity.scaleFactor(), CHECK_ERRORS);
   }
 
+  @Override
+  public GLBuffer.Float createFloatBuffer(int capacity) {
+    return new AndroidGLBuffer.FloatImpl(gl, capacity);
+  }
+
+  @Override
+  public GLBuffer.Short createShortBuffer(int capacity) {
+    return new AndroidGLBuffer.ShortImpl(gl, capacity);
+  }
+
   void onSurfaceCreated() {
     incrementEpoch(); // increment our GL context epoch
     init(); // reinitialize GL
@@ -63,6 +74,11 @@ class AndroidGLContext extends GL20Context {
     checkGLError("updateTexture end");
   }
 
+  @Override
+  protected boolean shouldStreamTris() {
+    return true;
+  }
+
   void addRefreshable(Refreshable ref) {
     assert ref != null;
     refreshables.put(ref, null);
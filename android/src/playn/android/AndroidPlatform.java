@@ -213,7 +213,7 @@ public class AndroidPlatform extends AbstractPlatform {
   }
 
   void update() {
-    runQueue.execute();
+    scheduler.execute();
     if (game != null) {
       game.tick(tick());
     }
@@ -54,6 +54,7 @@ public abstract class AbstractAssets<IMG> implements Assets {
         loadImage(path, new ImageReceiver<IMG>() {
           @Override
           public Image imageLoaded(final IMG impl, final Scale scale) {
+            prepareImage(image, impl);
             setImageLater(image, impl, scale);
             return image;
           }
@@ -133,6 +134,15 @@ public abstract class AbstractAssets<IMG> implements Assets {
    */
   protected abstract Image loadImage(String path, ImageReceiver<IMG> recv);
 
+  /**
+   * Called on the loading thread with a newly loaded underlying image, before it is delivered to
+   * {@code image} on the game thread. Platforms can override this to do expensive preparation of
+   * the image (like converting it for upload to a texture) off of the game thread.
+   */
+  protected void prepareImage(AsyncImage<IMG> image, IMG impl) {
+    // nothing by default
+  }
+
   protected Image createRemoteErrorImage(Throwable cause, float width, float height) {
     return (width <= 0 || height <= 0) ? createErrorImage(cause) :
       createErrorImage(cause, width, height);
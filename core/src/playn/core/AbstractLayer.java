@@ -75,6 +75,8 @@ public abstract class AbstractLayer implements Layer {
   protected int flags;
   protected Interactor<?> rootInteractor;
   protected HitTester hitTester;
+  // non-null if our parent maintains a spatial index of its children
+  HitIndex.Entry hitEntry;
 
   protected AbstractLayer() {
     this(new StockInternalTransform());
@@ -105,7 +107,10 @@ public abstract class AbstractLayer implements Layer {
 
   @Override
   public Layer setVisible(boolean visible) {
-    setFlag(Flag.VISIBLE, visible);
+    if (visible() != visible) {
+      setFlag(Flag.VISIBLE, visible);
+      appearanceChanged();
+    }
     return this;
   }
 
@@ -134,7 +139,9 @@ public abstract class AbstractLayer implements Layer {
   public Layer setAlpha(float alpha) {
     this.alpha = alpha;
     int ialpha = (int)(0xFF * MathUtil.clamp(alpha, 0, 1));
+    int otint = this.tint;
     this.tint = (ialpha << 24) | (tint & 0xFFFFFF);
+    if (this.tint != otint) appearanceChanged();
     return this;
   }
 
@@ -145,6 +152,7 @@ public abstract class AbstractLayer implements Layer {
 
   @Override
   public Layer setTint(int tint) {
+    if (this.tint != tint) appearanceChanged();
     this.tint = tint;
     this.alpha = ((tint >> 24) & 0xFF) / 255f;
     return this;
@@ -164,6 +172,7 @@ public abstract class AbstractLayer implements Layer {
   public Layer setOrigin(float x, float y) {
     this.originX = x;
     this.originY = y;
+    boundsChanged();
     return this;
   }
 
@@ -197,18 +206,21 @@ public abstract class AbstractLayer implements Layer {
   @Override
   public Layer setTx(float x) {
     transform.setTx(x);
+    boundsChanged();
     return this;
   }
 
   @Override
   public Layer setTy(float y) {
     transform.setTy(y);
+    boundsChanged();
     return this;
   }
 
   @Override
   public Layer setTranslation(float x, float y) {
     transform.setTranslation(x, y);
+    boundsChanged();
     return this;
   }
 
@@ -222,6 +234,7 @@ public abstract class AbstractLayer implements Layer {
     if (rotation != angle) {
       rotation = angle;
       setFlag(Flag.XFDIRTY, true);
+      boundsChanged();
     }
     return this;
   }
@@ -246,6 +259,7 @@ public abstract class AbstractLayer implements Layer {
     if (scaleX != sx) {
       scaleX = sx;
       setFlag(Flag.XFDIRTY, true);
+      boundsChanged();
     }
     return this;
   }
@@ -255,6 +269,7 @@ public abstract class AbstractLayer implements Layer {
     if (scaleY != sy) {
       scaleY = sy;
       setFlag(Flag.XFDIRTY, true);
+      boundsChanged();
     }
     return this;
   }
@@ -265,6 +280,7 @@ public abstract class AbstractLayer implements Layer {
       scaleX = sx;
       scaleY = sy;
       setFlag(Flag.XFDIRTY, true);
+      boundsChanged();
     }
     return this;
   }
@@ -282,6 +298,7 @@ public abstract class AbstractLayer implements Layer {
   @Override
   public Layer setHitTester (HitTester tester) {
     hitTester = tester;
+    boundsChanged();
     return this;
   }
 
@@ -356,6 +373,26 @@ public abstract class AbstractLayer implements Layer {
     return bldr.toString();
   }
 
+  /**
+   * Notes that this layer's bounds (as seen by its parent's hit testing) have changed. This is
+   * called when this layer's transform, origin or hit tester are changed via their setters, and
+   * must be called by sized layers when their size changes. This also calls {@link
+   * #appearanceChanged}.
+   */
+  protected void boundsChanged() {
+    if (hitEntry != null) hitEntry.invalidate();
+    appearanceChanged();
+  }
+
+  /**
+   * Notes that this layer will render differently than it did previously. This is called when
+   * this layer's bounds, visibility, alpha or tint are changed via their setters, and must be
+   * called by layers when anything else that affects their rendering (like their image) changes.
+   * Backends that cache the rendering of layers override this to invalidate those caches.
+   */
+  protected void appearanceChanged() {
+  }
+
   protected boolean isSet(Flag flag) {
     return (flags & flag.bitmask) != 0;
   }
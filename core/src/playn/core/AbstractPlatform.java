@@ -15,7 +15,11 @@
  */
 package playn.core;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import playn.core.util.Callback;
+import playn.core.util.FrameScheduler;
 import playn.core.util.RunQueue;
 
 /**
@@ -29,9 +33,14 @@ public abstract class AbstractPlatform implements Platform {
     }
   };
 
+  protected final FrameScheduler scheduler;
+  /** The {@link FrameScheduler.Lane#UPDATE} queue, to which {@link #invokeLater} adds. */
   protected final RunQueue runQueue;
   protected final Log log;
 
+  /** Write-behind storages whose changes are flushed when the platform pauses or exits. */
+  final List<WriteBehindStorage> writeBehinds = new ArrayList<WriteBehindStorage>();
+
   private PlayN.LifecycleListener lifecycleListener;
   private PlayN.ErrorReporter errorReporter = DEFAULT_REPORTER;
 
@@ -60,11 +69,19 @@ public abstract class AbstractPlatform implements Platform {
     return log;
   }
 
+  /**
+   * Returns the scheduler used to run deferred work on the game thread each frame. Its lanes can
+   * be given time budgets to bound the amount of such work done in a single frame.
+   */
+  public FrameScheduler scheduler() {
+    return scheduler;
+  }
+
   /**
    * Delivers {@code result} to {@code callback} on the next game tick (on the PlayN thread).
    */
   public <T> void notifySuccess(final Callback<T> callback, final T result) {
-    invokeLater(new Runnable() {
+    scheduler.add(FrameScheduler.Lane.ASSETS, new Runnable() {
       public void run() {
         callback.onSuccess(result);
       }
@@ -75,7 +92,7 @@ public abstract class AbstractPlatform implements Platform {
    * Delivers {@code error} to {@code callback} on the next game tick (on the PlayN thread).
    */
   public void notifyFailure(final Callback<?> callback, final Throwable error) {
-    invokeLater(new Runnable() {
+    scheduler.add(FrameScheduler.Lane.ASSETS, new Runnable() {
       public void run() {
         callback.onFailure(error);
       }
@@ -92,7 +109,8 @@ public abstract class AbstractPlatform implements Platform {
 
   protected AbstractPlatform(Log log) {
     this.log = log;
-    this.runQueue = new RunQueue(this);
+    this.scheduler = new FrameScheduler(this);
+    this.runQueue = scheduler.queue(FrameScheduler.Lane.UPDATE);
   }
 
   protected void onPause() {
@@ -103,6 +121,8 @@ public abstract class AbstractPlatform implements Platform {
         reportError("LifecycleListener.onPause failure", e);
       }
     }
+    // we may never be resumed, so make sure that storage changes are written
+    flushStorage();
   }
 
   protected void onResume() {
@@ -123,5 +143,21 @@ public abstract class AbstractPlatform implements Platform {
         reportError("LifecycleListener.onExit failure", e);
       }
     }
+    // the listener may have saved state on its way out, so flush after notifying it
+    flushStorage();
+  }
+
+  /**
+   * Synchronously writes the pending changes of any {@link WriteBehindStorage} created for this
+   * platform.
+   */
+  protected void flushStorage() {
+    for (WriteBehindStorage storage : writeBehinds) {
+      try {
+        storage.flushNow();
+      } catch (Exception e) {
+        reportError("Storage flush failure", e);
+      }
+    }
   }
 }
@@ -42,6 +42,21 @@ public abstract class AbstractSound<I> implements Sound {
     callbacks = Callbacks.dispatchFailureClear(callbacks, error);
   }
 
+  /**
+   * Returns true if this sound has finished loading, successfully or otherwise.
+   */
+  public boolean isLoaded() {
+    return impl != null || error != null;
+  }
+
+  /**
+   * Returns the number of bytes of decoded audio data held by this sound, or zero if that is not
+   * known or the sound is not loaded.
+   */
+  public int byteSize() {
+    return (impl != null) ? byteSizeImpl() : 0;
+  }
+
   @Override
   public boolean prepare() {
     return (impl != null) ? prepareImpl() : false;
@@ -113,6 +128,9 @@ public abstract class AbstractSound<I> implements Sound {
   protected boolean prepareImpl() {
     return false;
   }
+  protected int byteSizeImpl() {
+    return 0;
+  }
   protected boolean playingImpl() {
     return playing;
   }
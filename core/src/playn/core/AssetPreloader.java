@@ -0,0 +1,375 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import playn.core.gl.Scale;
+import playn.core.util.Callback;
+import playn.core.util.FrameScheduler;
+
+/**
+ * Loads a {@link Manifest} of assets in priority order using a number of background workers.
+ *
+ * <p>Each asset in a manifest has a priority and belongs to a named group. Workers always load the
+ * highest priority asset that has not yet been started, regardless of the order in which manifests
+ * were submitted, so the assets needed for the current screen can be loaded ahead of a large
+ * backlog. Loaded assets are delivered on the game thread, and the assets that complete in the same
+ * frame are delivered in priority order. All of the not yet delivered assets of a group can be
+ * cancelled, for example when the player leaves the level for which they were being loaded.</p>
+ *
+ * <p>Images are available via {@link #image} as soon as their manifest is submitted, and become
+ * ready when loaded, like those returned by {@link Assets#getImage}. Text and binary data are
+ * available via {@link #text} and {@link #bytes} once loaded.</p>
+ *
+ * <p>Workers run via {@link AbstractPlatform#invokeAsync} and thus share its thread pool.</p>
+ */
+public class AssetPreloader {
+
+  /** The kinds of asset that can be preloaded. */
+  public static enum Kind { IMAGE, SOUND, TEXT, BYTES }
+
+  /**
+   * A list of assets to be loaded, with their priorities and groups.
+   */
+  public static class Manifest {
+    /**
+     * Adds an asset to this manifest. Assets with a higher priority are loaded first; assets with
+     * the same priority are loaded in the order they were added.
+     */
+    public Manifest add(String group, Kind kind, String path, int priority) {
+      entries.add(new Entry(group, kind, path, priority));
+      return this;
+    }
+
+    /** Adds an image to this manifest. */
+    public Manifest image(String group, String path, int priority) {
+      return add(group, Kind.IMAGE, path, priority);
+    }
+
+    /** Adds a sound to this manifest. */
+    public Manifest sound(String group, String path, int priority) {
+      return add(group, Kind.SOUND, path, priority);
+    }
+
+    /** Adds a text asset to this manifest. */
+    public Manifest text(String group, String path, int priority) {
+      return add(group, Kind.TEXT, path, priority);
+    }
+
+    /** Adds a binary asset to this manifest. */
+    public Manifest bytes(String group, String path, int priority) {
+      return add(group, Kind.BYTES, path, priority);
+    }
+
+    /** Returns the number of assets in this manifest. */
+    public int size() {
+      return entries.size();
+    }
+
+    final List<Entry> entries = new ArrayList<Entry>();
+  }
+
+  /**
+   * Creates a preloader which loads assets with at most {@code workers} background workers.
+   */
+  public AssetPreloader(AbstractPlatform platform, AbstractAssets<?> assets, int workers) {
+    this.platform = platform;
+    this.assets = assets;
+    this.maxWorkers = Math.max(workers, 1);
+  }
+
+  /**
+   * Queues the assets in {@code manifest} for loading. The listener, if any, is notified of the
+   * progress of these assets only, and is notified when they have all been loaded, failed, or been
+   * cancelled.
+   */
+  public void load(Manifest manifest, AssetWatcher.Listener listener) {
+    Load load = new Load(listener, manifest.size());
+    int workers;
+    synchronized (this) {
+      for (Entry entry : manifest.entries) {
+        Entry e = new Entry(entry.group, entry.kind, entry.path, entry.priority);
+        e.load = load;
+        e.seq = nextSeq++;
+        if (e.kind == Kind.IMAGE) e.image = assets.createAsyncImage(0, 0);
+        byPath.put(e.path, e);
+        pending.add(e);
+      }
+      workers = Math.min(maxWorkers, pending.size()) - activeWorkers;
+      if (workers > 0) activeWorkers += workers;
+    }
+    for (int ii = 0; ii < workers; ii++) platform.invokeAsync(worker);
+    if (manifest.size() == 0) load.update();
+  }
+
+  /**
+   * Cancels the loading of all assets in {@code group} that have not yet been delivered. Assets
+   * that are being loaded when this is called are discarded when they complete. Images from the
+   * group which were not yet loaded are failed with a cancellation error.
+   */
+  public void cancel(String group) {
+    List<Entry> cancelled = new ArrayList<Entry>();
+    synchronized (this) {
+      for (Iterator<Entry> iter = pending.iterator(); iter.hasNext(); ) {
+        Entry entry = iter.next();
+        if (entry.group.equals(group)) {
+          iter.remove();
+          cancelled.add(entry);
+        }
+      }
+      for (Entry entry : byPath.values()) {
+        if (entry.group.equals(group) && !entry.delivered && !cancelled.contains(entry))
+          cancelled.add(entry);
+      }
+      for (Entry entry : cancelled) {
+        entry.cancelled = true;
+        byPath.remove(entry.path);
+      }
+    }
+    Throwable error = new Exception("Cancelled preloading of " + group);
+    for (Entry entry : cancelled) {
+      if (entry.image != null) entry.image.setError(error);
+      entry.load.cancelled++;
+      entry.load.update();
+    }
+  }
+
+  /** Returns the number of assets that are queued and not yet started. */
+  public synchronized int pending() {
+    return pending.size();
+  }
+
+  /** Returns the image at {@code path} if it has been submitted for preloading, or null. */
+  public synchronized Image image(String path) {
+    Entry entry = byPath.get(path);
+    return (entry == null) ? null : entry.image;
+  }
+
+  /** Returns the sound at {@code path} if it has been loaded, or null. */
+  public synchronized Sound sound(String path) {
+    Entry entry = byPath.get(path);
+    return (entry == null || !entry.delivered) ? null : (Sound)entry.result;
+  }
+
+  /** Returns the text at {@code path} if it has been loaded, or null. */
+  public synchronized String text(String path) {
+    Entry entry = byPath.get(path);
+    return (entry == null || !entry.delivered) ? null : (String)entry.result;
+  }
+
+  /** Returns the bytes at {@code path} if they have been loaded, or null. */
+  public synchronized byte[] bytes(String path) {
+    Entry entry = byPath.get(path);
+    return (entry == null || !entry.delivered) ? null : (byte[])entry.result;
+  }
+
+  // loads the highest priority pending asset until there are none left
+  private final Runnable worker = new Runnable() {
+    public void run() {
+      while (true) {
+        Entry entry;
+        synchronized (AssetPreloader.this) {
+          entry = pending.poll();
+          if (entry == null) {
+            activeWorkers--;
+            return;
+          }
+        }
+        fetch(entry);
+      }
+    }
+  };
+
+  // delivers completed assets in priority order, on the game thread
+  private final Runnable deliverer = new Runnable() {
+    public void run() {
+      while (true) {
+        Entry entry;
+        synchronized (AssetPreloader.this) {
+          entry = completed.poll();
+          if (entry == null) {
+            deliverQueued = false;
+            return;
+          }
+          if (entry.cancelled) continue;
+          entry.delivered = true;
+        }
+        deliver(entry);
+      }
+    }
+  };
+
+  private void fetch(final Entry entry) {
+    try {
+      switch (entry.kind) {
+      case IMAGE:
+        loadImage(entry, assets);
+        break;
+      case TEXT:
+        entry.result = assets.getTextSync(entry.path);
+        complete(entry);
+        break;
+      case BYTES:
+        entry.result = assets.getBytesSync(entry.path);
+        complete(entry);
+        break;
+      case SOUND:
+        // sounds are loaded asynchronously by the platform, and must be requested on the game thread
+        platform.invokeLater(new Runnable() {
+          public void run() {
+            assets.getSound(entry.path).addCallback(new Callback<Sound>() {
+              public void onSuccess(Sound sound) {
+                entry.result = sound;
+                complete(entry);
+              }
+              public void onFailure(Throwable cause) {
+                entry.error = cause;
+                complete(entry);
+              }
+            });
+          }
+        });
+        break;
+      }
+    } catch (Throwable t) {
+      entry.error = t;
+      complete(entry);
+    }
+  }
+
+  private <I> void loadImage(final Entry entry, final AbstractAssets<I> assets) {
+    @SuppressWarnings("unchecked") final AsyncImage<I> image = (AsyncImage<I>)entry.image;
+    assets.loadImage(entry.path, new AbstractAssets.ImageReceiver<I>() {
+      public Image imageLoaded(I impl, Scale scale) {
+        assets.prepareImage(image, impl);
+        entry.result = impl;
+        entry.scale = scale;
+        complete(entry);
+        return image;
+      }
+      public Image loadFailed(Throwable error) {
+        entry.error = error;
+        complete(entry);
+        return image;
+      }
+    });
+  }
+
+  private void complete(Entry entry) {
+    boolean queue;
+    synchronized (this) {
+      if (entry.cancelled) return;
+      completed.add(entry);
+      queue = !deliverQueued;
+      deliverQueued = true;
+    }
+    if (queue) platform.scheduler().add(FrameScheduler.Lane.ASSETS, deliverer);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void deliver(Entry entry) {
+    Load load = entry.load;
+    if (entry.error != null) {
+      if (entry.image != null) entry.image.setError(entry.error);
+      load.errors++;
+      if (load.listener != null) load.listener.error(entry.error);
+    } else {
+      long bytes;
+      if (entry.image != null) {
+        ((AsyncImage<Object>)entry.image).setImage(entry.result, entry.scale);
+        entry.result = entry.image;
+        bytes = 4L * entry.scale.scaledCeil(entry.image.width()) *
+          entry.scale.scaledCeil(entry.image.height());
+      } else if (entry.result instanceof String) {
+        bytes = ((String)entry.result).length();
+      } else if (entry.result instanceof byte[]) {
+        bytes = ((byte[])entry.result).length;
+      } else {
+        bytes = (entry.result instanceof AbstractSound) ?
+          ((AbstractSound<?>)entry.result).byteSize() : 0;
+      }
+      load.loaded++;
+      load.bytes += bytes;
+    }
+    load.update();
+  }
+
+  // tracks the progress of the assets submitted in a single call to load
+  private class Load {
+    final AssetWatcher.Listener listener;
+    final int total;
+    final double start = platform.time();
+    int loaded, errors, cancelled;
+    long bytes;
+
+    Load(AssetWatcher.Listener listener, int total) {
+      this.listener = listener;
+      this.total = total;
+    }
+
+    void update() {
+      if (listener == null) return;
+      int done = loaded + errors, remaining = total - cancelled;
+      double elapsed = (platform.time() - start) / 1000;
+      float rate = (elapsed > 0) ? (float)(bytes / elapsed) : 0;
+      // estimate the time remaining from the time taken per asset so far
+      float eta = (done == 0) ? -1 : (float)(elapsed * (remaining - done) / done);
+      listener.progress(loaded, errors, remaining, bytes, rate, eta);
+      if (done == remaining) listener.done();
+    }
+  }
+
+  static class Entry implements Comparable<Entry> {
+    final String group, path;
+    final Kind kind;
+    final int priority;
+    Load load;
+    int seq;
+    AsyncImage<?> image;
+    // these are written by a worker and read on the game thread once the entry has passed through
+    // the (synchronized) completed queue
+    Object result;
+    Scale scale;
+    Throwable error;
+    boolean delivered, cancelled;
+
+    Entry(String group, Kind kind, String path, int priority) {
+      this.group = group;
+      this.kind = kind;
+      this.path = path;
+      this.priority = priority;
+    }
+
+    public int compareTo(Entry other) {
+      if (priority != other.priority) return (priority > other.priority) ? -1 : 1;
+      return (seq < other.seq) ? -1 : (seq == other.seq ? 0 : 1);
+    }
+  }
+
+  private final AbstractPlatform platform;
+  private final AbstractAssets<?> assets;
+  private final int maxWorkers;
+
+  private final PriorityQueue<Entry> pending = new PriorityQueue<Entry>();
+  private final PriorityQueue<Entry> completed = new PriorityQueue<Entry>();
+  private final Map<String, Entry> byPath = new HashMap<String, Entry>();
+  private int activeWorkers, nextSeq;
+  private boolean deliverQueued;
+}
@@ -34,6 +34,21 @@ public class AssetWatcher {
       // default implementation does nothing
     }
 
+    /**
+     * Informs the listener of progress as each asset load completes or fails, along with the rate
+     * at which data is being loaded. This is only called by loaders which track that information,
+     * like {@link AssetPreloader}. The default implementation calls {@link #progress(int,int,int)}.
+     *
+     * @param bytes the (estimated, decoded) size of the assets loaded so far.
+     * @param bytesPerSecond the average rate at which assets have been loaded.
+     * @param eta the estimated number of seconds until all assets are loaded, or -1 if no
+     * estimate can be made yet.
+     */
+    public void progress (int loaded, int errors, int total, long bytes, float bytesPerSecond,
+                          float eta) {
+      progress(loaded, errors, total);
+    }
+
     /**
      * Called when all assets are done loading (or had an error). This will be called after the
      * final call to {@link #progress}.
@@ -15,104 +15,293 @@
  */
 package playn.core;
 
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
+import playn.core.gl.AbstractImageGL;
 import playn.core.util.Callback;
 
 /**
- * An {@link Assets} wrapper that caches all loaded images and sounds with no expiration mechanism.
+ * An {@link Assets} wrapper that caches loaded images and sounds, and optionally text and binary
+ * assets.
+ *
+ * <p>The cache can be given a budget for the memory used by its images and sounds. Image memory is
+ * estimated as the size of the image's texture ({@code width * height * 4} scaled pixels) and sound
+ * memory as the size of its decoded PCM data, where the platform reports it. When the budget is
+ * exceeded, the least recently requested assets are evicted: images have their texture cleared and
+ * sounds are released. Images that are currently displayed by a layer, sounds that are playing and
+ * assets that are still loading are never evicted. Do not hang onto an evicted sound, as it can no
+ * longer be played; request it from the cache again instead.</p>
+ *
+ * <p>Text and binary assets are only cached if a budget is provided for them. Cached byte arrays
+ * are shared by all requesters and must not be modified. Cached text and bytes are delivered to
+ * callbacks immediately.</p>
  */
 public class CachingAssets implements Assets {
 
   private final Assets delegate;
-  private final Map<String, Object> cache = new HashMap<String, Object>();
+  private final long maxBytes, maxDataBytes;
+
+  // both maps are kept in access order, least recently used first
+  private final Map<String, Entry> cache = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+  private final Map<String, Object> data = new LinkedHashMap<String, Object>(16, 0.75f, true);
+  private long residentBytes, dataBytes;
+
+  private int hits, misses, evictions;
 
+  /**
+   * Creates a cache that keeps all loaded images and sounds with no expiration mechanism, and
+   * does not cache text or binary assets.
+   */
   public CachingAssets (Assets delegate) {
+    this(delegate, Long.MAX_VALUE, 0);
+  }
+
+  /**
+   * Creates a cache that keeps images and sounds within {@code maxBytes} of memory (where
+   * possible) and keeps text and binary assets within {@code maxDataBytes}.
+   *
+   * @param maxDataBytes the budget for text and binary assets, or zero to not cache them.
+   */
+  public CachingAssets (Assets delegate, long maxBytes, long maxDataBytes) {
     this.delegate = delegate;
+    this.maxBytes = maxBytes;
+    this.maxDataBytes = maxDataBytes;
+  }
+
+  /** Returns the number of requests that were satisfied from the cache. */
+  public int hits() {
+    return hits;
+  }
+
+  /** Returns the number of requests that were passed on to the underlying assets. */
+  public int misses() {
+    return misses;
+  }
+
+  /** Returns the fraction of requests that were satisfied from the cache. */
+  public float hitRate() {
+    int requests = hits + misses;
+    return (requests == 0) ? 0 : hits / (float)requests;
+  }
+
+  /** Returns the number of images and sounds that have been evicted from the cache. */
+  public int evictions() {
+    return evictions;
+  }
+
+  /** Returns the estimated memory used by the cached images and sounds, in bytes. */
+  public long residentBytes() {
+    return residentBytes;
+  }
+
+  /** Returns the memory used by the cached text and binary assets, in bytes. */
+  public long dataBytes() {
+    return dataBytes;
+  }
+
+  /**
+   * Evicts images and sounds until the cache is within its budget, or only pinned assets remain.
+   * This happens automatically when assets are added to the cache, but assets which were pinned
+   * at that time (because they were displayed or still loading) may since have become evictable.
+   */
+  public void trim() {
+    for (Iterator<Entry> iter = cache.values().iterator();
+         residentBytes > maxBytes && iter.hasNext(); ) {
+      Entry entry = iter.next();
+      Object asset = entry.asset;
+      if (isPinned(asset)) continue;
+      residentBytes -= entry.bytes;
+      entry.bytes = -1; // no longer counted
+      iter.remove();
+      evictions++;
+      if (asset instanceof Image) ((Image)asset).clearTexture();
+      else ((Sound)asset).release();
+    }
   }
 
   @Override
   public Image getImageSync(String path) {
-    Object object = null;
-    if ((object = cache.get(path)) == null) {
-      object = delegate.getImageSync(path);
-      cache.put(path, object);
-    }
+    Object object = lookup(path);
+    if (object == null) object = add(path, delegate.getImageSync(path));
     return (Image) object;
   }
 
   @Override
   public Image getImage(String path) {
-    Object object = null;
-    if ((object = cache.get(path)) == null) {
-      object = delegate.getImage(path);
-      cache.put(path, object);
-    }
+    Object object = lookup(path);
+    if (object == null) object = add(path, delegate.getImage(path));
     return (Image) object;
   }
 
   @Override
   public Image getRemoteImage(String url) {
-    Object object = null;
-    if ((object = cache.get(url)) == null) {
-      object = delegate.getRemoteImage(url);
-      cache.put(url, object);
-    }
+    Object object = lookup(url);
+    if (object == null) object = add(url, delegate.getRemoteImage(url));
     return (Image) object;
   }
 
   @Override
   public Image getRemoteImage(String url, float width, float height) {
-    Object object = null;
-    if ((object = cache.get(url)) == null) {
-      object = delegate.getRemoteImage(url, width, height);
-      cache.put(url, object);
-    }
+    Object object = lookup(url);
+    if (object == null) object = add(url, delegate.getRemoteImage(url, width, height));
     return (Image) object;
   }
 
   @Override
   public Sound getSound(String path) {
-    Object object = null;
-    if ((object = cache.get(path)) == null) {
-      object = delegate.getSound(path);
-      cache.put(path, object);
-    }
+    Object object = lookup(path);
+    if (object == null) object = add(path, delegate.getSound(path));
     return (Sound) object;
   }
 
   @Override
   public Sound getMusic(String path) {
-    Object object = null;
-    if ((object = cache.get(path)) == null) {
-      object = delegate.getMusic(path);
-      cache.put(path, object);
-    }
+    Object object = lookup(path);
+    if (object == null) object = add(path, delegate.getMusic(path));
     return (Sound) object;
   }
 
   @Override
   public String getTextSync(String path) throws Exception {
-    // no caching for text loading
-    return delegate.getTextSync(path);
+    Object text = lookupData(path, true);
+    if (text == null) text = addData(path, delegate.getTextSync(path));
+    return (String) text;
   }
 
   @Override
-  public void getText(String path, Callback<String> callback) {
-    // no caching for text loading
-    delegate.getText(path, callback);
+  public void getText(final String path, final Callback<String> callback) {
+    Object text = lookupData(path, true);
+    if (text != null) callback.onSuccess((String) text);
+    else if (maxDataBytes <= 0) delegate.getText(path, callback);
+    else delegate.getText(path, new Callback<String>() {
+      public void onSuccess(String text) {
+        addData(path, text);
+        callback.onSuccess(text);
+      }
+      public void onFailure(Throwable cause) {
+        callback.onFailure(cause);
+      }
+    });
   }
 
   @Override
   public byte[] getBytesSync(String path) throws Exception {
-    // no caching for arbitrary binary loading
-    return delegate.getBytesSync(path);
+    Object bytes = lookupData(path, false);
+    if (bytes == null) bytes = addData(path, delegate.getBytesSync(path));
+    return (byte[]) bytes;
   }
 
   @Override
-  public void getBytes(String path, Callback<byte[]> callback) {
-    // no caching for arbitrary binary loading
-    delegate.getBytes(path, callback);
+  public void getBytes(final String path, final Callback<byte[]> callback) {
+    Object bytes = lookupData(path, false);
+    if (bytes != null) callback.onSuccess((byte[]) bytes);
+    else if (maxDataBytes <= 0) delegate.getBytes(path, callback);
+    else delegate.getBytes(path, new Callback<byte[]>() {
+      public void onSuccess(byte[] bytes) {
+        addData(path, bytes);
+        callback.onSuccess(bytes);
+      }
+      public void onFailure(Throwable cause) {
+        callback.onFailure(cause);
+      }
+    });
+  }
+
+  private Object lookup(String path) {
+    Entry entry = cache.get(path);
+    if (entry == null) misses++;
+    else hits++;
+    return (entry == null) ? null : entry.asset;
+  }
+
+  private Object add(String path, Object asset) {
+    final Entry entry = new Entry(asset);
+    Entry old = cache.put(path, entry);
+    if (old != null) {
+      residentBytes -= old.bytes;
+      old.bytes = -1;
+    }
+    residentBytes += entry.bytes;
+    // an asset that is still loading has no size yet, so we account for it once it has loaded
+    boolean loading = (asset instanceof Image) ? !((Image)asset).isReady() :
+      (asset instanceof AbstractSound) && !((AbstractSound<?>)asset).isLoaded();
+    if (loading) {
+      Callback<Object> onLoad = new Callback<Object>() {
+        public void onSuccess(Object asset) {
+          // if the asset has since been evicted, it is no longer counted
+          if (entry.bytes < 0) return;
+          long bytes = sizeOf(asset);
+          residentBytes += bytes - entry.bytes;
+          entry.bytes = bytes;
+        }
+        public void onFailure(Throwable cause) {} // it's never counted
+      };
+      if (asset instanceof Image) ((Image)asset).addCallback(onLoad);
+      else ((Sound)asset).addCallback(onLoad);
+    }
+    if (maxBytes < Long.MAX_VALUE) trim();
+    return asset;
+  }
+
+  private Object lookupData(String path, boolean text) {
+    if (maxDataBytes <= 0) return null;
+    Object object = data.get(path);
+    // a path loaded as text and then as bytes (or vice versa) is treated as a miss
+    if (object != null && (object instanceof String) == text) {
+      hits++;
+      return object;
+    }
+    misses++;
+    return null;
+  }
+
+  private Object addData(String path, Object value) {
+    if (maxDataBytes <= 0) return value;
+    Object old = data.put(path, value);
+    if (old != null) dataBytes -= dataSizeOf(old);
+    dataBytes += dataSizeOf(value);
+    for (Iterator<Object> iter = data.values().iterator();
+         dataBytes > maxDataBytes && iter.hasNext(); ) {
+      dataBytes -= dataSizeOf(iter.next());
+      iter.remove();
+    }
+    return value;
+  }
+
+  // a cached image or sound, and the bytes it is counted as using
+  private static class Entry {
+    public final Object asset;
+    public long bytes;
+
+    public Entry(Object asset) {
+      this.asset = asset;
+      this.bytes = sizeOf(asset);
+    }
+  }
+
+  private static boolean isPinned(Object asset) {
+    if (asset instanceof Image) {
+      Image image = (Image)asset;
+      if (!image.isReady()) return true;
+      return (image instanceof AbstractImageGL) && ((AbstractImageGL<?>)image).isReferenced();
+    }
+    Sound sound = (Sound)asset;
+    if (sound.isPlaying()) return true;
+    return (sound instanceof AbstractSound) && !((AbstractSound<?>)sound).isLoaded();
+  }
+
+  private static long sizeOf(Object asset) {
+    if (asset instanceof Image) {
+      Image image = (Image)asset;
+      if (!image.isReady()) return 0;
+      return 4L * image.scale().scaledCeil(image.width()) * image.scale().scaledCeil(image.height());
+    }
+    return (asset instanceof AbstractSound) ? ((AbstractSound<?>)asset).byteSize() : 0;
+  }
+
+  private static long dataSizeOf(Object value) {
+    return (value instanceof String) ? 2L * ((String)value).length() : ((byte[])value).length;
   }
 }
@@ -80,14 +80,38 @@ public interface Game {
     public void paint(float alpha) {
     }
 
+    /**
+     * Limits the number of update intervals that a single call to {@link #update} will cover. If
+     * the game falls further behind than this (after a long pause or a very slow frame, for
+     * example), the excess time is dropped rather than being passed to {@link #update}, so that
+     * the game does not try to simulate an arbitrarily large interval in one frame. Zero (the
+     * default) means no limit.
+     */
+    public void setMaxCatchUp(int updates) {
+      assert updates >= 0 : "maxCatchUp must not be negative.";
+      this.maxCatchUp = updates;
+    }
+
+    /**
+     * Returns the total number of update intervals dropped due to the {@link #setMaxCatchUp}
+     * limit.
+     */
+    public int droppedUpdates() {
+      return droppedUpdates;
+    }
+
     @Override
     public void tick(int elapsed) {
       // micro-optimization to avoid repeated field reads
       int nextUpdate = this.nextUpdate, updateRate = this.updateRate;
       int updates = 0;
-      while (elapsed >= nextUpdate) {
-        nextUpdate += updateRate;
-        updates++;
+      if (elapsed >= nextUpdate) {
+        updates = (elapsed - nextUpdate) / updateRate + 1;
+        nextUpdate += updates*updateRate;
+        if (maxCatchUp > 0 && updates > maxCatchUp) {
+          droppedUpdates += updates - maxCatchUp;
+          updates = maxCatchUp;
+        }
       }
       if (updates > 0) {
         update(updates*updateRate);
@@ -102,6 +126,7 @@ public interface Game {
 
     private final int updateRate;
     private int nextUpdate;
+    private int maxCatchUp, droppedUpdates;
   }
 
   /**
@@ -20,6 +20,18 @@ package playn.core;
  */
 public interface GroupLayer extends Layer {
 
+  /** Controls whether a group's rendering is cached. See {@link Cacheable#setCacheMode}. */
+  enum CacheMode {
+    /** The group's children are painted every frame. This is the default. */
+    NONE,
+    /** The group's children are rendered into a texture when they change, and that texture is
+     * painted in their place. */
+    ALWAYS,
+    /** The group behaves like {@link #ALWAYS} once its children have gone unchanged for a number
+     * of frames, and like {@link #NONE} while they are changing. */
+    AUTO
+  }
+
   /** A clipped group layer. */
   interface Clipped extends GroupLayer, HasSize {
     /** Updates the size of this group layer, and hence its clipping rectangle. */
@@ -32,6 +44,45 @@ public interface GroupLayer extends Layer {
     void setHeight(float height);
   }
 
+  /**
+   * A group layer which can index its children for hit testing. The group layers created by the
+   * built-in backends implement this interface.
+   */
+  interface Indexable extends GroupLayer {
+    /**
+     * Configures a spatial index over the bounds of this group's children, which speeds up hit
+     * testing (and hence pointer and mouse dispatch) in groups with many children. Children are
+     * placed into a grid of cells of the specified size, which should be on the order of the size
+     * of a typical child. Children are reindexed when their translation, scale, rotation, origin,
+     * size or hit tester are changed via the appropriate setters; changes made directly to a
+     * child's {@link #transform} are not noticed. A cell size of zero (the default) disables the
+     * index.
+     */
+    void setHitIndex(float cellSize);
+  }
+
+  /**
+   * A group layer which can cache the rendering of its children. The group layers created by the
+   * GL backends implement this interface.
+   */
+  interface Cacheable extends GroupLayer {
+    /**
+     * Configures whether this group renders its children into an offscreen texture, which is then
+     * painted in their place until they change. This saves rebatching complex groups that rarely
+     * change (like user interface panels), at the cost of the texture memory.
+     *
+     * <p>The cached rendering is discarded when a descendant's transform, origin, size,
+     * visibility, alpha, tint, shader or image is changed via the appropriate setter, or when a
+     * descendant group's children change. Changes made directly to a descendant's {@link
+     * #transform}, or to the contents of a canvas or surface image, are not noticed; calling this
+     * method (even with the current mode) discards the cached rendering. Changes to this group's
+     * own transform do not require it to be rendered again, but it is rendered at its unscaled
+     * size, so scaling it up will soften it. Groups containing {@link ImmediateLayer}s, or painted
+     * with a custom shader, are not cached.</p>
+     */
+    void setCacheMode(CacheMode mode);
+  }
+
   /**
    * Returns the layer at the specified index.
    * <p>
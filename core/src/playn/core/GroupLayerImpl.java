@@ -32,6 +32,10 @@ public class GroupLayerImpl<L extends AbstractLayer>
   /** This group's children. */
   public List<L> children = new ArrayList<L>();
 
+  // a spatial index of our children, if one has been configured
+  private HitIndex hitIndex;
+  private List<HitIndex.Entry> hitCandidates;
+
   /**
    * @return the index into the children array at which the layer was inserted (based on depth).
    */
@@ -57,6 +61,10 @@ public class GroupLayerImpl<L extends AbstractLayer>
       child.parent().remove(child);
     }
     children.add(index, child);
+    if (hitIndex != null) {
+      hitIndex.renumber(children, index+1, children.size());
+      hitIndex.add(child, index);
+    }
     child.setParent(self);
     child.onAdd();
 
@@ -113,8 +121,37 @@ public class GroupLayerImpl<L extends AbstractLayer>
     }
   }
 
+  /**
+   * Configures a spatial index over this group's children. See {@link GroupLayer.Indexable#setHitIndex}.
+   */
+  public void setHitIndex(GroupLayer self, float cellSize) {
+    if (hitIndex != null) hitIndex.clear(children);
+    if (cellSize <= 0) {
+      hitIndex = null;
+      hitCandidates = null;
+    } else {
+      hitIndex = new HitIndex(cellSize);
+      hitCandidates = new ArrayList<HitIndex.Entry>();
+      for (int ii = 0, ll = children.size(); ii < ll; ii++) hitIndex.add(children.get(ii), ii);
+    }
+  }
+
   public Layer hitTest(GroupLayer self, Point point) {
     float x = point.x, y = point.y;
+    if (hitIndex != null) {
+      // only test the children whose bounds might contain the point; they're returned back to
+      // front, like the full scan below; we don't lazily deactivate ourselves in this case as we
+      // don't look at all of our children
+      hitIndex.query(x, y, hitCandidates);
+      for (int ii = 0, ll = hitCandidates.size(); ii < ll; ii++) {
+        AbstractLayer child = hitCandidates.get(ii).layer;
+        if (!child.interactive() || !child.visible()) continue;
+        Layer l = hitTest(child, point, x, y);
+        if (l != null) return l;
+      }
+      return null;
+    }
+
     boolean sawInteractiveChild = false;
     // we check back to front as children are ordered "lowest" first
     for (int ii = children.size()-1; ii >= 0; ii--) {
@@ -122,18 +159,9 @@ public class GroupLayerImpl<L extends AbstractLayer>
       if (!child.interactive()) continue; // ignore non-interactive children
       sawInteractiveChild = true; // note that we saw an interactive child
       if (!child.visible()) continue; // ignore invisible children
-      try {
-        // transform the point into the child's coordinate system
-        child.transform().inverseTransform(point.set(x, y), point);
-        point.x += child.originX();
-        point.y += child.originY();
-        Layer l = child.hitTest(point);
-        if (l != null)
-          return l;
-      } catch (NoninvertibleTransformException nte) {
-        // Degenerate transform means no hit
-        continue;
-      }
+      Layer l = hitTest(child, point, x, y);
+      if (l != null)
+        return l;
     }
     // if we saw no interactive children and we don't have listeners registered directly on this
     // group, clear our own interactive flag; this lazily deactivates this group after its
@@ -168,15 +196,35 @@ public class GroupLayerImpl<L extends AbstractLayer>
     children.remove(oldIndex);
     int newIndex = findInsertion(newDepth);
     children.add(newIndex, child);
+    if (hitIndex != null)
+      hitIndex.renumber(children, Math.min(oldIndex, newIndex), Math.max(oldIndex, newIndex)+1);
     return newIndex;
   }
 
   private void remove(int index) {
     L child = children.remove(index);
+    if (hitIndex != null) {
+      hitIndex.remove(child);
+      hitIndex.renumber(children, index, children.size());
+    }
     child.onRemove();
     child.setParent(null);
   }
 
+  // tests whether (x, y) hits child, reusing point for the transformed coordinates
+  private Layer hitTest(AbstractLayer child, Point point, float x, float y) {
+    try {
+      // transform the point into the child's coordinate system
+      child.transform().inverseTransform(point.set(x, y), point);
+      point.x += child.originX();
+      point.y += child.originY();
+      return child.hitTest(point);
+    } catch (NoninvertibleTransformException nte) {
+      // Degenerate transform means no hit
+      return null;
+    }
+  }
+
   // uses depth to improve upon a full linear search
   private int findChild(L child, float depth) {
     // findInsertion will find us some element with the same depth as the to-be-removed child
@@ -0,0 +1,296 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import pythagoras.f.FloatMath;
+import pythagoras.f.Point;
+import pythagoras.f.Transform;
+
+/**
+ * A uniform grid over the bounds of a group's children, used by {@link GroupLayerImpl} to avoid
+ * testing every child when hit testing a group with many children.
+ *
+ * <p>Only children which are hit tested using their size (sized, non-group layers with no {@link
+ * Layer.HitTester}) are placed in the grid. All other children, and children which span too many
+ * cells, are tested for every hit. A child's bounds are recomputed lazily, on the next query after
+ * it reports a change via {@link AbstractLayer#boundsChanged}.</p>
+ */
+class HitIndex {
+
+  /** Tracks a single child in the index. Referenced by the child while it is indexed. */
+  static class Entry {
+    public final AbstractLayer layer;
+    /** The position of {@link #layer} in its parent's list of children. */
+    public int order;
+
+    Entry(HitIndex index, AbstractLayer layer) {
+      this.index = index;
+      this.layer = layer;
+    }
+
+    /** Notes that our layer's bounds have changed and it must be reindexed. */
+    public void invalidate() {
+      if (!dirty) {
+        dirty = true;
+        index.dirty.add(this);
+      }
+    }
+
+    private final HitIndex index;
+    private int state = UNLINKED;
+    private int x0, y0, x1, y1; // the (inclusive) range of cells we occupy, if GRID
+    private boolean dirty, removed;
+    // whether we're in the wide or empty list; we're removed from those lazily, see update()
+    private boolean inWide, inEmpty;
+  }
+
+  /**
+   * Creates an index with cells of the specified size (in the group's coordinate system).
+   */
+  public HitIndex(float cellSize) {
+    this.cellSize = cellSize;
+  }
+
+  /**
+   * Adds {@code layer} to this index. Its bounds are computed on the next query.
+   */
+  public void add(AbstractLayer layer, int order) {
+    Entry entry = new Entry(this, layer);
+    entry.order = order;
+    layer.hitEntry = entry;
+    entry.invalidate();
+  }
+
+  /**
+   * Removes {@code layer} from this index.
+   */
+  public void remove(AbstractLayer layer) {
+    Entry entry = layer.hitEntry;
+    if (entry == null || entry.index != this) return;
+    unlink(entry);
+    entry.removed = true;
+    layer.hitEntry = null;
+  }
+
+  /**
+   * Updates the order of the entries for {@code children[from, to)} to match their positions.
+   */
+  public void renumber(List<? extends AbstractLayer> children, int from, int to) {
+    for (int ii = from; ii < to; ii++) {
+      Entry entry = children.get(ii).hitEntry;
+      entry.order = ii;
+      if (entry.inWide) wideChanged = true;
+    }
+  }
+
+  /**
+   * Removes all children from this index.
+   */
+  public void clear(List<? extends AbstractLayer> children) {
+    for (int ii = 0, ll = children.size(); ii < ll; ii++) remove(children.get(ii));
+  }
+
+  /**
+   * Populates {@code into} with the children which may contain the point {@code (x, y)}, in back
+   * to front order (i.e. the order in which they should be hit tested).
+   */
+  public void query(float x, float y, List<Entry> into) {
+    update();
+    into.clear();
+    List<Entry> cell = cells.get(key(cell(x), cell(y)));
+    if (cell == null) {
+      into.addAll(wide);
+      return;
+    }
+
+    // wide is already sorted, so we sort only the (few) entries in the cell and merge the two
+    sorted.clear();
+    addSorted(cell, sorted);
+    for (int ci = 0, cl = sorted.size(), wi = 0, wl = wide.size(); ci < cl || wi < wl; ) {
+      if (wi == wl || (ci < cl && sorted.get(ci).order > wide.get(wi).order))
+        into.add(sorted.get(ci++));
+      else into.add(wide.get(wi++));
+    }
+  }
+
+  protected void update() {
+    // children with no size (images that have not yet loaded, say) can't be hit, but they may
+    // acquire a size without telling us, so we check them on every query
+    for (int ii = 0; ii < empty.size(); ii++) {
+      Entry entry = empty.get(ii);
+      boolean unlinked = (entry.state != EMPTY);
+      if (unlinked || (entry.layer.width() > 0 && entry.layer.height() > 0)) {
+        int last = empty.size()-1;
+        empty.set(ii--, empty.get(last));
+        empty.remove(last);
+        entry.inEmpty = false;
+        if (unlinked) continue;
+        entry.state = UNLINKED;
+        entry.invalidate();
+      }
+    }
+    for (int ii = 0, ll = dirty.size(); ii < ll; ii++) {
+      Entry entry = dirty.get(ii);
+      entry.dirty = false;
+      if (entry.removed) continue;
+      unlink(entry);
+      link(entry);
+    }
+    dirty.clear();
+
+    // drop the entries that have left the wide list and restore its (descending) order; the
+    // list is almost always nearly sorted, which the sort handles in linear time
+    if (wideChanged) {
+      int live = 0;
+      for (int ii = 0, ll = wide.size(); ii < ll; ii++) {
+        Entry entry = wide.get(ii);
+        if (entry.state == WIDE) wide.set(live++, entry);
+        else entry.inWide = false;
+      }
+      wide.subList(live, wide.size()).clear();
+      Collections.sort(wide, BY_ORDER);
+      wideChanged = false;
+    }
+  }
+
+  protected void link(Entry entry) {
+    AbstractLayer layer = entry.layer;
+    if (!(layer instanceof Layer.HasSize) || layer instanceof GroupLayer ||
+        layer.hitTester != null) {
+      linkWide(entry);
+      return;
+    }
+    float width = layer.width(), height = layer.height();
+    if (width <= 0 || height <= 0) {
+      entry.state = EMPTY;
+      if (!entry.inEmpty) {
+        entry.inEmpty = true;
+        empty.add(entry);
+      }
+      return;
+    }
+
+    // the child hit tests p if 0 <= inverse(p) + origin < size, so its bounds in our coordinate
+    // system are the transformed corners of its size rectangle, offset by its origin
+    Transform xf = layer.transform();
+    float ox = layer.originX(), oy = layer.originY();
+    float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+    float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+    for (int ii = 0; ii < 4; ii++) {
+      scratch.set((ii & 1) == 0 ? -ox : width - ox, (ii & 2) == 0 ? -oy : height - oy);
+      xf.transform(scratch, scratch);
+      minX = Math.min(minX, scratch.x);
+      minY = Math.min(minY, scratch.y);
+      maxX = Math.max(maxX, scratch.x);
+      maxY = Math.max(maxY, scratch.y);
+    }
+    // if we'd occupy too many cells (or our bounds are not finite), just always test this child
+    float spanX = (maxX - minX) / cellSize, spanY = (maxY - minY) / cellSize;
+    if (!(spanX < MAX_SPAN && spanY < MAX_SPAN)) {
+      linkWide(entry);
+      return;
+    }
+
+    entry.state = GRID;
+    entry.x0 = cell(minX);
+    entry.y0 = cell(minY);
+    entry.x1 = cell(maxX);
+    entry.y1 = cell(maxY);
+    for (int cy = entry.y0; cy <= entry.y1; cy++) {
+      for (int cx = entry.x0; cx <= entry.x1; cx++) {
+        Integer key = key(cx, cy);
+        List<Entry> cell = cells.get(key);
+        if (cell == null) cells.put(key, cell = new ArrayList<Entry>());
+        // distinct cells can share a key; don't add an entry to the same list twice
+        if (!cell.contains(entry)) cell.add(entry);
+      }
+    }
+  }
+
+  protected void unlink(Entry entry) {
+    switch (entry.state) {
+    case GRID:
+      for (int cy = entry.y0; cy <= entry.y1; cy++) {
+        for (int cx = entry.x0; cx <= entry.x1; cx++) {
+          Integer key = key(cx, cy);
+          List<Entry> cell = cells.get(key);
+          if (cell != null && cell.remove(entry) && cell.isEmpty()) cells.remove(key);
+        }
+      }
+      break;
+    case WIDE:
+      // removed from the list on the next update (unless the entry is relinked there)
+      wideChanged = true;
+      break;
+    case EMPTY:
+      // removed from the list on the next update
+      break;
+    }
+    entry.state = UNLINKED;
+  }
+
+  protected void linkWide(Entry entry) {
+    entry.state = WIDE;
+    if (!entry.inWide) {
+      entry.inWide = true;
+      wide.add(entry);
+      wideChanged = true;
+    }
+  }
+
+  protected int cell(float coord) {
+    return (int)FloatMath.floor(coord / cellSize);
+  }
+
+  protected static Integer key(int cx, int cy) {
+    return (cx << 16) ^ (cy & 0xFFFF);
+  }
+
+  // inserts the entries of from into into, keeping into sorted by descending order
+  protected static void addSorted(List<Entry> from, List<Entry> into) {
+    for (int ii = 0, ll = from.size(); ii < ll; ii++) {
+      Entry entry = from.get(ii);
+      int pos = into.size();
+      while (pos > 0 && into.get(pos-1).order < entry.order) pos--;
+      into.add(pos, entry);
+    }
+  }
+
+  protected final float cellSize;
+  protected final Map<Integer,List<Entry>> cells = new HashMap<Integer,List<Entry>>();
+  protected final List<Entry> wide = new ArrayList<Entry>(); // sorted by descending order
+  protected boolean wideChanged;
+  protected final List<Entry> empty = new ArrayList<Entry>();
+  protected final List<Entry> dirty = new ArrayList<Entry>();
+  protected final List<Entry> sorted = new ArrayList<Entry>();
+  protected final Point scratch = new Point();
+
+  protected static final Comparator<Entry> BY_ORDER = new Comparator<Entry>() {
+    public int compare(Entry e1, Entry e2) {
+      return e2.order - e1.order;
+    }
+  };
+
+  protected static final int UNLINKED = 0, GRID = 1, WIDE = 2, EMPTY = 3;
+  protected static final int MAX_SPAN = 8;
+}
@@ -74,6 +74,27 @@ public interface Json {
      */
     Iterator<T> iterator();
 
+    /**
+     * A typed array that can supply its values as a primitive array more efficiently than by
+     * fetching each value. The arrays returned by {@link Json} implement this; use {@link
+     * Util#toIntArray} and {@link Util#toDoubleArray} to convert any typed array.
+     */
+    interface Numeric<T> extends TypedArray<T> {
+      /**
+       * Returns the values in this array as ints. Values that are not numbers are returned as
+       * zero. Arrays of numbers parsed by the Java-like platforms are stored unboxed, in which
+       * case this is a simple copy.
+       */
+      int[] toIntArray();
+
+      /**
+       * Returns the values in this array as doubles. Values that are not numbers are returned as
+       * zero. Arrays of numbers parsed by the Java-like platforms are stored unboxed, in which
+       * case this is a simple copy.
+       */
+      double[] toDoubleArray();
+    }
+
     /**
      * Contains utility methods for creating typed arrays to supply as the default when fetching
      * optional typed arrays from your JSON model. For example:
@@ -137,6 +158,36 @@ public interface Json {
           }
         };
       }
+
+      /**
+       * Copies the values of {@code array} into an int array, converting numbers via {@link
+       * Number#intValue} and using zero for all other values. This uses {@link
+       * Numeric#toIntArray} if the array supports it.
+       */
+      public static int[] toIntArray (TypedArray<?> array) {
+        if (array instanceof Numeric) return ((Numeric<?>)array).toIntArray();
+        int[] values = new int[array.length()];
+        for (int ii = 0; ii < values.length; ii++) {
+          java.lang.Object value = array.get(ii);
+          if (value instanceof Number) values[ii] = ((Number)value).intValue();
+        }
+        return values;
+      }
+
+      /**
+       * Copies the values of {@code array} into a double array, converting numbers via {@link
+       * Number#doubleValue} and using zero for all other values. This uses {@link
+       * Numeric#toDoubleArray} if the array supports it.
+       */
+      public static double[] toDoubleArray (TypedArray<?> array) {
+        if (array instanceof Numeric) return ((Numeric<?>)array).toDoubleArray();
+        double[] values = new double[array.length()];
+        for (int ii = 0; ii < values.length; ii++) {
+          java.lang.Object value = array.get(ii);
+          if (value instanceof Number) values[ii] = ((Number)value).doubleValue();
+        }
+        return values;
+      }
     }
   }
 
@@ -102,6 +102,12 @@ public interface Net {
 
     /** Executes this request, delivering the response via {@code callback}. */
     void execute(Callback<Response> callback);
+
+    /** Executes this request, delivering the response payload incrementally to {@code listener}
+     * as it arrives rather than buffering all of it in memory. Note: this is currently only
+     * supported on the Java backend; other backends receive the entire payload and then deliver it
+     * in a single call to {@link StreamingResponse.Listener#onData}. */
+    void stream(StreamingResponse.Listener listener);
   }
 
   /** Communicates an HTTP response to the caller. */
@@ -131,6 +137,31 @@ public interface Net {
     byte[] payload();
   }
 
+  /** A response whose payload is delivered incrementally, see {@link Builder#stream}. Its {@link
+   * #payload} and {@link #payloadString} methods throw {@link UnsupportedOperationException}. */
+  interface StreamingResponse extends Response {
+    /** Receives a streaming response. All methods are called on the game thread. */
+    interface Listener {
+      /** Called when the response code and headers have been received. */
+      void onResponse(StreamingResponse response);
+
+      /** Called with each chunk of the payload, in order, after it has been decoded from any
+       * transfer or content encoding. */
+      void onData(byte[] data);
+
+      /** Called once the entire payload has been delivered. */
+      void onComplete();
+
+      /** Called if the request fails, before or during the delivery of the payload. No further
+       * methods are called after this one. */
+      void onFailure(Throwable cause);
+    }
+
+    /** Stops the delivery of this response. No further listener methods are called once this
+     * method has returned. */
+    void cancel();
+  }
+
   /**
    * Create a websocket with given URL and listener.
    */
@@ -99,6 +99,11 @@ public abstract class NetImpl implements Net {
     public void execute (Callback<Response> callback) {
       NetImpl.this.execute(this, callback);
     }
+
+    @Override
+    public void stream (StreamingResponse.Listener listener) {
+      NetImpl.this.stream(this, listener);
+    }
   }
 
   protected abstract class ResponseImpl implements Response {
@@ -214,6 +219,83 @@ public abstract class NetImpl implements Net {
     throw new UnsupportedOperationException();
   }
 
+  /**
+   * Executes a streaming request. This default implementation, for backends that can't stream,
+   * executes the request normally and delivers its payload in a single call to {@link
+   * StreamingResponse.Listener#onData}.
+   */
+  protected void stream(BuilderImpl req, final StreamingResponse.Listener listener) {
+    execute(req, new Callback<Response>() {
+      public void onSuccess(Response rsp) {
+        BufferedStreamingResponse srsp = new BufferedStreamingResponse(rsp);
+        listener.onResponse(srsp);
+        if (srsp.cancelled) return;
+        byte[] payload;
+        try {
+          payload = rsp.payload();
+        } catch (UnsupportedOperationException uoe) {
+          // some backends (HTML) only provide the payload as a string
+          try {
+            payload = rsp.payloadString().getBytes(UTF8);
+          } catch (UnsupportedEncodingException uee) {
+            listener.onFailure(uee);
+            return;
+          }
+        }
+        listener.onData(payload);
+        if (!srsp.cancelled) listener.onComplete();
+      }
+      public void onFailure(Throwable cause) {
+        listener.onFailure(cause);
+      }
+    });
+  }
+
+  /** Presents a fully received response as a streaming response. */
+  protected static class BufferedStreamingResponse implements StreamingResponse {
+    private final Response rsp;
+    private boolean cancelled;
+
+    public BufferedStreamingResponse(Response rsp) {
+      this.rsp = rsp;
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+    }
+
+    @Override
+    public int responseCode() {
+      return rsp.responseCode();
+    }
+
+    @Override
+    public Iterable<String> headerNames() {
+      return rsp.headerNames();
+    }
+
+    @Override
+    public String header(String name) {
+      return rsp.header(name);
+    }
+
+    @Override
+    public List<String> headers(String name) {
+      return rsp.headers(name);
+    }
+
+    @Override
+    public String payloadString() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public byte[] payload() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
   private Callback<Response> adapt (final Callback<String> callback) {
     return new Callback.Chain<Response>(callback) {
       public void onSuccess(Response rsp) {
@@ -0,0 +1,275 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import playn.core.util.FrameScheduler;
+
+/**
+ * Wraps a {@link Storage} and writes changes to it on a background thread. Changes are visible via
+ * this storage as soon as they are made, and repeated changes to the same key are coalesced so that
+ * only the latest is written. Pending changes are flushed via {@link AbstractPlatform#invokeAsync}
+ * once the oldest of them has waited for the flush interval, or as soon as the number of changed
+ * keys reaches the flush threshold.
+ *
+ * <p>Pending changes are flushed synchronously when the platform exits. Call {@link #flushNow} to
+ * make sure that changes have been written at any other time.</p>
+ *
+ * <p>The wrapped storage must tolerate being read from the game thread while it is written on a
+ * background thread. This is only useful on platforms which support {@code invokeAsync}.</p>
+ */
+public class WriteBehindStorage implements Storage {
+
+  /** The default maximum time a change waits before being flushed, in milliseconds. */
+  public static final double DEFAULT_FLUSH_INTERVAL = 1000;
+
+  /** The default number of changed keys which triggers an immediate flush. */
+  public static final int DEFAULT_FLUSH_THRESHOLD = 64;
+
+  /**
+   * Creates a write-behind storage with the default flush interval and threshold.
+   */
+  public WriteBehindStorage(AbstractPlatform platform, Storage storage) {
+    this(platform, storage, DEFAULT_FLUSH_INTERVAL, DEFAULT_FLUSH_THRESHOLD);
+  }
+
+  /**
+   * Creates a write-behind storage that writes changes to {@code storage}.
+   *
+   * @param flushInterval the maximum time in milliseconds that a change waits before being
+   * flushed.
+   * @param flushThreshold the number of changed keys at which a flush is started immediately.
+   */
+  public WriteBehindStorage(AbstractPlatform platform, Storage storage, double flushInterval,
+                            int flushThreshold) {
+    this.platform = platform;
+    this.storage = storage;
+    this.flushInterval = flushInterval;
+    this.flushThreshold = Math.max(flushThreshold, 1);
+    platform.writeBehinds.add(this);
+  }
+
+  /** Returns the storage to which this storage writes. */
+  public Storage storage() {
+    return storage;
+  }
+
+  /**
+   * Writes all pending changes to the wrapped storage on the calling thread, waiting for any
+   * background flush that is in progress to finish first.
+   */
+  public void flushNow() {
+    synchronized (writeLock) {
+      Map<String, String> batch;
+      synchronized (this) {
+        // a background flush that hasn't yet started writing will find nothing to write
+        if (flushing == null && pending.isEmpty()) return;
+        batch = new HashMap<String, String>();
+        if (flushing != null) batch.putAll(flushing);
+        batch.putAll(pending);
+        flushing = batch;
+        pending = new HashMap<String, String>();
+      }
+      write(batch);
+    }
+  }
+
+  /** Returns the number of changed keys that have not yet been written to the wrapped storage. */
+  public synchronized int pendingWrites() {
+    return pending.size() + (flushing == null ? 0 : flushing.size());
+  }
+
+  /** Returns the number of changes that were coalesced with a later change to the same key, and
+   * thus never written to the wrapped storage. */
+  public synchronized int coalescedWrites() {
+    return coalesced;
+  }
+
+  /** Returns the number of flushes that have completed. */
+  public synchronized int flushCount() {
+    return flushes;
+  }
+
+  /** Returns the time taken by the most recent flush to write to the wrapped storage, in
+   * milliseconds. */
+  public synchronized double lastFlushLatency() {
+    return lastLatency;
+  }
+
+  /** Returns the longest time taken by a flush to write to the wrapped storage, in
+   * milliseconds. */
+  public synchronized double maxFlushLatency() {
+    return maxLatency;
+  }
+
+  @Override
+  public void setItem(String key, String data) {
+    if (data == null) throw new NullPointerException("data must not be null");
+    change(key, data);
+  }
+
+  @Override
+  public void removeItem(String key) {
+    change(key, null);
+  }
+
+  @Override
+  public String getItem(String key) {
+    synchronized (this) {
+      // a pending removal is recorded as a null value
+      if (pending.containsKey(key)) return pending.get(key);
+      if (flushing != null && flushing.containsKey(key)) return flushing.get(key);
+    }
+    // if a change was in neither map then it has already been written
+    return storage.getItem(key);
+  }
+
+  @Override
+  public Batch startBatch() {
+    return new BatchImpl(this);
+  }
+
+  @Override
+  public Iterable<String> keys() {
+    Set<String> keys = new LinkedHashSet<String>();
+    Map<String, String> changes = new HashMap<String, String>();
+    synchronized (this) {
+      if (flushing != null) changes.putAll(flushing);
+      changes.putAll(pending);
+    }
+    for (String key : storage.keys()) keys.add(key);
+    for (Map.Entry<String, String> entry : changes.entrySet()) {
+      if (entry.getValue() == null) keys.remove(entry.getKey());
+      else keys.add(entry.getKey());
+    }
+    return keys;
+  }
+
+  @Override
+  public boolean isPersisted() {
+    return storage.isPersisted();
+  }
+
+  private void change(String key, String data) {
+    boolean flush, check;
+    synchronized (this) {
+      if (pending.isEmpty()) pendingSince = platform.time();
+      if (pending.containsKey(key)) coalesced++;
+      pending.put(key, data);
+      flush = pending.size() >= flushThreshold && flushing == null;
+      check = !flush && !checkQueued;
+      if (check) checkQueued = true;
+    }
+    if (flush) startFlush();
+    else if (check) platform.scheduler().add(FrameScheduler.Lane.BACKGROUND, checker);
+  }
+
+  // moves the pending changes into the flushing map and writes them on a background thread
+  private void startFlush() {
+    final Map<String, String> batch;
+    synchronized (this) {
+      if (flushing != null || pending.isEmpty()) return;
+      batch = flushing = pending;
+      pending = new HashMap<String, String>();
+    }
+    Runnable flush = new Runnable() {
+      public void run() {
+        synchronized (writeLock) {
+          // flushNow may have written our batch (and cleared it) while we waited for the lock
+          synchronized (WriteBehindStorage.this) {
+            if (flushing != batch) return;
+          }
+          write(batch);
+        }
+      }
+    };
+    try {
+      platform.invokeAsync(flush);
+    } catch (UnsupportedOperationException e) {
+      flush.run(); // no background threads on this platform, so we write behind one frame later
+    }
+  }
+
+  // writes batch to the wrapped storage; the caller must hold the write lock
+  private void write(Map<String, String> batch) {
+    double start = platform.time();
+    Throwable error = null;
+    try {
+      Batch sb = storage.startBatch();
+      for (Map.Entry<String, String> entry : batch.entrySet()) {
+        if (entry.getValue() == null) sb.removeItem(entry.getKey());
+        else sb.setItem(entry.getKey(), entry.getValue());
+      }
+      sb.commit();
+    } catch (Throwable t) {
+      error = t;
+    }
+    double latency = platform.time() - start;
+
+    boolean check = false;
+    synchronized (this) {
+      flushing = null;
+      if (error != null) {
+        // hang onto the failed changes (unless they've since been superseded) and try again later
+        if (pending.isEmpty()) pendingSince = platform.time();
+        for (Map.Entry<String, String> entry : batch.entrySet()) {
+          if (!pending.containsKey(entry.getKey())) pending.put(entry.getKey(), entry.getValue());
+        }
+        check = !checkQueued;
+        checkQueued = true;
+      } else {
+        flushes++;
+        lastLatency = latency;
+        maxLatency = Math.max(maxLatency, latency);
+      }
+    }
+    if (error != null) platform.reportError("Failed to flush storage", error);
+    if (check) platform.scheduler().add(FrameScheduler.Lane.BACKGROUND, checker);
+  }
+
+  // runs once per frame on the game thread while changes are pending, and starts a flush once the
+  // oldest change has waited long enough
+  private final Runnable checker = new Runnable() {
+    public void run() {
+      boolean flush, requeue;
+      synchronized (WriteBehindStorage.this) {
+        flush = !pending.isEmpty() && flushing == null &&
+          (pending.size() >= flushThreshold || platform.time() - pendingSince >= flushInterval);
+        requeue = !flush && !pending.isEmpty();
+        checkQueued = requeue;
+      }
+      if (flush) startFlush();
+      else if (requeue) platform.scheduler().add(FrameScheduler.Lane.BACKGROUND, this);
+    }
+  };
+
+  private final AbstractPlatform platform;
+  private final Storage storage;
+  private final double flushInterval;
+  private final int flushThreshold;
+  private final Object writeLock = new Object();
+
+  // changes not yet written, mapping removed keys to null
+  private Map<String, String> pending = new HashMap<String, String>();
+  private Map<String, String> flushing;
+  private double pendingSince;
+  private boolean checkQueued;
+
+  private int coalesced, flushes;
+  private double lastLatency, maxLatency;
+}
@@ -24,7 +24,7 @@ import playn.core.InternalTransform;
 import playn.core.Layer;
 import playn.core.ParentLayer;
 
-public class GroupLayerCanvas extends LayerCanvas implements GroupLayer, ParentLayer {
+public class GroupLayerCanvas extends LayerCanvas implements GroupLayer.Indexable, ParentLayer {
 
   public static class Clipped extends GroupLayerCanvas implements GroupLayer.Clipped, HasSize {
     private float width, height;
@@ -142,6 +142,11 @@ public class GroupLayerCanvas extends LayerCanvas implements GroupLayer, ParentL
     impl.onRemove(this);
   }
 
+  @Override
+  public void setHitIndex(float cellSize) {
+    impl.setHitIndex(this, cellSize);
+  }
+
   @Override
   public Layer hitTestDefault(Point p) {
     return impl.hitTest(this, p);
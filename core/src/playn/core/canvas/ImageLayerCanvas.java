@@ -43,6 +43,7 @@ public class ImageLayerCanvas extends LayerCanvas implements ImageLayer {
   @Override
   public ImageLayer setImage(Image img) {
     this.img = img;
+    boundsChanged();
     return this;
   }
 
@@ -75,6 +76,7 @@ public class ImageLayerCanvas extends LayerCanvas implements ImageLayer {
     assert height >= 0 : "Height must be >= 0";
     heightSet = true;
     this.height = height;
+    boundsChanged();
   }
 
   @Override
@@ -82,6 +84,7 @@ public class ImageLayerCanvas extends LayerCanvas implements ImageLayer {
     assert width >= 0 : "Width must be >= 0";
     widthSet = true;
     this.width = width;
+    boundsChanged();
   }
 
   @Override
@@ -92,16 +95,19 @@ public class ImageLayerCanvas extends LayerCanvas implements ImageLayer {
     this.width = width;
     heightSet = true;
     this.height = height;
+    boundsChanged();
   }
 
   @Override
   public void clearHeight() {
     heightSet = false;
+    boundsChanged();
   }
 
   @Override
   public void clearWidth() {
     widthSet = false;
+    boundsChanged();
   }
 
   @Override
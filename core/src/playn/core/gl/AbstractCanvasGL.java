@@ -15,6 +15,8 @@
  */
 package playn.core.gl;
 
+import pythagoras.i.Rectangle;
+
 import playn.core.AbstractCanvas;
 import playn.core.Canvas;
 import playn.core.Image;
@@ -22,18 +24,64 @@ import playn.core.Image;
 /**
  * A base class for {@link Canvas} implementations for GL backends. This mainly takes care of
  * drawing images, but also provides a dirty tracking mechanism, since nearly all canvas
- * implementations need one.
+ * implementations need one. Implementations may also track the region of the canvas that has been
+ * modified (via {@link #addDirtyRegion}), which allows only that region to be uploaded to GL.
  */
 public abstract class AbstractCanvasGL<GC> extends AbstractCanvas {
 
   protected boolean isDirty;
 
+  // the union of the regions added via addDirtyRegion, in pixels
+  private int dirtyLeft, dirtyTop, dirtyRight, dirtyBottom;
+  private boolean dirtyRegion;
+
   public boolean dirty() {
     return isDirty;
   }
 
+  /**
+   * Returns the region of the canvas (in pixels) that has been modified since the dirty flag was
+   * last cleared, or null if the whole canvas must be considered modified. The region may extend
+   * outside the bounds of the canvas.
+   */
+  public Rectangle dirtyRegion() {
+    return dirtyRegion ? new Rectangle(dirtyLeft, dirtyTop, dirtyRight - dirtyLeft,
+                                       dirtyBottom - dirtyTop) : null;
+  }
+
   public void clearDirty() {
     isDirty = false;
+    dirtyRegion = false;
+  }
+
+  /**
+   * Notes that the pixels in the supplied region have been modified. If the canvas was already
+   * dirty without a region being noted, the whole canvas remains dirty.
+   */
+  protected void addDirtyRegion(int left, int top, int right, int bottom) {
+    if (right <= left || bottom <= top) return;
+    if (!isDirty) {
+      dirtyLeft = left;
+      dirtyTop = top;
+      dirtyRight = right;
+      dirtyBottom = bottom;
+      dirtyRegion = isDirty = true;
+    } else if (dirtyRegion) {
+      dirtyLeft = Math.min(dirtyLeft, left);
+      dirtyTop = Math.min(dirtyTop, top);
+      dirtyRight = Math.max(dirtyRight, right);
+      dirtyBottom = Math.max(dirtyBottom, bottom);
+    }
+  }
+
+  /**
+   * Notes that the pixels under the supplied rectangle (in canvas coordinates, which are subject to
+   * the current transform and clip) have been modified. This implementation marks the whole canvas
+   * as dirty; backends which track dirty regions override it.
+   */
+  protected void addDirtyRect(float x, float y, float width, float height) {
+    isDirty = true;
+    dirtyRegion = false;
   }
 
   @Override
@@ -50,7 +98,7 @@ public abstract class AbstractCanvasGL<GC> extends AbstractCanvas {
   public Canvas drawImage(Image img, float x, float y, float w, float h) {
     @SuppressWarnings("unchecked") AbstractImageGL<GC> d = (AbstractImageGL<GC>) img;
     d.draw(gc(), x, y, w, h);
-    isDirty = true;
+    addDirtyRect(x, y, w, h);
     return this;
   }
 
@@ -59,7 +107,7 @@ public abstract class AbstractCanvasGL<GC> extends AbstractCanvas {
                           float sx, float sy, float sw, float sh) {
     @SuppressWarnings("unchecked") AbstractImageGL<GC> d = (AbstractImageGL<GC>) img;
     d.draw(gc(), dx, dy, dw, dh, sx, sy, sw, sh);
-    isDirty = true;
+    addDirtyRect(dx, dy, dw, dh);
     return this;
   }
 
@@ -54,6 +54,13 @@ public abstract class AbstractImageGL<GC> implements Image {
     }
   }
 
+  /**
+   * Returns whether this image is currently referenced by one or more layers.
+   */
+  public boolean isReferenced() {
+    return refs > 0;
+  }
+
   /** Draws this image into the platform-specific (canvas) graphics context. */
   public abstract void draw(GC gc, float dx, float dy, float dw, float dh);
 
@@ -67,7 +74,7 @@ public abstract class AbstractImageGL<GC> implements Image {
   void draw(GLShader shader, InternalTransform xform, int tint,
             float dx, float dy, float dw, float dh) {
     draw(shader, xform, tint, dx, dy, dw, dh,
-         0, 0, (repeatX ? dw : width()), (repeatY ? dh : height()));
+         0, 0, (repeatX ? dw : width()), (repeatY ? dh : height()), false);
   }
 
   /**
@@ -75,17 +82,52 @@ public abstract class AbstractImageGL<GC> implements Image {
    */
   void draw(GLShader shader, InternalTransform xform, int tint,
             float dx, float dy, float dw, float dh, float sx, float sy, float sw, float sh) {
+    draw(shader, xform, tint, dx, dy, dw, dh, sx, sy, sw, sh, false);
+  }
+
+  /**
+   * Paints this image as part of the scene graph. Unlike {@link #draw}, creating this image's
+   * texture is subject to the context's upload budget, so the image may not appear until a later
+   * frame (which is fine, because the scene graph is repainted every frame).
+   */
+  void paint(GLShader shader, InternalTransform xform, int tint,
+             float dx, float dy, float dw, float dh) {
+    draw(shader, xform, tint, dx, dy, dw, dh,
+         0, 0, (repeatX ? dw : width()), (repeatY ? dh : height()), true);
+  }
+
+  /**
+   * Draws this image with the supplied transform, and source and target dimensions. If {@code
+   * paint} is true, we're painting the scene graph and obtain our texture via {@link
+   * #paintTexture}.
+   */
+  void draw(GLShader shader, InternalTransform xform, int tint, float dx, float dy, float dw,
+            float dh, float sx, float sy, float sw, float sh, boolean paint) {
     float texWidth = width(), texHeight = height();
-    drawImpl(shader, xform, ensureTexture(), tint, dx, dy, dw, dh,
+    int tex = texture(paint);
+    if (tex == 0) ctx.texturesPending++;
+    drawImpl(shader, xform, tex, tint, dx, dy, dw, dh,
              sx / texWidth, sy / texHeight, (sx + sw) / texWidth, (sy + sh) / texHeight);
   }
 
+  /**
+   * Returns the texture to use when painting this image as part of the scene graph, or zero if it
+   * should not be drawn this frame.
+   */
+  int paintTexture() {
+    return ensureTexture();
+  }
+
+  /** Returns our texture for painting the scene graph or for drawing into a surface. */
+  int texture(boolean paint) {
+    return paint ? paintTexture() : ensureTexture();
+  }
+
   void drawImpl(GLShader shader, InternalTransform xform, int tex, int tint,
                 float dx, float dy, float dw, float dh,
                 float sl, float st, float sr, float sb) {
     if (tex > 0) {
-      ctx.quadShader(shader).prepareTexture(tex, tint).addQuad(
-        xform, dx, dy, dx + dw, dy + dh, sl, st, sr, sb);
+      ctx.addQuad(shader, tex, tint, xform, dx, dy, dx + dw, dy + dh, sl, st, sr, sb);
     }
   }
 
@@ -204,6 +204,11 @@ public abstract class GL20Buffer implements GLBuffer {
       gl.glDrawElements(mode, count, GL20.GL_UNSIGNED_SHORT, 0);
     }
 
+    @Override
+    public void drawElements(int mode, int count, int offset) {
+      gl.glDrawElements(mode, count, GL20.GL_UNSIGNED_SHORT, offset * bytesPerElement());
+    }
+
     @Override
     public String toString() {
       return "shortbuf:" + bufferId;
@@ -223,6 +228,9 @@ public abstract class GL20Buffer implements GLBuffer {
   protected final GL20 gl;
   protected final int bufferId;
 
+  // the size of, and write position in, our GL data store when streaming (in bytes)
+  private int storeSize, storePos;
+
   @Override
   public int byteSize() {
     return position() * bytesPerElement();
@@ -240,9 +248,27 @@ public abstract class GL20Buffer implements GLBuffer {
     Buffer buffer = buffer();
     buffer.position(0);
     gl.glBufferData(target, byteSize, buffer, usage);
+    storeSize = 0; // our data store no longer matches the streaming data store
     return count;
   }
 
+  @Override
+  public int stream(int target, int storeCapacity) {
+    int byteSize = byteSize();
+    int needSize = Math.max(storeCapacity * bytesPerElement(), byteSize);
+    if (needSize > storeSize || storePos + byteSize > storeSize) {
+      // (re)allocate the data store; if it's still in use by GL, GL orphans it rather than stall
+      storeSize = Math.max(storeSize, needSize);
+      gl.glBufferData(target, storeSize, null, GL20.GL_STREAM_DRAW);
+      storePos = 0;
+    }
+    gl.glBufferSubData(target, storePos, byteSize, streamBuffer());
+    reset();
+    int offset = storePos / bytesPerElement();
+    storePos += byteSize;
+    return offset;
+  }
+
   @Override
   public void destroy() {
     gl.glDeleteBuffers(1, new int[] { bufferId }, 0);
@@ -250,6 +276,18 @@ public abstract class GL20Buffer implements GLBuffer {
 
   protected abstract Buffer buffer();
 
+  /**
+   * Returns a buffer, positioned at zero, from which {@link #stream} uploads the staged data. This
+   * flushes the staging array into our direct NIO buffer. Backends whose {@link GL20} accepts
+   * array-backed buffers override this to upload the staging array without copying it.
+   */
+  protected Buffer streamBuffer() {
+    flush();
+    Buffer buffer = buffer();
+    buffer.position(0);
+    return buffer;
+  }
+
   protected abstract int bytesPerElement();
 
   protected GL20Buffer(GL20 gl) {
@@ -58,11 +58,12 @@ public class GL20Context extends GLContext {
       trisShader.clearProgram();
     }
     quadShader = createQuadShader();
-    trisShader = new IndexedTrisShader(this);
+    trisShader = new IndexedTrisShader(this, shouldStreamTris());
     checkGLError("initGL");
   }
 
   public void paint(GroupLayerGL rootLayer) {
+    beginFrame();
     if (rootLayer.size() > 0) {
       checkGLError("paint");
       bindFramebuffer();
@@ -202,6 +203,15 @@ public class GL20Context extends GLContext {
     else gl.glScissor(r.x, r.y, r.width, r.height);
   }
 
+  @Override
+  protected void setScissor(Rectangle rect) {
+    if (rect == null) gl.glDisable(GL_SCISSOR_TEST);
+    else {
+      gl.glScissor(rect.x, rect.y, rect.width, rect.height);
+      gl.glEnable(GL_SCISSOR_TEST);
+    }
+  }
+
   @Override
   public void clear(float r, float g, float b, float a) {
     gl.glClearColor(r, g, b, a);
@@ -80,6 +80,10 @@ public interface GLBuffer {
 
     /** Issues a draw elements call using this buffer to define the elements. */
     void drawElements(int mode, int count);
+
+    /** Issues a draw elements call using the elements that start at {@code offset} (in elements)
+     * in this buffer's GL data store. Used with offsets returned by {@link #stream}. */
+    void drawElements(int mode, int count, int offset);
   }
 
   /** Returns the total capacity of this buffer (number of floats, shorts, etc. it can hold). */
@@ -107,6 +111,15 @@ public interface GLBuffer {
    * @return the number of elements in the buffer at the time it was bound. */
   int send(int target, int usage);
 
+  /** Sends this buffer's data to GL, using glBufferSubData to write it into the next free region
+   * of a GL data store large enough for {@code storeCapacity} elements. The store is allocated the
+   * first time this is called, and is orphaned and reused from the start when the data does not
+   * fit in the remaining space, so that GL need not wait for draws from earlier regions to finish.
+   * A call to {@link #bind} must precede this call, and {@link #send} must not be used on a
+   * streamed buffer. This resets the buffer offset to zero.
+   * @return the offset (in elements) in the GL data store at which the data was written. */
+  int stream(int target, int storeCapacity);
+
   /** Flushes this buffer's staging array to its underlying NIO buffer (if any). This is done
    * automatically on a call to {@link #send}. */
   void flush();
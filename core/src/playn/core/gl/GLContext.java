@@ -48,6 +48,17 @@ public abstract class GLContext {
     public int trisRendered;
     public int shaderFlushes;
 
+    public int layersCulled;
+    public int transformsComputed;
+
+    public int groupCacheHits;
+    public int groupCacheInvalidations;
+    /** The texture memory used by cached group layers, in bytes. This is not reset. */
+    public int groupCacheBytes;
+
+    public int uploadBytes;
+    public int uploadsDeferred;
+
     /** Resets all counters. */
     public void reset() {
       frames = 0;
@@ -60,6 +71,12 @@ public abstract class GLContext {
       quadsRendered = 0;
       trisRendered = 0;
       shaderFlushes = 0;
+      layersCulled = 0;
+      transformsComputed = 0;
+      groupCacheHits = 0;
+      groupCacheInvalidations = 0;
+      uploadBytes = 0;
+      uploadsDeferred = 0;
     }
   }
 
@@ -69,10 +86,23 @@ public abstract class GLContext {
   protected final AbstractPlatform platform;
   private GLShader curShader;
   private int lastFramebuffer, epoch;
-  private int pushedFramebuffer = -1, pushedWidth, pushedHeight;
+  // the framebuffer, width, height and scissor depth saved by each pushFramebuffer call
+  private int[] pushed = new int[16];
+  private int pushDepth;
   private List<Rectangle> scissors = new ArrayList<Rectangle>();
   private int scissorDepth;
   private Image fillImage;
+  private boolean culling;
+  private QuadQueue quadQueue;
+  private int uploadBudget, frameUploadBytes;
+
+  /** The number of times an image in the scene graph was not drawn because its texture was not yet
+   * available. Cached group layers check this to avoid caching an incomplete rendering. */
+  int texturesPending;
+
+  /** The number of group layers which cache their rendering. Layers only notify their ancestors of
+   * changes when this is non-zero. */
+  int cachingGroups;
 
   /** The (actual screen pixel) width and height of our default frame buffer. */
   protected int defaultFbufWidth, defaultFbufHeight;
@@ -106,6 +136,54 @@ public abstract class GLContext {
    */
   public abstract void setTextureFilter(Filter minFilter, Filter magFilter);
 
+  /**
+   * Configures whether layers that lie entirely outside the current framebuffer (or the current
+   * clip rectangle) are skipped during rendering. Culling is disabled by default. When enabled,
+   * sized layers (image layers and clipped group and immediate layers) are tested against the view
+   * prior to rendering; unclipped group layers have no size and are always traversed.
+   */
+  public void setCullingEnabled(boolean enabled) {
+    culling = enabled;
+  }
+
+  /** Returns whether layer culling is enabled. See {@link #setCullingEnabled}. */
+  public boolean cullingEnabled() {
+    return culling;
+  }
+
+  /**
+   * Configures whether image quads are queued and reordered by shader and texture prior to being
+   * sent to GL, which reduces shader flushes when sibling layers alternate between textures. Quads
+   * are only reordered when they do not overlap, so the rendered result is unchanged. Deferred
+   * rendering is disabled by default.
+   */
+  public void setDeferredRendering(boolean deferred) {
+    flush();
+    quadQueue = deferred ? new QuadQueue() : null;
+  }
+
+  /** Returns whether deferred rendering is enabled. See {@link #setDeferredRendering}. */
+  public boolean deferredRendering() {
+    return quadQueue != null;
+  }
+
+  /**
+   * Limits the number of bytes of image data that are uploaded to newly created textures while
+   * painting a single frame. Images whose texture would exceed the budget are not drawn until a
+   * later frame, which spreads the cost of a large number of images appearing for the first time
+   * over several frames rather than causing a hitch. At least one texture is always created per
+   * frame. Only image layers are subject to the budget; images drawn into a surface are always
+   * uploaded, because nothing would redraw them. The default budget of zero means no limit.
+   */
+  public void setUploadBudget(int bytes) {
+    uploadBudget = bytes;
+  }
+
+  /** Returns the per-frame texture upload budget. See {@link #setUploadBudget}. */
+  public int uploadBudget() {
+    return uploadBudget;
+  }
+
   /** Returns the specified GL string parameter. */
   public abstract String getString(int param);
 
@@ -258,22 +336,39 @@ public abstract class GLContext {
   }
 
   /** Stores the metadata for the currently bound frame buffer, and binds the supplied framebuffer.
-   * This must be followed by a call to {@link #popFramebuffer}. Also, it is not allowed to push a
-   * framebuffer if a framebuffer is already pushed. Only one level of nesting is supported. */
+   * This must be followed by a call to {@link #popFramebuffer}. Pushes may be nested. Any clipping
+   * in effect is suspended until the framebuffer is popped, as it applies to the current
+   * framebuffer rather than the pushed one. */
   public void pushFramebuffer(int fbuf, int width, int height) {
-    assert pushedFramebuffer == -1 : "Already have a pushed framebuffer";
-    pushedFramebuffer = lastFramebuffer;
-    pushedWidth = curFbufWidth;
-    pushedHeight = curFbufHeight;
+    if (pushDepth + 4 > pushed.length) {
+      int[] npushed = new int[pushed.length * 2];
+      System.arraycopy(pushed, 0, npushed, 0, pushed.length);
+      pushed = npushed;
+    }
+    pushed[pushDepth++] = lastFramebuffer;
+    pushed[pushDepth++] = curFbufWidth;
+    pushed[pushDepth++] = curFbufHeight;
+    pushed[pushDepth++] = scissorDepth;
     bindFramebuffer(fbuf, width, height);
+    if (scissorDepth > 0) {
+      flush(); // flush anything rendered with the scissor still enabled
+      setScissor(null);
+      scissorDepth = 0;
+    }
   }
 
   /** Pops the framebuffer pushed by a previous call to {@link #pushFramebuffer} and restores the
-   * framebuffer that was active prior to that call. */
+   * framebuffer (and clipping) that was active prior to that call. */
   public void popFramebuffer() {
-    assert pushedFramebuffer != -1 : "Have no pushed framebuffer";
-    bindFramebuffer(pushedFramebuffer, pushedWidth, pushedHeight);
-    pushedFramebuffer = -1;
+    assert pushDepth > 0 : "Have no pushed framebuffer";
+    assert scissorDepth == 0 : "Unbalanced startClipped/endClipped in pushed framebuffer";
+    int savedScissorDepth = pushed[--pushDepth];
+    int height = pushed[--pushDepth], width = pushed[--pushDepth];
+    bindFramebuffer(pushed[--pushDepth], width, height);
+    if (savedScissorDepth > 0) {
+      scissorDepth = savedScissorDepth;
+      setScissor(scissors.get(scissorDepth - 1));
+    }
   }
 
   /** Returns the supplied shader if non-null, or the default quad shader if null. */
@@ -291,6 +386,7 @@ public abstract class GLContext {
   }
 
   public void flush(boolean deactivate) {
+    flushQueuedQuads();
     if (curShader != null) {
       checkGLError("flush()");
       curShader.flush();
@@ -301,10 +397,36 @@ public abstract class GLContext {
     }
   }
 
+  /**
+   * Renders a textured quad with the supplied shader (or the default quad shader if null). If
+   * deferred rendering is enabled, the quad is queued, otherwise it is added to the shader
+   * immediately. See {@link GLShader#addQuad}.
+   */
+  public void addQuad(GLShader shader, int tex, int tint, InternalTransform xform,
+                      float left, float top, float right, float bottom,
+                      float sl, float st, float sr, float sb) {
+    if (quadQueue != null) {
+      quadQueue.add(quadShader(shader), tex, tint, xform, left, top, right, bottom, sl, st, sr, sb);
+    } else {
+      quadShader(shader).prepareTexture(tex, tint).addQuad(
+        xform, left, top, right, bottom, sl, st, sr, sb);
+    }
+  }
+
+  /**
+   * Sends any quads queued due to deferred rendering to their shaders. This is called
+   * automatically whenever a shader is used directly, and when flushing.
+   */
+  public void flushQueuedQuads() {
+    if (quadQueue != null) quadQueue.flush();
+  }
+
   /**
    * Makes the supplied shader the current shader, flushing any previous shader.
    */
   public boolean useShader(GLShader shader) {
+    // any quads queued for deferred rendering must be rendered before the shader is used directly
+    flushQueuedQuads();
     if (curShader == shader)
       return false;
     checkGLError("useShader");
@@ -387,6 +509,30 @@ public abstract class GLContext {
       return scissorDepth == 0 ? null : scissors.get(scissorDepth - 1);
   }
 
+  /**
+   * Returns true if the supplied bounds (in framebuffer pixels, origin at top-left) intersect the
+   * current framebuffer, or the current clip rectangle if one is active.
+   */
+  boolean inView(float left, float top, float right, float bottom) {
+    float vl = 0, vt = 0, vr = curFbufWidth, vb = curFbufHeight;
+    if (scissorDepth > 0) {
+      // scissor rectangles are in GL coordinates (origin at bottom-left), so we flip them
+      Rectangle r = scissors.get(scissorDepth - 1);
+      vl = r.x;
+      vr = r.x + r.width;
+      vb = curFbufHeight - r.y;
+      vt = vb - r.height;
+    }
+    return right > vl && left < vr && bottom > vt && top < vb;
+  }
+
+  /**
+   * Applies the supplied scissor rectangle (in GL coordinates, as returned by {@link
+   * #pushScissorState}) and enables the scissor test, or disables the scissor test if {@code rect}
+   * is null. This is used to suspend and restore clipping around {@link #pushFramebuffer}.
+   */
+  protected abstract void setScissor(Rectangle rect);
+
   /**
    * Returns the current scissor stack size. Zero means no scissors are currently pushed.
    */
@@ -394,6 +540,28 @@ public abstract class GLContext {
       return scissorDepth;
   }
 
+  /**
+   * Returns whether a new texture containing {@code bytes} of image data may be uploaded during
+   * the current frame, accounting for the upload if so.
+   */
+  boolean reserveUpload(int bytes) {
+    if (uploadBudget > 0 && frameUploadBytes > 0 && frameUploadBytes + bytes > uploadBudget) {
+      if (STATS_ENABLED) stats.uploadsDeferred++;
+      return false;
+    }
+    frameUploadBytes += bytes;
+    if (STATS_ENABLED) stats.uploadBytes += bytes;
+    return true;
+  }
+
+  /**
+   * Resets the per-frame accounting, such as the texture upload budget. Backends must call this at
+   * the start of each painted frame.
+   */
+  protected void beginFrame() {
+    frameUploadBytes = 0;
+  }
+
   protected GLContext(AbstractPlatform platform, float scaleFactor) {
     this.scale = new Scale(scaleFactor);
     this.platform = platform;
@@ -438,7 +606,30 @@ public abstract class GLContext {
     return QuadShader.isLikelyToPerform(this);
   }
 
+  protected boolean shouldTryQuadStreamShader() {
+    return QuadStreamShader.isPreferred(this);
+  }
+
+  /**
+   * Returns whether the built-in {@link IndexedTrisShader} should stream its batches into
+   * persistent GL buffers (see {@link GLBuffer#stream}). This relies on {@code glBufferSubData}
+   * and on allocating a buffer without data, which not every backend supports, so it is off unless
+   * a backend enables it.
+   */
+  protected boolean shouldStreamTris() {
+    return false;
+  }
+
   protected GLShader createQuadShader() {
+    if (shouldTryQuadStreamShader()) {
+      try {
+        GLShader streamShader = new QuadStreamShader(this);
+        streamShader.createCore(); // force core creation to test whether it fails
+        return streamShader;
+      } catch (Throwable t) {
+        platform.reportError("Failed to create QuadStreamShader", t);
+      }
+    }
     if (shouldTryQuadShader()) {
       try {
         GLShader quadShader = new QuadShader(this);
@@ -448,7 +639,7 @@ public abstract class GLContext {
         platform.reportError("Failed to create QuadShader", t);
       }
     }
-    return new IndexedTrisShader(this);
+    return new IndexedTrisShader(this, shouldStreamTris());
   }
 
   // used by GLContext.tex(Sub)Image2D impls
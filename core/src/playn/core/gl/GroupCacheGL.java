@@ -0,0 +1,237 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.gl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import pythagoras.f.FloatMath;
+
+import playn.core.GroupLayer.CacheMode;
+import playn.core.InternalTransform;
+import playn.core.Layer.HasSize;
+import playn.core.Tint;
+
+/**
+ * Caches the rendering of a {@link GroupLayerGL}'s children in a texture. See {@link
+ * playn.core.GroupLayer.Cacheable#setCacheMode}.
+ *
+ * <p>The children are rendered in the group's coordinate space, at the context's scale factor,
+ * into a texture which covers their bounds (or the group's clip rectangle, if it is clipped). The
+ * children are rendered with the tint with which the group is painted, so that overlapping
+ * translucent children look just as they do when painted directly. Groups painted with a custom
+ * shader are not cached, as such a shader may render differently from frame to frame.</p>
+ */
+class GroupCacheGL {
+
+  /** The number of frames for which an {@link CacheMode#AUTO} group must go unchanged before it
+   * is cached. This doubles (up to {@link #MAX_AUTO_FRAMES}) each time a cached rendering is
+   * discarded before it has been painted that many times, so that groups which change
+   * intermittently are not repeatedly cached for nothing. */
+  public static final int AUTO_FRAMES = 30;
+
+  /** The most frames for which an {@link CacheMode#AUTO} group will wait to be cached. */
+  public static final int MAX_AUTO_FRAMES = 960;
+
+  public GroupCacheGL(GroupLayerGL group, GLContext ctx, CacheMode mode) {
+    this.group = group;
+    this.ctx = ctx;
+    this.mode = mode;
+    this.quadXform = ctx.createTransform();
+    this.renderXform = ctx.createTransform();
+  }
+
+  /** Updates our caching mode. This discards any cached rendering. */
+  public void setMode(CacheMode mode) {
+    this.mode = mode;
+    autoFrames = AUTO_FRAMES;
+    unchanged = 0;
+    invalidate();
+  }
+
+  /** Notes that our group's children have changed, so the cached rendering is out of date. */
+  public void invalidate() {
+    dirty = true;
+  }
+
+  /**
+   * Paints our group's children, via the cached rendering, rendering them into the cache first if
+   * needed.
+   *
+   * @param xform our group's world transform.
+   * @return false if the children were not painted, because they are not (yet) to be cached.
+   */
+  public boolean paint(InternalTransform xform, int curTint, GLShader curShader) {
+    if (curShader != null) return false;
+    boolean changed = dirty || curTint != lastTint;
+    dirty = false;
+    lastTint = curTint;
+    if (changed && valid) {
+      valid = false;
+      if (GLContext.STATS_ENABLED) ctx.stats.groupCacheInvalidations++;
+      if (mode == CacheMode.AUTO && hits < autoFrames)
+        autoFrames = Math.min(autoFrames * 2, MAX_AUTO_FRAMES);
+    }
+    if (mode == CacheMode.AUTO) {
+      unchanged = changed ? 0 : unchanged + 1;
+      if (!valid && unchanged < autoFrames) return false;
+    }
+
+    if (valid) {
+      hits++;
+      if (GLContext.STATS_ENABLED) ctx.stats.groupCacheHits++;
+    } else if (!render(curTint)) return false;
+
+    quadXform.set(xform).translate(bx, by);
+    target.draw(null, quadXform, Tint.NOOP_TINT);
+    return true;
+  }
+
+  /** Releases our cached rendering and its texture. */
+  public void release() {
+    if (target != null) {
+      if (GLContext.STATS_ENABLED) ctx.stats.groupCacheBytes -= target.bytes();
+      target.destroy();
+      target = null;
+    }
+    valid = false;
+  }
+
+  // renders our group's children into our target, creating it if necessary; returns false if
+  // our group cannot be cached
+  protected boolean render(int curTint) {
+    if (!measure()) {
+      release();
+      return false;
+    }
+    if (target == null || target.width() != bw || target.height() != bh) {
+      release();
+      target = new Target(ctx, bw, bh);
+      if (GLContext.STATS_ENABLED) ctx.stats.groupCacheBytes += target.bytes();
+    }
+
+    ctx.pushFramebuffer(target.fbuf, target.texWidth, target.texHeight);
+    int pending = ctx.texturesPending;
+    try {
+      ctx.clear(0, 0, 0, 0);
+      float scale = ctx.scale.factor;
+      renderXform.setTransform(scale, 0, 0, scale, -bx * scale, -by * scale);
+      group.paintChildren(renderXform, curTint, null);
+    } finally {
+      ctx.popFramebuffer();
+    }
+    // if any images were not yet ready to be drawn, we'll try again next frame
+    valid = (ctx.texturesPending == pending);
+    hits = 0;
+    return true;
+  }
+
+  // computes the bounds of our group's children (or its clip rectangle) in its coordinate space,
+  // and returns true if they are non-empty and can be cached
+  protected boolean measure() {
+    minX = minY = Float.MAX_VALUE;
+    maxX = maxY = -Float.MAX_VALUE;
+    if (!measureChildren(group, ctx.createTransform(), 0, !(group instanceof HasSize))) {
+      return false;
+    }
+    if (group instanceof HasSize) {
+      bx = by = 0;
+      bw = group.width();
+      bh = group.height();
+    } else {
+      bx = FloatMath.floor(minX);
+      by = FloatMath.floor(minY);
+      bw = FloatMath.ceil(maxX) - bx;
+      bh = FloatMath.ceil(maxY) - by;
+    }
+    if (maxTexSize == 0) maxTexSize = ctx.getInteger(GL20.GL_MAX_TEXTURE_SIZE);
+    return bw > 0 && bh > 0 &&
+      ctx.scale.scaledCeil(bw) <= maxTexSize && ctx.scale.scaledCeil(bh) <= maxTexSize;
+  }
+
+  // adds the bounds of the visible children of parent (which are painted with xform) to our
+  // bounds, if accumulate is true, and returns false if any of them cannot be cached
+  protected boolean measureChildren(GroupLayerGL parent, InternalTransform xform, int depth,
+                                    boolean accumulate) {
+    if (scratch.size() == depth) scratch.add(ctx.createTransform());
+    InternalTransform cxform = scratch.get(depth);
+    for (int ii = 0, ll = parent.size(); ii < ll; ii++) {
+      LayerGL child = (LayerGL) parent.get(ii);
+      if (!child.visible()) continue;
+      // immediate layers may render something different every frame
+      if (child instanceof ImmediateLayerGL) return false;
+      if (child instanceof ImageLayerGL && ((ImageLayerGL) child).image() == null) continue;
+
+      cxform.set(xform).concatenate(child.transform(), child.originX(), child.originY());
+      if (child instanceof GroupLayerGL) {
+        // a clipped group's children lie within its bounds, which we add below
+        boolean clipped = child instanceof HasSize;
+        if (!measureChildren((GroupLayerGL) child, cxform, depth + 1, accumulate && !clipped)) {
+          return false;
+        }
+        if (!clipped) continue;
+      }
+      if (accumulate) addBounds(cxform, child.width(), child.height());
+    }
+    return true;
+  }
+
+  protected void addBounds(InternalTransform xform, float w, float h) {
+    if (w <= 0 || h <= 0) return;
+    float ax = xform.m00()*w, ay = xform.m01()*w, bx = xform.m10()*h, by = xform.m11()*h;
+    float tx = xform.tx(), ty = xform.ty();
+    minX = Math.min(minX, tx + Math.min(0, ax) + Math.min(0, bx));
+    maxX = Math.max(maxX, tx + Math.max(0, ax) + Math.max(0, bx));
+    minY = Math.min(minY, ty + Math.min(0, ay) + Math.min(0, by));
+    maxY = Math.max(maxY, ty + Math.max(0, ay) + Math.max(0, by));
+  }
+
+  /** A surface whose framebuffer is not bound when it is created, as we create it mid-frame. */
+  protected static class Target extends SurfaceGL {
+    public Target(GLContext ctx, float width, float height) {
+      super(ctx, width, height);
+    }
+
+    public int bytes() {
+      return texWidth * texHeight * 4;
+    }
+
+    @Override
+    protected void createTexture() {
+      // this must be followed by pushFramebuffer(), which render() does
+      tex = ctx.createTexture(texWidth, texHeight, false, false, false);
+      fbuf = ctx.createFramebuffer(tex);
+    }
+  }
+
+  protected final GroupLayerGL group;
+  protected final GLContext ctx;
+  protected final InternalTransform quadXform, renderXform;
+  protected final List<InternalTransform> scratch = new ArrayList<InternalTransform>();
+
+  protected CacheMode mode;
+  protected Target target;
+  protected boolean dirty = true, valid;
+  // the tint with which we were last painted, which is baked into our cached rendering
+  protected int lastTint;
+  // the number of frames we've gone unchanged, the number for which we must go unchanged before
+  // being cached (in AUTO mode), and the number of times our current rendering has been painted
+  protected int unchanged, autoFrames = AUTO_FRAMES, hits;
+  protected int maxTexSize;
+  // the bounds of our cached rendering, in our group's coordinate space
+  protected float bx, by, bw, bh;
+  protected float minX, minY, maxX, maxY;
+}
@@ -25,7 +25,8 @@ import playn.core.Layer;
 import playn.core.ParentLayer;
 import playn.core.Tint;
 
-public class GroupLayerGL extends LayerGL implements GroupLayer, ParentLayer {
+public class GroupLayerGL extends LayerGL
+  implements GroupLayer.Indexable, GroupLayer.Cacheable, ParentLayer {
 
   public static class Clipped extends GroupLayerGL implements GroupLayer.Clipped, HasSize {
     private final Point pos = new Point();
@@ -42,16 +43,19 @@ public class GroupLayerGL extends LayerGL implements GroupLayer, ParentLayer {
     public void setSize(float width, float height) {
       this.width = width;
       this.height = height;
+      sizeChanged();
     }
 
     @Override
     public void setWidth(float width) {
       this.width = width;
+      sizeChanged();
     }
 
     @Override
     public void setHeight(float height) {
       this.height = height;
+      sizeChanged();
     }
 
     @Override
@@ -74,12 +78,18 @@ public class GroupLayerGL extends LayerGL implements GroupLayer, ParentLayer {
       return scaleY() * height();
     }
 
+    protected void sizeChanged() {
+      // our clip rectangle bounds our cached rendering, if we have one
+      descendantChanged();
+      boundsChanged();
+    }
+
     @Override
     protected void render(InternalTransform xform, int curTint, GLShader shader) {
-      xform.translate(originX, originY);
-      xform.transform(pos.set(-originX, -originY), pos);
+      // our top-left corner is the translation of xform; note that xform is our cached world
+      // transform, so we must not modify it
+      pos.set(xform.tx(), xform.ty());
       xform.transform(size.set(width, height), size);
-      xform.translate(-originX, -originY);
       boolean nonEmpty = ctx.startClipped((int) pos.x, (int) pos.y,
                        Math.round(Math.abs(size.x)), Math.round(Math.abs(size.y)));
       try {
@@ -93,6 +103,7 @@ public class GroupLayerGL extends LayerGL implements GroupLayer, ParentLayer {
   }
 
   private GroupLayerImpl<LayerGL> impl = new GroupLayerImpl<LayerGL>();
+  private GroupCacheGL cache;
 
   public GroupLayerGL(GLContext ctx) {
     super(ctx);
@@ -107,6 +118,7 @@ public class GroupLayerGL extends LayerGL implements GroupLayer, ParentLayer {
   public void add(Layer layer) {
     assert layer instanceof LayerGL;
     impl.add(this, (LayerGL) layer);
+    childrenChanged();
   }
 
   @Override
@@ -118,16 +130,19 @@ public class GroupLayerGL extends LayerGL implements GroupLayer, ParentLayer {
   public void remove(Layer layer) {
     assert layer instanceof LayerGL;
     impl.remove(this, (LayerGL) layer);
+    childrenChanged();
   }
 
   @Override
   public void removeAll() {
     impl.removeAll(this);
+    childrenChanged();
   }
 
   @Override
   public void destroyAll() {
     impl.destroyAll(this);
+    childrenChanged();
   }
 
   @Deprecated @Override
@@ -144,6 +159,7 @@ public class GroupLayerGL extends LayerGL implements GroupLayer, ParentLayer {
   public void destroy() {
     super.destroy();
     impl.destroy(this);
+    setCacheMode(CacheMode.NONE);
   }
 
   @Override
@@ -158,6 +174,27 @@ public class GroupLayerGL extends LayerGL implements GroupLayer, ParentLayer {
     impl.onRemove(this);
   }
 
+  @Override
+  public void setHitIndex(float cellSize) {
+    impl.setHitIndex(this, cellSize);
+  }
+
+  @Override
+  public void setCacheMode(CacheMode mode) {
+    if (mode == CacheMode.NONE) {
+      if (cache != null) {
+        cache.release();
+        cache = null;
+        ctx.cachingGroups--;
+      }
+    } else if (cache == null) {
+      cache = new GroupCacheGL(this, ctx, mode);
+      ctx.cachingGroups++;
+    } else {
+      cache.setMode(mode);
+    }
+  }
+
   @Override
   public Layer hitTestDefault(Point p) {
     return impl.hitTest(this, p);
@@ -166,22 +203,45 @@ public class GroupLayerGL extends LayerGL implements GroupLayer, ParentLayer {
   @Override
   public void depthChanged(Layer layer, float oldDepth) {
     impl.depthChanged(this, layer, oldDepth);
+    childrenChanged();
   }
 
   @Override
   public void paint(InternalTransform curTransform, int curTint, GLShader curShader) {
     if (!visible()) return;
 
+    // if we're clipped and entirely out of view, we can skip our whole subtree
+    InternalTransform xform = localTransform(curTransform);
+    if (culled(xform)) return;
+
     if (tint != Tint.NOOP_TINT)
       curTint = Tint.combine(curTint, tint);
-    render(localTransform(curTransform), curTint, (shader == null) ? curShader : shader);
+    GLShader shader = (this.shader == null) ? curShader : this.shader;
+    // if our rendering is cached, that takes care of our children (and our clipping)
+    if (cache == null || !cache.paint(xform, curTint, shader)) render(xform, curTint, shader);
   }
 
   protected void render(InternalTransform xform, int curTint, GLShader shader) {
+    paintChildren(xform, curTint, shader);
+  }
+
+  /** Paints our children, without clipping. */
+  void paintChildren(InternalTransform xform, int curTint, GLShader shader) {
     // iterate manually to avoid creating an Iterator as garbage, this is inner-loop territory
     List<LayerGL> children = impl.children;
     for (int ii = 0, ll = children.size(); ii < ll; ii++) {
       children.get(ii).paint(xform, curTint, shader);
     }
   }
+
+  /** Notes that one of our descendants has changed, which invalidates our cached rendering. */
+  void descendantChanged() {
+    if (cache != null) cache.invalidate();
+  }
+
+  // notes that our list of children (or their order) has changed
+  private void childrenChanged() {
+    descendantChanged();
+    appearanceChanged();
+  }
 }
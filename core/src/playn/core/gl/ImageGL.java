@@ -44,6 +44,16 @@ public abstract class ImageGL<GC> extends AbstractImageGL<GC> {
     }
   }
 
+  @Override
+  int paintTexture() {
+    // creating our texture is subject to the context's upload budget
+    if (tex == 0 && isReady()) {
+      int bytes = 4 * scale.scaledCeil(width()) * scale.scaledCeil(height());
+      if (!ctx.reserveUpload(bytes)) return 0;
+    }
+    return ensureTexture();
+  }
+
   @Override
   public void clearTexture() {
     if (tex > 0) {
@@ -37,11 +37,13 @@ public class ImageLayerGL extends LayerGL implements ImageLayer {
   @Override
   public void clearHeight() {
     heightSet = false;
+    boundsChanged();
   }
 
   @Override
   public void clearWidth() {
     widthSet = false;
+    boundsChanged();
   }
 
   @Override
@@ -59,6 +61,7 @@ public class ImageLayerGL extends LayerGL implements ImageLayer {
       this.img = (AbstractImageGL<?>) img;
       if (this.img != null)
         this.img.reference();
+      boundsChanged();
     }
     return this;
   }
@@ -68,6 +71,7 @@ public class ImageLayerGL extends LayerGL implements ImageLayer {
     assert width >= 0 : "Width must be >= 0";
     widthSet = true;
     this.width = width;
+    boundsChanged();
   }
 
   @Override
@@ -75,6 +79,7 @@ public class ImageLayerGL extends LayerGL implements ImageLayer {
     assert height >= 0 : "Height must be >= 0";
     heightSet = true;
     this.height = height;
+    boundsChanged();
   }
 
   @Override
@@ -85,6 +90,7 @@ public class ImageLayerGL extends LayerGL implements ImageLayer {
     this.width = width;
     heightSet = true;
     this.height = height;
+    boundsChanged();
   }
 
   @Override
@@ -92,8 +98,9 @@ public class ImageLayerGL extends LayerGL implements ImageLayer {
     if (visible() && img != null) {
       if (tint != Tint.NOOP_TINT)
         curTint = Tint.combine(curTint, tint);
-      img.draw((shader == null) ? curShader : shader, localTransform(curTransform), curTint,
-               0, 0, width(), height());
+      InternalTransform xform = localTransform(curTransform);
+      if (culled(xform)) return;
+      img.paint((shader == null) ? curShader : shader, xform, curTint, 0, 0, width(), height());
     }
   }
 
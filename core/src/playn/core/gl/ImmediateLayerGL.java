@@ -78,10 +78,9 @@ public class ImmediateLayerGL extends LayerGL implements ImmediateLayer {
 
     @Override
     protected void render(InternalTransform xform) {
-      xform.translate(originX, originY);
-      xform.transform(pos.set(-originX, -originY), pos);
+      // our top-left corner is the translation of xform, which we must not modify
+      pos.set(xform.tx(), xform.ty());
       xform.transform(size.set(width, height), size);
-      xform.translate(-originX, -originY);
       ctx.startClipped((int) pos.x, (int) pos.y, (int) Math.abs(size.x), (int) Math.abs(size.y));
       try {
         super.render(xform);
@@ -120,6 +119,7 @@ public class ImmediateLayerGL extends LayerGL implements ImmediateLayer {
     if (!visible()) return;
 
     InternalTransform xform = localTransform(curTransform);
+    if (culled(xform)) return;
     surface.topTransform().set(xform);
     if (tint != Tint.NOOP_TINT)
       curTint = Tint.combine(curTint, tint);
@@ -84,12 +84,28 @@ public class IndexedTrisShader extends GLShader {
   private static final int START_ELEMS = 6*START_VERTS/4;
   private static final int EXPAND_ELEMS = 6*EXPAND_VERTS/4;
   private static final int FLOAT_SIZE_BYTES = 4;
+  private static final int STREAM_VERTS = 64*START_VERTS;
+  private static final int STREAM_ELEMS = 6*STREAM_VERTS/4;
 
   private final boolean delayedBinding;
+  private final boolean streaming;
 
   public IndexedTrisShader(GLContext ctx) {
+    this(ctx, false);
+  }
+
+  /**
+   * Creates an indexed tris shader.
+   *
+   * @param streaming if true, each batch is written into the next region of large, persistent GL
+   * buffers (see {@link GLBuffer#stream}), rather than replacing the contents of the buffers. The
+   * shader's attributes are then bound at a different offset for each batch, so subclasses that
+   * add attributes must bind them in {@link ITCore#bindAttribs}.
+   */
+  public IndexedTrisShader(GLContext ctx, boolean streaming) {
     super(ctx);
     delayedBinding = "Intel".equals(ctx.getString(GL20.GL_VENDOR));
+    this.streaming = streaming;
   }
 
   @Override
@@ -145,8 +161,9 @@ public class IndexedTrisShader extends GLShader {
       uScreenSize.bind(fbufWidth, fbufHeight);
 
       // certain graphics cards (I'm looking at you, Intel) exhibit broken behavior if we bind our
-      // attributes once during activation, so for those cards we bind every time in flush()
-      if (!delayedBinding)
+      // attributes once during activation, so for those cards we bind every time in flush(); when
+      // streaming, we bind in flush() anyway because the attributes move with every batch
+      if (!delayedBinding && !streaming)
         bindAttribsBufs();
 
       ctx.checkGLError("Shader.activate bind");
@@ -176,6 +193,20 @@ public class IndexedTrisShader extends GLShader {
         return;
       ctx.checkGLError("Shader.flush");
 
+      if (streaming) {
+        int elems = elements.position();
+        vertices.bind(GL20.GL_ARRAY_BUFFER);
+        int vertOffset = vertices.stream(GL20.GL_ARRAY_BUFFER, STREAM_VERTS*vertexSize());
+        bindAttribs(vertOffset*FLOAT_SIZE_BYTES);
+        elements.bind(GL20.GL_ELEMENT_ARRAY_BUFFER);
+        int elemOffset = elements.stream(GL20.GL_ELEMENT_ARRAY_BUFFER, STREAM_ELEMS);
+        ctx.checkGLError("Shader.flush BufferSubData");
+
+        elements.drawElements(GL20.GL_TRIANGLES, elems, elemOffset);
+        ctx.checkGLError("Shader.flush DrawElements");
+        return;
+      }
+
       if (delayedBinding) { // see comments in activate()
         bindAttribsBufs();
         ctx.checkGLError("Shader.flush bind");
@@ -191,20 +222,24 @@ public class IndexedTrisShader extends GLShader {
 
     private void bindAttribsBufs() {
       vertices.bind(GL20.GL_ARRAY_BUFFER);
+      bindAttribs(0);
+      elements.bind(GL20.GL_ELEMENT_ARRAY_BUFFER);
+    }
 
+    /** Binds our attributes to the vertex buffer, whose data starts at {@code base} (in bytes).
+     * The vertex buffer must be bound when this is called. */
+    protected void bindAttribs(int base) {
       // bind our stable attributes
       int stride = vertexStride();
-      aMatrix.bind(stride, 0);
-      aTranslation.bind(stride, 16);
-      aColor.bind(stride, 24);
+      aMatrix.bind(stride, base);
+      aTranslation.bind(stride, base+16);
+      aColor.bind(stride, base+24);
 
       // bind our changing attributes
-      int offset = stableAttrsSize()*FLOAT_SIZE_BYTES;
+      int offset = base + stableAttrsSize()*FLOAT_SIZE_BYTES;
       aPosition.bind(stride, offset);
       if (aTexCoord != null)
         aTexCoord.bind(stride, offset+8);
-
-      elements.bind(GL20.GL_ELEMENT_ARRAY_BUFFER);
     }
 
     @Override
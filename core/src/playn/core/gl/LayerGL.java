@@ -16,13 +16,27 @@
 package playn.core.gl;
 
 import playn.core.AbstractLayer;
+import playn.core.GroupLayer;
 import playn.core.InternalTransform;
 import playn.core.Layer;
 import playn.core.gl.GLShader;
 
 public abstract class LayerGL extends AbstractLayer {
 
+  // our world transform (our parent's world transform concatenated with our local transform),
+  // which is retained across frames and only recomputed when one of those changes
   private final InternalTransform savedLocal;
+  // incremented whenever savedLocal is recomputed, which tells our children to recompute theirs
+  private int worldStamp;
+  // the parent from whose world transform (at the specified stamp) savedLocal was computed
+  private LayerGL worldParent;
+  private int worldParentStamp;
+  // a copy of the transform we were last painted with, if that was not our parent's world
+  // transform (i.e. we're the root layer, or were drawn into a surface)
+  private InternalTransform paintParent;
+  // the local transform and origin from which savedLocal was computed; we check these rather than
+  // relying on our setters, because callers are allowed to modify transform() directly
+  private float lm00, lm01, lm10, lm11, ltx, lty, lox, loy;
 
   protected final GLContext ctx;
   protected GLShader shader;
@@ -36,6 +50,7 @@ public abstract class LayerGL extends AbstractLayer {
     if (this.shader != null) {
       this.shader.reference();
     }
+    appearanceChanged();
     return this;
   }
 
@@ -45,16 +60,82 @@ public abstract class LayerGL extends AbstractLayer {
     setShader(null);
   }
 
+  @Override
+  protected void appearanceChanged() {
+    // let any ancestors that cache their rendering know that it is out of date
+    if (ctx.cachingGroups == 0) return;
+    for (GroupLayer p = parent(); p instanceof GroupLayerGL; p = p.parent())
+      ((GroupLayerGL) p).descendantChanged();
+  }
+
   protected LayerGL(GLContext ctx) {
     super(ctx.createTransform());
     this.ctx = ctx;
     this.savedLocal = ctx.createTransform();
   }
 
+  /**
+   * Returns our world transform, which is {@code parentTransform} concatenated with our local
+   * transform. This is cached between calls, and is only recomputed if our local transform or
+   * origin has changed, or if {@code parentTransform} is our parent's world transform and our
+   * parent recomputed it since we last did so. The returned transform must not be modified.
+   */
   protected InternalTransform localTransform(InternalTransform parentTransform) {
-    savedLocal.set(parentTransform);
-    return savedLocal.concatenate(transform(), originX, originY);
+    InternalTransform local = (InternalTransform) transform();
+    GroupLayer parent = parent();
+    LayerGL glParent = (parent instanceof LayerGL) ? (LayerGL) parent : null;
+    boolean fromParent = glParent != null && parentTransform == glParent.savedLocal;
+    boolean parentClean = fromParent ?
+      (worldParent == glParent && worldParentStamp == glParent.worldStamp) :
+      (worldParent == null && paintParent != null && equal(paintParent, parentTransform));
+    if (parentClean && local.m00() == lm00 && local.m01() == lm01 && local.m10() == lm10 &&
+        local.m11() == lm11 && local.tx() == ltx && local.ty() == lty &&
+        originX == lox && originY == loy) return savedLocal;
+
+    savedLocal.set(parentTransform).concatenate(local, originX, originY);
+    lm00 = local.m00(); lm01 = local.m01(); lm10 = local.m10(); lm11 = local.m11();
+    ltx = local.tx(); lty = local.ty(); lox = originX; loy = originY;
+    if (fromParent) {
+      worldParent = glParent;
+      worldParentStamp = glParent.worldStamp;
+    } else {
+      worldParent = null;
+      if (paintParent == null) paintParent = ctx.createTransform();
+      paintParent.set(parentTransform);
+    }
+    worldStamp++;
+    if (GLContext.STATS_ENABLED) ctx.stats.transformsComputed++;
+    return savedLocal;
+  }
+
+  /**
+   * Returns true if culling is enabled and this layer, when rendered with the supplied (local)
+   * transform, lies entirely outside the current view. Layers with no size (like unclipped groups)
+   * are never culled.
+   */
+  protected boolean culled(InternalTransform xform) {
+    if (!ctx.cullingEnabled()) return false;
+    float w = width(), h = height();
+    if (w <= 0 || h <= 0) return false;
+
+    // compute the screen-space bounds of our (0, 0, w, h) rectangle; we account for all four
+    // corners so that the bounds remain conservative in the face of rotation and shear
+    float ax = xform.m00()*w, ay = xform.m01()*w, bx = xform.m10()*h, by = xform.m11()*h;
+    float tx = xform.tx(), ty = xform.ty();
+    float left = tx + Math.min(0, ax) + Math.min(0, bx);
+    float right = tx + Math.max(0, ax) + Math.max(0, bx);
+    float top = ty + Math.min(0, ay) + Math.min(0, by);
+    float bottom = ty + Math.max(0, ay) + Math.max(0, by);
+    if (ctx.inView(left, top, right, bottom)) return false;
+
+    if (GLContext.STATS_ENABLED) ctx.stats.layersCulled++;
+    return true;
   }
 
   public abstract void paint(InternalTransform curTransform, int curTint, GLShader curShader);
+
+  private static boolean equal(InternalTransform a, InternalTransform b) {
+    return a.m00() == b.m00() && a.m01() == b.m01() && a.m10() == b.m10() &&
+      a.m11() == b.m11() && a.tx() == b.tx() && a.ty() == b.ty();
+  }
 }
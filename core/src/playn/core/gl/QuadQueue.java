@@ -0,0 +1,176 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.gl;
+
+import java.util.Arrays;
+
+import playn.core.InternalTransform;
+
+/**
+ * Accumulates textured quads and reorders them by shader and texture before sending them to GL,
+ * to reduce the number of shader flushes. The queue is split into runs of quads which do not
+ * overlap one another, and quads are only reordered within a run, so the rendered result is the
+ * same as if the quads had been rendered in order. Used by {@link GLContext} when deferred
+ * rendering is enabled.
+ */
+class QuadQueue {
+
+  /** Returns the number of quads currently queued. */
+  int size() {
+    return count;
+  }
+
+  /** Queues a quad for rendering. See {@link GLShader#addQuad}. */
+  void add(GLShader shader, int tex, int tint, InternalTransform xform,
+           float left, float top, float right, float bottom,
+           float sl, float st, float sr, float sb) {
+    if (count == texs.length) grow();
+
+    float m00 = xform.m00(), m01 = xform.m01(), m10 = xform.m10(), m11 = xform.m11();
+    float tx = xform.tx(), ty = xform.ty();
+    int cidx = count*COMMAND_SIZE;
+    float[] cmds = commands;
+    cmds[cidx++] = m00;
+    cmds[cidx++] = m01;
+    cmds[cidx++] = m10;
+    cmds[cidx++] = m11;
+    cmds[cidx++] = tx;
+    cmds[cidx++] = ty;
+    cmds[cidx++] = left;
+    cmds[cidx++] = top;
+    cmds[cidx++] = right;
+    cmds[cidx++] = bottom;
+    cmds[cidx++] = sl;
+    cmds[cidx++] = st;
+    cmds[cidx++] = sr;
+    cmds[cidx++] = sb;
+
+    // compute the screen bounds of the quad; note that left/right and top/bottom may be inverted
+    float x0 = tx + m00*left + m10*top, y0 = ty + m01*left + m11*top;
+    float w = right - left, h = bottom - top;
+    float ax = m00*w, ay = m01*w, bx = m10*h, by = m11*h;
+    float minX = x0 + Math.min(0, ax) + Math.min(0, bx);
+    float maxX = x0 + Math.max(0, ax) + Math.max(0, bx);
+    float minY = y0 + Math.min(0, ay) + Math.min(0, by);
+    float maxY = y0 + Math.max(0, ay) + Math.max(0, by);
+
+    // if this quad overlaps any quad in the current run (or the run is full), start a new run
+    if (count - runStart >= MAX_RUN || overlapsRun(minX, minY, maxX, maxY)) endRun();
+
+    int bidx = count*4;
+    bounds[bidx++] = minX;
+    bounds[bidx++] = minY;
+    bounds[bidx++] = maxX;
+    bounds[bidx++] = maxY;
+    shaders[count] = shader;
+    texs[count] = tex;
+    tints[count] = tint;
+    count++;
+  }
+
+  /** Reorders and sends all queued quads to their shaders. */
+  void flush() {
+    if (count == 0 || flushing) return;
+    flushing = true;
+    try {
+      endRun();
+      for (int rr = 0, start = 0; rr < runCount; rr++) {
+        int end = runEnds[rr];
+        emitRun(start, end);
+        start = end;
+      }
+    } finally {
+      for (int ii = 0; ii < count; ii++) shaders[ii] = null;
+      count = runStart = runCount = 0;
+      flushing = false;
+    }
+  }
+
+  private boolean overlapsRun(float minX, float minY, float maxX, float maxY) {
+    float[] bs = bounds;
+    for (int ii = runStart*4, ll = count*4; ii < ll; ii += 4) {
+      if (maxX > bs[ii] && minX < bs[ii+2] && maxY > bs[ii+1] && minY < bs[ii+3]) return true;
+    }
+    return false;
+  }
+
+  private void endRun() {
+    if (count == runStart) return;
+    if (runCount == runEnds.length) runEnds = Arrays.copyOf(runEnds, runCount*2);
+    runEnds[runCount++] = count;
+    runStart = count;
+  }
+
+  private void emitRun(int start, int end) {
+    // compute a sort key for each quad: the shader (as an index into the shaders used by this run),
+    // then the texture, then the quad's position in the run (which makes the sort stable)
+    long[] keys = this.keys;
+    int shaderCount = 0;
+    for (int ii = start; ii < end; ii++) {
+      GLShader shader = shaders[ii];
+      int sidx = 0;
+      while (sidx < shaderCount && runShaders[sidx] != shader) sidx++;
+      if (sidx == shaderCount) {
+        if (shaderCount == runShaders.length)
+          runShaders = Arrays.copyOf(runShaders, shaderCount*2);
+        runShaders[shaderCount++] = shader;
+      }
+      keys[ii-start] = ((long)sidx << 48) | ((texs[ii] & 0xFFFFFFFFL) << 16) | (ii-start);
+    }
+    Arrays.sort(keys, 0, end-start);
+    for (int ii = 0; ii < shaderCount; ii++) runShaders[ii] = null;
+
+    float[] cmds = commands;
+    for (int kk = 0, ll = end-start; kk < ll; kk++) {
+      int idx = start + (int)(keys[kk] & 0xFFFF), c = idx*COMMAND_SIZE;
+      shaders[idx].prepareTexture(texs[idx], tints[idx]).addQuad(
+        cmds[c], cmds[c+1], cmds[c+2], cmds[c+3], cmds[c+4], cmds[c+5],
+        cmds[c+6], cmds[c+7], cmds[c+8], cmds[c+9],
+        cmds[c+10], cmds[c+11], cmds[c+12], cmds[c+13]);
+    }
+  }
+
+  private void grow() {
+    int ncap = texs.length*2;
+    commands = Arrays.copyOf(commands, ncap*COMMAND_SIZE);
+    bounds = Arrays.copyOf(bounds, ncap*4);
+    shaders = Arrays.copyOf(shaders, ncap);
+    texs = Arrays.copyOf(texs, ncap);
+    tints = Arrays.copyOf(tints, ncap);
+  }
+
+  /** The number of floats in a command: transform (6), dest rect (4), source rect (4). */
+  private static final int COMMAND_SIZE = 14;
+
+  /** The maximum number of quads in a run. This bounds the cost of checking for overlap (and the
+   * quad index must fit in the low 16 bits of the sort key). */
+  private static final int MAX_RUN = 512;
+
+  private static final int START_CAPACITY = 256;
+
+  private float[] commands = new float[START_CAPACITY*COMMAND_SIZE];
+  private float[] bounds = new float[START_CAPACITY*4];
+  private GLShader[] shaders = new GLShader[START_CAPACITY];
+  private int[] texs = new int[START_CAPACITY], tints = new int[START_CAPACITY];
+  private int count;
+
+  private int[] runEnds = new int[16];
+  private int runStart, runCount;
+
+  private long[] keys = new long[MAX_RUN];
+  private GLShader[] runShaders = new GLShader[4];
+  private boolean flushing;
+}
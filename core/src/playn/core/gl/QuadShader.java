@@ -97,6 +97,14 @@ public class QuadShader extends GLShader {
     return (maxVecs >= 16*BASE_VEC4S_PER_QUAD);
   }
 
+  /**
+   * Returns the number of quads this shader (without extra per-quad data) would be able to send
+   * to GL in a single draw call.
+   */
+  static int likelyMaxQuads(GLContext ctx) {
+    return Math.max(0, usableMaxUniformVectors(ctx)) / BASE_VEC4S_PER_QUAD;
+  }
+
   private static int usableMaxUniformVectors(GLContext ctx) {
     // this returns the maximum number of vec4s; then we subtract one vec2 to account for the
     // uScreenSize uniform, and two more because some GPUs seem to need one for our vec3 attr
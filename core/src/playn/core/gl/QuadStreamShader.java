@@ -0,0 +1,246 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.gl;
+
+/**
+ * A {@link GLShader} implementation that only handles quads, and which streams a compact record
+ * for each quad through a dynamic vertex buffer. The record (scaled matrix, translation, texture
+ * rect and tint) is the same data that {@link QuadShader} passes in uniforms, so this shader is
+ * not limited by {@code GL_MAX_VERTEX_UNIFORM_VECTORS}. The corner of the quad that each vertex
+ * represents comes from a separate static buffer, as does the element buffer, so the only data
+ * sent to GL per flush is the records.
+ *
+ * <p>GL ES 2.0 provides neither instancing nor {@code gl_VertexID}, so the record is repeated
+ * for each of the quad's four vertices. It is written once and copied, which is cheaper than
+ * {@link IndexedTrisShader}, which transforms and writes each vertex separately.</p>
+ */
+public class QuadStreamShader extends GLShader {
+
+  /** Declares the uniform variables for our shader. */
+  public static final String VERT_UNIFS =
+    "uniform vec2 u_ScreenSize;\n";
+
+  /** Declares the attribute variables for our shader. */
+  public static final String VERT_ATTRS =
+    "attribute vec2 a_Corner;\n" +
+    "attribute vec4 a_Matrix;\n" +
+    "attribute vec4 a_TransTex;\n" +
+    "attribute vec4 a_TexSizeColor;\n";
+
+  /** Declares the varying variables for our shader. */
+  public static final String VERT_VARS =
+    "varying vec2 v_TexCoord;\n" +
+    "varying vec4 v_Color;\n";
+
+  /** The shader code that computes {@code gl_Position}. */
+  public static final String VERT_SETPOS =
+    // Transform the vertex.
+    "mat3 transform = mat3(\n" +
+    "  a_Matrix.x, a_Matrix.y, 0,\n" +
+    "  a_Matrix.z, a_Matrix.w, 0,\n" +
+    "  a_TransTex.x, a_TransTex.y, 1);\n" +
+    "gl_Position = vec4(transform * vec3(a_Corner, 1.0), 1.0);\n" +
+    // Scale from screen coordinates to [0, 2].
+    "gl_Position.xy /= u_ScreenSize.xy;\n" +
+    // Offset to [-1, 1] and flip y axis to put origin at top-left.
+    "gl_Position.x -= 1.0;\n" +
+    "gl_Position.y = 1.0 - gl_Position.y;\n";
+
+  /** The shader code that computes {@code v_TexCoord}. */
+  public static final String VERT_SETTEX =
+    "v_TexCoord = a_Corner * a_TexSizeColor.xy + a_TransTex.zw;\n";
+
+  /** The shader code that computes {@code v_Color}. */
+  public static final String VERT_SETCOLOR =
+    // tint is encoded as two floats A*R and G*B where A, R, G, B are (0 - 255)
+    "float red = mod(a_TexSizeColor.z, 256.0);\n" +
+    "float alpha = (a_TexSizeColor.z - red) / 256.0;\n" +
+    "float blue = mod(a_TexSizeColor.w, 256.0);\n" +
+    "float green = (a_TexSizeColor.w - blue) / 256.0;\n" +
+    "v_Color = vec4(red / 255.0, green / 255.0, blue / 255.0, alpha / 255.0);\n";
+
+  /** The GLSL code for our vertex shader. */
+  public static final String VERTEX_SHADER =
+    VERT_UNIFS +
+    VERT_ATTRS +
+    VERT_VARS +
+    "void main(void) {\n" +
+    VERT_SETPOS +
+    VERT_SETTEX +
+    VERT_SETCOLOR +
+    "}";
+
+  /** The number of floats in a quad record. */
+  public static final int RECORD_SIZE = 12;
+
+  /** The maximum number of quads sent to GL in a single draw call. */
+  public static final int MAX_QUADS = 1024;
+
+  private static final int VERTICES_PER_QUAD = 4;
+  private static final int ELEMENTS_PER_QUAD = 6;
+  private static final int FLOAT_SIZE_BYTES = 4;
+  private static final int MIN_VERTEX_ATTRIBS = 4;
+  private static final int PREFER_OVER_QUAD_SHADER = 128;
+
+  /**
+   * Returns true if the GL context supports this shader and {@link QuadShader} would be limited to
+   * small batches by the context's uniform budget, false otherwise.
+   */
+  public static boolean isPreferred(GLContext ctx) {
+    return (ctx.getInteger(GL20.GL_MAX_VERTEX_ATTRIBS) >= MIN_VERTEX_ATTRIBS &&
+            QuadShader.likelyMaxQuads(ctx) < PREFER_OVER_QUAD_SHADER);
+  }
+
+  public QuadStreamShader(GLContext ctx) {
+    super(ctx);
+  }
+
+  @Override
+  public String toString() {
+    return "qstream/" + MAX_QUADS;
+  }
+
+  /**
+   * Returns the vertex shader program. Note that this program <em>must</em> preserve the use of
+   * the existing attributes and uniforms. You can add new uniforms and attributes, but you cannot
+   * remove or change the defaults.
+   */
+  protected String vertexShader() {
+    return VERTEX_SHADER;
+  }
+
+  @Override
+  protected Core createTextureCore() {
+    return new StreamCore(vertexShader(), textureFragmentShader());
+  }
+
+  protected class StreamCore extends Core {
+    private final Uniform2f uScreenSize;
+    private final Attrib aCorner, aMatrix, aTransTex, aTexSizeColor;
+    private final GLBuffer.Float corners, records;
+    private final GLBuffer.Short elements;
+
+    private int quadCounter;
+    private float arTint, gbTint;
+
+    public StreamCore(String vertShader, String fragShader) {
+      super(vertShader, fragShader);
+
+      uScreenSize = prog.getUniform2f("u_ScreenSize");
+      aCorner = prog.getAttrib("a_Corner", 2, GL20.GL_FLOAT);
+      aMatrix = prog.getAttrib("a_Matrix", 4, GL20.GL_FLOAT);
+      aTransTex = prog.getAttrib("a_TransTex", 4, GL20.GL_FLOAT);
+      aTexSizeColor = prog.getAttrib("a_TexSizeColor", 4, GL20.GL_FLOAT);
+
+      // the corners and elements are the same for every batch, so we send them once
+      corners = ctx.createFloatBuffer(MAX_QUADS*VERTICES_PER_QUAD*2);
+      elements = ctx.createShortBuffer(MAX_QUADS*ELEMENTS_PER_QUAD);
+      for (int ii = 0; ii < MAX_QUADS; ii++) {
+        corners.add(0, 0).add(1, 0).add(0, 1).add(1, 1);
+        int base = ii * VERTICES_PER_QUAD;
+        elements.add(base+0).add(base+1).add(base+2);
+        elements.add(base+1).add(base+3).add(base+2);
+      }
+      records = ctx.createFloatBuffer(MAX_QUADS*VERTICES_PER_QUAD*RECORD_SIZE);
+
+      corners.bind(GL20.GL_ARRAY_BUFFER);
+      corners.send(GL20.GL_ARRAY_BUFFER, GL20.GL_STATIC_DRAW);
+      elements.bind(GL20.GL_ELEMENT_ARRAY_BUFFER);
+      elements.send(GL20.GL_ELEMENT_ARRAY_BUFFER, GL20.GL_STATIC_DRAW);
+    }
+
+    @Override
+    public void activate(int fbufWidth, int fbufHeight) {
+      prog.bind();
+      uScreenSize.bind(fbufWidth/2f, fbufHeight/2f);
+      corners.bind(GL20.GL_ARRAY_BUFFER);
+      aCorner.bind(0, 0);
+      int stride = RECORD_SIZE*FLOAT_SIZE_BYTES;
+      records.bind(GL20.GL_ARRAY_BUFFER);
+      aMatrix.bind(stride, 0);
+      aTransTex.bind(stride, 16);
+      aTexSizeColor.bind(stride, 32);
+      elements.bind(GL20.GL_ELEMENT_ARRAY_BUFFER);
+    }
+
+    @Override
+    public void deactivate() {
+      aCorner.unbind();
+      aMatrix.unbind();
+      aTransTex.unbind();
+      aTexSizeColor.unbind();
+    }
+
+    @Override
+    public void prepare(int tex, int tint, boolean justActivated) {
+      super.prepare(tex, tint, justActivated);
+      this.arTint = (tint >> 16) & 0xFFFF;
+      this.gbTint = tint & 0xFFFF;
+    }
+
+    @Override
+    public void flush() {
+      super.flush();
+      if (quadCounter == 0)
+        return;
+
+      // the records buffer remains bound to GL_ARRAY_BUFFER from activate()
+      records.send(GL20.GL_ARRAY_BUFFER, GL20.GL_STREAM_DRAW);
+      elements.drawElements(GL20.GL_TRIANGLES, ELEMENTS_PER_QUAD*quadCounter);
+      quadCounter = 0;
+    }
+
+    @Override
+    public void destroy() {
+      super.destroy();
+      corners.destroy();
+      records.destroy();
+      elements.destroy();
+    }
+
+    @Override
+    public void addQuad(float m00, float m01, float m10, float m11, float tx, float ty,
+                        float x1, float y1, float sx1, float sy1,
+                        float x2, float y2, float sx2, float sy2,
+                        float x3, float y3, float sx3, float sy3,
+                        float x4, float y4, float sx4, float sy4) {
+      float dw = x2 - x1, dh = y3 - y1;
+      float[] data = records.array();
+      int opos = records.position(), pos = opos;
+      data[pos++] = m00*dw;
+      data[pos++] = m01*dw;
+      data[pos++] = m10*dh;
+      data[pos++] = m11*dh;
+      data[pos++] = tx + m00*x1 + m10*y1;
+      data[pos++] = ty + m01*x1 + m11*y1;
+      data[pos++] = sx1;
+      data[pos++] = sy1;
+      data[pos++] = sx2 - sx1;
+      data[pos++] = sy3 - sy1;
+      data[pos++] = arTint;
+      data[pos++] = gbTint;
+      // repeat the record for the remaining three vertices of the quad
+      System.arraycopy(data, opos, data, pos, RECORD_SIZE);
+      System.arraycopy(data, opos, data, pos+RECORD_SIZE, RECORD_SIZE);
+      System.arraycopy(data, opos, data, pos+2*RECORD_SIZE, RECORD_SIZE);
+      records.skip(VERTICES_PER_QUAD*RECORD_SIZE);
+      quadCounter++;
+
+      if (quadCounter >= MAX_QUADS)
+        QuadStreamShader.this.flush();
+    }
+  }
+}
@@ -0,0 +1,494 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.gl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import playn.core.CanvasImage;
+import playn.core.Image;
+import playn.core.InternalTransform;
+import playn.core.Pattern;
+import playn.core.Tint;
+import playn.core.util.Callback;
+
+/**
+ * Packs small static images into shared textures (pages), so that consecutive draws of different
+ * atlased images use the same texture and can be batched together by the shader.
+ *
+ * <p>Images are added via {@link #add}, which returns a proxy image that should be used in place
+ * of the original. The proxy is placed into a page (using a skyline packer) the first time it is
+ * drawn, by rendering the original image's texture into the page. If all pages are full, the
+ * least recently used page is repacked: its entries that are not referenced by any layer are
+ * evicted (they will be placed again if they are subsequently drawn) and the remainder are packed
+ * anew. An image that cannot be placed is simply drawn using its own texture.</p>
+ *
+ * <p>Atlased images cannot be repeated or mipmapped in the atlas; if either is configured, the
+ * image is drawn using the original image's texture. Likewise, sub-images of atlased images are
+ * regions of the original image.</p>
+ */
+public class TextureAtlas {
+
+  /** The default size (in pixels) of an atlas page. */
+  public static final int DEFAULT_PAGE_SIZE = 1024;
+
+  /** The default maximum width or height (in pixels) of an atlased image. */
+  public static final int DEFAULT_MAX_IMAGE_SIZE = 128;
+
+  /** The default maximum number of atlas pages. */
+  public static final int DEFAULT_MAX_PAGES = 4;
+
+  /** The width and height (in pixels) of each of our pages. */
+  public final int pageSize;
+
+  /** The maximum width or height (in pixels) of an image that will be atlased. */
+  public final int maxImageSize;
+
+  /** The maximum number of pages that will be created. */
+  public final int maxPages;
+
+  /** Creates an atlas with the default configuration. */
+  public TextureAtlas(GLContext ctx) {
+    this(ctx, DEFAULT_PAGE_SIZE, DEFAULT_MAX_IMAGE_SIZE, DEFAULT_MAX_PAGES);
+  }
+
+  /**
+   * Creates an atlas with the specified configuration.
+   *
+   * @param pageSize the width and height (in pixels) of each atlas page.
+   * @param maxImageSize images wider or taller than this (in pixels) are not atlased.
+   * @param maxPages the maximum number of pages that will be created.
+   */
+  public TextureAtlas(GLContext ctx, int pageSize, int maxImageSize, int maxPages) {
+    assert maxImageSize + PADDING <= pageSize : "Max image size must be smaller than page size";
+    this.ctx = ctx;
+    this.pageSize = pageSize;
+    this.maxImageSize = maxImageSize;
+    this.maxPages = maxPages;
+  }
+
+  /**
+   * Returns an image which draws {@code image} from this atlas. Canvas images (whose contents may
+   * change) and images not created by a GL backend are not atlased and are returned as is.
+   */
+  public Image add(Image image) {
+    if (image instanceof CanvasImage || !(image instanceof ImageGL<?>)) return image;
+    return new Entry((ImageGL<?>) image);
+  }
+
+  /** Returns the number of pages currently in use. */
+  public int pageCount() {
+    return pages.size();
+  }
+
+  /** Returns the number of images currently placed into pages. */
+  public int placedCount() {
+    int count = 0;
+    for (Page page : pages) count += page.entries.size();
+    return count;
+  }
+
+  /** Returns the number of times a full page has been repacked. */
+  public int repackCount() {
+    return repacks;
+  }
+
+  /**
+   * Destroys all of this atlas's pages and frees their GL resources. Atlased images remain usable;
+   * they will be placed into new pages when they are next drawn.
+   */
+  public void destroy() {
+    for (Page page : pages) page.destroy();
+    pages.clear();
+  }
+
+  /** Places {@code entry} into a page, if possible. Returns true if the entry is placed. */
+  boolean place(Entry entry) {
+    if (entry.page != null) {
+      entry.page.lastUse = ++uses;
+      return true;
+    }
+    if (entry.unplaceable || !entry.isReady()) return false;
+    if (entry.pixelWidth() > maxImageSize || entry.pixelHeight() > maxImageSize) {
+      entry.unplaceable = true;
+      return false;
+    }
+
+    for (Page page : pages) {
+      if (page.add(entry)) return true;
+    }
+    if (pages.size() < maxPages) {
+      Page page = new Page();
+      pages.add(page);
+      return page.add(entry);
+    }
+
+    // all of our pages are full, so repack the least recently used page
+    Page lru = null;
+    for (Page page : pages) {
+      if (page.evictable() && (lru == null || page.lastUse < lru.lastUse)) lru = page;
+    }
+    if (lru == null) return false;
+    lru.repack();
+    return lru.add(entry);
+  }
+
+  /** A proxy for an image that is drawn from one of our pages. */
+  class Entry extends AbstractImageGL<Object> {
+    final ImageGL<?> source;
+    Page page;
+    int x, y;
+    boolean unplaceable;
+
+    Entry(ImageGL<?> source) {
+      super(source.ctx);
+      this.source = source;
+    }
+
+    int pixelWidth() {
+      return source.scale().scaledCeil(source.width());
+    }
+
+    int pixelHeight() {
+      return source.scale().scaledCeil(source.height());
+    }
+
+    @Override
+    public float width() {
+      return source.width();
+    }
+
+    @Override
+    public float height() {
+      return source.height();
+    }
+
+    @Override
+    public Scale scale() {
+      return source.scale();
+    }
+
+    @Override
+    public boolean isReady() {
+      return source.isReady();
+    }
+
+    @Override
+    public void addCallback(final Callback<? super Image> callback) {
+      source.addCallback(new Callback<Image>() {
+        public void onSuccess(Image image) {
+          callback.onSuccess(Entry.this);
+        }
+        public void onFailure(Throwable err) {
+          callback.onFailure(err);
+        }
+      });
+    }
+
+    @Override
+    public void setRepeat(boolean repeatX, boolean repeatY) {
+      super.setRepeat(repeatX, repeatY);
+      source.setRepeat(repeatX, repeatY);
+    }
+
+    @Override
+    public void setMipmapped(boolean mipmapped) {
+      super.setMipmapped(mipmapped);
+      source.setMipmapped(mipmapped);
+    }
+
+    @Override
+    public int ensureTexture() {
+      // callers of ensureTexture expect a texture which contains only this image
+      return source.ensureTexture();
+    }
+
+    @Override
+    public void clearTexture() {
+      if (source.refs == 0) source.clearTexture();
+    }
+
+    @Override
+    public Region subImage(float sx, float sy, float swidth, float sheight) {
+      return source.subImage(sx, sy, swidth, sheight);
+    }
+
+    @Override
+    public Pattern toPattern() {
+      return source.toPattern();
+    }
+
+    @Override
+    public void getRgb(int startX, int startY, int width, int height, int[] rgbArray,
+                       int offset, int scanSize) {
+      source.getRgb(startX, startY, width, height, rgbArray, offset, scanSize);
+    }
+
+    @Override
+    public Image transform(BitmapTransformer xform) {
+      return source.transform(xform);
+    }
+
+    @Override
+    public void draw(Object gc, float dx, float dy, float dw, float dh) {
+      @SuppressWarnings("unchecked") AbstractImageGL<Object> src = (AbstractImageGL<Object>)source;
+      src.draw(gc, dx, dy, dw, dh);
+    }
+
+    @Override
+    public void draw(Object gc, float dx, float dy, float dw, float dh,
+                     float sx, float sy, float sw, float sh) {
+      @SuppressWarnings("unchecked") AbstractImageGL<Object> src = (AbstractImageGL<Object>)source;
+      src.draw(gc, dx, dy, dw, dh, sx, sy, sw, sh);
+    }
+
+    @Override
+    void draw(GLShader shader, InternalTransform xform, int tint, float dx, float dy, float dw,
+              float dh, float sx, float sy, float sw, float sh, boolean paint) {
+      if (repeatX || repeatY || mipmapped || !place(this)) {
+        source.draw(shader, xform, tint, dx, dy, dw, dh, sx, sy, sw, sh, paint);
+      } else {
+        float s = source.scale().factor, size = pageSize;
+        drawImpl(shader, xform, page.tex, tint, dx, dy, dw, dh,
+                 (x + sx*s) / size, (y + sy*s) / size,
+                 (x + (sx + sw)*s) / size, (y + (sy + sh)*s) / size);
+      }
+    }
+
+    @Override
+    protected Pattern toSubPattern(AbstractImageGL<?> image, boolean repeatX, boolean repeatY,
+                                   float x, float y, float width, float height) {
+      throw new AssertionError(); // this should never be called
+    }
+  }
+
+  /** A single texture into which entries are packed. */
+  class Page {
+    final Skyline packer = new Skyline(pageSize, pageSize);
+    final List<Entry> entries = new ArrayList<Entry>();
+    int tex, fbuf;
+    int lastUse;
+
+    boolean add(Entry entry) {
+      int width = entry.pixelWidth(), height = entry.pixelHeight();
+      if (!packer.add(width + PADDING, height + PADDING)) return false;
+      entry.page = this;
+      entry.x = packer.packedX;
+      entry.y = packer.packedY;
+      entries.add(entry);
+      lastUse = ++uses;
+
+      if (tex == 0) {
+        tex = ctx.createTexture(pageSize, pageSize, false, false, false);
+        fbuf = ctx.createFramebuffer(tex);
+        ctx.pushFramebuffer(fbuf, pageSize, pageSize);
+        ctx.clear(0, 0, 0, 0);
+      } else {
+        ctx.pushFramebuffer(fbuf, pageSize, pageSize);
+      }
+      try {
+        blit(entry);
+      } finally {
+        ctx.popFramebuffer();
+      }
+      return true;
+    }
+
+    /** Returns true if this page contains any entries which are not referenced by a layer. */
+    boolean evictable() {
+      for (Entry entry : entries) if (entry.refs == 0) return true;
+      return false;
+    }
+
+    /** Evicts all unreferenced entries and repacks the remainder. */
+    void repack() {
+      repacks++;
+      List<Entry> keep = new ArrayList<Entry>();
+      for (Entry entry : entries) {
+        if (entry.refs > 0) keep.add(entry);
+        else entry.page = null;
+      }
+      entries.clear();
+      packer.reset();
+
+      // pack taller images first, which produces a flatter skyline
+      Collections.sort(keep, new Comparator<Entry>() {
+        public int compare(Entry e1, Entry e2) {
+          return e2.pixelHeight() - e1.pixelHeight();
+        }
+      });
+      ctx.pushFramebuffer(fbuf, pageSize, pageSize);
+      try {
+        ctx.clear(0, 0, 0, 0);
+        for (Entry entry : keep) {
+          if (packer.add(entry.pixelWidth() + PADDING, entry.pixelHeight() + PADDING)) {
+            entry.x = packer.packedX;
+            entry.y = packer.packedY;
+            entries.add(entry);
+            blit(entry);
+          } else {
+            entry.page = null; // we'll try again when this entry is next drawn
+          }
+        }
+      } finally {
+        ctx.popFramebuffer();
+      }
+    }
+
+    void destroy() {
+      for (Entry entry : entries) entry.page = null;
+      entries.clear();
+      packer.reset();
+      if (tex > 0) {
+        ctx.destroyTexture(tex);
+        ctx.deleteFramebuffer(fbuf);
+        tex = fbuf = 0;
+      }
+    }
+
+    /** Renders {@code entry}'s source image into this page, which must be the bound framebuffer. */
+    private void blit(Entry entry) {
+      int stex = entry.source.ensureTexture();
+      if (stex == 0) return;
+      // we render upside down (like ImageGL.convertToRepTex) because the framebuffer's contents
+      // are flipped relative to the way we render to the screen
+      float left = entry.x, right = left + entry.pixelWidth();
+      float top = pageSize - entry.y, bottom = top - entry.pixelHeight();
+      GLShader shader = ctx.quadShader(null).prepareTexture(stex, Tint.NOOP_TINT);
+      shader.addQuad(ctx.createTransform(), left, top, right, bottom, 0, 0, 1, 1);
+      shader.flush();
+      // we no longer need the source image's texture unless it is also used directly by a layer
+      if (entry.source.refs == 0) entry.source.clearTexture();
+    }
+  }
+
+  /**
+   * A skyline bin packer: tracks the top edge of the packed rectangles as a list of horizontal
+   * segments and places each new rectangle at the position which leaves its top edge lowest.
+   */
+  static class Skyline {
+    final int width, height;
+    int packedX, packedY;
+
+    private int[] xs = new int[16], ys = new int[16], ws = new int[16];
+    private int count;
+
+    Skyline(int width, int height) {
+      this.width = width;
+      this.height = height;
+      reset();
+    }
+
+    void reset() {
+      xs[0] = 0;
+      ys[0] = 0;
+      ws[0] = width;
+      count = 1;
+    }
+
+    /** Packs a {@code w x h} rectangle, storing its position in {@link #packedX} and {@link
+     * #packedY}. Returns false if there is no room for the rectangle. */
+    boolean add(int w, int h) {
+      int best = -1, bestTop = Integer.MAX_VALUE, bestWidth = Integer.MAX_VALUE, bestY = 0;
+      for (int ii = 0; ii < count; ii++) {
+        int y = fit(ii, w, h);
+        if (y < 0) continue;
+        int top = y + h;
+        if (top < bestTop || (top == bestTop && ws[ii] < bestWidth)) {
+          best = ii;
+          bestTop = top;
+          bestWidth = ws[ii];
+          bestY = y;
+        }
+      }
+      if (best < 0) return false;
+
+      packedX = xs[best];
+      packedY = bestY;
+      insert(best, packedX, bestTop, w);
+      // shrink or remove the segments now covered by the new segment
+      int right = packedX + w;
+      for (int ii = best+1; ii < count; ) {
+        if (xs[ii] >= right) break;
+        int overlap = right - xs[ii];
+        if (ws[ii] <= overlap) {
+          remove(ii);
+        } else {
+          xs[ii] += overlap;
+          ws[ii] -= overlap;
+          break;
+        }
+      }
+      // merge adjacent segments at the same height
+      for (int ii = 0; ii < count-1; ) {
+        if (ys[ii] == ys[ii+1]) {
+          ws[ii] += ws[ii+1];
+          remove(ii+1);
+        } else ii++;
+      }
+      return true;
+    }
+
+    // returns the y position at which a w x h rect fits at segment idx, or -1
+    private int fit(int idx, int w, int h) {
+      if (xs[idx] + w > width) return -1;
+      int y = 0;
+      for (int ii = idx, remain = w; remain > 0; ii++) {
+        y = Math.max(y, ys[ii]);
+        if (y + h > height) return -1;
+        remain -= ws[ii];
+      }
+      return y;
+    }
+
+    private void insert(int idx, int x, int y, int w) {
+      if (count == xs.length) {
+        xs = grow(xs);
+        ys = grow(ys);
+        ws = grow(ws);
+      }
+      System.arraycopy(xs, idx, xs, idx+1, count-idx);
+      System.arraycopy(ys, idx, ys, idx+1, count-idx);
+      System.arraycopy(ws, idx, ws, idx+1, count-idx);
+      xs[idx] = x;
+      ys[idx] = y;
+      ws[idx] = w;
+      count++;
+    }
+
+    private void remove(int idx) {
+      System.arraycopy(xs, idx+1, xs, idx, count-idx-1);
+      System.arraycopy(ys, idx+1, ys, idx, count-idx-1);
+      System.arraycopy(ws, idx+1, ws, idx, count-idx-1);
+      count--;
+    }
+
+    private static int[] grow(int[] values) {
+      int[] nvalues = new int[values.length*2];
+      System.arraycopy(values, 0, nvalues, 0, values.length);
+      return nvalues;
+    }
+  }
+
+  /** Pixels left empty between packed images, to avoid bleeding when sampling linearly. */
+  private static final int PADDING = 1;
+
+  private final GLContext ctx;
+  private final List<Page> pages = new ArrayList<Page>();
+  private int uses, repacks;
+}
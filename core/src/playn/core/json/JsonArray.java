@@ -24,8 +24,13 @@ import playn.core.Json.TypedArray;
  * Extends an {@link ArrayList} with helper methods to determine the underlying JSON type of the list element.
  */
 class JsonArray implements Json.Array {
-  private final ArrayList<Object> list;
-  
+  // the boxed contents of this array, or null if it contains only ints or only doubles, in which
+  // case they are stored unboxed in ints or doubles (or neither, if we're empty)
+  private ArrayList<Object> list;
+  private int[] ints;
+  private double[] doubles;
+  private int size;
+
   /**
    * Creates an empty {@link JsonArray} with the default capacity.
    */
@@ -33,6 +38,17 @@ class JsonArray implements Json.Array {
     list = new ArrayList<Object>();
   }
 
+  /**
+   * Creates an empty {@link JsonArray} which stores numbers unboxed for as long as they are all
+   * ints or all doubles. Used by the parser, which appends via {@link #addInt} and {@link
+   * #addDouble}.
+   */
+  static JsonArray unboxed() {
+    JsonArray array = new JsonArray();
+    array.list = null;
+    return array;
+  }
+
   /**
    * Creates an empty {@link JsonArray} from the given collection of objects.
    */
@@ -56,11 +72,12 @@ class JsonArray implements Json.Array {
   
   public void add(java.lang.Object value) {
     JsonImpl.checkJsonType(value);
-    list.add(value);
+    boxed().add(value);
   }
   
   public void add(int index, java.lang.Object value) {
     JsonImpl.checkJsonType(value);
+    ArrayList<Object> list = boxed();
     // TODO(mmastrac): Use an array rather than ArrayList to make this more efficient
     while (list.size() < index)
       list.add(null);
@@ -114,6 +131,8 @@ class JsonArray implements Json.Array {
    * Returns the {@link Double} at the given index, or the default if it does not exist or is the wrong type.
    */
   public double getDouble(int key, double default_) {
+    if (list == null && key >= 0 && key < size)
+      return (ints != null) ? ints[key] : doubles[key];
     Object o = get(key);
     return o instanceof Number ? ((Number)o).doubleValue() : default_;
   }
@@ -129,6 +148,8 @@ class JsonArray implements Json.Array {
    * Returns the {@link Float} at the given index, or the default if it does not exist or is the wrong type.
    */
   public float getNumber(int key, float default_) {
+    if (list == null && key >= 0 && key < size)
+      return (ints != null) ? ints[key] : (float)doubles[key];
     Object o = get(key);
     return o instanceof Number ? ((Number)o).floatValue() : default_;
   }
@@ -144,6 +165,8 @@ class JsonArray implements Json.Array {
    * Returns the {@link Integer} at the given index, or the default if it does not exist or is the wrong type.
    */
   public int getInt(int key, int default_) {
+    if (list == null && key >= 0 && key < size)
+      return (ints != null) ? ints[key] : (int)doubles[key];
     Object o = get(key);
     return o instanceof Number ? ((Number)o).intValue() : default_;
   }
@@ -160,6 +183,8 @@ class JsonArray implements Json.Array {
    * wrong type.
    */
   public long getLong(int key, long default_) {
+    if (list == null && key >= 0 && key < size)
+      return (ints != null) ? ints[key] : (long)doubles[key];
     Object o = get(key);
     return o instanceof Number ? ((Number)o).longValue() : default_;
   }
@@ -219,6 +244,7 @@ class JsonArray implements Json.Array {
    * Returns true if the array has a number element at that index.
    */
   public boolean isNumber(int key) {
+    if (list == null) return key >= 0 && key < size;
     return get(key) instanceof Number;
   }
 
@@ -238,19 +264,20 @@ class JsonArray implements Json.Array {
 
   @Override
   public int length() {
-    return list.size();
+    return (list == null) ? size : list.size();
   }
 
   @Override
   public void remove(int index) {
-    if (index < 0 || index >= list.size())
+    if (index < 0 || index >= length())
       return;
-    list.remove(index);
+    boxed().remove(index);
   }
   
   @Override
   public void set(int index, java.lang.Object value) {
     JsonImpl.checkJsonType(value);
+    ArrayList<Object> list = boxed();
     // TODO(mmastrac): Use an array rather than ArrayList to make this more efficient
     while (list.size() <= index)
       list.add(null);
@@ -259,13 +286,22 @@ class JsonArray implements Json.Array {
 
   @Override
   public String toString() {
-    return list.toString();
+    if (list != null) return list.toString();
+    // match the format of ArrayList.toString
+    StringBuilder buf = new StringBuilder("[");
+    for (int ii = 0; ii < size; ii++) {
+      if (ii > 0) buf.append(", ");
+      if (ints != null) buf.append(ints[ii]);
+      else buf.append(doubles[ii]);
+    }
+    return buf.append("]").toString();
   }
   
   @Override
   public <T extends JsonSink<T>> JsonSink<T> write(JsonSink<T> sink) {
-    for (int i = 0; i < list.size(); i++)
-      sink.value(list.get(i));
+    int length = length();
+    for (int i = 0; i < length; i++)
+      sink.value(get(i));
     return sink;
   }
   
@@ -274,7 +310,77 @@ class JsonArray implements Json.Array {
    * bounds (to match the HTML implementation).
    */
   Object get(int key) {
+    if (list == null) {
+      if (key < 0 || key >= size) return null;
+      return (ints != null) ? (Object)ints[key] : (Object)doubles[key];
+    }
     return (key >= 0 && key < list.size()) ? list.get(key) : null;
   }
- 
+
+  /**
+   * Appends an int, keeping it unboxed if this array was created via {@link #unboxed} and contains
+   * only ints.
+   */
+  void addInt(int value) {
+    if (list == null && doubles == null) {
+      if (ints == null) ints = new int[8];
+      else if (size == ints.length) {
+        int[] nints = new int[size * 2];
+        System.arraycopy(ints, 0, nints, 0, size);
+        ints = nints;
+      }
+      ints[size++] = value;
+    } else boxed().add(value);
+  }
+
+  /**
+   * Appends a double, keeping it unboxed if this array was created via {@link #unboxed} and
+   * contains only doubles.
+   */
+  void addDouble(double value) {
+    if (list == null && ints == null) {
+      if (doubles == null) doubles = new double[8];
+      else if (size == doubles.length) {
+        double[] ndoubles = new double[size * 2];
+        System.arraycopy(doubles, 0, ndoubles, 0, size);
+        doubles = ndoubles;
+      }
+      doubles[size++] = value;
+    } else boxed().add(value);
+  }
+
+  /**
+   * Returns the contents of this array as ints. See {@link Json.TypedArray.Numeric#toIntArray}.
+   */
+  int[] toIntArray() {
+    int length = length();
+    int[] values = new int[length];
+    if (list == null && ints != null) System.arraycopy(ints, 0, values, 0, length);
+    else for (int ii = 0; ii < length; ii++) values[ii] = getInt(ii);
+    return values;
+  }
+
+  /**
+   * Returns the contents of this array as doubles. See {@link Json.TypedArray.Numeric#toDoubleArray}.
+   */
+  double[] toDoubleArray() {
+    int length = length();
+    double[] values = new double[length];
+    if (list == null && doubles != null) System.arraycopy(doubles, 0, values, 0, length);
+    else for (int ii = 0; ii < length; ii++) values[ii] = getDouble(ii);
+    return values;
+  }
+
+  // switches to boxed storage (if we're not already using it) and returns the list
+  private ArrayList<Object> boxed() {
+    if (list == null) {
+      ArrayList<Object> boxed = new ArrayList<Object>(Math.max(size, 10));
+      for (int ii = 0; ii < size; ii++) boxed.add(get(ii));
+      list = boxed;
+      ints = null;
+      doubles = null;
+      size = 0;
+    }
+    return list;
+  }
 }
@@ -0,0 +1,321 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.json;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+
+import static playn.core.json.JsonBinaryWriter.*;
+
+/**
+ * Decodes documents written by {@link JsonBinaryWriter}. Decoding is lazy: the document is checked
+ * for well-formedness up front, but objects are only decoded when they are first accessed, and
+ * strings are only decoded the first time they are referenced. Arrays are decoded along with the
+ * value that contains them, though any objects in them are again only decoded on access.
+ *
+ * <p>The reader decodes directly from the supplied buffer, so the buffer's contents must not be
+ * changed while decoded values are in use.</p>
+ */
+class JsonBinaryReader {
+
+  /**
+   * Decodes the document in the remaining bytes of {@code buffer}. The buffer's position is not
+   * changed.
+   */
+  public static Object parse(ByteBuffer buffer) throws JsonParserException {
+    JsonBinaryReader reader = new JsonBinaryReader(buffer);
+    return reader.value(2);
+  }
+
+  /**
+   * Decodes the document in the remaining bytes of {@code buffer}, which must contain a value of
+   * the specified type.
+   */
+  public static <T> T parse(ByteBuffer buffer, Class<T> clazz) throws JsonParserException {
+    JsonBinaryReader reader = new JsonBinaryReader(buffer);
+    int major = reader.major(2);
+    if (clazz == JsonObject.class && major != MAJOR_OBJECT ||
+        clazz == JsonArray.class && major != MAJOR_ARRAY)
+      throw reader.error("JSON did not contain the correct type, expected " + clazz.getName(), 2);
+    @SuppressWarnings("unchecked") T value = (T)reader.value(2);
+    return value;
+  }
+
+  private JsonBinaryReader(ByteBuffer buffer) throws JsonParserException {
+    // use our own view so that we don't disturb the caller's position or byte order
+    this.data = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+    this.end = data.limit() - 8;
+    if (end < 3 || data.get(0) != MAGIC)
+      throw error("Not a binary JSON document", 0);
+    if (data.get(1) != VERSION)
+      throw error("Unsupported binary JSON version " + data.get(1), 1);
+
+    int tableOffset = data.getInt(end), count = data.getInt(end + 4);
+    if (tableOffset < 3 || tableOffset > end || count < 0 || count > end - tableOffset)
+      throw error("Invalid string table", end);
+    stringOffsets = new int[count];
+    strings = new String[count];
+    int pos = tableOffset;
+    for (int ii = 0; ii < count; ii++) {
+      if (major(pos) != MAJOR_STRING) throw error("Invalid string table entry", pos);
+      stringOffsets[ii] = pos;
+      pos = skip(pos, end);
+    }
+    if (pos != end) throw error("Invalid string table", pos);
+
+    // check the whole document now so that decoding objects later on can't fail
+    if (check(2, tableOffset) != tableOffset)
+      throw error("Unexpected data after value", tableOffset);
+  }
+
+  // a lazily decoded object
+  static class LazyObject extends JsonObject {
+    private final JsonBinaryReader reader;
+    private final int pos;
+    private Map<String, Object> map;
+
+    public LazyObject(JsonBinaryReader reader, int pos) {
+      super(null);
+      this.reader = reader;
+      this.pos = pos;
+    }
+
+    /** Returns whether this object's values have been decoded yet. */
+    boolean isDecoded() {
+      return map != null;
+    }
+
+    @Override Map<String, Object> map() {
+      if (map == null) map = reader.object(pos);
+      return map;
+    }
+  }
+
+  // returns the value at pos; objects are returned undecoded
+  private Object value(int pos) {
+    int head = data.get(pos) & 0xFF, major = head >> 5, info = head & 0x1F;
+    switch (major) {
+    case MAJOR_UINT:
+    case MAJOR_NINT:
+      long value = argument(pos);
+      if (major == MAJOR_NINT) value = -1 - value;
+      if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) return (int)value;
+      return value;
+    case MAJOR_STRREF:
+    case MAJOR_STRING:
+      return string(pos);
+    case MAJOR_ARRAY:
+      return array(pos);
+    case MAJOR_OBJECT:
+      return new LazyObject(this, pos);
+    default: // MAJOR_SIMPLE; check() has rejected anything else
+      switch (info) {
+      case SIMPLE_FALSE: return Boolean.FALSE;
+      case SIMPLE_TRUE: return Boolean.TRUE;
+      case SIMPLE_NULL: return null;
+      case SIMPLE_FLOAT: return (double)data.getFloat(pos + 1);
+      case SIMPLE_DOUBLE: return data.getDouble(pos + 1);
+      default: // SIMPLE_BIGNUM
+        String digits = string(pos + 1);
+        if (digits.indexOf('.') >= 0 || digits.indexOf('e') >= 0 || digits.indexOf('E') >= 0)
+          return Double.parseDouble(digits);
+        return new BigInteger(digits);
+      }
+    }
+  }
+
+  private JsonArray array(int pos) {
+    JsonArray array = JsonArray.unboxed();
+    for (int ii = body(pos), end = ii + (int)argument(pos); ii < end; ii = skip(ii, end)) {
+      // keep ints and floating point values unboxed when we can
+      int head = data.get(ii) & 0xFF;
+      if (head == FLOAT_HEAD) array.addDouble(data.getFloat(ii + 1));
+      else if (head == DOUBLE_HEAD) array.addDouble(data.getDouble(ii + 1));
+      else {
+        Object value = value(ii);
+        if (value instanceof Integer) array.addInt((Integer)value);
+        else array.add(value);
+      }
+    }
+    return array;
+  }
+
+  private Map<String, Object> object(int pos) {
+    JsonOrderedMap map = new JsonOrderedMap();
+    for (int ii = body(pos), end = ii + (int)argument(pos); ii < end; ) {
+      String key = string(ii);
+      ii = skip(ii, end);
+      map.put(key, value(ii));
+      ii = skip(ii, end);
+    }
+    return map;
+  }
+
+  private String string(int pos) {
+    if (major(pos) == MAJOR_STRING) return decode(pos);
+    int index = (int)argument(pos);
+    String s = strings[index];
+    if (s == null) s = strings[index] = decode(stringOffsets[index]);
+    return s;
+  }
+
+  // decodes the UTF-8 string item at pos
+  private String decode(int pos) {
+    int ii = body(pos), end = ii + (int)argument(pos);
+    if (chars.length < end - ii) chars = new char[end - ii];
+    int count = 0;
+    while (ii < end) {
+      int b = data.get(ii++) & 0xFF;
+      int extra = (b < 0x80) ? 0 : (b < 0xE0) ? 1 : (b < 0xF0) ? 2 : 3;
+      if (ii + extra > end) {
+        chars[count++] = '\uFFFD'; // truncated sequence
+        break;
+      }
+      if (b < 0x80) chars[count++] = (char)b;
+      else if (b < 0xE0) chars[count++] = (char)(((b & 0x1F) << 6) | (data.get(ii++) & 0x3F));
+      else if (b < 0xF0) {
+        chars[count++] = (char)(((b & 0x0F) << 12) | ((data.get(ii) & 0x3F) << 6) |
+                                (data.get(ii+1) & 0x3F));
+        ii += 2;
+      } else {
+        int cp = ((b & 0x07) << 18) | ((data.get(ii) & 0x3F) << 12) |
+          ((data.get(ii+1) & 0x3F) << 6) | (data.get(ii+2) & 0x3F);
+        ii += 3;
+        cp -= 0x10000;
+        chars[count++] = (char)(0xD800 + (cp >> 10));
+        chars[count++] = (char)(0xDC00 + (cp & 0x3FF));
+      }
+    }
+    return new String(chars, 0, count);
+  }
+
+  // checks the well-formedness of the item at pos, which must end before limit, returning the
+  // position after it
+  private int check(int pos, int limit) throws JsonParserException {
+    int next = skip(pos, limit);
+    int head = data.get(pos) & 0xFF, major = head >> 5, info = head & 0x1F;
+    switch (major) {
+    case MAJOR_UINT:
+    case MAJOR_NINT:
+      if (argument(pos) < 0) throw error("Integer out of range", pos);
+      break;
+    case MAJOR_STRREF:
+      long index = argument(pos);
+      if (index < 0 || index >= strings.length) throw error("Invalid string reference", pos);
+      break;
+    case MAJOR_STRING:
+      break;
+    case MAJOR_ARRAY:
+    case MAJOR_OBJECT:
+      boolean key = major == MAJOR_OBJECT;
+      for (int ii = body(pos); ii < next; key = !key && major == MAJOR_OBJECT) {
+        int iimajor = major(ii);
+        if (key && iimajor != MAJOR_STRING && iimajor != MAJOR_STRREF)
+          throw error("Object key is not a string", ii);
+        ii = check(ii, next);
+      }
+      if (key != (major == MAJOR_OBJECT)) throw error("Object key has no value", next);
+      break;
+    case MAJOR_SIMPLE:
+      if (info == SIMPLE_BIGNUM) {
+        if (pos + 1 >= limit || major(pos + 1) != MAJOR_STRING)
+          throw error("Invalid number", pos);
+        check(pos + 1, limit);
+        try {
+          String digits = decode(pos + 1);
+          if (digits.indexOf('.') >= 0 || digits.indexOf('e') >= 0 || digits.indexOf('E') >= 0)
+            Double.parseDouble(digits);
+          else new BigInteger(digits);
+        } catch (NumberFormatException e) {
+          throw error("Invalid number", pos);
+        }
+      } else if (info < SIMPLE_FALSE || info > SIMPLE_NULL) {
+        if (info != SIMPLE_FLOAT && info != SIMPLE_DOUBLE)
+          throw error("Invalid simple value " + info, pos);
+      }
+      break;
+    default:
+      throw error("Invalid major type " + major, pos);
+    }
+    return next;
+  }
+
+  // returns the position after the item at pos, checking that it ends before limit
+  private int skip(int pos, int limit) throws JsonParserException {
+    if (pos >= limit) throw error("Unexpected end of data", pos);
+    int head = data.get(pos) & 0xFF, major = head >> 5, info = head & 0x1F;
+    if (info > 27 && !(major == MAJOR_SIMPLE && info == SIMPLE_BIGNUM))
+      throw error("Invalid item header", pos);
+    long next;
+    if (major == MAJOR_SIMPLE) {
+      if (info == SIMPLE_BIGNUM) next = skip(pos + 1, limit);
+      else next = pos + 1 + width(info);
+    } else {
+      next = body(pos);
+      if (next > limit) throw error("Unexpected end of data", pos);
+      if (major == MAJOR_STRING || major == MAJOR_ARRAY || major == MAJOR_OBJECT) {
+        long length = argument(pos);
+        // an eight byte length may be negative or large enough to overflow next
+        if (length < 0 || length > limit - next) throw error("Invalid length", pos);
+        next += length;
+      }
+    }
+    if (next > limit) throw error("Unexpected end of data", pos);
+    return (int)next;
+  }
+
+  private int major(int pos) {
+    return (data.get(pos) & 0xFF) >> 5;
+  }
+
+  private int body(int pos) {
+    return pos + 1 + width(data.get(pos) & 0x1F);
+  }
+
+  private long argument(int pos) {
+    int info = data.get(pos) & 0x1F;
+    switch (info) {
+    case 24: return data.get(pos + 1) & 0xFF;
+    case 25: return data.getShort(pos + 1) & 0xFFFF;
+    case 26: return data.getInt(pos + 1) & 0xFFFFFFFFL;
+    case 27: return data.getLong(pos + 1);
+    default: return info;
+    }
+  }
+
+  private static int width(int info) {
+    switch (info) {
+    case 24: return 1;
+    case 25: return 2;
+    case 26: return 4;
+    case 27: return 8;
+    default: return 0;
+    }
+  }
+
+  private JsonParserException error(String message, int pos) {
+    return new JsonParserException(null, message + " at byte " + pos, 1, pos + 1, pos);
+  }
+
+  private static final int FLOAT_HEAD = (MAJOR_SIMPLE << 5) | SIMPLE_FLOAT;
+  private static final int DOUBLE_HEAD = (MAJOR_SIMPLE << 5) | SIMPLE_DOUBLE;
+
+  private final ByteBuffer data;
+  private final int end;
+  private final int[] stringOffsets;
+  private final String[] strings;
+  private char[] chars = new char[64];
+}
@@ -0,0 +1,465 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.json;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import playn.core.Json;
+
+/**
+ * A {@link JsonSink} that writes a compact binary encoding of JSON directly into a {@link
+ * ByteBuffer}. The result can be decoded with {@link JsonImpl#parseBinary}.
+ *
+ * <p>The encoding is similar to CBOR. Every item starts with a byte holding a three bit major type
+ * and a five bit argument. Arguments below 24 are stored in the byte itself; 24 through 27 mean
+ * the argument follows in 1, 2, 4 or 8 big-endian bytes. The major types are:</p>
+ * <ul>
+ * <li>0, 1: a non-negative integer {@code n}, or a negative integer {@code -1-n}.</li>
+ * <li>2: a reference to entry {@code n} in the string table.</li>
+ * <li>3: a string of {@code n} UTF-8 bytes, which follow.</li>
+ * <li>4, 5: an array or object whose items occupy the following {@code n} bytes. Objects alternate
+ * key strings and values. Storing the length lets a reader skip containers without decoding
+ * them.</li>
+ * <li>7: false (20), true (21), null (22), a float (26) or double (27) that follows, or a number
+ * that doesn't fit the above (28), whose decimal representation follows as a string.</li>
+ * </ul>
+ *
+ * <p>The document is a two byte header, the root item, then the string table followed by its
+ * offset and entry count as four byte integers. Strings of up to {@value #MAX_POOLED_LENGTH}
+ * characters, including all keys, are stored once in the table and referenced by index.</p>
+ */
+public final class JsonBinaryWriter implements JsonSink<JsonBinaryWriter> {
+
+  /**
+   * Creates a writer which writes into {@code buffer}, starting at its current position. If the
+   * buffer fills up, the writer continues in a larger buffer; use the buffer returned by {@link
+   * #write}.
+   */
+  public JsonBinaryWriter(ByteBuffer buffer) {
+    this.buffer = buffer.order(ByteOrder.BIG_ENDIAN);
+    this.start = buffer.position();
+    ensure(2);
+    buffer.put(MAGIC).put(VERSION);
+  }
+
+  /**
+   * Completes this writing session and returns the buffer containing the encoded document, with
+   * its position at the start of the document and its limit at the end.
+   */
+  public ByteBuffer write() {
+    if (depth > 0)
+      throw new JsonWriterException("Unclosed JSON objects and/or arrays when closing writer");
+    if (first)
+      throw new JsonWriterException("Nothing was written to the JSON writer");
+
+    int tableOffset = buffer.position() - start;
+    for (String s : strings) writeString(MAJOR_STRING, s);
+    ensure(8);
+    buffer.putInt(tableOffset).putInt(strings.size());
+    buffer.limit(buffer.position());
+    buffer.position(start);
+    return buffer;
+  }
+
+  /**
+   * Returns the number of distinct strings written to the string table so far.
+   */
+  public int stringCount() {
+    return strings.size();
+  }
+
+  @Override
+  public JsonBinaryWriter array(Collection<?> c) {
+    return array(null, c);
+  }
+
+  @Override
+  public JsonBinaryWriter array(Json.Array c) {
+    return array(null, c);
+  }
+
+  @Override
+  public JsonBinaryWriter array(String key, Collection<?> c) {
+    if (key == null) array();
+    else array(key);
+    for (Object o : c) value(o);
+    return end();
+  }
+
+  @Override
+  public JsonBinaryWriter array(String key, Json.Array c) {
+    if (key == null) array();
+    else array(key);
+    c.write(this);
+    return end();
+  }
+
+  @Override
+  public JsonBinaryWriter object(Map<?, ?> map) {
+    return object(null, map);
+  }
+
+  @Override
+  public JsonBinaryWriter object(Json.Object map) {
+    return object(null, map);
+  }
+
+  @Override
+  public JsonBinaryWriter object(String key, Map<?, ?> map) {
+    if (key == null) object();
+    else object(key);
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      if (!(entry.getKey() instanceof String))
+        throw new JsonWriterException("Invalid key type for map: "
+            + (entry.getKey() == null ? "null" : entry.getKey().getClass()));
+      value((String)entry.getKey(), entry.getValue());
+    }
+    return end();
+  }
+
+  @Override
+  public JsonBinaryWriter object(String key, Json.Object obj) {
+    if (key == null) object();
+    else object(key);
+    obj.write(this);
+    return end();
+  }
+
+  @Override
+  public JsonBinaryWriter nul() {
+    preValue();
+    writeHead(MAJOR_SIMPLE, SIMPLE_NULL);
+    return this;
+  }
+
+  @Override
+  public JsonBinaryWriter nul(String key) {
+    preValue(key);
+    writeHead(MAJOR_SIMPLE, SIMPLE_NULL);
+    return this;
+  }
+
+  @Override
+  public JsonBinaryWriter value(Object o) {
+    if (o == null) return nul();
+    else if (o instanceof String) return value((String)o);
+    else if (o instanceof Number) return value((Number)o);
+    else if (o instanceof Boolean) return value((boolean)(Boolean)o);
+    else if (o instanceof Collection) return array((Collection<?>)o);
+    else if (o instanceof Map) return object((Map<?, ?>)o);
+    else if (JsonTypes.isArray(o)) return array((Json.Array)o);
+    else if (JsonTypes.isObject(o)) return object((Json.Object)o);
+    else throw new JsonWriterException("Unable to handle type: " + o.getClass());
+  }
+
+  @Override
+  public JsonBinaryWriter value(String key, Object o) {
+    if (o == null) return nul(key);
+    else if (o instanceof String) return value(key, (String)o);
+    else if (o instanceof Number) return value(key, (Number)o);
+    else if (o instanceof Boolean) return value(key, (boolean)(Boolean)o);
+    else if (o instanceof Collection) return array(key, (Collection<?>)o);
+    else if (o instanceof Map) return object(key, (Map<?, ?>)o);
+    else if (JsonTypes.isArray(o)) return array(key, (Json.Array)o);
+    else if (JsonTypes.isObject(o)) return object(key, (Json.Object)o);
+    else throw new JsonWriterException("Unable to handle type: " + o.getClass());
+  }
+
+  @Override
+  public JsonBinaryWriter value(String s) {
+    if (s == null) return nul();
+    preValue();
+    writeString(s);
+    return this;
+  }
+
+  @Override
+  public JsonBinaryWriter value(boolean b) {
+    preValue();
+    writeHead(MAJOR_SIMPLE, b ? SIMPLE_TRUE : SIMPLE_FALSE);
+    return this;
+  }
+
+  @Override
+  public JsonBinaryWriter value(Number n) {
+    if (n == null) return nul();
+    preValue();
+    writeNumber(n);
+    return this;
+  }
+
+  @Override
+  public JsonBinaryWriter value(String key, String s) {
+    if (s == null) return nul(key);
+    preValue(key);
+    writeString(s);
+    return this;
+  }
+
+  @Override
+  public JsonBinaryWriter value(String key, boolean b) {
+    preValue(key);
+    writeHead(MAJOR_SIMPLE, b ? SIMPLE_TRUE : SIMPLE_FALSE);
+    return this;
+  }
+
+  @Override
+  public JsonBinaryWriter value(String key, Number n) {
+    if (n == null) return nul(key);
+    preValue(key);
+    writeNumber(n);
+    return this;
+  }
+
+  @Override
+  public JsonBinaryWriter array() {
+    preValue();
+    open(MAJOR_ARRAY);
+    return this;
+  }
+
+  @Override
+  public JsonBinaryWriter object() {
+    preValue();
+    open(MAJOR_OBJECT);
+    return this;
+  }
+
+  @Override
+  public JsonBinaryWriter array(String key) {
+    preValue(key);
+    open(MAJOR_ARRAY);
+    return this;
+  }
+
+  @Override
+  public JsonBinaryWriter object(String key) {
+    preValue(key);
+    open(MAJOR_OBJECT);
+    return this;
+  }
+
+  @Override
+  public JsonBinaryWriter end() {
+    if (depth == 0) throw new JsonWriterException("Invalid call to end()");
+    int head = opens[--depth];
+    inObject = depth > 0 && isObject[depth-1];
+
+    // we reserved four bytes for the container's length; now that we know it, shift the contents
+    // down if it fits into fewer
+    int body = head + 5, length = buffer.position() - body;
+    int width = (length < 24) ? 0 : (length < 0x100) ? 1 : (length < 0x10000) ? 2 : 4;
+    if (width < 4) {
+      move(body, body - (4 - width), length);
+      buffer.position(buffer.position() - (4 - width));
+    }
+    int major = (buffer.get(head) & 0xFF) >> 5;
+    putHead(head, major, length, width);
+    return this;
+  }
+
+  private void open(int major) {
+    if (depth == opens.length) {
+      int[] nopens = new int[depth * 2];
+      System.arraycopy(opens, 0, nopens, 0, depth);
+      opens = nopens;
+      boolean[] nisObject = new boolean[depth * 2];
+      System.arraycopy(isObject, 0, nisObject, 0, depth);
+      isObject = nisObject;
+    }
+    ensure(5);
+    opens[depth] = buffer.position();
+    isObject[depth++] = inObject = (major == MAJOR_OBJECT);
+    buffer.put((byte)(major << 5)).putInt(0);
+  }
+
+  private void preValue() {
+    if (inObject)
+      throw new JsonWriterException("Invalid call to emit a keyless value while writing an object");
+    pre();
+  }
+
+  private void preValue(String key) {
+    if (!inObject)
+      throw new JsonWriterException("Invalid call to emit a key value while not writing an object");
+    pre();
+    writeString(key);
+  }
+
+  private void pre() {
+    if (first) first = false;
+    else if (depth == 0)
+      throw new JsonWriterException("Invalid call to emit a value in a finished JSON writer");
+  }
+
+  private void writeNumber(Number n) {
+    if (n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte) {
+      long value = n.longValue();
+      if (value >= 0) writeHead(MAJOR_UINT, value);
+      else writeHead(MAJOR_NINT, -1 - value);
+    } else if (n instanceof Double || n instanceof Float) {
+      double value = n.doubleValue();
+      float fvalue = (float)value;
+      if (fvalue == value || Double.isNaN(value)) {
+        ensure(5);
+        buffer.put((byte)((MAJOR_SIMPLE << 5) | SIMPLE_FLOAT)).putFloat(fvalue);
+      } else {
+        ensure(9);
+        buffer.put((byte)((MAJOR_SIMPLE << 5) | SIMPLE_DOUBLE)).putDouble(value);
+      }
+    } else {
+      ensure(1);
+      buffer.put((byte)((MAJOR_SIMPLE << 5) | SIMPLE_BIGNUM));
+      writeString(MAJOR_STRING, n.toString());
+    }
+  }
+
+  private void writeString(String s) {
+    if (s.length() > MAX_POOLED_LENGTH) {
+      writeString(MAJOR_STRING, s);
+      return;
+    }
+    Integer index = stringIndices.get(s);
+    if (index == null) {
+      index = strings.size();
+      stringIndices.put(s, index);
+      strings.add(s);
+    }
+    writeHead(MAJOR_STRREF, index);
+  }
+
+  // writes s as UTF-8 preceded by its length in bytes
+  private void writeString(int major, String s) {
+    int length = s.length(), bytes = 0;
+    for (int ii = 0; ii < length; ii++) {
+      char c = s.charAt(ii);
+      if (c < 0x80) bytes += 1;
+      else if (c < 0x800) bytes += 2;
+      else if (Character.isHighSurrogate(c) && ii+1 < length &&
+               Character.isLowSurrogate(s.charAt(ii+1))) {
+        bytes += 4;
+        ii++;
+      }
+      else bytes += 3;
+    }
+    writeHead(major, bytes);
+    ensure(bytes);
+    for (int ii = 0; ii < length; ii++) {
+      char c = s.charAt(ii);
+      if (c < 0x80) buffer.put((byte)c);
+      else if (c < 0x800) {
+        buffer.put((byte)(0xC0 | (c >> 6)));
+        buffer.put((byte)(0x80 | (c & 0x3F)));
+      } else if (Character.isHighSurrogate(c) && ii+1 < length &&
+                 Character.isLowSurrogate(s.charAt(ii+1))) {
+        int cp = Character.toCodePoint(c, s.charAt(++ii));
+        buffer.put((byte)(0xF0 | (cp >> 18)));
+        buffer.put((byte)(0x80 | ((cp >> 12) & 0x3F)));
+        buffer.put((byte)(0x80 | ((cp >> 6) & 0x3F)));
+        buffer.put((byte)(0x80 | (cp & 0x3F)));
+      } else {
+        buffer.put((byte)(0xE0 | (c >> 12)));
+        buffer.put((byte)(0x80 | ((c >> 6) & 0x3F)));
+        buffer.put((byte)(0x80 | (c & 0x3F)));
+      }
+    }
+  }
+
+  private void writeHead(int major, long value) {
+    int width = (value < 24) ? 0 : (value < 0x100) ? 1 : (value < 0x10000) ? 2 :
+      (value < 0x100000000L) ? 4 : 8;
+    ensure(1 + width);
+    putHead(buffer.position(), major, value, width);
+    buffer.position(buffer.position() + 1 + width);
+  }
+
+  private void putHead(int pos, int major, long value, int width) {
+    switch (width) {
+    case 0: buffer.put(pos, (byte)((major << 5) | (int)value)); break;
+    case 1: buffer.put(pos, (byte)((major << 5) | 24)).put(pos+1, (byte)value); break;
+    case 2: buffer.put(pos, (byte)((major << 5) | 25)).putShort(pos+1, (short)value); break;
+    case 4: buffer.put(pos, (byte)((major << 5) | 26)).putInt(pos+1, (int)value); break;
+    default: buffer.put(pos, (byte)((major << 5) | 27)).putLong(pos+1, value); break;
+    }
+  }
+
+  // shifts length bytes at from down to to (which must precede from); uses a bulk put between
+  // views of our buffer rather than its backing array, which the HTML backend does not provide
+  private void move(int from, int to, int length) {
+    if (length == 0) return;
+    ByteBuffer src = buffer.duplicate(), dst = buffer.duplicate();
+    src.limit(from + length);
+    src.position(from);
+    dst.position(to);
+    dst.put(src);
+  }
+
+  // makes sure there is room for count more bytes, moving to a larger buffer if needed
+  private void ensure(int count) {
+    if (buffer.remaining() >= count) return;
+    int used = buffer.position() - start;
+    int capacity = Math.max(used * 2, used + count + 64);
+    ByteBuffer nbuffer = buffer.isDirect() ? ByteBuffer.allocateDirect(capacity) :
+      ByteBuffer.allocate(capacity);
+    nbuffer.order(ByteOrder.BIG_ENDIAN);
+    buffer.limit(buffer.position());
+    buffer.position(start);
+    nbuffer.put(buffer);
+    // adjust our recorded container positions to account for the new start
+    for (int ii = 0; ii < depth; ii++) opens[ii] -= start;
+    buffer = nbuffer;
+    start = 0;
+  }
+
+  /** The first byte of every binary document. */
+  static final byte MAGIC = (byte)0xB7;
+  /** The second byte of every binary document. */
+  static final byte VERSION = 1;
+
+  /** Strings longer than this are written inline rather than via the string table. */
+  static final int MAX_POOLED_LENGTH = 64;
+
+  static final int MAJOR_UINT = 0;
+  static final int MAJOR_NINT = 1;
+  static final int MAJOR_STRREF = 2;
+  static final int MAJOR_STRING = 3;
+  static final int MAJOR_ARRAY = 4;
+  static final int MAJOR_OBJECT = 5;
+  static final int MAJOR_SIMPLE = 7;
+
+  static final int SIMPLE_FALSE = 20;
+  static final int SIMPLE_TRUE = 21;
+  static final int SIMPLE_NULL = 22;
+  static final int SIMPLE_FLOAT = 26;
+  static final int SIMPLE_DOUBLE = 27;
+  static final int SIMPLE_BIGNUM = 28;
+
+  private ByteBuffer buffer;
+  private int start;
+
+  private final Map<String, Integer> stringIndices = new HashMap<String, Integer>();
+  private final List<String> strings = new ArrayList<String>();
+
+  // the positions of the heads of the currently open containers and whether they're objects
+  private int[] opens = new int[16];
+  private boolean[] isObject = new boolean[16];
+  private int depth;
+  private boolean first = true, inObject;
+}
@@ -13,6 +13,8 @@
  */
 package playn.core.json;
 
+import java.nio.ByteBuffer;
+
 import playn.core.Json;
 
 /**
@@ -22,6 +24,18 @@ import playn.core.Json;
  */
 public class JsonImpl implements Json {
 
+  private boolean orderedObjects;
+
+  /**
+   * Configures whether objects created or parsed by this instance iterate over their keys in
+   * insertion order, rather than sorted order (the default). Ordered objects are backed by an
+   * open-addressed hash table, which makes lookups faster on large objects, and parsed documents
+   * share a single string per distinct key. This matches the iteration order of the HTML backend.
+   */
+  public void setOrderedObjects(boolean orderedObjects) {
+    this.orderedObjects = orderedObjects;
+  }
+
   @Override
   public Json.Writer newWriter() {
     return new JsonStringWriter();
@@ -34,7 +48,7 @@ public class JsonImpl implements Json {
   
   @Override
   public Object createObject() {
-    return new JsonObject();
+    return orderedObjects ? JsonObject.ordered() : new JsonObject();
   }
   
   @Override
@@ -49,14 +63,46 @@ public class JsonImpl implements Json {
   
   @Override
   public Object parse(String json) throws JsonParserException {
-    return JsonParser.object().from(json);
+    return JsonParser.object().withOrderedObjects(orderedObjects).from(json);
   }
 
   @Override
   public Array parseArray(String json) throws JsonParserException {
-    return JsonParser.array().from(json);
+    return JsonParser.array().withOrderedObjects(orderedObjects).from(json);
   }
   
+  /**
+   * Returns a writer which encodes JSON in a compact binary form. See {@link JsonBinaryWriter}.
+   */
+  public JsonBinaryWriter newBinaryWriter() {
+    return new JsonBinaryWriter(ByteBuffer.allocate(1024));
+  }
+
+  /**
+   * Returns a writer which encodes JSON in a compact binary form into {@code buffer}, starting at
+   * its current position. See {@link JsonBinaryWriter}.
+   */
+  public JsonBinaryWriter newBinaryWriter(ByteBuffer buffer) {
+    return new JsonBinaryWriter(buffer);
+  }
+
+  /**
+   * Parses an object from the remaining bytes of {@code buffer}, which must have been written by a
+   * {@link JsonBinaryWriter}. The buffer is decoded in place and lazily: nested objects are only
+   * decoded when they are accessed, so its contents must not be modified while the result is in
+   * use. The buffer's position is not changed.
+   */
+  public Object parseBinary(ByteBuffer buffer) throws JsonParserException {
+    return JsonBinaryReader.parse(buffer, JsonObject.class);
+  }
+
+  /**
+   * Parses an array from the remaining bytes of {@code buffer}. See {@link #parseBinary}.
+   */
+  public Array parseBinaryArray(ByteBuffer buffer) throws JsonParserException {
+    return JsonBinaryReader.parse(buffer, JsonArray.class);
+  }
+
   static void checkJsonType(java.lang.Object value) {
     if (value == null || value instanceof String || value instanceof Json.Object || value instanceof Json.Array || value instanceof Boolean || value instanceof Number)
       return;
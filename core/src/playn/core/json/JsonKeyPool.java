@@ -0,0 +1,89 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.json;
+
+/**
+ * Interns object keys during a parse so that documents which repeat the same schema (arrays of
+ * records, for example) share a single {@link String} per distinct key. Looking up a key that has
+ * been seen before allocates nothing, and the shared strings let {@link JsonOrderedMap} match keys
+ * by identity.
+ */
+class JsonKeyPool {
+
+  /** Keys longer than this are not interned; they are unlikely to be part of a schema. */
+  static final int MAX_KEY_LENGTH = 64;
+
+  /** Once this many keys have been interned, new keys are returned without being pooled. */
+  static final int MAX_KEYS = 4096;
+
+  /**
+   * Returns a string with the contents of {@code chars}, reusing a previously returned string if
+   * it had the same contents.
+   */
+  public String intern(CharSequence chars) {
+    int length = chars.length();
+    if (length > MAX_KEY_LENGTH) return chars.toString();
+
+    // hash the characters in place (as String.hashCode does) so known keys need no allocation
+    int hash = 0;
+    for (int ii = 0; ii < length; ii++) hash = 31 * hash + chars.charAt(ii);
+
+    int mask = keys.length - 1;
+    int slot = (hash ^ (hash >>> 16)) & mask;
+    for (String key; (key = keys[slot]) != null; slot = (slot + 1) & mask) {
+      if (hashes[slot] == hash && matches(key, chars)) return key;
+    }
+
+    String key = chars.toString();
+    if (count < MAX_KEYS) {
+      keys[slot] = key;
+      hashes[slot] = hash;
+      if (++count > keys.length / 2) grow();
+    }
+    return key;
+  }
+
+  /** Returns the number of distinct keys in this pool. */
+  public int size() {
+    return count;
+  }
+
+  private void grow() {
+    String[] okeys = keys;
+    int[] ohashes = hashes;
+    keys = new String[okeys.length * 2];
+    hashes = new int[okeys.length * 2];
+    int mask = keys.length - 1;
+    for (int ii = 0; ii < okeys.length; ii++) {
+      if (okeys[ii] == null) continue;
+      int slot = (ohashes[ii] ^ (ohashes[ii] >>> 16)) & mask;
+      while (keys[slot] != null) slot = (slot + 1) & mask;
+      keys[slot] = okeys[ii];
+      hashes[slot] = ohashes[ii];
+    }
+  }
+
+  private static boolean matches(String key, CharSequence chars) {
+    int length = key.length();
+    if (length != chars.length()) return false;
+    for (int ii = 0; ii < length; ii++) {
+      if (key.charAt(ii) != chars.charAt(ii)) return false;
+    }
+    return true;
+  }
+
+  private String[] keys = new String[32];
+  private int[] hashes = new int[32];
+  private int count;
+}
@@ -36,6 +36,22 @@ class JsonObject implements Json.Object {
     map = new TreeMap<String, Object>();
   }
 
+  /**
+   * Creates an empty {@link JsonObject} backed by the supplied map.
+   */
+  JsonObject(Map<String, Object> map) {
+    this.map = map;
+  }
+
+  /**
+   * Creates an empty {@link JsonObject} which iterates over its keys in insertion order rather than
+   * sorted order, and which is backed by a hash table for faster lookup. See {@link
+   * JsonOrderedMap}.
+   */
+  static JsonObject ordered() {
+    return new JsonObject(new JsonOrderedMap());
+  }
+
   /**
    * Creates a {@link JsonBuilder} for a {@link JsonObject}.
    */
@@ -178,7 +194,7 @@ class JsonObject implements Json.Object {
    * Returns true if the object has an element at that key (even if that element is null).
    */
   public boolean containsKey(String key) {
-    return map.containsKey(key);
+    return map().containsKey(key);
   }
 
   /**
@@ -236,28 +252,28 @@ class JsonObject implements Json.Object {
 
   @Override
   public TypedArray<String> keys() {
-    return new JsonStringTypedArray(map.keySet());
+    return new JsonStringTypedArray(map().keySet());
   }
 
   @Override
   public void put(String key, Object value) {
     JsonImpl.checkJsonType(value);
-    map.put(key, value);
+    map().put(key, value);
   }
 
   @Override
   public void remove(String key) {
-    map.remove(key);
+    map().remove(key);
   }
 
   @Override
   public String toString() {
-    return map.toString();
+    return map().toString();
   }
 
   @Override
   public <T extends JsonSink<T>> JsonSink<T> write(JsonSink<T> sink) {
-    for (Map.Entry<String, Object> entry : map.entrySet())
+    for (Map.Entry<String, Object> entry : map().entrySet())
       sink.value(entry.getKey(), entry.getValue());
     return sink;
   }
@@ -266,6 +282,14 @@ class JsonObject implements Json.Object {
    * Gets the JSON value at the given key.
    */
   Object get(String key) {
-    return map.get(key);
+    return map().get(key);
+  }
+
+  /**
+   * Returns the map that holds this object's values. Lazily decoded objects override this to
+   * decode their values on first access.
+   */
+  Map<String, Object> map() {
+    return map;
   }
 }
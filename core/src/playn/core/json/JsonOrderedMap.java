@@ -0,0 +1,234 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.json;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An open-addressed hash map from strings to values which iterates in insertion order. Used by
+ * {@link JsonObject} as an alternative to a {@code TreeMap} when lookup speed matters more than
+ * sorted iteration.
+ *
+ * <p>Entries are stored in parallel arrays, in insertion order, along with their key's hash code.
+ * A separate power-of-two table maps hash codes to entry indices using linear probing. Removed
+ * entries leave a tombstone which is cleaned up when the table is next rebuilt.</p>
+ */
+class JsonOrderedMap extends AbstractMap<String, Object> {
+
+  public JsonOrderedMap() {
+    this(8);
+  }
+
+  public JsonOrderedMap(int expectedSize) {
+    int capacity = Math.max(4, expectedSize);
+    keys = new String[capacity];
+    values = new Object[capacity];
+    hashes = new int[capacity];
+    slots = new int[tableSize(capacity)];
+  }
+
+  @Override public int size() {
+    return size;
+  }
+
+  @Override public boolean containsKey(Object key) {
+    return (key instanceof String) && find((String)key) >= 0;
+  }
+
+  @Override public Object get(Object key) {
+    if (!(key instanceof String)) return null;
+    int idx = find((String)key);
+    return idx < 0 ? null : values[idx];
+  }
+
+  @Override public Object put(String key, Object value) {
+    if (key == null) throw new NullPointerException("JSON keys must not be null");
+    int hash = key.hashCode(), mask = slots.length - 1;
+    for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+      int idx = slots[slot] - 1;
+      if (idx < 0) break;
+      if (hashes[idx] == hash && key.equals(keys[idx])) {
+        Object old = values[idx];
+        values[idx] = value;
+        return old;
+      }
+    }
+    append(key, hash, value);
+    return null;
+  }
+
+  @Override public Object remove(Object key) {
+    if (!(key instanceof String)) return null;
+    int idx = find((String)key);
+    if (idx < 0) return null;
+    Object old = values[idx];
+    // leave the slot pointing at the entry so that probe sequences through it are not broken
+    keys[idx] = null;
+    values[idx] = null;
+    size--;
+    return old;
+  }
+
+  @Override public void clear() {
+    for (int ii = 0; ii < count; ii++) {
+      keys[ii] = null;
+      values[ii] = null;
+    }
+    for (int ii = 0; ii < slots.length; ii++) slots[ii] = 0;
+    count = size = 0;
+  }
+
+  @Override public Set<Map.Entry<String, Object>> entrySet() {
+    return new AbstractSet<Map.Entry<String, Object>>() {
+      @Override public int size() {
+        return size;
+      }
+      @Override public Iterator<Map.Entry<String, Object>> iterator() {
+        return new Iterator<Map.Entry<String, Object>>() {
+          public boolean hasNext() {
+            while (next < count && keys[next] == null) next++;
+            return next < count;
+          }
+          public Map.Entry<String, Object> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            last = next++;
+            return new Entry(last);
+          }
+          public void remove() {
+            if (last < 0 || keys[last] == null) throw new IllegalStateException();
+            JsonOrderedMap.this.remove(keys[last]);
+          }
+          private int next, last = -1;
+        };
+      }
+    };
+  }
+
+  // a view of the entry at a particular index
+  private class Entry implements Map.Entry<String, Object> {
+    private final int idx;
+    private final String key;
+
+    public Entry(int idx) {
+      this.idx = idx;
+      this.key = keys[idx];
+    }
+
+    public String getKey() {
+      return key;
+    }
+    public Object getValue() {
+      return (keys[idx] == key) ? values[idx] : null;
+    }
+    public Object setValue(Object value) {
+      Object old = getValue();
+      if (keys[idx] == key) values[idx] = value;
+      return old;
+    }
+    @Override public boolean equals(Object other) {
+      if (!(other instanceof Map.Entry)) return false;
+      Map.Entry<?, ?> oentry = (Map.Entry<?, ?>)other;
+      Object value = getValue();
+      return key.equals(oentry.getKey()) &&
+        (value == null ? oentry.getValue() == null : value.equals(oentry.getValue()));
+    }
+    @Override public int hashCode() {
+      Object value = getValue();
+      return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+    }
+    @Override public String toString() {
+      return key + "=" + getValue();
+    }
+  }
+
+  private int find(String key) {
+    int hash = key.hashCode(), mask = slots.length - 1;
+    for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+      int idx = slots[slot] - 1;
+      if (idx < 0) return -1;
+      // keys from a JsonKeyPool are usually identical, so check that before calling equals
+      String ekey = keys[idx];
+      if (hashes[idx] == hash && (ekey == key || key.equals(ekey))) return idx;
+    }
+  }
+
+  private void append(String key, int hash, Object value) {
+    if (count == keys.length) grow();
+    int idx = count++;
+    keys[idx] = key;
+    values[idx] = value;
+    hashes[idx] = hash;
+    size++;
+    if (count > slots.length * 3 / 4) rehash(tableSize(count));
+    else insertSlot(idx);
+  }
+
+  private void grow() {
+    // if more than a quarter of our entries are tombstones, just compact in place
+    int capacity = (size < count * 3 / 4) ? keys.length : keys.length * 2;
+    String[] nkeys = new String[capacity];
+    Object[] nvalues = new Object[capacity];
+    int[] nhashes = new int[capacity];
+    int ncount = 0;
+    for (int ii = 0; ii < count; ii++) {
+      if (keys[ii] == null) continue;
+      nkeys[ncount] = keys[ii];
+      nvalues[ncount] = values[ii];
+      nhashes[ncount] = hashes[ii];
+      ncount++;
+    }
+    keys = nkeys;
+    values = nvalues;
+    hashes = nhashes;
+    count = ncount;
+    rehash(tableSize(capacity));
+  }
+
+  private void rehash(int tableSize) {
+    if (slots.length != tableSize) slots = new int[tableSize];
+    else for (int ii = 0; ii < slots.length; ii++) slots[ii] = 0;
+    for (int ii = 0; ii < count; ii++) {
+      if (keys[ii] != null) insertSlot(ii);
+    }
+  }
+
+  private void insertSlot(int idx) {
+    int mask = slots.length - 1;
+    int slot = spread(hashes[idx]) & mask;
+    while (slots[slot] != 0) slot = (slot + 1) & mask;
+    slots[slot] = idx + 1;
+  }
+
+  // returns a power of two table size that keeps the load factor for count entries under 3/4
+  private static int tableSize(int count) {
+    int size = 8;
+    while (size * 3 / 4 < count) size <<= 1;
+    return size;
+  }
+
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  private String[] keys;
+  private Object[] values;
+  private int[] hashes;
+  private int[] slots;
+  private int count, size;
+}
@@ -0,0 +1,804 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.json;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+
+/**
+ * A streaming JSON parser which reports the structure of a document as a sequence of {@link
+ * Event}s, without building a tree of {@link JsonObject}s and {@link JsonArray}s. Strings and
+ * numbers are accumulated into a reusable buffer and only converted to objects when requested.
+ *
+ * <pre>
+ * JsonPullParser p = JsonPullParser.from("{\"name\":\"Bob\", \"pos\":[1, 2]}");
+ * p.next(); // START_OBJECT
+ * while (p.next() == JsonPullParser.Event.KEY) {
+ *   String key = p.stringValue();
+ *   p.next(); // the start of the value
+ *   if (key.equals("pos")) { x = p.nextInt(); y = p.nextInt(); p.next(); }
+ *   else p.skipValue();
+ * }
+ * </pre>
+ *
+ * <p>The parser validates the document as it goes, throwing {@link JsonParserException} as soon
+ * as it encounters malformed input.</p>
+ */
+public final class JsonPullParser {
+
+  /** The events reported by the parser. */
+  public enum Event {
+    START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY,
+    /** An object key, available via {@link #text} or {@link #stringValue}. */
+    KEY,
+    /** A string value, available via {@link #text} or {@link #stringValue}. */
+    STRING,
+    /** A number value, available via {@link #intValue} and friends. */
+    NUMBER,
+    TRUE, FALSE, NULL,
+    /** The end of the document. Returned by all calls to {@link #next} once reached. */
+    END
+  }
+
+  /**
+   * Creates a parser that reads from {@code json}.
+   */
+  public static JsonPullParser from(CharSequence json) {
+    return new JsonPullParser(new CharSequenceSource(json));
+  }
+
+  /**
+   * Creates a parser that reads UTF-8 encoded JSON from {@code data}.
+   */
+  public static JsonPullParser from(byte[] data) {
+    return from(data, 0, data.length);
+  }
+
+  /**
+   * Creates a parser that reads UTF-8 encoded JSON from {@code data[offset, offset+length)}.
+   */
+  public static JsonPullParser from(byte[] data, int offset, int length) {
+    return new JsonPullParser(new Utf8Source(data, offset, length));
+  }
+
+  /**
+   * Creates a parser that reads from {@code reader}. The reader is not closed by the parser.
+   */
+  public static JsonPullParser from(Reader reader) {
+    return new JsonPullParser(new ReaderSource(reader));
+  }
+
+  /**
+   * Advances to the next event in the document.
+   *
+   * @throws JsonParserException if the document is malformed.
+   */
+  public Event next() throws JsonParserException {
+    switch (context[depth]) {
+    case CTX_DOCUMENT:
+      return event = valueEvent(advanceToken(), CTX_DONE);
+    case CTX_DONE:
+      if (advanceToken() != Token.EOF)
+        throw createParseException(null, "Expected end of input, got " + token, true);
+      context[depth] = CTX_END;
+      return event = Event.END;
+    case CTX_END:
+      return event = Event.END;
+
+    case CTX_ARRAY_FIRST:
+      if (advanceToken() == Token.ARRAY_END) return pop(Event.END_ARRAY);
+      return event = valueEvent(token, CTX_ARRAY_NEXT);
+    case CTX_ARRAY_NEXT:
+      if (advanceToken() == Token.ARRAY_END) return pop(Event.END_ARRAY);
+      if (token != Token.COMMA)
+        throw createParseException(
+          null, "Expected a comma or end of the array instead of " + token, true);
+      if (advanceToken() == Token.ARRAY_END)
+        throw createParseException(null, "Trailing comma found in array", true);
+      return event = valueEvent(token, CTX_ARRAY_NEXT);
+
+    case CTX_OBJECT_FIRST:
+      if (advanceToken() == Token.OBJECT_END) return pop(Event.END_OBJECT);
+      return event = keyEvent();
+    case CTX_OBJECT_NEXT:
+      if (advanceToken() == Token.OBJECT_END) return pop(Event.END_OBJECT);
+      if (token != Token.COMMA)
+        throw createParseException(
+          null, "Expected a comma or end of the object instead of " + token, true);
+      if (advanceToken() == Token.OBJECT_END)
+        throw createParseException(null, "Trailing object found in array", true);
+      return event = keyEvent();
+    case CTX_OBJECT_VALUE:
+      if (advanceToken() != Token.COLON)
+        throw createParseException(null, "Expected COLON, got " + token, true);
+      return event = valueEvent(advanceToken(), CTX_OBJECT_NEXT);
+
+    default:
+      throw new IllegalStateException("Invalid parser context " + context[depth]);
+    }
+  }
+
+  /**
+   * Returns the most recent event returned by {@link #next}, or null if {@link #next} has not yet
+   * been called.
+   */
+  public Event current() {
+    return event;
+  }
+
+  /**
+   * Returns the number of objects and arrays that enclose the current position.
+   */
+  public int depth() {
+    return depth;
+  }
+
+  /**
+   * Skips the value that starts at the current event. If the current event starts an object or
+   * array, advances to its matching end event, otherwise does nothing.
+   */
+  public void skipValue() throws JsonParserException {
+    if (event != Event.START_OBJECT && event != Event.START_ARRAY) return;
+    int target = depth - 1;
+    while (depth > target) next();
+  }
+
+  /**
+   * Returns the text of the current {@link Event#KEY}, {@link Event#STRING} or {@link
+   * Event#NUMBER}. The returned buffer is reused and is only valid until the next call to {@link
+   * #next}.
+   */
+  public CharSequence text() {
+    return buffer;
+  }
+
+  /**
+   * Returns the current {@link Event#KEY} or {@link Event#STRING} as a string.
+   */
+  public String stringValue() throws JsonParserException {
+    if (event != Event.STRING && event != Event.KEY) throw typeMismatch("STRING");
+    return buffer.toString();
+  }
+
+  /**
+   * Returns the value of the current {@link Event#TRUE} or {@link Event#FALSE}.
+   */
+  public boolean booleanValue() throws JsonParserException {
+    if (event == Event.TRUE) return true;
+    if (event == Event.FALSE) return false;
+    throw typeMismatch("TRUE or FALSE");
+  }
+
+  /**
+   * Returns the value of the current {@link Event#NUMBER} as an int. Numbers with a fractional
+   * part or exponent are truncated, and numbers that don't fit into an int wrap around, as they
+   * would when casting.
+   */
+  public int intValue() throws JsonParserException {
+    return (int)longValue();
+  }
+
+  /**
+   * Returns the value of the current {@link Event#NUMBER} as a long. Numbers with a fractional
+   * part or exponent are truncated.
+   */
+  public long longValue() throws JsonParserException {
+    checkNumber();
+    if (numberIsDouble) return (long)doubleValue();
+    boolean negative = buffer.charAt(0) == '-';
+    if (buffer.length() - (negative ? 1 : 0) > 18)
+      return new BigInteger(buffer.toString()).longValue();
+    long value = 0;
+    for (int ii = negative ? 1 : 0, ll = buffer.length(); ii < ll; ii++)
+      value = value * 10 + (buffer.charAt(ii) - '0');
+    return negative ? -value : value;
+  }
+
+  /**
+   * Returns the value of the current {@link Event#NUMBER} as a double.
+   */
+  public double doubleValue() throws JsonParserException {
+    checkNumber();
+    if (!numberIsDouble && buffer.length() < 16) {
+      // negative zero is handled below, as in the tree parser
+      if (buffer.length() == 2 && buffer.charAt(0) == '-' && buffer.charAt(1) == '0') return -0.0;
+      return longValue();
+    }
+    return Double.parseDouble(buffer.toString());
+  }
+
+  /**
+   * Returns the value of the current {@link Event#NUMBER} boxed into the narrowest of {@link
+   * Integer}, {@link Long}, {@link BigInteger} or {@link Double} that can represent it. This is the
+   * representation used by {@link JsonObject} and {@link JsonArray}.
+   */
+  public Number numberValue() throws JsonParserException {
+    checkNumber();
+    int length = buffer.length();
+    if (numberIsDouble) return Double.parseDouble(buffer.toString());
+    boolean negative = buffer.charAt(0) == '-';
+    if (negative && buffer.charAt(1) == '0') return -0.0;
+    int digits = negative ? length - 1 : length;
+    if (digits < 10) // 2 147 483 647
+      return (int)longValue();
+    if (digits < 19) // 9 223 372 036 854 775 807
+      return longValue();
+    return new BigInteger(buffer.toString());
+  }
+
+  /**
+   * Returns true if the current event is a {@link Event#NUMBER} which {@link #numberValue} would
+   * return as an {@link Integer}. Such numbers can be read exactly via {@link #intValue}.
+   */
+  public boolean isInt() {
+    if (event != Event.NUMBER || numberIsDouble) return false;
+    boolean negative = buffer.charAt(0) == '-';
+    if (negative && buffer.charAt(1) == '0') return false;
+    return buffer.length() - (negative ? 1 : 0) < 10;
+  }
+
+  /**
+   * Returns true if the current event is a {@link Event#NUMBER} which {@link #numberValue} would
+   * return as a {@link Double}. Such numbers can be read exactly via {@link #doubleValue}.
+   */
+  public boolean isDouble() {
+    if (event != Event.NUMBER) return false;
+    return numberIsDouble || (buffer.charAt(0) == '-' && buffer.charAt(1) == '0');
+  }
+
+  /**
+   * Advances to the next event, which must be a {@link Event#KEY}, and returns it.
+   */
+  public String nextKey() throws JsonParserException {
+    if (next() != Event.KEY) throw typeMismatch("KEY");
+    return buffer.toString();
+  }
+
+  /**
+   * Advances to the next event, which must be a {@link Event#STRING}, and returns it.
+   */
+  public String nextString() throws JsonParserException {
+    if (next() != Event.STRING) throw typeMismatch("STRING");
+    return buffer.toString();
+  }
+
+  /**
+   * Advances to the next event, which must be a {@link Event#STRING}, and appends it to {@code
+   * into}. This allows strings to be read without allocating.
+   *
+   * @return {@code into}, for call chaining.
+   */
+  public StringBuilder nextString(StringBuilder into) throws JsonParserException {
+    if (next() != Event.STRING) throw typeMismatch("STRING");
+    return into.append(buffer);
+  }
+
+  /**
+   * Advances to the next event, which must be a {@link Event#TRUE} or {@link Event#FALSE}, and
+   * returns its value.
+   */
+  public boolean nextBoolean() throws JsonParserException {
+    next();
+    return booleanValue();
+  }
+
+  /**
+   * Advances to the next event, which must be a {@link Event#NUMBER}, and returns it as an int.
+   */
+  public int nextInt() throws JsonParserException {
+    next();
+    return intValue();
+  }
+
+  /**
+   * Advances to the next event, which must be a {@link Event#NUMBER}, and returns it as a long.
+   */
+  public long nextLong() throws JsonParserException {
+    next();
+    return longValue();
+  }
+
+  /**
+   * Advances to the next event, which must be a {@link Event#NUMBER}, and returns it as a double.
+   */
+  public double nextDouble() throws JsonParserException {
+    next();
+    return doubleValue();
+  }
+
+  /**
+   * Creates a {@link JsonParserException} positioned at the start of the current token.
+   */
+  JsonParserException createTokenException(String message) {
+    return createParseException(null, message, true);
+  }
+
+  private JsonPullParser(Source source) {
+    this.source = source;
+  }
+
+  private Event valueEvent(Token token, int nextContext) throws JsonParserException {
+    switch (token) {
+    case OBJECT_START:
+      context[depth] = nextContext;
+      push(CTX_OBJECT_FIRST);
+      return Event.START_OBJECT;
+    case ARRAY_START:
+      context[depth] = nextContext;
+      push(CTX_ARRAY_FIRST);
+      return Event.START_ARRAY;
+    case STRING:
+      context[depth] = nextContext;
+      return Event.STRING;
+    case NUMBER:
+      context[depth] = nextContext;
+      return Event.NUMBER;
+    case TRUE:
+      context[depth] = nextContext;
+      return Event.TRUE;
+    case FALSE:
+      context[depth] = nextContext;
+      return Event.FALSE;
+    case NULL:
+      context[depth] = nextContext;
+      return Event.NULL;
+    default:
+      throw createParseException(null, "Expected JSON value, got " + token, true);
+    }
+  }
+
+  private Event keyEvent() throws JsonParserException {
+    if (token != Token.STRING)
+      throw createParseException(null, "Expected STRING, got " + token, true);
+    context[depth] = CTX_OBJECT_VALUE;
+    return Event.KEY;
+  }
+
+  private void push(int ctx) {
+    if (++depth == context.length) {
+      int[] ncontext = new int[context.length*2];
+      System.arraycopy(context, 0, ncontext, 0, context.length);
+      context = ncontext;
+    }
+    context[depth] = ctx;
+  }
+
+  private Event pop(Event end) {
+    depth--;
+    return event = end;
+  }
+
+  private void checkNumber() throws JsonParserException {
+    if (event != Event.NUMBER) throw typeMismatch("NUMBER");
+  }
+
+  private JsonParserException typeMismatch(String expected) {
+    return createParseException(null, "Expected " + expected + ", got " + event, true);
+  }
+
+  /**
+   * Consumes a token, first eating up any whitespace ahead of it.
+   */
+  private Token advanceToken() throws JsonParserException {
+    int c = advanceChar();
+    while (isWhitespace(c))
+      c = advanceChar();
+
+    tokenLinePos = linePos;
+    tokenCharPos = index - rowPos;
+    tokenCharOffset = index;
+
+    switch (c) {
+    case -1:
+      return token = Token.EOF;
+    case '[':
+      return token = Token.ARRAY_START;
+    case ']':
+      return token = Token.ARRAY_END;
+    case ',':
+      return token = Token.COMMA;
+    case ':':
+      return token = Token.COLON;
+    case '{':
+      return token = Token.OBJECT_START;
+    case '}':
+      return token = Token.OBJECT_END;
+    case 't':
+      consumeKeyword((char)c, TRUE);
+      return token = Token.TRUE;
+    case 'f':
+      consumeKeyword((char)c, FALSE);
+      return token = Token.FALSE;
+    case 'n':
+      consumeKeyword((char)c, NULL);
+      return token = Token.NULL;
+    case '\"':
+      consumeTokenString();
+      return token = Token.STRING;
+    case '-':
+    case '0':
+    case '1':
+    case '2':
+    case '3':
+    case '4':
+    case '5':
+    case '6':
+    case '7':
+    case '8':
+    case '9':
+      consumeTokenNumber((char)c);
+      return token = Token.NUMBER;
+    case '+':
+    case '.':
+      throw createParseException(null, "Numbers may not start with '" + (char)c + "'", true);
+    default:
+    }
+
+    if (isAsciiLetter(c))
+      throw createHelpfulException((char)c, null, 0);
+
+    throw createParseException(null, "Unexpected character: " + (char)c, true);
+  }
+
+  /**
+   * Expects a given string at the current position.
+   */
+  private void consumeKeyword(char first, char[] expected) throws JsonParserException {
+    for (int i = 0; i < expected.length; i++)
+      if (advanceChar() != expected[i])
+        throw createHelpfulException(first, expected, i);
+
+    // The token should end with something other than an ASCII letter
+    if (isAsciiLetter(peekChar()))
+      throw createHelpfulException(first, expected, expected.length);
+  }
+
+  /**
+   * Steps through to the end of the current number token, validating it against the JSON number
+   * grammar: {@code -?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][+-]?[0-9]+)?}.
+   */
+  private void consumeTokenNumber(char c) throws JsonParserException {
+    StringBuilder buffer = this.buffer;
+    buffer.setLength(0);
+    buffer.append(c);
+    while (isDigitCharacter(peekChar()))
+      buffer.append((char)advanceChar());
+
+    int ii = 0, ll = buffer.length();
+    boolean isDouble = false;
+    if (buffer.charAt(ii) == '-') ii++;
+    // integer part: a single zero, or a run of digits not starting with zero
+    int start = ii;
+    while (ii < ll && isDigit(buffer.charAt(ii))) ii++;
+    boolean valid = ii > start && (buffer.charAt(start) != '0' || ii == start+1);
+    // fractional part
+    if (valid && ii < ll && buffer.charAt(ii) == '.') {
+      isDouble = true;
+      start = ++ii;
+      while (ii < ll && isDigit(buffer.charAt(ii))) ii++;
+      valid = ii > start;
+    }
+    // exponent
+    if (valid && ii < ll && (buffer.charAt(ii) == 'e' || buffer.charAt(ii) == 'E')) {
+      isDouble = true;
+      ii++;
+      if (ii < ll && (buffer.charAt(ii) == '+' || buffer.charAt(ii) == '-')) ii++;
+      start = ii;
+      while (ii < ll && isDigit(buffer.charAt(ii))) ii++;
+      valid = ii > start;
+    }
+    if (!valid || ii != ll)
+      throw createParseException(null, "Malformed number: " + buffer, true);
+    numberIsDouble = isDouble;
+  }
+
+  /**
+   * Steps through to the end of the current string token (the unescaped double quote).
+   */
+  private void consumeTokenString() throws JsonParserException {
+    StringBuilder buffer = this.buffer;
+    buffer.setLength(0);
+    while (true) {
+      char c = stringChar();
+
+      switch (c) {
+      case '\"':
+        return;
+      case '\\':
+        int escape = advanceChar();
+        switch (escape) {
+        case -1:
+          throw createParseException(
+            null, "EOF encountered in the middle of a string escape", false);
+        case 'b':
+          buffer.append('\b');
+          break;
+        case 'f':
+          buffer.append('\f');
+          break;
+        case 'n':
+          buffer.append('\n');
+          break;
+        case 'r':
+          buffer.append('\r');
+          break;
+        case 't':
+          buffer.append('\t');
+          break;
+        case '"':
+        case '/':
+        case '\\':
+          buffer.append((char)escape);
+          break;
+        case 'u':
+          buffer.append((char)(stringHexChar() << 12 | stringHexChar() << 8 //
+              | stringHexChar() << 4 | stringHexChar()));
+          break;
+        default:
+          throw createParseException(null, "Invalid escape: \\" + (char)escape, false);
+        }
+        break;
+      default:
+        buffer.append(c);
+      }
+    }
+  }
+
+  /**
+   * Advances a character, throwing if it is illegal in the context of a JSON string.
+   */
+  private char stringChar() throws JsonParserException {
+    int c = advanceChar();
+    if (c == -1)
+      throw createParseException(null, "String was not terminated before end of input", true);
+    if (c < 32)
+      throw createParseException(null,
+          "Strings may not contain control characters: 0x" + Integer.toString(c, 16), false);
+    return (char)c;
+  }
+
+  /**
+   * Advances a character, throwing if it is illegal in the context of a JSON string hex unicode
+   * escape.
+   */
+  private int stringHexChar() throws JsonParserException {
+    // GWT-compatible Character.digit(char, int)
+    int c = "0123456789abcdef0123456789ABCDEF".indexOf(advanceChar()) % 16;
+    if (c == -1)
+      throw createParseException(null, "Expected unicode hex escape character", false);
+    return c;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  /**
+   * Quick test for characters that may appear in a number.
+   */
+  private static boolean isDigitCharacter(int c) {
+    return (c >= '0' && c <= '9') || c == 'e' || c == 'E' || c == '.' || c == '+' || c == '-';
+  }
+
+  /**
+   * Quick test for whitespace characters.
+   */
+  private static boolean isWhitespace(int c) {
+    return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+  }
+
+  /**
+   * Quick test for ASCII letter characters.
+   */
+  private static boolean isAsciiLetter(int c) {
+    return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+  }
+
+  /**
+   * Peek one char ahead, don't advance, returns -1 on end of input.
+   */
+  private int peekChar() throws JsonParserException {
+    if (pos == limit && !fill()) return -1;
+    return chars[pos];
+  }
+
+  /**
+   * Advance one character ahead, or return -1 on end of input.
+   */
+  private int advanceChar() throws JsonParserException {
+    if (pos == limit && !fill()) return -1;
+    int c = chars[pos++];
+    index++;
+    if (c == '\n') {
+      linePos++;
+      rowPos = index;
+    }
+    return c;
+  }
+
+  /**
+   * Refills our character buffer from our source. Returns false if the source is exhausted.
+   */
+  private boolean fill() throws JsonParserException {
+    if (eof) return false;
+    int read;
+    try {
+      read = source.read(chars);
+    } catch (IOException e) {
+      throw createParseException(e, "Failed to read input", false);
+    }
+    if (read <= 0) {
+      eof = true;
+      return false;
+    }
+    pos = 0;
+    limit = read;
+    return true;
+  }
+
+  /**
+   * Throws a helpful exception based on the current alphanumeric token.
+   */
+  private JsonParserException createHelpfulException(char first, char[] expected,
+                                                     int failurePosition)
+      throws JsonParserException {
+    // Build the first part of the token
+    StringBuilder errorToken = new StringBuilder(first
+        + (expected == null ? "" : new String(expected, 0, failurePosition)));
+
+    // Consume the whole pseudo-token to make a better error message
+    while (isAsciiLetter(peekChar()) && errorToken.length() < 15)
+      errorToken.append((char)advanceChar());
+
+    return createParseException(null, "Unexpected token '" + errorToken + "'"
+        + (expected == null ? "" : ". Did you mean '" + first + new String(expected) + "'?"),
+        true);
+  }
+
+  /**
+   * Creates a {@link JsonParserException} and fills it from the current line and char position.
+   */
+  private JsonParserException createParseException(Exception e, String message,
+                                                   boolean tokenPos) {
+    if (tokenPos)
+      return new JsonParserException(e, message + " on line " + tokenLinePos + ", char " +
+                                     tokenCharPos, tokenLinePos, tokenCharPos, tokenCharOffset);
+    else {
+      int charPos = Math.max(1, index - rowPos);
+      return new JsonParserException(e, message + " on line " + linePos + ", char " + charPos,
+                                     linePos, charPos, index);
+    }
+  }
+
+  /** A source of characters. */
+  private static abstract class Source {
+    /** Reads up to {@code into.length} characters; returns the number read or -1 at the end. */
+    public abstract int read(char[] into) throws IOException;
+  }
+
+  private static class CharSequenceSource extends Source {
+    private final CharSequence chars;
+    private int pos;
+
+    public CharSequenceSource(CharSequence chars) {
+      this.chars = chars;
+    }
+
+    @Override public int read(char[] into) {
+      int count = Math.min(into.length, chars.length() - pos);
+      if (count <= 0) return -1;
+      if (chars instanceof String) ((String)chars).getChars(pos, pos + count, into, 0);
+      else for (int ii = 0; ii < count; ii++) into[ii] = chars.charAt(pos + ii);
+      pos += count;
+      return count;
+    }
+  }
+
+  private static class ReaderSource extends Source {
+    private final Reader reader;
+
+    public ReaderSource(Reader reader) {
+      this.reader = reader;
+    }
+
+    @Override public int read(char[] into) throws IOException {
+      return reader.read(into, 0, into.length);
+    }
+  }
+
+  private static class Utf8Source extends Source {
+    private final byte[] data;
+    private final int end;
+    private int pos;
+
+    public Utf8Source(byte[] data, int offset, int length) {
+      this.data = data;
+      this.pos = offset;
+      this.end = offset + length;
+    }
+
+    @Override public int read(char[] into) {
+      byte[] data = this.data;
+      int pos = this.pos, end = this.end, count = 0;
+      // leave room for a surrogate pair at the end of the buffer
+      int max = into.length - 1;
+      while (pos < end && count < max) {
+        int b = data[pos++];
+        if (b >= 0) { // fast path for ASCII
+          into[count++] = (char)b;
+          continue;
+        }
+        int extra, cp;
+        if ((b & 0xE0) == 0xC0) { extra = 1; cp = b & 0x1F; }
+        else if ((b & 0xF0) == 0xE0) { extra = 2; cp = b & 0x0F; }
+        else if ((b & 0xF8) == 0xF0) { extra = 3; cp = b & 0x07; }
+        else { into[count++] = '\uFFFD'; continue; }
+        while (extra > 0 && pos < end && (data[pos] & 0xC0) == 0x80) {
+          cp = (cp << 6) | (data[pos++] & 0x3F);
+          extra--;
+        }
+        if (extra > 0) into[count++] = '\uFFFD';
+        else if (cp < 0x10000) into[count++] = (char)cp;
+        else {
+          cp -= 0x10000;
+          into[count++] = (char)(0xD800 + (cp >> 10));
+          into[count++] = (char)(0xDC00 + (cp & 0x3FF));
+        }
+      }
+      this.pos = pos;
+      return count == 0 ? -1 : count;
+    }
+  }
+
+  /**
+   * The tokens available in JSON.
+   */
+  private enum Token {
+    EOF, NULL, TRUE, FALSE, STRING, NUMBER, COMMA, COLON,
+    OBJECT_START, OBJECT_END, ARRAY_START, ARRAY_END;
+  }
+
+  private final Source source;
+  private final char[] chars = new char[BUFFER_SIZE];
+  private int pos, limit;
+  private boolean eof;
+
+  private final StringBuilder buffer = new StringBuilder();
+  private boolean numberIsDouble;
+  private Token token;
+  private Event event;
+
+  // the parsing context at each level of nesting; level zero is the document itself
+  private int[] context = new int[16];
+  private int depth;
+
+  private int linePos = 1, rowPos, index;
+  private int tokenLinePos, tokenCharPos, tokenCharOffset;
+
+  private static final int BUFFER_SIZE = 4096;
+
+  private static final int CTX_DOCUMENT = 0; // expecting the top-level value
+  private static final int CTX_DONE = 1; // expecting the end of input
+  private static final int CTX_END = 2; // at the end of input
+  private static final int CTX_ARRAY_FIRST = 3; // expecting a value or ]
+  private static final int CTX_ARRAY_NEXT = 4; // expecting , or ]
+  private static final int CTX_OBJECT_FIRST = 5; // expecting a key or }
+  private static final int CTX_OBJECT_NEXT = 6; // expecting , or }
+  private static final int CTX_OBJECT_VALUE = 7; // expecting : and a value
+
+  private static final char[] TRUE = { 'r', 'u', 'e' };
+  private static final char[] FALSE = { 'a', 'l', 's', 'e' };
+  private static final char[] NULL = { 'u', 'l', 'l' };
+}
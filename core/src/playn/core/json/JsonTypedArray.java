@@ -25,7 +25,7 @@ import playn.core.Json;
  *
  * This class is public so that backends can re-use it, but it is not part of the public API.
  */
-public class JsonTypedArray<T> implements Json.TypedArray<T> {
+public class JsonTypedArray<T> implements Json.TypedArray.Numeric<T> {
   private final Json.Array array;
   private Getter<T> getter;
 
@@ -106,6 +106,22 @@ public class JsonTypedArray<T> implements Json.TypedArray<T> {
     return getter.get(array, index, dflt);
   }
 
+  @Override
+  public int[] toIntArray() {
+    if (array instanceof JsonArray) return ((JsonArray)array).toIntArray();
+    int[] values = new int[array.length()];
+    for (int ii = 0; ii < values.length; ii++) values[ii] = array.getInt(ii);
+    return values;
+  }
+
+  @Override
+  public double[] toDoubleArray() {
+    if (array instanceof JsonArray) return ((JsonArray)array).toDoubleArray();
+    double[] values = new double[array.length()];
+    for (int ii = 0; ii < values.length; ii++) values[ii] = array.getDouble(ii);
+    return values;
+  }
+
   @Override
   public Iterator<T> iterator() {
     return new Iterator<T>() {
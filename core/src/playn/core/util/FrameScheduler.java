@@ -0,0 +1,113 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.util;
+
+import playn.core.AbstractPlatform;
+
+/**
+ * Runs deferred work on the game thread, once per frame, in priority order. Work is added to one
+ * of a number of {@link Lane}s, each of which can be given a per-frame time budget. Work which
+ * doesn't fit into a lane's budget is carried over to the next frame, so that (for example) a
+ * burst of asset completions during level streaming is spread over several frames rather than
+ * causing one very long frame.
+ */
+public class FrameScheduler {
+
+  /** The lanes into which work is scheduled, in the order in which they are executed. */
+  public static enum Lane {
+    /** Input related work, which is run first. */
+    INPUT,
+    /** Game logic; runnables passed to {@link AbstractPlatform#invokeLater} go here. */
+    UPDATE,
+    /** Notifications of completed asset loads and other asynchronous operations. */
+    ASSETS,
+    /** Low priority work, which is run last. */
+    BACKGROUND;
+  }
+
+  /**
+   * Creates a scheduler for the specified platform.
+   */
+  public FrameScheduler(AbstractPlatform platform) {
+    this.platform = platform;
+    Lane[] lanes = Lane.values();
+    queues = new RunQueue[lanes.length];
+    for (int ii = 0; ii < lanes.length; ii++) queues[ii] = new RunQueue(platform);
+    lastTimes = new double[lanes.length];
+  }
+
+  /**
+   * Adds {@code runnable} to the end of {@code lane}. May be called from any thread.
+   */
+  public void add(Lane lane, Runnable runnable) {
+    queues[lane.ordinal()].add(runnable);
+  }
+
+  /**
+   * Returns the queue used for {@code lane}.
+   */
+  public RunQueue queue(Lane lane) {
+    return queues[lane.ordinal()];
+  }
+
+  /**
+   * Configures the maximum time (in milliseconds) spent running work in {@code lane} each frame.
+   * Zero (the default) means no limit. See {@link RunQueue#setTimeBudget}.
+   */
+  public void setBudget(Lane lane, double millis) {
+    queues[lane.ordinal()].setTimeBudget(millis);
+  }
+
+  /**
+   * Returns the number of runnables waiting in {@code lane}.
+   */
+  public int pending(Lane lane) {
+    return queues[lane.ordinal()].pending();
+  }
+
+  /**
+   * Returns the number of runnables from {@code lane} run by the most recent {@link #execute}.
+   */
+  public int lastExecuted(Lane lane) {
+    return queues[lane.ordinal()].lastExecuted();
+  }
+
+  /**
+   * Returns the time (in milliseconds) spent running {@code lane} by the most recent {@link
+   * #execute}.
+   */
+  public double lastTime(Lane lane) {
+    return lastTimes[lane.ordinal()];
+  }
+
+  /**
+   * Runs the pending work in each lane, in lane order, subject to the lanes' budgets. This is
+   * called by the platform once per frame, on the game thread.
+   */
+  public void execute() {
+    double start = platform.time();
+    for (int ii = 0; ii < queues.length; ii++) {
+      queues[ii].execute();
+      double end = platform.time();
+      lastTimes[ii] = end - start;
+      start = end;
+    }
+  }
+
+  private final AbstractPlatform platform;
+  private final RunQueue[] queues;
+  private final double[] lastTimes;
+}
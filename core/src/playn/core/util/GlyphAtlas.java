@@ -0,0 +1,186 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import playn.core.*;
+import static playn.core.PlayN.graphics;
+
+/**
+ * Renders text by drawing individual glyphs from a cache of glyph images. Each glyph is rendered
+ * (via {@link Canvas#fillText}) into a shared atlas image the first time it is needed, after which
+ * drawing text is just a matter of drawing a textured quad per glyph onto a {@link Surface} (for
+ * example the surface of an {@link ImmediateLayer} or a {@link SurfaceImage}). Text that changes
+ * often (counters, chat, etc.) can thus be drawn without rendering text into a canvas and
+ * uploading it to the GPU every time it changes.
+ *
+ * <p>Glyphs are rendered in white, so the color of the text is controlled by the tint of the
+ * surface onto which it is drawn. Glyphs are positioned using their individual advances, so
+ * kerning and ligatures are not applied, and text is drawn as a single line.</p>
+ */
+public class GlyphAtlas {
+
+  /** The format used to render glyphs. */
+  public final TextFormat format;
+
+  /**
+   * Creates a glyph atlas which renders glyphs in the specified format, into atlas pages of
+   * default size.
+   */
+  public GlyphAtlas(TextFormat format) {
+    this(format, 256);
+  }
+
+  /**
+   * Creates a glyph atlas which renders glyphs in the specified format, into atlas pages of
+   * {@code pageSize} x {@code pageSize} pixels.
+   */
+  public GlyphAtlas(TextFormat format, int pageSize) {
+    this.format = format;
+    this.pageSize = pageSize;
+    TextLayout xx = graphics().layoutText("xx", format);
+    this.sandwichWidth = xx.width();
+    this.ascent = xx.ascent();
+    this.descent = xx.descent();
+    this.cellHeight = (int)Math.ceil(xx.height()) + PAD;
+  }
+
+  /** Returns the height of a line of text rendered by this atlas. */
+  public float height() {
+    return ascent + descent;
+  }
+
+  /** Returns the width of {@code text} when rendered by this atlas. */
+  public float width(String text) {
+    float width = 0;
+    for (int ii = 0, ll = text.length(); ii < ll; ii++) width += glyph(text.charAt(ii)).advance;
+    return width;
+  }
+
+  /** Returns the number of glyphs rendered into this atlas. */
+  public int glyphCount() {
+    return glyphs.size();
+  }
+
+  /** Returns the number of atlas pages created by this atlas. */
+  public int pageCount() {
+    return pages.size();
+  }
+
+  /**
+   * Ensures that the glyphs for all of the characters in {@code chars} are rendered into the
+   * atlas. This is not necessary, but can be used to avoid rendering glyphs during gameplay.
+   */
+  public void prepare(String chars) {
+    for (int ii = 0, ll = chars.length(); ii < ll; ii++) glyph(chars.charAt(ii));
+  }
+
+  /**
+   * Draws {@code text} onto {@code surf}, with its upper left at {@code (x, y)}.
+   * @return the x coordinate at which text following this text would be drawn.
+   */
+  public float draw(Surface surf, String text, float x, float y) {
+    for (int ii = 0, ll = text.length(); ii < ll; ii++) {
+      Glyph glyph = glyph(text.charAt(ii));
+      if (glyph.width > 0) surf.drawImage(glyph.page, x - glyph.offset, y, glyph.width, cellHeight,
+                                          glyph.x, glyph.y, glyph.width, cellHeight);
+      x += glyph.advance;
+    }
+    return x;
+  }
+
+  /**
+   * Draws the text of {@code layout} onto {@code surf}, with its upper left at {@code (x, y)}.
+   * The layout's format is ignored in favor of this atlas's format.
+   * @return the x coordinate at which text following this text would be drawn.
+   */
+  public float draw(Surface surf, TextLayout layout, float x, float y) {
+    return draw(surf, layout.text(), x, y);
+  }
+
+  protected Glyph glyph(char c) {
+    Glyph glyph = glyphs.get(c);
+    if (glyph == null) glyphs.put(c, glyph = createGlyph(c));
+    return glyph;
+  }
+
+  protected Glyph createGlyph(char c) {
+    String text = String.valueOf(c);
+    // the width of a glyph's layout is that of its inked bounds, which omits leading and trailing
+    // space (and is zero for whitespace); so we obtain the advance by measuring the glyph between
+    // two other glyphs
+    float advance = graphics().layoutText("x" + text + "x", format).width() - sandwichWidth;
+    if (isWhitespace(c)) return new Glyph(null, 0, 0, 0, 0, advance);
+
+    TextLayout layout = graphics().layoutText(text, format);
+    // some glyphs render to the left of their origin, so we shift them right in their cell
+    int offset = (int)Math.ceil(Math.max(0, -layout.bounds().x())) + PAD;
+    int width = offset + (int)Math.ceil(layout.width()) + PAD;
+    if (width > pageSize || cellHeight > pageSize)
+      throw new IllegalArgumentException("Glyph too large for atlas page: " + c);
+
+    // move to the next row (or the next page) if this glyph won't fit in the current row
+    if (rowX + width > pageSize) {
+      rowX = 0;
+      rowY += cellHeight;
+    }
+    if (pages.isEmpty() || rowY + cellHeight > pageSize) {
+      pages.add(graphics().createImage(pageSize, pageSize));
+      pages.get(pages.size()-1).canvas().setFillColor(0xFFFFFFFF);
+      rowX = rowY = 0;
+    }
+
+    CanvasImage page = pages.get(pages.size()-1);
+    page.canvas().fillText(layout, rowX + offset, rowY);
+    Glyph glyph = new Glyph(page, rowX, rowY, width, offset, advance);
+    rowX += width;
+    return glyph;
+  }
+
+  // we avoid Character.isWhitespace, as not every GWT version emulates it
+  protected static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+  }
+
+  /** Records the location of a glyph in the atlas. */
+  protected static class Glyph {
+    public final CanvasImage page;
+    public final int x, y, width, offset;
+    public final float advance;
+
+    public Glyph(CanvasImage page, int x, int y, int width, int offset, float advance) {
+      this.page = page;
+      this.x = x;
+      this.y = y;
+      this.width = width;
+      this.offset = offset;
+      this.advance = advance;
+    }
+  }
+
+  /** Space left around each glyph, to leave room for antialiasing. */
+  protected static final int PAD = 1;
+
+  protected final int pageSize, cellHeight;
+  protected final float sandwichWidth, ascent, descent;
+  protected final Map<Character,Glyph> glyphs = new HashMap<Character,Glyph>();
+  protected final List<CanvasImage> pages = new ArrayList<CanvasImage>();
+  protected int rowX, rowY;
+}
@@ -15,23 +15,39 @@
  */
 package playn.core.util;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
 import playn.core.AbstractPlatform;
 import playn.core.Platform;
 
 /**
  * Manages a queue of runnables. Used to implement {@link Platform#invokeLater} by the various
  * platforms.
+ *
+ * <p>Runnables may be added from any thread, but {@link #execute} must only be called from a
+ * single thread (the game thread). Adding a runnable does not block: the queue is a linked list
+ * onto whose tail new entries are atomically swapped.</p>
  */
 public class RunQueue {
 
   private final AbstractPlatform platform;
+  private final AtomicReference<Entry> tail;
+  private final AtomicInteger pending = new AtomicInteger();
+  // the most recently executed entry (or a stub, initially); only accessed by execute()
   private Entry head;
 
+  private double timeBudget;
+  private int lastExecuted;
+  private double lastLatency;
+
   private class Entry {
-    public final Runnable runnable;
-    public Entry next;
-    public Entry(Runnable runnable) {
+    public Runnable runnable;
+    public final double added;
+    public volatile Entry next;
+    public Entry(Runnable runnable, double added) {
       this.runnable = runnable;
+      this.added = added;
     }
   }
 
@@ -40,39 +56,83 @@ public class RunQueue {
    */
   public RunQueue(AbstractPlatform platform) {
     this.platform = platform;
+    this.head = new Entry(null, 0);
+    this.tail = new AtomicReference<Entry>(head);
+  }
+
+  /**
+   * Configures the maximum time (in milliseconds) that a call to {@link #execute} will spend
+   * running runnables. Runnables which are not run because the budget is exhausted remain at the
+   * head of the queue and are run by the next call to {@link #execute}. Zero (the default) means
+   * no limit. Note that a single long running runnable can still exceed the budget.
+   */
+  public void setTimeBudget(double millis) {
+    timeBudget = millis;
+  }
+
+  /**
+   * Returns the number of runnables waiting to be executed.
+   */
+  public int pending() {
+    return pending.get();
   }
 
   /**
-   * Executes all pending runnables (in the order they were added).
+   * Returns the number of runnables executed by the most recent call to {@link #execute}.
+   */
+  public int lastExecuted() {
+    return lastExecuted;
+  }
+
+  /**
+   * Returns the longest time (in milliseconds) that a runnable executed by the most recent call
+   * to {@link #execute} spent waiting in the queue.
+   */
+  public double lastLatency() {
+    return lastLatency;
+  }
+
+  /**
+   * Executes pending runnables (in the order they were added). Runnables added while this method
+   * is executing are not executed until the next call. If a time budget is configured, stops once
+   * it is exhausted, leaving the remaining runnables for the next call.
    */
   public void execute() {
-    Entry head;
-    synchronized(this) {
-      head = this.head;
-      this.head = null;
-    }
-    while (head != null) {
+    Entry last = tail.get();
+    double start = platform.time(), end = start + timeBudget;
+    int executed = 0;
+    double latency = 0;
+    Entry head = this.head;
+    while (head != last) {
+      // the producer that added an entry may not yet have linked it to its predecessor, in
+      // which case we leave it (and anything after it) for the next call
+      Entry next = head.next;
+      if (next == null) break;
+      // the entry we run becomes the new head, so clear out its runnable
+      Runnable runnable = next.runnable;
+      next.runnable = null;
+      head = next;
+      pending.decrementAndGet();
+      latency = Math.max(latency, start - next.added);
+      executed++;
       try {
-        head.runnable.run();
+        runnable.run();
       } catch (Throwable t) {
-        platform.reportError("Failure executing runnable: " + head.runnable, t);
+        platform.reportError("Failure executing runnable: " + runnable, t);
       }
-      head = head.next;
+      if (timeBudget > 0 && platform.time() >= end) break;
     }
+    this.head = head;
+    lastExecuted = executed;
+    lastLatency = latency;
   }
 
   /**
    * Adds {@code runnable} to the end of the queue.
    */
-  public synchronized void add(Runnable runnable) {
-    if (head == null) {
-      head = new Entry(runnable);
-    } else {
-      Entry parent = head;
-      while (parent.next != null) {
-        parent = parent.next;
-      }
-      parent.next = new Entry(runnable);
-    }
+  public void add(Runnable runnable) {
+    Entry entry = new Entry(runnable, platform.time());
+    pending.incrementAndGet();
+    tail.getAndSet(entry).next = entry;
   }
 }
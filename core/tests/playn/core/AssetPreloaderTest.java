@@ -0,0 +1,207 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import playn.core.gl.GLContext;
+import playn.core.gl.RecordingGL20;
+import playn.core.gl.Scale;
+import playn.core.gl.TestImageGL;
+
+/**
+ * Tests {@link AssetPreloader}.
+ */
+public class AssetPreloaderTest {
+
+  @Test public void testLoadsInPriorityOrder() {
+    TestPlatform platform = new TestPlatform();
+    TestAssets assets = new TestAssets(platform);
+    AssetPreloader loader = new AssetPreloader(platform, assets, 1);
+    RecordingListener low = new RecordingListener(), high = new RecordingListener();
+
+    AssetPreloader.Manifest level = new AssetPreloader.Manifest();
+    for (int ii = 0; ii < 5; ii++) level.image("level", "offscreen" + ii, 0);
+    loader.load(level, low);
+    AssetPreloader.Manifest screen = new AssetPreloader.Manifest();
+    screen.image("screen", "onscreen0", 10).text("screen", "config", 5);
+    screen.image("screen", "onscreen1", 10);
+    loader.load(screen, high);
+
+    // a submitted image is available immediately, but not ready until delivered
+    Image image = loader.image("onscreen0");
+    assertFalse(image.isReady());
+
+    platform.runAsync();
+    assertEquals("[onscreen0, onscreen1, config, offscreen0, offscreen1, offscreen2, " +
+                 "offscreen3, offscreen4]", assets.fetched.toString());
+    assertFalse(image.isReady());
+    platform.scheduler().execute();
+    assertTrue(image.isReady());
+    assertEquals("text:config", loader.text("config"));
+
+    assertTrue(high.done);
+    assertEquals(3, high.loaded);
+    assertEquals(2 * 16 * 16 * 4 + "text:config".length(), high.bytes);
+    assertTrue(low.done);
+    assertEquals(5, low.loaded);
+    assertEquals(0, low.eta, 0);
+  }
+
+  @Test public void testDeliversInPriorityOrder() {
+    TestPlatform platform = new TestPlatform();
+    TestAssets assets = new TestAssets(platform);
+    AssetPreloader loader = new AssetPreloader(platform, assets, 2);
+    loader.load(new AssetPreloader.Manifest().image("g", "low0", 0), null);
+    loader.load(new AssetPreloader.Manifest().image("g", "low1", 1), null);
+    assertEquals(2, platform.async.size()); // one worker per asset, up to the maximum
+    platform.runAsync();
+    loader.load(new AssetPreloader.Manifest().image("g", "high0", 5).image("g", "high1", 6), null);
+    platform.runAsync();
+    assertEquals("[low1, low0, high1, high0]", assets.fetched.toString());
+
+    // everything completed before the frame, so it is delivered in priority order
+    platform.scheduler().execute();
+    assertEquals("[high1, high0, low1, low0]", assets.delivered.toString());
+  }
+
+  @Test public void testCancelsGroup() {
+    TestPlatform platform = new TestPlatform();
+    TestAssets assets = new TestAssets(platform);
+    AssetPreloader loader = new AssetPreloader(platform, assets, 1);
+    RecordingListener listener = new RecordingListener();
+    AssetPreloader.Manifest manifest = new AssetPreloader.Manifest();
+    manifest.image("old", "a", 0).image("old", "b", 0).image("new", "c", 0);
+    loader.load(manifest, listener);
+    Image a = loader.image("a");
+
+    loader.cancel("old");
+    assertNull(loader.image("a"));
+    assertEquals(1, loader.pending());
+    platform.runAsync();
+    platform.scheduler().execute();
+    assertEquals("[c]", assets.fetched.toString());
+    assertFalse(a.isReady());
+    assertTrue(listener.done);
+    assertEquals(1, listener.loaded);
+    assertEquals(1, listener.total);
+  }
+
+  @Test public void testReportsErrors() {
+    TestPlatform platform = new TestPlatform();
+    TestAssets assets = new TestAssets(platform);
+    AssetPreloader loader = new AssetPreloader(platform, assets, 1);
+    RecordingListener listener = new RecordingListener();
+    loader.load(new AssetPreloader.Manifest().image("g", "missing", 0).bytes("g", "data", 0),
+                listener);
+    platform.runAsync();
+    platform.scheduler().execute();
+    assertEquals(1, listener.errors);
+    assertEquals(1, listener.loaded);
+    assertTrue(listener.done);
+    assertEquals(8, loader.bytes("data").length);
+  }
+
+  protected static class RecordingListener extends AssetWatcher.Listener {
+    public int loaded, errors, total;
+    public long bytes;
+    public float eta;
+    public boolean done;
+
+    @Override public void progress(int loaded, int errors, int total, long bytes,
+                                   float bytesPerSecond, float eta) {
+      this.loaded = loaded;
+      this.errors = errors;
+      this.total = total;
+      this.bytes = bytes;
+      this.eta = eta;
+    }
+    @Override public void done() {
+      done = true;
+    }
+    @Override public void error(Throwable e) {
+      // counted via progress
+    }
+  }
+
+  protected static class TestAsyncImage extends TestImageGL implements AsyncImage<Object> {
+    private final List<String> delivered;
+    private Object impl;
+
+    public TestAsyncImage(GLContext ctx, List<String> delivered) {
+      super(ctx, 16, 16);
+      this.delivered = delivered;
+    }
+    @Override public boolean isReady() {
+      return impl != null;
+    }
+    public void setImage(Object impl, Scale scale) {
+      this.impl = impl;
+      delivered.add((String)impl);
+    }
+    public void setError(Throwable error) {
+      // not ready
+    }
+  }
+
+  protected static class TestAssets extends AbstractAssets<Object> {
+    public final List<String> fetched = new ArrayList<String>();
+    public final List<String> delivered = new ArrayList<String>();
+    private final GLContext ctx = new RecordingGL20().createContext(100, 100);
+
+    public TestAssets(AbstractPlatform platform) {
+      super(platform);
+    }
+
+    @Override protected Image createStaticImage(Object impl, Scale scale) {
+      throw new UnsupportedOperationException();
+    }
+    @Override protected AsyncImage<Object> createAsyncImage(float width, float height) {
+      return new TestAsyncImage(ctx, delivered);
+    }
+    @Override protected Image loadImage(String path, ImageReceiver<Object> recv) {
+      fetched.add(path);
+      if (path.startsWith("missing")) return recv.loadFailed(new Exception("No such image"));
+      return recv.imageLoaded(path, Scale.ONE);
+    }
+    @Override public Sound getSound(String path) {
+      fetched.add(path);
+      return new Sound.Silence();
+    }
+    @Override public String getTextSync(String path) {
+      fetched.add(path);
+      return "text:" + path;
+    }
+    @Override public byte[] getBytesSync(String path) {
+      fetched.add(path);
+      return new byte[8];
+    }
+  }
+
+  protected static class TestPlatform extends StubPlatform {
+    public final List<Runnable> async = new ArrayList<Runnable>();
+
+    public void runAsync() {
+      while (!async.isEmpty()) async.remove(0).run();
+    }
+
+    @Override public void invokeAsync(Runnable action) {
+      async.add(action);
+    }
+  }
+}
@@ -0,0 +1,199 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import playn.core.gl.GL20Context;
+import playn.core.gl.RecordingGL20;
+import playn.core.gl.TestImageGL;
+import playn.core.util.Callback;
+
+/**
+ * Tests {@link CachingAssets}.
+ */
+public class CachingAssetsTest {
+
+  @Test public void testCachesWithoutBudget() {
+    TestAssets delegate = new TestAssets();
+    CachingAssets assets = new CachingAssets(delegate);
+    Image image = assets.getImage("a");
+    assertSame(image, assets.getImage("a"));
+    assertSame(assets.getSound("s"), assets.getSound("s"));
+    for (int ii = 0; ii < 10; ii++) assets.getImage("image" + ii);
+    assertEquals(12, delegate.loads);
+    assertEquals(2, assets.hits());
+    assertEquals(0, assets.evictions());
+    assertEquals(11 * 16 * 16 * 4 + TestSound.BYTES, assets.residentBytes());
+  }
+
+  @Test public void testEvictsLeastRecentlyUsed() {
+    TestAssets delegate = new TestAssets();
+    // room for three 16x16 images
+    CachingAssets assets = new CachingAssets(delegate, 3 * 16 * 16 * 4, 0);
+    TestImageGL a = (TestImageGL)assets.getImage("a");
+    Image b = assets.getImage("b");
+    assets.getImage("c");
+    a.ensureTexture();
+    assertSame(a, assets.getImage("a")); // a is now more recently used than b
+
+    assets.getImage("d");
+    assertEquals(1, assets.evictions());
+    assertSame(a, assets.getImage("a"));
+    assertNotSame(b, assets.getImage("b")); // b was evicted, so is loaded again
+    assertEquals(3 * 16 * 16 * 4, assets.residentBytes());
+    assertEquals(2, assets.evictions());
+    a.ensureTexture();
+    assertEquals(1, a.updates); // c was evicted, not a, so a's texture was not recreated
+    assertEquals(2, assets.hits());
+    assertEquals(5, assets.misses());
+    assertEquals(2 / 7f, assets.hitRate(), 0);
+  }
+
+  @Test public void testPinsReferencedImages() {
+    TestAssets delegate = new TestAssets();
+    CachingAssets assets = new CachingAssets(delegate, 16 * 16 * 4, 0);
+    TestImageGL a = (TestImageGL)assets.getImage("a");
+    a.reference();
+    a.ensureTexture();
+    Image b = assets.getImage("b");
+    // a is displayed, so b is evicted in spite of being more recently used
+    assertSame(a, assets.getImage("a"));
+    assertEquals(1, assets.evictions());
+    assertTrue(a.ensureTexture() > 0);
+
+    // once a is no longer displayed, it can be evicted
+    a.release();
+    assertNotSame(b, assets.getImage("b"));
+    assertEquals(2, assets.evictions());
+    assertNotSame(a, assets.getImage("a"));
+  }
+
+  @Test public void testReleasesSounds() {
+    TestAssets delegate = new TestAssets();
+    CachingAssets assets = new CachingAssets(delegate, TestSound.BYTES, 0);
+    TestSound one = (TestSound)assets.getSound("one");
+    one.play();
+    TestSound two = (TestSound)assets.getSound("two");
+    // one is playing, so two is evicted
+    assertFalse(one.released);
+    assertTrue(two.released);
+    one.stop();
+    assets.getSound("three");
+    assertTrue(one.released);
+  }
+
+  @Test public void testCountsSoundsOnceLoaded() {
+    TestAssets delegate = new TestAssets();
+    delegate.loadSounds = false;
+    CachingAssets assets = new CachingAssets(delegate, TestSound.BYTES, 0);
+    TestSound one = (TestSound)assets.getSound("one");
+    TestSound two = (TestSound)assets.getSound("two");
+    // neither sound has loaded, so neither uses any memory yet
+    assertEquals(0, assets.residentBytes());
+    one.onLoaded(new Object());
+    assertEquals(TestSound.BYTES, assets.residentBytes());
+    two.onLoaded(new Object());
+    assertEquals(2 * TestSound.BYTES, assets.residentBytes());
+
+    // once over budget, the next addition evicts the loaded sounds
+    delegate.loadSounds = true;
+    assets.getSound("three");
+    assertEquals(2, assets.evictions());
+    assertTrue(one.released && two.released);
+    assertEquals(TestSound.BYTES, assets.residentBytes());
+  }
+
+  @Test public void testCachesData() throws Exception {
+    TestAssets delegate = new TestAssets();
+    CachingAssets assets = new CachingAssets(delegate, Long.MAX_VALUE, 20);
+    assertEquals("text:a", assets.getTextSync("a"));
+    final String[] got = new String[1];
+    assets.getText("a", new Callback<String>() {
+      public void onSuccess(String text) { got[0] = text; }
+      public void onFailure(Throwable cause) { fail(); }
+    });
+    assertEquals("text:a", got[0]);
+    assertEquals(1, delegate.loads);
+    assertEquals(12, assets.dataBytes());
+
+    byte[] bytes = assets.getBytesSync("b");
+    assertSame(bytes, assets.getBytesSync("b"));
+    assertEquals(2, delegate.loads);
+
+    // adding more bytes pushes out the least recently used text
+    assets.getBytesSync("c");
+    assertEquals(16, assets.dataBytes());
+    assets.getTextSync("a");
+    assertEquals(4, delegate.loads);
+  }
+
+  protected static class TestSound extends AbstractSound<Object> {
+    public static final int BYTES = 1000;
+    public boolean released;
+
+    public TestSound(boolean loaded) {
+      if (loaded) onLoaded(new Object());
+    }
+
+    @Override protected int byteSizeImpl() { return BYTES; }
+    @Override protected boolean playImpl() { return true; }
+    @Override protected void stopImpl() {}
+    @Override protected void setLoopingImpl(boolean looping) {}
+    @Override protected void setVolumeImpl(float volume) {}
+    @Override protected void releaseImpl() { released = true; }
+  }
+
+  protected static class TestAssets implements Assets {
+    public int loads;
+    public boolean loadSounds = true;
+    private final GL20Context ctx = new RecordingGL20().createContext(100, 100);
+
+    public Image getImageSync(String path) {
+      return getImage(path);
+    }
+    public Image getImage(String path) {
+      loads++;
+      return new TestImageGL(ctx, 16, 16);
+    }
+    public Image getRemoteImage(String url) {
+      return getImage(url);
+    }
+    public Image getRemoteImage(String url, float width, float height) {
+      return getImage(url);
+    }
+    public Sound getSound(String path) {
+      loads++;
+      return new TestSound(loadSounds);
+    }
+    public Sound getMusic(String path) {
+      return getSound(path);
+    }
+    public String getTextSync(String path) {
+      loads++;
+      return "text:" + path;
+    }
+    public void getText(String path, Callback<String> callback) {
+      callback.onSuccess(getTextSync(path));
+    }
+    public byte[] getBytesSync(String path) {
+      loads++;
+      return new byte[8];
+    }
+    public void getBytes(String path, Callback<byte[]> callback) {
+      callback.onSuccess(getBytesSync(path));
+    }
+  }
+}
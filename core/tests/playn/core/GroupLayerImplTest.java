@@ -24,6 +24,8 @@ import java.util.Random;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import pythagoras.f.Point;
+
 /**
  * Tests parts of {@link GroupLayerImpl}.
  */
@@ -68,6 +70,165 @@ public class GroupLayerImplTest {
     }
   }
 
+  @Test public void testHitIndexMatchesScan() {
+    TestGroupLayer scanned = new TestGroupLayer(), indexed = new TestGroupLayer();
+    indexed.impl.setHitIndex(indexed, 25);
+    Random rando = new Random(42);
+    List<SizedLayer> sl = new ArrayList<SizedLayer>(), il = new ArrayList<SizedLayer>();
+    for (int ii = 0; ii < 500; ii++) {
+      float x = rando.nextFloat()*500, y = rando.nextFloat()*500, depth = rando.nextInt(5);
+      float w = 5 + rando.nextFloat()*40, h = 5 + rando.nextFloat()*40;
+      float rot = rando.nextFloat(), scale = 0.5f + rando.nextFloat();
+      sl.add(configure(new SizedLayer(w, h), x, y, depth, rot, scale, scanned));
+      il.add(configure(new SizedLayer(w, h), x, y, depth, rot, scale, indexed));
+    }
+    // a child with a hit tester is always tested, regardless of its bounds
+    Layer.HitTester tester = new Layer.HitTester() {
+      public Layer hitTest(Layer layer, Point p) {
+        return (p.x < 0 && p.y < 0) ? layer : null;
+      }
+    };
+    configure(new SizedLayer(1, 1), 400, 400, 10, 0, 1, scanned).setHitTester(tester);
+    configure(new SizedLayer(1, 1), 400, 400, 10, 0, 1, indexed).setHitTester(tester);
+    assertSameHits(scanned, indexed, sl, il, rando);
+
+    // move, resize, reorder and remove some children and make sure the index keeps up
+    for (int ii = 0; ii < 100; ii++) {
+      int idx = rando.nextInt(sl.size());
+      switch (ii % 4) {
+      case 0:
+        float x = rando.nextFloat()*500, y = rando.nextFloat()*500;
+        sl.get(idx).setTranslation(x, y);
+        il.get(idx).setTranslation(x, y);
+        break;
+      case 1:
+        float scale = 0.5f + rando.nextFloat()*2;
+        sl.get(idx).setScale(scale);
+        il.get(idx).setScale(scale);
+        break;
+      case 2:
+        float depth = rando.nextInt(5);
+        sl.get(idx).setDepth(depth);
+        il.get(idx).setDepth(depth);
+        break;
+      case 3:
+        scanned.remove(sl.remove(idx));
+        indexed.remove(il.remove(idx));
+        break;
+      }
+    }
+    sl.get(0).setSize(1000, 1000); // spans too many cells to be placed in the grid
+    il.get(0).setSize(1000, 1000);
+    assertSameHits(scanned, indexed, sl, il, rando);
+  }
+
+  @Test public void testHitIndexMatchesScanWithWideChildren() {
+    TestGroupLayer scanned = new TestGroupLayer(), indexed = new TestGroupLayer();
+    indexed.impl.setHitIndex(indexed, 25);
+    Random rando = new Random(7);
+    List<SizedLayer> sl = new ArrayList<SizedLayer>(), il = new ArrayList<SizedLayer>();
+    for (int ii = 0; ii < 300; ii++) {
+      // every third child spans too many cells to be placed in the grid
+      float size = (ii % 3 == 0) ? 300 : 20, depth = rando.nextInt(5);
+      float x = rando.nextFloat()*500, y = rando.nextFloat()*500;
+      sl.add(configure(new SizedLayer(size, size), x, y, depth, 0, 1, scanned));
+      il.add(configure(new SizedLayer(size, size), x, y, depth, 0, 1, indexed));
+    }
+    assertSameHits(scanned, indexed, sl, il, rando);
+
+    // reorder, resize and remove children, which moves them into, out of and around the wide list
+    for (int ii = 0; ii < 150; ii++) {
+      int idx = rando.nextInt(sl.size());
+      switch (ii % 3) {
+      case 0:
+        float depth = rando.nextInt(5);
+        sl.get(idx).setDepth(depth);
+        il.get(idx).setDepth(depth);
+        break;
+      case 1:
+        float size = SIZES[rando.nextInt(SIZES.length)]; // a zero size can't be hit
+        sl.get(idx).setSize(size, size);
+        il.get(idx).setSize(size, size);
+        break;
+      case 2:
+        scanned.remove(sl.remove(idx));
+        indexed.remove(il.remove(idx));
+        break;
+      }
+      if (ii % 10 == 0) assertSameHits(scanned, indexed, sl, il, rando);
+    }
+    assertSameHits(scanned, indexed, sl, il, rando);
+  }
+
+  @Test public void testHitIndexLimitsTests() {
+    TestGroupLayer group = new TestGroupLayer();
+    int count = 10000, cols = 100;
+    for (int ii = 0; ii < count; ii++) {
+      SizedLayer tile = new SizedLayer(10, 10);
+      tile.setTranslation((ii%cols)*10, (ii/cols)*10);
+      tile.setInteractive(true);
+      group.add(tile);
+    }
+    Random rando = new Random(count);
+    int queries = 100;
+    float[] xs = new float[queries], ys = new float[queries];
+    for (int ii = 0; ii < queries; ii++) {
+      xs[ii] = rando.nextFloat()*cols*10;
+      ys[ii] = rando.nextFloat()*(count/cols)*10;
+    }
+
+    // without the index, a query tests every tile above the one it hits
+    SizedLayer.tests = 0;
+    assertEquals(queries, hover(group, xs, ys, queries));
+    assertTrue(SizedLayer.tests > queries*cols);
+
+    // with it, a query tests at most the handful of tiles that share its cell
+    group.impl.setHitIndex(group, 10);
+    SizedLayer.tests = 0;
+    assertEquals(queries, hover(group, xs, ys, queries));
+    assertTrue(SizedLayer.tests <= 4*queries);
+  }
+
+  protected static final float[] SIZES = { 300, 20, 0 };
+
+  protected int hover(TestGroupLayer group, float[] xs, float[] ys, int queries) {
+    int hits = 0;
+    Point p = new Point();
+    for (int ii = 0; ii < queries; ii++) {
+      if (group.impl.hitTest(group, p.set(xs[ii], ys[ii])) != null) hits++;
+    }
+    return hits;
+  }
+
+  protected void assertSameHits(TestGroupLayer scanned, TestGroupLayer indexed,
+                                List<SizedLayer> sl, List<SizedLayer> il, Random rando) {
+    Point p = new Point();
+    for (int ii = 0; ii < 2000; ii++) {
+      float x = rando.nextFloat()*600 - 50, y = rando.nextFloat()*600 - 50;
+      Layer shit = scanned.impl.hitTest(scanned, p.set(x, y));
+      Layer ihit = indexed.impl.hitTest(indexed, p.set(x, y));
+      int sidx = indexOf(scanned, shit), iidx = indexOf(indexed, ihit);
+      assertEquals("Hit at " + x + "," + y, sidx, iidx);
+    }
+  }
+
+  protected int indexOf(TestGroupLayer group, Layer layer) {
+    for (int ii = 0; ii < group.size(); ii++) if (group.get(ii) == layer) return ii;
+    return -1;
+  }
+
+  protected SizedLayer configure(SizedLayer layer, float x, float y, float depth, float rot,
+                                 float scale, TestGroupLayer group) {
+    layer.setTranslation(x, y);
+    layer.setOrigin(layer.width()/2, layer.height()/2);
+    layer.setRotation(rot);
+    layer.setScale(scale);
+    layer.setDepth(depth);
+    layer.setInteractive(true);
+    group.add(layer);
+    return layer;
+  }
+
   protected List<TestLayer> createLayers() {
     int[] zs = { 0, 0, 0, 1, 1, 1, 2, 2, 2, 3, 3, 3, 4 };
     TestLayer[] layers = new TestLayer[zs.length];
@@ -88,6 +249,36 @@ public class GroupLayerImplTest {
   protected static class TestLayer extends AbstractLayer {
   }
 
+  protected static class SizedLayer extends TestLayer implements Layer.HasSize {
+    public static long tests;
+    private float width, height;
+    public SizedLayer(float width, float height) {
+      this.width = width;
+      this.height = height;
+    }
+    public void setSize(float width, float height) {
+      this.width = width;
+      this.height = height;
+      boundsChanged();
+    }
+    @Override public float width() {
+      return width;
+    }
+    @Override public float height() {
+      return height;
+    }
+    @Override public float scaledWidth() {
+      return scaleX() * width;
+    }
+    @Override public float scaledHeight() {
+      return scaleY() * height;
+    }
+    @Override public Layer hitTestDefault(Point p) {
+      tests++;
+      return super.hitTestDefault(p);
+    }
+  }
+
   protected static class TestGroupLayer extends AbstractLayer implements GroupLayer, ParentLayer {
     public final GroupLayerImpl<TestLayer> impl = new GroupLayerImpl<TestLayer>();
     @Override
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import playn.core.util.Callback;
+
+/**
+ * Tests {@link NetImpl}.
+ */
+public class NetImplTest {
+
+  @Test public void testBuffersStreams() {
+    TestNet net = new TestNet();
+    final List<String> events = new ArrayList<String>();
+    net.req("http://playn.io/test").stream(new Recorder(events));
+    assertEquals("[response:200:text/plain, data:payload, complete]", events.toString());
+
+    events.clear();
+    net.failure = new Exception("boom");
+    net.req("http://playn.io/test").stream(new Recorder(events));
+    assertEquals("[failed:boom]", events.toString());
+
+    // a listener that cancels on receiving the response hears nothing more
+    events.clear();
+    net.failure = null;
+    net.req("http://playn.io/test").stream(new Recorder(events) {
+      @Override public void onResponse(Net.StreamingResponse rsp) {
+        super.onResponse(rsp);
+        rsp.cancel();
+      }
+    });
+    assertEquals("[response:200:text/plain]", events.toString());
+  }
+
+  protected static class Recorder implements Net.StreamingResponse.Listener {
+    private final List<String> events;
+
+    public Recorder(List<String> events) {
+      this.events = events;
+    }
+
+    public void onResponse(Net.StreamingResponse rsp) {
+      events.add("response:" + rsp.responseCode() + ":" + rsp.header("Content-Type"));
+    }
+    public void onData(byte[] data) {
+      try {
+        events.add("data:" + new String(data, "UTF-8"));
+      } catch (UnsupportedEncodingException e) {
+        throw new AssertionError(e);
+      }
+    }
+    public void onComplete() {
+      events.add("complete");
+    }
+    public void onFailure(Throwable cause) {
+      events.add("failed:" + cause.getMessage());
+    }
+  }
+
+  // a backend that can't stream, and that answers every request immediately
+  protected static class TestNet extends NetImpl {
+    public Exception failure;
+
+    public TestNet() {
+      super(null);
+    }
+
+    @Override protected void execute(BuilderImpl req, Callback<Response> callback) {
+      if (failure != null) {
+        callback.onFailure(failure);
+        return;
+      }
+      // like the HTML backend, our payload is only available as a string
+      callback.onSuccess(new StringResponse(200, "payload") {
+        @Override protected Map<String,List<String>> extractHeaders() {
+          return Collections.singletonMap("Content-Type", Collections.singletonList("text/plain"));
+        }
+      });
+    }
+  }
+}
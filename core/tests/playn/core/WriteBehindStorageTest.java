@@ -0,0 +1,237 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link WriteBehindStorage}.
+ */
+public class WriteBehindStorageTest {
+
+  @Test public void testCoalescesAndFlushesOnInterval() {
+    TestPlatform platform = new TestPlatform();
+    WriteBehindStorage storage = new WriteBehindStorage(platform, platform.backing, 100, 10);
+    storage.setItem("a", "one");
+    storage.setItem("a", "two");
+    storage.setItem("b", "three");
+    storage.removeItem("b");
+    storage.setItem("c", "four");
+
+    // changes are visible immediately, but not yet written
+    assertEquals("two", storage.getItem("a"));
+    assertNull(storage.getItem("b"));
+    assertEquals(3, storage.pendingWrites());
+    assertEquals(2, storage.coalescedWrites());
+    assertEquals(0, platform.backing.writes);
+
+    // nothing is flushed until the interval has elapsed
+    platform.now += 50;
+    platform.scheduler().execute();
+    assertEquals(0, platform.async.size());
+    platform.now += 50;
+    platform.scheduler().execute();
+    assertEquals(1, platform.async.size());
+    assertEquals(3, storage.pendingWrites());
+
+    // changes made while the flush is in progress are kept for the next flush
+    storage.setItem("d", "five");
+    assertEquals(4, storage.pendingWrites());
+    platform.runAsync();
+    assertEquals(3, platform.backing.writes);
+    assertEquals("two", platform.backing.getItem("a"));
+    assertNull(platform.backing.getItem("b"));
+    assertNull(platform.backing.getItem("d"));
+    assertEquals(1, storage.pendingWrites());
+    assertEquals(1, storage.flushCount());
+    assertEquals("five", storage.getItem("d"));
+
+    platform.now += 100;
+    platform.scheduler().execute();
+    platform.runAsync();
+    assertEquals("five", platform.backing.getItem("d"));
+    assertEquals(0, storage.pendingWrites());
+    assertEquals(2, storage.flushCount());
+  }
+
+  @Test public void testFlushesOnThreshold() {
+    TestPlatform platform = new TestPlatform();
+    WriteBehindStorage storage = new WriteBehindStorage(platform, platform.backing, 1000, 4);
+    Storage.Batch batch = storage.startBatch();
+    for (int ii = 0; ii < 4; ii++) batch.setItem("key" + ii, "value" + ii);
+    batch.commit();
+    assertEquals(1, platform.async.size());
+    platform.runAsync();
+    assertEquals(4, platform.backing.writes);
+    assertEquals(0, storage.pendingWrites());
+  }
+
+  @Test public void testFlushNow() {
+    TestPlatform platform = new TestPlatform();
+    WriteBehindStorage storage = new WriteBehindStorage(platform, platform.backing, 1000, 2);
+    storage.setItem("a", "one");
+    storage.setItem("b", "two");
+    assertEquals(1, platform.async.size());
+    storage.setItem("a", "three");
+
+    // flushing now writes both the batch in progress and the pending changes...
+    storage.flushNow();
+    assertEquals("three", platform.backing.getItem("a"));
+    assertEquals("two", platform.backing.getItem("b"));
+    assertEquals(0, storage.pendingWrites());
+
+    // ...and the background flush then finds nothing left to do
+    int writes = platform.backing.writes;
+    platform.runAsync();
+    assertEquals(writes, platform.backing.writes);
+    assertEquals("three", platform.backing.getItem("a"));
+  }
+
+  @Test public void testFlushesOnExit() {
+    TestPlatform platform = new TestPlatform();
+    final WriteBehindStorage storage = new WriteBehindStorage(platform, platform.backing);
+    platform.setLifecycleListener(new PlayN.LifecycleListener() {
+      public void onPause() {}
+      public void onResume() {}
+      public void onExit() {
+        storage.setItem("exit", "saved"); // games commonly save their state on exit
+      }
+    });
+    storage.setItem("saved", "state");
+    assertNull(platform.backing.getItem("saved"));
+    platform.exit();
+    assertEquals("state", platform.backing.getItem("saved"));
+    assertEquals("saved", platform.backing.getItem("exit"));
+  }
+
+  @Test public void testKeys() {
+    TestPlatform platform = new TestPlatform();
+    platform.backing.setItem("old", "1");
+    platform.backing.setItem("gone", "2");
+    WriteBehindStorage storage = new WriteBehindStorage(platform, platform.backing);
+    storage.setItem("new", "3");
+    storage.removeItem("gone");
+    Set<String> keys = new HashSet<String>();
+    for (String key : storage.keys()) keys.add(key);
+    assertEquals(2, keys.size());
+    assertTrue(keys.contains("old"));
+    assertTrue(keys.contains("new"));
+  }
+
+  @Test public void testRemovals() {
+    TestPlatform platform = new TestPlatform();
+    platform.backing.setItem("gone", "1");
+    WriteBehindStorage storage = new WriteBehindStorage(platform, platform.backing, 10, 10);
+    // removals are not recorded with a marker value, which a game could also store
+    storage.setItem("marker", "<removed>");
+    storage.removeItem("gone");
+    storage.removeItem("gone");
+    assertEquals(1, storage.coalescedWrites());
+
+    // pending removals hide the written value until they are flushed
+    platform.now += 10;
+    platform.scheduler().execute();
+    assertEquals("1", platform.backing.getItem("gone"));
+    assertNull(storage.getItem("gone"));
+    assertEquals("<removed>", storage.getItem("marker"));
+    platform.runAsync();
+    assertNull(platform.backing.getItem("gone"));
+    assertEquals("<removed>", platform.backing.getItem("marker"));
+    assertEquals("<removed>", storage.getItem("marker"));
+  }
+
+  @Test public void testRetriesFailedFlush() {
+    TestPlatform platform = new TestPlatform();
+    WriteBehindStorage storage = new WriteBehindStorage(platform, platform.backing, 10, 10);
+    storage.setItem("a", "one");
+    platform.backing.fail = true;
+    platform.now += 10;
+    platform.scheduler().execute();
+    platform.runAsync();
+    assertEquals(1, platform.errors);
+    assertEquals(1, storage.pendingWrites());
+    assertEquals("one", storage.getItem("a"));
+
+    platform.backing.fail = false;
+    platform.now += 10;
+    platform.scheduler().execute();
+    platform.runAsync();
+    assertEquals("one", platform.backing.getItem("a"));
+    assertEquals(0, storage.pendingWrites());
+  }
+
+  protected static class CountingStorage implements Storage {
+    public int writes;
+    public boolean fail;
+    private final Storage data = new StubPlatform().storage();
+
+    public void setItem(String key, String value) {
+      if (fail) throw new RuntimeException("Disk full");
+      writes++;
+      data.setItem(key, value);
+    }
+    public void removeItem(String key) {
+      if (fail) throw new RuntimeException("Disk full");
+      writes++;
+      data.removeItem(key);
+    }
+    public String getItem(String key) {
+      return data.getItem(key);
+    }
+    public Batch startBatch() {
+      return new BatchImpl(this);
+    }
+    public Iterable<String> keys() {
+      return data.keys();
+    }
+    public boolean isPersisted() {
+      return true;
+    }
+  }
+
+  protected static class TestPlatform extends StubPlatform {
+    public final CountingStorage backing = new CountingStorage();
+    public final List<Runnable> async = new ArrayList<Runnable>();
+    public double now;
+    public int errors;
+
+    public void runAsync() {
+      List<Runnable> actions = new ArrayList<Runnable>(async);
+      async.clear();
+      for (Runnable action : actions) action.run();
+    }
+
+    public void exit() {
+      onExit();
+    }
+
+    @Override public void invokeAsync(Runnable action) {
+      async.add(action);
+    }
+
+    @Override public double time() {
+      return now;
+    }
+
+    @Override public void reportError(String message, Throwable cause) {
+      errors++;
+    }
+  }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.gl;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import playn.core.InternalTransform;
+
+/**
+ * Tests the streaming mode of {@link GL20Buffer} and its use by {@link IndexedTrisShader}.
+ */
+public class GL20BufferTest {
+
+  @Test public void testStreamWritesSuccessiveRegions() {
+    RecordingGL20 rgl = new RecordingGL20();
+    GL20Buffer.FloatImpl buf = new GL20Buffer.FloatImpl(rgl.gl, 16);
+    rgl.reset();
+
+    buf.add(new float[10]);
+    assertEquals(0, buf.stream(GL20.GL_ARRAY_BUFFER, 32));
+    buf.add(new float[12]);
+    assertEquals(10, buf.stream(GL20.GL_ARRAY_BUFFER, 32));
+    assertEquals(0, buf.position());
+
+    // the data store is allocated once, and the batches are written into it one after another
+    List<RecordingGL20.Call> allocs = rgl.calls("glBufferData");
+    assertEquals(1, allocs.size());
+    assertEquals(32*4, allocs.get(0).intArg(1));
+    assertNull(allocs.get(0).args[2]);
+    assertEquals(GL20.GL_STREAM_DRAW, allocs.get(0).intArg(3));
+    List<RecordingGL20.Call> writes = rgl.calls("glBufferSubData");
+    assertEquals(2, writes.size());
+    assertEquals(0, writes.get(0).intArg(1));
+    assertEquals(10*4, writes.get(0).intArg(2));
+    assertEquals(10*4, writes.get(1).intArg(1));
+    assertEquals(12*4, writes.get(1).intArg(2));
+  }
+
+  @Test public void testStreamWrapsAround() {
+    RecordingGL20 rgl = new RecordingGL20();
+    GL20Buffer.ShortImpl buf = new GL20Buffer.ShortImpl(rgl.gl, 16);
+    rgl.reset();
+
+    for (int ii = 0; ii < 3; ii++) {
+      buf.add(new short[12]);
+      buf.stream(GL20.GL_ELEMENT_ARRAY_BUFFER, 32);
+    }
+    // the third batch doesn't fit after the first two, so the store is orphaned and reused
+    assertEquals(2, rgl.count("glBufferData"));
+    List<RecordingGL20.Call> writes = rgl.calls("glBufferSubData");
+    assertEquals(0, writes.get(0).intArg(1));
+    assertEquals(12*2, writes.get(1).intArg(1));
+    assertEquals(0, writes.get(2).intArg(1));
+
+    // a batch larger than the requested store grows the store
+    buf.expand(40);
+    buf.add(new short[40]);
+    assertEquals(0, buf.stream(GL20.GL_ELEMENT_ARRAY_BUFFER, 32));
+    assertEquals(40*2, rgl.calls("glBufferData").get(2).intArg(1));
+  }
+
+  @Test public void testStreamUploadsStreamBuffer() {
+    RecordingGL20 rgl = new RecordingGL20();
+    final FloatBuffer wrapped = FloatBuffer.allocate(16);
+    final int[] flushes = { 0 };
+    GL20Buffer.FloatImpl buf = new GL20Buffer.FloatImpl(rgl.gl, 16) {
+      @Override public void flush() {
+        flushes[0]++;
+        super.flush();
+      }
+      @Override protected Buffer streamBuffer() {
+        return wrapped;
+      }
+    };
+    rgl.reset();
+
+    // a backend that can upload the staging array directly does not copy it into a direct buffer
+    buf.add(new float[10]);
+    assertEquals(0, buf.stream(GL20.GL_ARRAY_BUFFER, 32));
+    assertSame(wrapped, rgl.calls("glBufferSubData").get(0).args[3]);
+    assertEquals(0, flushes[0]);
+    assertEquals(0, buf.position());
+  }
+
+  @Test public void testTrisStreamingIsOptIn() {
+    // backends which can't allocate a store without data, or lack glBufferSubData, don't stream
+    RecordingGL20 rgl = new RecordingGL20();
+    GL20Context ctx = rgl.createContext(100, 100);
+    rgl.reset();
+    drawTris(ctx);
+    assertEquals(0, rgl.count("glBufferSubData"));
+    assertEquals(2, rgl.count("glBufferData"));
+
+    rgl = new RecordingGL20();
+    ctx = new GL20Context(null, rgl.gl, 1, false) {
+      @Override protected boolean shouldStreamTris() {
+        return true;
+      }
+    };
+    ctx.init();
+    ctx.setSize(100, 100);
+    rgl.reset();
+    drawTris(ctx);
+    assertEquals(2, rgl.count("glBufferSubData"));
+  }
+
+  @Test public void testFallbackQuadShaderStreamsOnlyIfOptedIn() {
+    // when no quad shader can be used, the tris shader fallback must not stream by default
+    RecordingGL20 rgl = new RecordingGL20();
+    GL20Context ctx = new GL20Context(null, rgl.gl, 1, false) {
+      @Override protected boolean shouldTryQuadShader() {
+        return false;
+      }
+      @Override protected boolean shouldTryQuadStreamShader() {
+        return false;
+      }
+    };
+    ctx.init();
+    ctx.setSize(100, 100);
+    assertTrue(ctx.quadShader(null) instanceof IndexedTrisShader);
+    rgl.reset();
+    drawQuad(ctx.quadShader(null), ctx);
+    assertEquals(0, rgl.count("glBufferSubData"));
+  }
+
+  @Test public void testStreamingShaderDrawsAtOffsets() {
+    RecordingGL20 rgl = new RecordingGL20();
+    GL20Context ctx = rgl.createContext(100, 100);
+    GLShader shader = new IndexedTrisShader(ctx, true);
+    InternalTransform xform = ctx.createTransform();
+    shader.prepareTexture(1, -1).addQuad(xform, 0, 0, 8, 8, 0, 0, 1, 1);
+    shader.flush();
+    rgl.reset();
+
+    shader.prepareTexture(1, -1).addQuad(xform, 0, 0, 8, 8, 0, 0, 1, 1);
+    shader.addQuad(xform, 8, 8, 16, 16, 0, 0, 1, 1);
+    shader.flush();
+
+    // the second batch is written after the first, and drawn from there
+    assertEquals(0, rgl.count("glBufferData"));
+    assertEquals(2, rgl.count("glBufferSubData"));
+    List<RecordingGL20.Call> draws = rgl.calls("glDrawElements");
+    assertEquals(1, draws.size());
+    assertEquals(12, draws.get(0).intArg(1));
+    assertEquals(6*2, draws.get(0).intArg(3));
+    // the attributes are bound to the second batch's vertices, which follow the first quad's
+    int vertexBytes = 12*4;
+    assertEquals(5, rgl.count("glVertexAttribPointer"));
+    for (RecordingGL20.Call call : rgl.calls("glVertexAttribPointer")) {
+      assertTrue(call.intArg(5) >= 4*vertexBytes);
+    }
+  }
+
+  protected void drawTris(GL20Context ctx) {
+    drawQuad(ctx.trisShader(null), ctx);
+  }
+
+  protected void drawQuad(GLShader shader, GLContext ctx) {
+    shader.prepareTexture(1, -1).addQuad(ctx.createTransform(), 0, 0, 8, 8, 0, 0, 1, 1);
+    shader.flush();
+  }
+}
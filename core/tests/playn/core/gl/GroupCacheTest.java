@@ -0,0 +1,268 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.gl;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import playn.core.GroupLayer.CacheMode;
+import playn.core.ImmediateLayer;
+import playn.core.Surface;
+
+/**
+ * Tests the caching of group layer rendering by {@link GroupCacheGL}.
+ */
+public class GroupCacheTest {
+
+  @Test public void testPaintsCachedRendering() {
+    RecordingGL20 rgl = new RecordingGL20();
+    GL20Context ctx = rgl.createContext(200, 200);
+    GroupLayerGL root = new GroupLayerGL(ctx);
+    GroupLayerGL panel = createPanel(ctx, 100);
+    panel.setCacheMode(CacheMode.ALWAYS);
+    root.addAt(panel, 20, 30);
+
+    // the first frame renders the panel into its cache, and paints that
+    assertEquals(101, paint(ctx, root));
+    assertEquals(1, rgl.count("glGenFramebuffers"));
+    // the children span (0, 0) to (99, 19) plus their 10x10 size
+    assertEquals(109 * 29 * 4, ctx.stats().groupCacheBytes);
+    assertEquals(0, ctx.stats().groupCacheHits);
+
+    // subsequent frames just paint the cache
+    assertEquals(1, paint(ctx, root));
+    assertEquals(1, ctx.stats().groupCacheHits);
+    assertEquals(1, paint(ctx, root));
+
+    // moving the panel itself does not require it to be rendered again
+    panel.setTranslation(50, 50);
+    assertEquals(1, paint(ctx, root));
+    assertEquals(0, ctx.stats().groupCacheInvalidations);
+
+    // switching caching off releases the cache
+    panel.setCacheMode(CacheMode.NONE);
+    assertEquals(0, ctx.stats().groupCacheBytes);
+    assertEquals(1, rgl.count("glDeleteFramebuffers"));
+    assertEquals(100, paint(ctx, root));
+  }
+
+  @Test public void testInvalidatesOnChanges() {
+    GL20Context ctx = new RecordingGL20().createContext(200, 200);
+    GroupLayerGL root = new GroupLayerGL(ctx);
+    GroupLayerGL panel = createPanel(ctx, 10);
+    GroupLayerGL inner = createPanel(ctx, 5);
+    panel.add(inner);
+    panel.setCacheMode(CacheMode.ALWAYS);
+    root.add(panel);
+    paint(ctx, root);
+    assertEquals(1, paint(ctx, root));
+
+    ImageLayerGL child = (ImageLayerGL) panel.get(0);
+    ImageLayerGL grandchild = (ImageLayerGL) inner.get(0);
+    child.setTranslation(1, 1);
+    checkInvalidates(ctx, root, 15);
+    child.setVisible(false);
+    checkInvalidates(ctx, root, 14);
+    child.setVisible(true);
+    checkInvalidates(ctx, root, 15);
+    child.setAlpha(0.5f);
+    checkInvalidates(ctx, root, 15);
+    child.setTint(0xFF336699);
+    checkInvalidates(ctx, root, 15);
+    child.setImage(new TestImageGL(ctx, 5, 5));
+    checkInvalidates(ctx, root, 15);
+    grandchild.setScale(2);
+    checkInvalidates(ctx, root, 15);
+    grandchild.setOrigin(1, 1);
+    checkInvalidates(ctx, root, 15);
+    grandchild.setDepth(5);
+    checkInvalidates(ctx, root, 15);
+    inner.remove(grandchild);
+    checkInvalidates(ctx, root, 14);
+    inner.add(grandchild);
+    checkInvalidates(ctx, root, 15);
+    // the tint with which the panel is painted is baked into the cache
+    panel.setAlpha(0.5f);
+    checkInvalidates(ctx, root, 15);
+    // changes we can't notice are handled by resetting the cache mode
+    panel.setCacheMode(CacheMode.ALWAYS);
+    checkInvalidates(ctx, root, 15);
+
+    // a layer that has been removed no longer affects the panel
+    inner.remove(grandchild);
+    paint(ctx, root);
+    grandchild.setTranslation(7, 7);
+    assertEquals(1, paint(ctx, root));
+    assertEquals(0, ctx.stats().groupCacheInvalidations);
+  }
+
+  @Test public void testCachesAutomatically() {
+    GL20Context ctx = new RecordingGL20().createContext(200, 200);
+    GroupLayerGL root = new GroupLayerGL(ctx);
+    GroupLayerGL panel = createPanel(ctx, 10);
+    panel.setCacheMode(CacheMode.AUTO);
+    root.add(panel);
+
+    // the panel is painted normally until it has been unchanged for long enough
+    for (int ii = 0; ii < GroupCacheGL.AUTO_FRAMES; ii++) assertEquals(10, paint(ctx, root));
+    assertEquals(0, ctx.stats().groupCacheBytes);
+    assertEquals(11, paint(ctx, root));
+    assertEquals(1, paint(ctx, root));
+
+    // once it changes, it's painted normally again, and it waits longer before being cached again
+    // as it did not stay cached for long
+    panel.get(0).setTranslation(5, 5);
+    assertEquals(10, paint(ctx, root));
+    assertEquals(1, ctx.stats().groupCacheInvalidations);
+    for (int ii = 1; ii < 2 * GroupCacheGL.AUTO_FRAMES; ii++) assertEquals(10, paint(ctx, root));
+    assertEquals(11, paint(ctx, root));
+    assertEquals(1, paint(ctx, root));
+  }
+
+  @Test public void testCachesClippedGroupsAtScale() {
+    RecordingGL20 rgl = new RecordingGL20();
+    GL20Context ctx = new GL20Context(null, rgl.gl, 2, false);
+    ctx.init();
+    ctx.setSize(200, 200);
+    GroupLayerGL root = new GroupLayerGL(ctx);
+    GroupLayerGL.Clipped clipped = new GroupLayerGL.Clipped(ctx, 50, 40);
+    TestImageGL image = new TestImageGL(ctx, 10, 10);
+    for (int ii = 0; ii < 10; ii++) clipped.addAt(imageLayer(ctx, image), ii * 10, 0);
+    clipped.setCacheMode(CacheMode.ALWAYS);
+    root.addAt(clipped, 10, 10);
+
+    // the cache covers the clip rectangle, at the context's scale
+    paint(ctx, root);
+    assertEquals(100 * 80 * 4, ctx.stats().groupCacheBytes);
+    rgl.reset();
+    assertEquals(1, paint(ctx, root));
+    // the cached rendering was clipped when it was rendered, so need not be clipped again
+    assertEquals(0, rgl.count("glScissor"));
+
+    clipped.setSize(60, 40);
+    paint(ctx, root);
+    assertEquals(1, ctx.stats().groupCacheInvalidations);
+    assertEquals(120 * 80 * 4, ctx.stats().groupCacheBytes);
+  }
+
+  @Test public void testSuspendsClippingWhileRendering() {
+    RecordingGL20 rgl = new RecordingGL20();
+    GL20Context ctx = rgl.createContext(200, 200);
+    GroupLayerGL root = new GroupLayerGL(ctx);
+    GroupLayerGL.Clipped clipped = new GroupLayerGL.Clipped(ctx, 50, 50);
+    GroupLayerGL panel = createPanel(ctx, 10);
+    panel.setCacheMode(CacheMode.ALWAYS);
+    clipped.add(panel);
+    root.add(clipped);
+
+    paint(ctx, root);
+    // the scissor test is enabled for the clipped group, disabled while rendering the panel into
+    // its cache, then enabled again to paint the cache, then disabled when the clip ends
+    assertEquals(2, countScissor(rgl, "glEnable"));
+    assertEquals(2, countScissor(rgl, "glDisable"));
+  }
+
+  @Test public void testWaitsForImages() {
+    GL20Context ctx = new RecordingGL20().createContext(200, 200);
+    GroupLayerGL root = new GroupLayerGL(ctx);
+    GroupLayerGL panel = createPanel(ctx, 10);
+    final boolean[] ready = { false };
+    panel.add(imageLayer(ctx, new TestImageGL(ctx, 10, 10) {
+      @Override public boolean isReady() {
+        return ready[0];
+      }
+    }));
+    panel.setCacheMode(CacheMode.ALWAYS);
+    root.add(panel);
+
+    // the cache is rendered again until all of its images have been drawn
+    assertEquals(11, paint(ctx, root));
+    assertEquals(11, paint(ctx, root));
+    ready[0] = true;
+    assertEquals(12, paint(ctx, root));
+    assertEquals(1, paint(ctx, root));
+    assertEquals(0, ctx.stats().groupCacheInvalidations);
+  }
+
+  @Test public void testSkipsUncacheableGroups() {
+    GL20Context ctx = new RecordingGL20().createContext(200, 200);
+    GroupLayerGL root = new GroupLayerGL(ctx);
+    GroupLayerGL panel = createPanel(ctx, 10);
+    panel.setCacheMode(CacheMode.ALWAYS);
+    root.add(panel);
+
+    // immediate layers may draw something different every frame
+    final TestImageGL image = new TestImageGL(ctx, 5, 5);
+    ImmediateLayerGL immediate = new ImmediateLayerGL.Clipped(
+      ctx, 10, 10, new ImmediateLayer.Renderer() {
+        public void render(Surface surface) {
+          surface.drawImage(image, 0, 0);
+        }
+      });
+    panel.add(immediate);
+    assertEquals(11, paint(ctx, root));
+    assertEquals(11, paint(ctx, root));
+    assertEquals(0, ctx.stats().groupCacheBytes);
+    panel.remove(immediate);
+    paint(ctx, root);
+    assertEquals(1, paint(ctx, root));
+
+    // custom shaders may also render differently from frame to frame
+    panel.setShader(ctx.quadShader(null));
+    assertEquals(10, paint(ctx, root));
+    panel.setShader(null);
+    assertEquals(1, paint(ctx, root));
+  }
+
+  // checks that the next frame renders the cache anew, and that the one after reuses it
+  protected void checkInvalidates(GL20Context ctx, GroupLayerGL root, int quads) {
+    assertEquals(quads + 1, paint(ctx, root));
+    assertEquals(1, ctx.stats().groupCacheInvalidations);
+    assertEquals(1, paint(ctx, root));
+    assertEquals(1, ctx.stats().groupCacheHits);
+  }
+
+  protected int countScissor(RecordingGL20 rgl, String name) {
+    int count = 0;
+    for (RecordingGL20.Call call : rgl.calls(name)) {
+      if (call.intArg(0) == GL20.GL_SCISSOR_TEST) count++;
+    }
+    return count;
+  }
+
+  // creates a group of count 10x10 image layers laid out in rows of ten
+  protected GroupLayerGL createPanel(GLContext ctx, int count) {
+    GroupLayerGL panel = new GroupLayerGL(ctx);
+    TestImageGL image = new TestImageGL(ctx, 10, 10);
+    for (int ii = 0; ii < count; ii++) {
+      panel.addAt(imageLayer(ctx, image), (ii % 10) * 11, (ii / 10) * 11 % 20);
+    }
+    return panel;
+  }
+
+  protected ImageLayerGL imageLayer(GLContext ctx, ImageGL<?> image) {
+    ImageLayerGL layer = new ImageLayerGL(ctx);
+    layer.setImage(image);
+    return layer;
+  }
+
+  // paints a frame and returns the number of quads rendered
+  protected int paint(GL20Context ctx, GroupLayerGL root) {
+    ctx.stats().reset();
+    ctx.paint(root);
+    return ctx.stats().quadsRendered;
+  }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.gl;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the culling of out of view layers by {@link GroupLayerGL}.
+ */
+public class LayerCullingTest {
+
+  @Test public void testCullsOffscreenImages() {
+    RecordingGL20 rgl = new RecordingGL20();
+    GL20Context ctx = rgl.createContext(100, 100);
+    ctx.setCullingEnabled(true);
+
+    GroupLayerGL root = new GroupLayerGL(ctx);
+    TestImageGL image = new TestImageGL(ctx, 20, 20);
+    root.addAt(new ImageLayerGL(ctx).setImage(image), 10, 10);   // on screen
+    root.addAt(new ImageLayerGL(ctx).setImage(image), 90, 90);   // partially on screen
+    root.addAt(new ImageLayerGL(ctx).setImage(image), 150, 10);  // off right
+    root.addAt(new ImageLayerGL(ctx).setImage(image), -30, -30); // off top left
+    // rotated by 90 degrees about its top-left, so it sweeps back into view
+    root.addAt(new ImageLayerGL(ctx).setImage(image).setRotation((float)Math.PI/2), 110, 50);
+
+    ctx.stats().reset();
+    ctx.paint(root);
+    assertEquals(2, ctx.stats().layersCulled);
+    assertEquals(3, ctx.stats().quadsRendered);
+
+    // with culling disabled, everything is rendered
+    ctx.setCullingEnabled(false);
+    ctx.stats().reset();
+    ctx.paint(root);
+    assertEquals(0, ctx.stats().layersCulled);
+    assertEquals(5, ctx.stats().quadsRendered);
+  }
+
+  @Test public void testCullsClippedSubtrees() {
+    RecordingGL20 rgl = new RecordingGL20();
+    GL20Context ctx = rgl.createContext(100, 100);
+    ctx.setCullingEnabled(true);
+
+    GroupLayerGL root = new GroupLayerGL(ctx);
+    GroupLayerGL.Clipped clipped = new GroupLayerGL.Clipped(ctx, 50, 50);
+    TestImageGL image = new TestImageGL(ctx, 10, 10);
+    for (int ii = 0; ii < 10; ii++) clipped.addAt(new ImageLayerGL(ctx).setImage(image), ii, ii);
+    root.addAt(clipped, 200, 200);
+
+    ctx.stats().reset();
+    rgl.reset();
+    ctx.paint(root);
+    assertEquals(1, ctx.stats().layersCulled);
+    assertEquals(0, ctx.stats().quadsRendered);
+    assertEquals(0, rgl.count("glScissor"));
+
+    // children that fall outside the clip rect are culled as well
+    clipped.setTranslation(0, 0);
+    clipped.setSize(5, 5);
+    ctx.stats().reset();
+    ctx.paint(root);
+    assertEquals(5, ctx.stats().layersCulled);
+    assertEquals(5, ctx.stats().quadsRendered);
+  }
+}
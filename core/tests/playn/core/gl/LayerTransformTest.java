@@ -0,0 +1,182 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.gl;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import playn.core.InternalTransform;
+
+/**
+ * Tests the caching of world transforms by {@link LayerGL}.
+ */
+public class LayerTransformTest {
+
+  @Test public void testReusesStaticTransforms() {
+    GL20Context ctx = new RecordingGL20().createContext(100, 100);
+    GroupLayerGL root = new GroupLayerGL(ctx);
+    GroupLayerGL group = new GroupLayerGL(ctx);
+    TestImageGL image = new TestImageGL(ctx, 10, 10);
+    for (int ii = 0; ii < 10; ii++) group.addAt(imageLayer(ctx, image), ii, ii);
+    root.addAt(group, 5, 5);
+
+    assertEquals(12, paint(ctx, root));
+    assertEquals(0, paint(ctx, root));
+    assertEquals(0, paint(ctx, root));
+  }
+
+  @Test public void testPropagatesChangesToDescendants() {
+    GL20Context ctx = new RecordingGL20().createContext(100, 100);
+    GroupLayerGL root = new GroupLayerGL(ctx);
+    GroupLayerGL group = new GroupLayerGL(ctx);
+    TestImageGL image = new TestImageGL(ctx, 10, 10);
+    ImageLayerGL child = imageLayer(ctx, image);
+    ImageLayerGL sibling = imageLayer(ctx, image);
+    group.addAt(child, 3, 4);
+    group.add(imageLayer(ctx, image));
+    root.addAt(group, 10, 20);
+    root.add(sibling);
+    paint(ctx, root);
+
+    // moving the group recomputes it and its children, but not its sibling
+    group.setTranslation(30, 40);
+    assertEquals(3, paint(ctx, root));
+    assertWorld(ctx, root, group, child, 33, 44);
+
+    // as do scale and origin changes
+    group.setScale(2);
+    assertEquals(3, paint(ctx, root));
+    assertWorld(ctx, root, group, child, 36, 48);
+    group.setOrigin(1, 1);
+    assertEquals(3, paint(ctx, root));
+    assertWorld(ctx, root, group, child, 34, 46);
+
+    // changes to a leaf affect only that leaf
+    child.setTranslation(0, 0);
+    assertEquals(1, paint(ctx, root));
+    assertWorld(ctx, root, group, child, 28, 38);
+  }
+
+  @Test public void testNoticesDirectTransformChanges() {
+    GL20Context ctx = new RecordingGL20().createContext(100, 100);
+    GroupLayerGL root = new GroupLayerGL(ctx);
+    GroupLayerGL group = new GroupLayerGL(ctx);
+    ImageLayerGL child = imageLayer(ctx, new TestImageGL(ctx, 10, 10));
+    group.add(child);
+    root.add(group);
+    paint(ctx, root);
+
+    // callers may modify a layer's transform without going through its setters
+    group.transform().setTranslation(7, 8);
+    assertEquals(2, paint(ctx, root));
+    assertWorld(ctx, root, group, child, 7, 8);
+  }
+
+  @Test public void testNoticesParentTransformChanges() {
+    GL20Context ctx = new RecordingGL20().createContext(100, 100);
+    GroupLayerGL root = new GroupLayerGL(ctx);
+    ImageLayerGL child = imageLayer(ctx, new TestImageGL(ctx, 10, 10));
+    root.addAt(child, 1, 2);
+
+    // the root layer is painted with a transform that has no owning layer
+    InternalTransform xform = ctx.createTransform();
+    assertEquals(1, child.localTransform(root.localTransform(xform)).tx(), 0);
+    ctx.stats().reset();
+    xform.setTranslation(10, 10);
+    assertEquals(11, child.localTransform(root.localTransform(xform)).tx(), 0);
+    assertEquals(2, ctx.stats().transformsComputed);
+    child.localTransform(root.localTransform(xform));
+    assertEquals(2, ctx.stats().transformsComputed);
+  }
+
+  @Test public void testClippedGroupsDoNotDrift() {
+    GL20Context ctx = new RecordingGL20().createContext(100, 100);
+    GroupLayerGL root = new GroupLayerGL(ctx);
+    GroupLayerGL.Clipped clipped = new GroupLayerGL.Clipped(ctx, 50, 50);
+    ImageLayerGL child = imageLayer(ctx, new TestImageGL(ctx, 10, 10));
+    clipped.add(child);
+    clipped.setOrigin(0.1f, 0.3f).setRotation(0.7f).setScale(1.3f);
+    root.addAt(clipped, 10, 10);
+    paint(ctx, root);
+    InternalTransform world = ctx.createTransform().set(
+      clipped.localTransform(root.localTransform(ctx.rootTransform())));
+
+    // rendering a clipped group must not modify its cached world transform
+    for (int ii = 0; ii < 100; ii++) assertEquals(0, paint(ctx, root));
+    InternalTransform after = clipped.localTransform(root.localTransform(ctx.rootTransform()));
+    assertEquals(world.tx(), after.tx(), 0);
+    assertEquals(world.ty(), after.ty(), 0);
+  }
+
+  @Test public void testRecomputesOnlyChangedSubtrees() {
+    RecordingGL20 rgl = new RecordingGL20();
+    rgl.recording = false;
+    GL20Context ctx = rgl.createContext(1000, 1000);
+    GroupLayerGL root = new GroupLayerGL(ctx);
+    TestImageGL image = new TestImageGL(ctx, 10, 10);
+    GroupLayerGL[] groups = new GroupLayerGL[10];
+    for (int gg = 0; gg < groups.length; gg++) {
+      groups[gg] = new GroupLayerGL(ctx);
+      for (int ii = 0; ii < 100; ii++) {
+        groups[gg].addAt(imageLayer(ctx, image).setRotation(ii), ii % 10, gg);
+      }
+      root.addAt(groups[gg], gg, gg);
+    }
+    assertEquals(1 + groups.length * 101, paint(ctx, root));
+
+    // a static scene computes no transforms, however many frames are painted
+    for (int ii = 0; ii < 10; ii++) assertEquals(0, paint(ctx, root));
+
+    // moving one group recomputes only that group and its children
+    groups[3].setRotation(0.5f);
+    assertEquals(101, paint(ctx, root));
+    assertEquals(0, paint(ctx, root));
+
+    // animating every group recomputes every layer but the root, each frame
+    for (int ii = 1; ii <= 10; ii++)
+      assertEquals(groups.length * 101, animate(groups, ii, ctx, root));
+  }
+
+  // rotates every group, which invalidates every layer but the root, then paints a frame
+  protected int animate(GroupLayerGL[] groups, int frame, GL20Context ctx, GroupLayerGL root) {
+    for (GroupLayerGL group : groups) group.setRotation(frame * 0.01f);
+    return paint(ctx, root);
+  }
+
+  protected ImageLayerGL imageLayer(GLContext ctx, ImageGL<?> image) {
+    ImageLayerGL layer = new ImageLayerGL(ctx);
+    layer.setImage(image);
+    return layer;
+  }
+
+  // paints a frame and returns the number of world transforms that were computed
+  protected int paint(GL20Context ctx, GroupLayerGL root) {
+    ctx.stats().reset();
+    ctx.paint(root);
+    return ctx.stats().transformsComputed;
+  }
+
+  protected void assertWorld(GL20Context ctx, GroupLayerGL root, GroupLayerGL group,
+                             LayerGL child, float tx, float ty) {
+    int computed = ctx.stats().transformsComputed;
+    InternalTransform xform = child.localTransform(
+      group.localTransform(root.localTransform(ctx.rootTransform())));
+    assertEquals(tx, xform.tx(), 1e-4f);
+    assertEquals(ty, xform.ty(), 1e-4f);
+    // looking up the transforms that were computed when painting does not recompute them
+    assertEquals(computed, ctx.stats().transformsComputed);
+  }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.gl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import playn.core.Image;
+
+/**
+ * Tests deferred rendering via {@link QuadQueue}.
+ */
+public class QuadQueueTest {
+
+  @Test public void testReordersDisjointQuads() {
+    RecordingGL20 rgl = new RecordingGL20();
+    GL20Context ctx = rgl.createContext(200, 200);
+    Image one = new TestImageGL(ctx, 8, 8), two = new TestImageGL(ctx, 8, 8);
+    // lay out the images in a grid, alternating between the two images
+    GroupLayerGL root = createScene(ctx, one, two, 10);
+
+    ctx.stats().reset();
+    ctx.paint(root);
+    assertEquals(40, ctx.stats().shaderFlushes);
+
+    ctx.setDeferredRendering(true);
+    ctx.stats().reset();
+    ctx.paint(root);
+    assertEquals(2, ctx.stats().shaderFlushes);
+    assertEquals(40, ctx.stats().quadsRendered);
+  }
+
+  @Test public void testPreservesOrderOfOverlappingQuads() {
+    RecordingGL20 rgl = new RecordingGL20();
+    GL20Context ctx = rgl.createContext(200, 200);
+    Image one = new TestImageGL(ctx, 8, 8), two = new TestImageGL(ctx, 8, 8);
+    // all of the layers overlap one another, so no reordering is possible
+    GroupLayerGL root = createScene(ctx, one, two, 0);
+
+    ctx.paint(root); // create our textures
+    rgl.reset();
+    ctx.paint(root);
+    List<Integer> immediate = boundTextures(rgl);
+
+    ctx.setDeferredRendering(true);
+    rgl.reset();
+    ctx.stats().reset();
+    ctx.paint(root);
+    assertEquals(immediate, boundTextures(rgl));
+    assertEquals(40, ctx.stats().shaderFlushes);
+  }
+
+  @Test public void testFlushesBeforeOtherShaderUse() {
+    RecordingGL20 rgl = new RecordingGL20();
+    GL20Context ctx = rgl.createContext(200, 200);
+    ctx.setDeferredRendering(true);
+    TestImageGL image = new TestImageGL(ctx, 8, 8);
+    int tex = image.ensureTexture();
+
+    ctx.addQuad(null, tex, -1, ctx.createTransform(), 0, 0, 8, 8, 0, 0, 1, 1);
+    rgl.reset();
+    // preparing a shader directly must first send along the queued quad
+    ctx.quadShader(null).prepareTexture(tex+1, -1);
+    assertEquals(1, ctx.stats().quadsRendered);
+    assertEquals(tex, boundTextures(rgl).get(0).intValue());
+  }
+
+  protected GroupLayerGL createScene(GLContext ctx, Image one, Image two, float spacing) {
+    GroupLayerGL root = new GroupLayerGL(ctx);
+    for (int ii = 0; ii < 40; ii++) {
+      root.addAt(new ImageLayerGL(ctx).setImage(ii % 2 == 0 ? one : two),
+                 (ii % 8) * spacing, (ii / 8) * spacing);
+    }
+    return root;
+  }
+
+  protected List<Integer> boundTextures(RecordingGL20 rgl) {
+    List<Integer> texs = new ArrayList<Integer>();
+    for (RecordingGL20.Call call : rgl.calls("glBindTexture")) texs.add(call.intArg(1));
+    return texs;
+  }
+}
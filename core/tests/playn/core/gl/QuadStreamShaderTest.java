@@ -0,0 +1,87 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.gl;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import playn.core.InternalTransform;
+
+/**
+ * Tests {@link QuadStreamShader} and its selection by {@link GLContext#createQuadShader}.
+ */
+public class QuadStreamShaderTest {
+
+  @Test public void testSelectedWhenUniformsScarce() {
+    assertTrue(new RecordingGL20().createContext(100, 100).quadShader(null) instanceof QuadShader);
+
+    RecordingGL20 rgl = new RecordingGL20();
+    rgl.integers.put(GL20.GL_MAX_VERTEX_UNIFORM_VECTORS, 256);
+    GLShader shader = rgl.createContext(100, 100).quadShader(null);
+    assertTrue(shader instanceof QuadStreamShader);
+  }
+
+  @Test public void testStreamsRecords() {
+    RecordingGL20 rgl = new RecordingGL20();
+    GL20Context ctx = rgl.createContext(100, 100);
+    GLShader shader = new QuadStreamShader(ctx);
+    shader.createCore(); // don't record the sending of the static buffers
+    int quads = QuadStreamShader.MAX_QUADS + 10;
+    rgl.reset();
+    addQuads(ctx, shader, quads);
+
+    // one full batch and one partial batch, each of which sends only the quad records
+    assertEquals(2, rgl.count("glDrawElements"));
+    assertEquals(6*QuadStreamShader.MAX_QUADS, rgl.calls("glDrawElements").get(0).intArg(1));
+    assertEquals(6*10, rgl.calls("glDrawElements").get(1).intArg(1));
+    int recordBytes = 4*4*QuadStreamShader.RECORD_SIZE;
+    assertEquals(2, rgl.count("glBufferData"));
+    assertEquals(QuadStreamShader.MAX_QUADS*recordBytes,
+                 rgl.calls("glBufferData").get(0).intArg(1));
+    assertEquals(10*recordBytes, rgl.calls("glBufferData").get(1).intArg(1));
+    assertEquals(quads, ctx.stats().quadsRendered);
+  }
+
+  @Test public void testBatchSizeComparedToOtherShaders() {
+    // with a typical mobile uniform budget, the uniform based shader needs many more draw calls
+    // than the streaming shader to render the same quads
+    RecordingGL20 rgl = new RecordingGL20();
+    rgl.integers.put(GL20.GL_MAX_VERTEX_UNIFORM_VECTORS, 256);
+    GL20Context ctx = rgl.createContext(100, 100);
+    int quads = 1000;
+    GLShader[] shaders = { new QuadShader(ctx), new IndexedTrisShader(ctx),
+                           new QuadStreamShader(ctx) };
+    int[] draws = new int[shaders.length];
+    for (int ii = 0; ii < shaders.length; ii++) {
+      addQuads(ctx, shaders[ii], quads); // let the indexed tris shader grow its buffers
+      rgl.reset();
+      addQuads(ctx, shaders[ii], quads);
+      draws[ii] = rgl.count("glDrawElements");
+    }
+    assertEquals((quads + 83) / 84, draws[0]);
+    assertEquals(1, draws[2]);
+    assertTrue(draws[2] <= draws[1]);
+  }
+
+  protected void addQuads(GLContext ctx, GLShader shader, int count) {
+    InternalTransform xform = ctx.createTransform();
+    ctx.stats().reset();
+    for (int ii = 0; ii < count; ii++) {
+      shader.prepareTexture(1, -1).addQuad(xform, ii, ii, ii+8, ii+8, 0, 0, 1, 1);
+    }
+    shader.flush();
+  }
+}
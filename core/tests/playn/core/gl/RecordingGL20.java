@@ -0,0 +1,126 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.gl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Provides a {@link GL20} which records the calls made on it, for tests which check what we send
+ * to GL. Calls are stubbed to succeed: generated names are unique, queried statuses are {@code
+ * GL_TRUE} and queried limits are generous unless overridden via {@link #integers}.
+ */
+public class RecordingGL20 implements InvocationHandler {
+
+  /** A single recorded call. */
+  public static class Call {
+    public final String name;
+    public final Object[] args;
+
+    public Call(String name, Object[] args) {
+      this.name = name;
+      this.args = (args == null) ? new Object[0] : args;
+    }
+
+    /** Returns the {@code index}th argument as an int. */
+    public int intArg(int index) {
+      return ((Number) args[index]).intValue();
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  /** The calls made on {@link #gl}, in order. */
+  public final List<Call> calls = new ArrayList<Call>();
+
+  /** Whether calls are recorded. Benchmarks may clear this to use {@link #gl} as a no-op GL. */
+  public boolean recording = true;
+
+  /** Values to be returned by {@code glGetInteger}, for parameters other than the default. */
+  public final Map<Integer,Integer> integers = new HashMap<Integer,Integer>();
+
+  /** The recording GL instance. */
+  public final GL20 gl = (GL20) Proxy.newProxyInstance(
+    GL20.class.getClassLoader(), new Class<?>[] { GL20.class }, this);
+
+  /** Creates a GL context that renders into {@link #gl} and has the specified view size. */
+  public GL20Context createContext(int width, int height) {
+    GL20Context ctx = new GL20Context(null, gl, 1, false);
+    ctx.init();
+    ctx.setSize(width, height);
+    return ctx;
+  }
+
+  /** Returns the number of times {@code name} was called. */
+  public int count(String name) {
+    int count = 0;
+    for (Call call : calls) if (call.name.equals(name)) count++;
+    return count;
+  }
+
+  /** Returns all recorded calls to {@code name}. */
+  public List<Call> calls(String name) {
+    List<Call> matches = new ArrayList<Call>();
+    for (Call call : calls) if (call.name.equals(name)) matches.add(call);
+    return matches;
+  }
+
+  /** Clears the recorded calls. */
+  public void reset() {
+    calls.clear();
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) {
+    String name = method.getName();
+    if (recording) calls.add(new Call(name, args));
+
+    if (name.startsWith("glGen") && args.length == 3 && args[1] instanceof int[]) {
+      int[] ids = (int[]) args[1];
+      for (int ii = 0, off = (Integer) args[2]; ii < (Integer) args[0]; ii++) ids[off+ii] = ++nextId;
+    } else if (name.startsWith("glGen") && args.length == 2 && args[1] instanceof IntBuffer) {
+      IntBuffer ids = (IntBuffer) args[1];
+      for (int ii = 0; ii < (Integer) args[0]; ii++) ids.put(ids.position()+ii, ++nextId);
+    } else if (name.matches("glGet(Shader|Program)iv") && args[2] instanceof int[]) {
+      ((int[]) args[2])[(Integer) args[3]] = GL20.GL_TRUE;
+    }
+
+    Class<?> rtype = method.getReturnType();
+    if (rtype == Integer.TYPE) {
+      if (name.startsWith("glCreate")) return ++nextId;
+      if (name.equals("glGetInteger")) {
+        Integer value = integers.get(args[0]);
+        return (value == null) ? 1024 : value;
+      }
+      return 0;
+    }
+    if (rtype == Boolean.TYPE) return Boolean.FALSE;
+    if (rtype == Float.TYPE) return 0f;
+    if (rtype == String.class) return "";
+    return null;
+  }
+
+  private int nextId;
+}
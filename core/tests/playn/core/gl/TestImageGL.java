@@ -0,0 +1,75 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.gl;
+
+import playn.core.Image;
+import playn.core.Pattern;
+import playn.core.util.Callback;
+
+/**
+ * A bare bones {@link ImageGL} with no actual image data, for use in tests.
+ */
+public class TestImageGL extends ImageGL<Object> {
+
+  public final float width, height;
+  public int updates;
+
+  public TestImageGL(GLContext ctx, float width, float height) {
+    super(ctx, ctx.scale);
+    this.width = width;
+    this.height = height;
+  }
+
+  @Override
+  public float width() {
+    return width;
+  }
+
+  @Override
+  public float height() {
+    return height;
+  }
+
+  @Override
+  public boolean isReady() {
+    return true;
+  }
+
+  @Override
+  public void addCallback(Callback<? super Image> callback) {
+    callback.onSuccess(this);
+  }
+
+  @Override
+  public void draw(Object gc, float dx, float dy, float dw, float dh) {
+  }
+
+  @Override
+  public void draw(Object gc, float dx, float dy, float dw, float dh,
+                   float sx, float sy, float sw, float sh) {
+  }
+
+  @Override
+  protected Pattern toSubPattern(AbstractImageGL<?> image, boolean repeatX, boolean repeatY,
+                                 float x, float y, float width, float height) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  protected void updateTexture(int tex) {
+    updates++;
+  }
+}
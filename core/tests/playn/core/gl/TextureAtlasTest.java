@@ -0,0 +1,183 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.gl;
+
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import playn.core.Image;
+
+/**
+ * Tests {@link TextureAtlas}.
+ */
+public class TextureAtlasTest {
+
+  @Test public void testAtlasBatchesDraws() {
+    RecordingGL20 rgl = new RecordingGL20();
+    GL20Context ctx = rgl.createContext(100, 100);
+    Image one = new TestImageGL(ctx, 16, 16), two = new TestImageGL(ctx, 16, 16);
+
+    // without the atlas, alternating between images flushes on every draw
+    GroupLayerGL root = createScene(ctx, one, two);
+    ctx.stats().reset();
+    ctx.paint(root);
+    assertEquals(20, ctx.stats().shaderFlushes);
+    assertEquals(20, ctx.stats().texBinds);
+
+    // with the atlas, the images share a texture (the first frame places them into the page)
+    TextureAtlas atlas = new TextureAtlas(ctx);
+    root = createScene(ctx, atlas.add(one), atlas.add(two));
+    ctx.paint(root);
+    assertEquals(1, atlas.pageCount());
+    assertEquals(2, atlas.placedCount());
+
+    ctx.stats().reset();
+    rgl.reset();
+    ctx.paint(root);
+    assertEquals(1, ctx.stats().shaderFlushes);
+    assertEquals(1, ctx.stats().texBinds);
+    assertEquals(1, rgl.count("glDrawElements"));
+    assertEquals(20, ctx.stats().quadsRendered);
+  }
+
+  @Test public void testOversizedImagesNotAtlased() {
+    RecordingGL20 rgl = new RecordingGL20();
+    GL20Context ctx = rgl.createContext(100, 100);
+    TextureAtlas atlas = new TextureAtlas(ctx, 256, 64, 1);
+    GroupLayerGL root = new GroupLayerGL(ctx);
+    root.add(new ImageLayerGL(ctx).setImage(atlas.add(new TestImageGL(ctx, 100, 10))));
+    ctx.paint(root);
+    assertEquals(0, atlas.pageCount());
+    assertEquals(1, ctx.stats().quadsRendered);
+  }
+
+  @Test public void testRepackEvictsUnreferenced() {
+    RecordingGL20 rgl = new RecordingGL20();
+    GL20Context ctx = rgl.createContext(100, 100);
+    // a 64x64 page holds a 3x3 grid of 16x16 images (plus padding)
+    TextureAtlas atlas = new TextureAtlas(ctx, 64, 16, 1);
+    SurfaceGL surf = new SurfaceGL(ctx, 100, 100);
+
+    // place two images which are referenced by layers, and seven which are not
+    GroupLayerGL root = new GroupLayerGL(ctx);
+    for (int ii = 0; ii < 2; ii++) {
+      root.add(new ImageLayerGL(ctx).setImage(atlas.add(new TestImageGL(ctx, 16, 16))));
+    }
+    ctx.paint(root);
+    for (int ii = 0; ii < 7; ii++) surf.drawImage(atlas.add(new TestImageGL(ctx, 16, 16)), 0, 0);
+    assertEquals(9, atlas.placedCount());
+    assertEquals(0, atlas.repackCount());
+
+    // the next image does not fit, so the page is repacked, keeping only the referenced images
+    surf.drawImage(atlas.add(new TestImageGL(ctx, 16, 16)), 0, 0);
+    assertEquals(1, atlas.repackCount());
+    assertEquals(3, atlas.placedCount());
+    assertEquals(1, atlas.pageCount());
+  }
+
+  @Test public void testPlacesImagesOutsideClip() {
+    RecordingGL20 rgl = new RecordingGL20();
+    GL20Context ctx = rgl.createContext(100, 100);
+    TextureAtlas atlas = new TextureAtlas(ctx);
+    GroupLayerGL root = new GroupLayerGL(ctx);
+    GroupLayerGL.Clipped clipped = new GroupLayerGL.Clipped(ctx, 10, 10);
+    clipped.addAt(new ImageLayerGL(ctx).setImage(atlas.add(new TestImageGL(ctx, 16, 16))), 5, 5);
+    root.addAt(clipped, 40, 40);
+
+    // the image is first drawn (and so placed) inside the clip, which must not apply to the page
+    ctx.paint(root);
+    assertEquals(1, atlas.placedCount());
+    assertEquals(0, scissoredPageDraws(rgl, 0));
+    assertEquals(2, countScissor(rgl, "glEnable"));
+    assertEquals(2, countScissor(rgl, "glDisable"));
+  }
+
+  @Test public void testPlacesImagesIntoNestedFramebuffer() {
+    RecordingGL20 rgl = new RecordingGL20();
+    GL20Context ctx = rgl.createContext(100, 100);
+    TextureAtlas atlas = new TextureAtlas(ctx);
+    SurfaceGL surf = new SurfaceGL(ctx, 50, 50);
+    Image image = atlas.add(new TestImageGL(ctx, 16, 16));
+
+    // placing an image while another framebuffer is pushed restores that framebuffer afterwards
+    ctx.pushFramebuffer(surf.fbuf, 50, 50);
+    ctx.startClipped(0, 0, 20, 20);
+    surf.drawImage(image, 0, 0);
+    List<RecordingGL20.Call> binds = rgl.calls("glBindFramebuffer");
+    assertEquals(surf.fbuf, binds.get(binds.size() - 1).intArg(1));
+    ctx.endClipped();
+    ctx.popFramebuffer();
+    assertEquals(1, atlas.placedCount());
+    assertEquals(0, scissoredPageDraws(rgl, surf.fbuf));
+  }
+
+  @Test public void testSkylinePacking() {
+    TextureAtlas.Skyline packer = new TextureAtlas.Skyline(64, 64);
+    // sixteen 16x16 rects fill the space exactly
+    for (int ii = 0; ii < 16; ii++) {
+      assertTrue(packer.add(16, 16));
+      assertEquals(0, packer.packedX % 16);
+      assertEquals(0, packer.packedY % 16);
+    }
+    assertFalse(packer.add(1, 1));
+
+    // a tall rect followed by short rects that fill in beside it
+    packer.reset();
+    assertTrue(packer.add(32, 64));
+    for (int ii = 0; ii < 4; ii++) {
+      assertTrue(packer.add(32, 16));
+      assertEquals(32, packer.packedX);
+      assertEquals(ii*16, packer.packedY);
+    }
+    assertFalse(packer.add(8, 8));
+  }
+
+  // returns the number of draws made with the scissor test enabled while a framebuffer other than
+  // the default or the (legitimately clipped) supplied framebuffer was bound
+  protected int scissoredPageDraws(RecordingGL20 rgl, int clippedFbuf) {
+    boolean scissor = false;
+    int fbuf = 0, draws = 0;
+    for (RecordingGL20.Call call : rgl.calls) {
+      if (call.name.equals("glBindFramebuffer")) fbuf = call.intArg(1);
+      else if (call.name.equals("glEnable") && call.intArg(0) == GL20.GL_SCISSOR_TEST) {
+        scissor = true;
+      } else if (call.name.equals("glDisable") && call.intArg(0) == GL20.GL_SCISSOR_TEST) {
+        scissor = false;
+      } else if (call.name.startsWith("glDraw") && scissor && fbuf != 0 && fbuf != clippedFbuf) {
+        draws++;
+      }
+    }
+    return draws;
+  }
+
+  protected int countScissor(RecordingGL20 rgl, String name) {
+    int count = 0;
+    for (RecordingGL20.Call call : rgl.calls(name)) {
+      if (call.intArg(0) == GL20.GL_SCISSOR_TEST) count++;
+    }
+    return count;
+  }
+
+  protected GroupLayerGL createScene(GLContext ctx, Image one, Image two) {
+    GroupLayerGL root = new GroupLayerGL(ctx);
+    for (int ii = 0; ii < 20; ii++) {
+      root.addAt(new ImageLayerGL(ctx).setImage(ii % 2 == 0 ? one : two), ii * 4, 0);
+    }
+    return root;
+  }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.gl;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the per-frame texture upload budget.
+ */
+public class UploadBudgetTest {
+
+  @Test public void testSpreadsUploadsOverFrames() {
+    RecordingGL20 rgl = new RecordingGL20();
+    GL20Context ctx = rgl.createContext(200, 200);
+    TestImageGL[] images = createImages(ctx, 10);
+    GroupLayerGL root = createScene(ctx, images);
+
+    // room for three 8x8 textures per frame
+    ctx.setUploadBudget(3 * 8 * 8 * 4);
+    ctx.stats().reset();
+    ctx.paint(root);
+    assertEquals(3, uploaded(images));
+    assertEquals(3, ctx.stats().quadsRendered);
+    assertEquals(7, ctx.stats().uploadsDeferred);
+    assertEquals(3 * 8 * 8 * 4, ctx.stats().uploadBytes);
+
+    ctx.paint(root);
+    assertEquals(6, uploaded(images));
+    ctx.paint(root);
+    ctx.paint(root);
+    assertEquals(10, uploaded(images));
+
+    // once uploaded, everything is drawn every frame
+    ctx.stats().reset();
+    ctx.paint(root);
+    assertEquals(10, ctx.stats().quadsRendered);
+    assertEquals(0, ctx.stats().uploadsDeferred);
+  }
+
+  @Test public void testAlwaysUploadsOne() {
+    RecordingGL20 rgl = new RecordingGL20();
+    GL20Context ctx = rgl.createContext(200, 200);
+    TestImageGL[] images = createImages(ctx, 3);
+    GroupLayerGL root = createScene(ctx, images);
+
+    // even an image larger than the budget is eventually uploaded
+    ctx.setUploadBudget(16);
+    ctx.paint(root);
+    assertEquals(1, uploaded(images));
+    ctx.paint(root);
+    ctx.paint(root);
+    assertEquals(3, uploaded(images));
+  }
+
+  @Test public void testUnlimitedByDefault() {
+    RecordingGL20 rgl = new RecordingGL20();
+    GL20Context ctx = rgl.createContext(200, 200);
+    TestImageGL[] images = createImages(ctx, 10);
+    ctx.paint(createScene(ctx, images));
+    assertEquals(10, uploaded(images));
+  }
+
+  @Test public void testSurfaceDrawsIgnoreBudget() {
+    RecordingGL20 rgl = new RecordingGL20();
+    GL20Context ctx = rgl.createContext(200, 200);
+    TestImageGL[] images = createImages(ctx, 2);
+    ctx.setUploadBudget(8 * 8 * 4);
+    ctx.paint(createScene(ctx, new TestImageGL[] { images[0] }));
+
+    // the budget is used up, but nothing redraws a surface, so drawing into one must upload
+    ctx.stats().reset();
+    new SurfaceGL(ctx, 32, 32).drawImage(images[1], 0, 0);
+    ctx.flush();
+    assertEquals(2, uploaded(images));
+    assertEquals(0, ctx.stats().uploadsDeferred);
+    assertEquals(1, ctx.stats().quadsRendered);
+  }
+
+  protected TestImageGL[] createImages(GLContext ctx, int count) {
+    TestImageGL[] images = new TestImageGL[count];
+    for (int ii = 0; ii < count; ii++) images[ii] = new TestImageGL(ctx, 8, 8);
+    return images;
+  }
+
+  protected GroupLayerGL createScene(GLContext ctx, TestImageGL[] images) {
+    GroupLayerGL root = new GroupLayerGL(ctx);
+    for (int ii = 0; ii < images.length; ii++)
+      root.addAt(new ImageLayerGL(ctx).setImage(images[ii]), ii * 10, 0);
+    return root;
+  }
+
+  protected int uploaded(TestImageGL[] images) {
+    int count = 0;
+    for (TestImageGL image : images) if (image.updates > 0) count++;
+    return count;
+  }
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.json;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import playn.core.Json;
+
+public class InternalJsonBinaryTest {
+  private final JsonImpl json = new JsonImpl();
+
+  @Test
+  public void testRoundTrip() throws JsonParserException {
+    StringBuilder longString = new StringBuilder();
+    for (int ii = 0; ii < 100; ii++) longString.append((char)('a' + ii % 26));
+    JsonObject source = JsonParser.object().from(
+      "{\"small\": 5, \"byte\": 200, \"short\": -40000, \"int\": 2000000000, " +
+      "\"long\": -12345678901234, \"big\": 123456789012345678901234, \"float\": 0.5, " +
+      "\"double\": 0.1, \"negzero\": -0, \"t\": true, \"f\": false, \"n\": null, " +
+      "\"unicode\": \"\u00e9\u4e2d\ud83d\ude00\", \"empty\": \"\", \"long string\": \"" +
+      longString + "\", \"nested\": {\"a\": [1, 2, 3], \"b\": [1.5, -2.25], " +
+      "\"c\": [{\"x\": 1}, {\"x\": 2}], \"d\": [], \"e\": {}, \"f\": [[\"deep\"]]}}");
+
+    ByteBuffer data = json.newBinaryWriter().object(source).write();
+    Json.Object parsed = (Json.Object)json.parseBinary(data);
+    assertEquals(JsonStringWriter.toString(source), JsonStringWriter.toString(parsed));
+    assertEquals(0, data.position());
+
+    assertEquals(-40000, parsed.getInt("short"));
+    assertEquals(-12345678901234L, parsed.getLong("long"));
+    assertEquals(new BigInteger("123456789012345678901234"), ((JsonObject)parsed).get("big"));
+    assertEquals(0.1, parsed.getDouble("double"), 0);
+    assertEquals(Double.valueOf(-0.0), ((JsonObject)parsed).get("negzero"));
+    assertTrue(parsed.isNull("n"));
+    assertEquals("\u00e9\u4e2d\ud83d\ude00", parsed.getString("unicode"));
+    assertEquals(longString.toString(), parsed.getString("long string"));
+    Json.Object nested = parsed.getObject("nested");
+    assertArrayEquals(new int[] { 1, 2, 3 }, toInts(nested.getArray("a", Integer.class)));
+    assertArrayEquals(new double[] { 1.5, -2.25 },
+                      toDoubles(nested.getArray("b", Double.class)), 0);
+    assertEquals(2, nested.getArray("c").getObject(1).getInt("x"));
+
+    // decoded objects can be modified like any other
+    nested.put("g", "new");
+    nested.remove("a");
+    assertEquals("new", nested.getString("g"));
+    assertFalse(nested.containsKey("a"));
+
+    // arrays can be at the top level too
+    ByteBuffer adata = json.newBinaryWriter().array(JsonArray.from(1, "two", 3.5)).write();
+    assertEquals("[1,\"two\",3.5]", JsonStringWriter.toString(json.parseBinaryArray(adata)));
+  }
+
+  @Test
+  public void testStringTable() throws JsonParserException {
+    JsonBinaryWriter writer = json.newBinaryWriter().array();
+    for (int ii = 0; ii < 100; ii++)
+      writer.object().value("name", "same").value("id", ii).end();
+    ByteBuffer data = writer.end().write();
+    assertEquals(3, writer.stringCount()); // name, id, same
+    Json.Array parsed = json.parseBinaryArray(data);
+    assertSame(parsed.getObject(0).getString("name"), parsed.getObject(99).getString("name"));
+    assertSame(parsed.getObject(0).keys().get(0), parsed.getObject(99).keys().get(0));
+    assertEquals(99, parsed.getObject(99).getInt("id"));
+  }
+
+  @Test
+  public void testLazyObjects() throws JsonParserException {
+    JsonBinaryWriter writer = json.newBinaryWriter().object();
+    writer.object("a").value("x", 1).end().object("b").value("y", 2).end();
+    Json.Object parsed = (Json.Object)json.parseBinary(writer.end().write());
+    JsonBinaryReader.LazyObject root = (JsonBinaryReader.LazyObject)parsed;
+    assertFalse(root.isDecoded());
+    assertTrue(parsed.isObject("a"));
+    assertTrue(root.isDecoded());
+    JsonBinaryReader.LazyObject a = (JsonBinaryReader.LazyObject)parsed.getObject("a");
+    JsonBinaryReader.LazyObject b = (JsonBinaryReader.LazyObject)parsed.getObject("b");
+    assertEquals(1, a.getInt("x"));
+    assertTrue(a.isDecoded());
+    assertFalse(b.isDecoded());
+  }
+
+  @Test
+  public void testBuffers() throws JsonParserException {
+    JsonObject source = JsonParser.object().from(
+      "{\"list\": [1, 2, 3, 4, 5, 6, 7, 8, 9, 10], \"name\": \"a string which won't fit\"}");
+    String expected = JsonStringWriter.toString(source);
+
+    // a buffer that's too small is replaced by a larger one
+    ByteBuffer small = ByteBuffer.allocate(4);
+    ByteBuffer data = json.newBinaryWriter(small).object(source).write();
+    assertEquals(expected, JsonStringWriter.toString(json.parseBinary(data)));
+
+    // writing starts at the current position, and direct buffers stay direct
+    ByteBuffer direct = ByteBuffer.allocateDirect(256);
+    direct.position(10);
+    data = json.newBinaryWriter(direct).object(source).write();
+    assertSame(direct, data);
+    assertEquals(10, data.position());
+    assertEquals(expected, JsonStringWriter.toString(json.parseBinary(data)));
+
+    ByteBuffer offset = ByteBuffer.allocateDirect(8);
+    offset.position(3);
+    data = json.newBinaryWriter(offset).object(source).write();
+    assertTrue(data.isDirect());
+    assertEquals(expected, JsonStringWriter.toString(json.parseBinary(data)));
+  }
+
+  @Test
+  public void testWriterErrors() {
+    try {
+      json.newBinaryWriter().object().write();
+      fail();
+    } catch (JsonWriterException e) {
+      // expected
+    }
+    try {
+      json.newBinaryWriter().array().value("key", 1);
+      fail();
+    } catch (JsonWriterException e) {
+      // expected
+    }
+    try {
+      json.newBinaryWriter().value(1).value(2);
+      fail();
+    } catch (JsonWriterException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testMalformed() throws JsonParserException {
+    ByteBuffer good = json.newBinaryWriter().object(
+      JsonParser.object().from("{\"a\": [1, 2, {\"b\": \"c\"}], \"d\": 1.5}")).write();
+    byte[] bytes = new byte[good.remaining()];
+    good.get(bytes);
+
+    // every truncation and every single byte corruption is either rejected up front or decodes
+    // without error
+    for (int length = 0; length < bytes.length; length++) {
+      try {
+        json.parseBinary(ByteBuffer.wrap(bytes, 0, length));
+        fail("Truncated document parsed: " + length);
+      } catch (JsonParserException e) {
+        // expected
+      }
+    }
+    for (int ii = 0; ii < bytes.length; ii++) {
+      for (int bit = 0; bit < 8; bit++) {
+        byte[] corrupt = bytes.clone();
+        corrupt[ii] ^= (1 << bit);
+        try {
+          JsonStringWriter.toString(json.parseBinary(ByteBuffer.wrap(corrupt)));
+        } catch (JsonParserException e) {
+          // fine
+        }
+      }
+    }
+
+    try {
+      json.parseBinaryArray(ByteBuffer.wrap(bytes));
+      fail();
+    } catch (JsonParserException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("expected"));
+    }
+  }
+
+  @Test
+  public void testMalformedArguments() {
+    // a string reference and string lengths whose eight byte arguments are negative or overflow
+    byte[] ref = { (byte)0xAA, (byte)0x5B, -1, -1, -1, -1, -1, -1, -1, -1, (byte)0xF6 };
+    checkMalformed(ref, 0, new byte[0], "Invalid string reference");
+    byte[] huge = { (byte)0x7B, 0x7F, -1, -1, -1, -1, -1, -1, -1 };
+    checkMalformed(huge, 0, new byte[0], "Invalid length");
+    byte[] negative = { (byte)0x7B, -1, -1, -1, -1, -1, -1, -1, -1 };
+    checkMalformed(new byte[] { (byte)0xA0 }, 1, negative, "Invalid length");
+  }
+
+  // builds a document from a root item and a string table and checks that it is rejected
+  private void checkMalformed(byte[] root, int count, byte[] table, String message) {
+    ByteBuffer doc = ByteBuffer.allocate(2 + root.length + table.length + 8);
+    doc.put(JsonBinaryWriter.MAGIC).put(JsonBinaryWriter.VERSION).put(root).put(table);
+    doc.putInt(2 + root.length).putInt(count).flip();
+    try {
+      json.parseBinary(doc);
+      fail("Malformed document parsed");
+    } catch (JsonParserException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains(message));
+    }
+  }
+
+  /**
+   * Checks that the torture test document survives the binary encoding, which is smaller than the
+   * text encoding, and that lookups into a lazily decoded object work.
+   */
+  @Test
+  public void testTortureTest() throws JsonParserException, IOException {
+    InputStream input = getClass().getResourceAsStream("torturetest.json.gz");
+    byte[] text = readAll(new GZIPInputStream(input));
+    JsonObject source = JsonParser.object().from(text);
+    ByteBuffer data = json.newBinaryWriter().object(source).write();
+    assertTrue(data.remaining() < text.length);
+    Object parsed = json.parseBinary(data.duplicate());
+    assertEquals(JsonStringWriter.toString(source), JsonStringWriter.toString(parsed));
+    assertNull(((Json.Object)json.parseBinary(data.duplicate())).getString("no such key"));
+  }
+
+  private byte[] readAll(InputStream input) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] b = new byte[64 * 1024];
+    for (int r; (r = input.read(b)) > 0; ) out.write(b, 0, r);
+    return out.toByteArray();
+  }
+
+  private static int[] toInts(Json.TypedArray<?> array) {
+    return Json.TypedArray.Util.toIntArray(array);
+  }
+
+  private static double[] toDoubles(Json.TypedArray<?> array) {
+    return Json.TypedArray.Util.toDoubleArray(array);
+  }
+}
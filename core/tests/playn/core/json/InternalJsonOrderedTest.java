@@ -0,0 +1,226 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.json;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import playn.core.Json;
+
+/**
+ * Tests the insertion-ordered object representation, the key pool and unboxed numeric arrays.
+ */
+public class InternalJsonOrderedTest {
+  @Test
+  public void testOrderedMapMatchesLinkedHashMap() {
+    Random rando = new Random(42);
+    JsonOrderedMap map = new JsonOrderedMap();
+    Map<String, Object> expect = new LinkedHashMap<String, Object>();
+    for (int ii = 0; ii < 20000; ii++) {
+      String key = "k" + rando.nextInt(500);
+      switch (rando.nextInt(4)) {
+      case 0:
+        assertEquals(expect.remove(key), map.remove(key));
+        break;
+      case 1:
+        assertEquals(expect.get(key), map.get(key));
+        assertEquals(expect.containsKey(key), map.containsKey(key));
+        break;
+      default:
+        assertEquals(expect.put(key, ii), map.put(key, ii));
+        break;
+      }
+      assertEquals(expect.size(), map.size());
+    }
+    assertEquals(new ArrayList<Object>(expect.entrySet()),
+                 new ArrayList<Object>(map.entrySet()));
+    assertEquals(expect, map);
+
+    // removing via the iterator works and preserves the order of the remaining entries
+    for (Iterator<Map.Entry<String, Object>> it = map.entrySet().iterator(); it.hasNext(); ) {
+      if (it.next().getKey().endsWith("7")) it.remove();
+    }
+    for (Iterator<String> it = expect.keySet().iterator(); it.hasNext(); ) {
+      if (it.next().endsWith("7")) it.remove();
+    }
+    assertEquals(new ArrayList<String>(expect.keySet()), new ArrayList<String>(map.keySet()));
+
+    map.clear();
+    assertEquals(0, map.size());
+    assertNull(map.get("k1"));
+    map.put("k1", 1);
+    assertEquals(1, map.get("k1"));
+  }
+
+  @Test
+  public void testOrderedObjects() throws JsonParserException {
+    JsonImpl json = new JsonImpl();
+    json.setOrderedObjects(true);
+    Json.Object obj = json.parse("{\"z\": 1, \"a\": 2, \"m\": {\"y\": true, \"b\": false}}");
+    assertEquals(list("z", "a", "m"), keys(obj));
+    assertEquals(list("y", "b"), keys(obj.getObject("m")));
+    assertEquals("{\"z\":1,\"a\":2,\"m\":{\"y\":true,\"b\":false}}",
+                 JsonStringWriter.toString(obj));
+    obj.remove("a");
+    obj.put("a", 3);
+    assertEquals(list("z", "m", "a"), keys(obj));
+
+    Json.Object created = json.createObject();
+    created.put("second", 2);
+    created.put("first", 1);
+    assertEquals(list("second", "first"), keys(created));
+
+    // the default is still sorted
+    assertEquals(list("a", "m", "z"), keys(new JsonImpl().parse("{\"z\": 1, \"a\": 2, \"m\": 3}")));
+  }
+
+  @Test
+  public void testKeyPool() throws JsonParserException {
+    JsonKeyPool pool = new JsonKeyPool();
+    StringBuilder buf = new StringBuilder("name");
+    String name = pool.intern(buf);
+    assertEquals("name", name);
+    assertSame(name, pool.intern(new StringBuilder("name")));
+    assertFalse(name.equals(pool.intern("names")));
+    for (int ii = 0; ii < 1000; ii++) pool.intern("key" + ii);
+    assertSame(name, pool.intern("name"));
+    assertEquals(1002, pool.size());
+
+    // records which share a schema share their keys
+    Json.Array records = JsonParser.array().withOrderedObjects(true).from(
+      "[{\"id\": 1, \"name\": \"a\"}, {\"id\": 2, \"name\": \"b\"}]");
+    assertSame(records.getObject(0).keys().get(1), records.getObject(1).keys().get(1));
+  }
+
+  @Test
+  public void testUnboxedArrays() throws JsonParserException {
+    JsonObject obj = JsonParser.object().from(
+      "{\"ints\": [1, -2, 3], \"doubles\": [0.5, -0, 1e3], \"mixed\": [1, 2.5], " +
+      "\"longs\": [1, 12345678901], \"other\": [1, \"two\"], \"empty\": []}");
+
+    Json.TypedArray<Integer> ints = obj.getArray("ints", Integer.class);
+    assertArrayEquals(new int[] { 1, -2, 3 }, toInts(ints));
+    assertArrayEquals(new double[] { 1, -2, 3 }, toDoubles(ints), 0);
+    assertEquals(Integer.valueOf(-2), ints.get(1));
+    Json.Array iarray = obj.getArray("ints");
+    assertEquals(-2L, iarray.getLong(1));
+    assertEquals(3f, iarray.getNumber(2), 0);
+    assertTrue(iarray.isNumber(0));
+    assertFalse(iarray.isNumber(3));
+    assertEquals(7, iarray.getInt(3, 7));
+    assertEquals("[1, -2, 3]", iarray.toString());
+
+    Json.TypedArray<Double> doubles = obj.getArray("doubles", Double.class);
+    assertArrayEquals(new double[] { 0.5, -0.0, 1000 }, toDoubles(doubles), 0);
+    assertEquals(Double.valueOf(-0.0), doubles.get(1));
+    assertArrayEquals(new int[] { 0, 0, 1000 }, toInts(doubles));
+
+    // non-uniform arrays are boxed, but behave the same
+    assertArrayEquals(new double[] { 1, 2.5 }, toDoubles(obj.getArray("mixed", Double.class)), 0);
+    assertEquals(Long.valueOf(12345678901L), ((JsonArray)obj.getArray("longs")).get(1));
+    assertArrayEquals(new int[] { 1, 0 }, toInts(obj.getArray("other", Integer.class)));
+    assertEquals(0, toInts(obj.getArray("empty", Integer.class)).length);
+
+    // our arrays convert themselves, while others are converted value by value
+    assertTrue(ints instanceof Json.TypedArray.Numeric);
+    assertArrayEquals(new int[] { 3, 5 }, toInts(Json.TypedArray.Util.create(3, 5)));
+    assertArrayEquals(new double[] { 0.5 }, toDoubles(Json.TypedArray.Util.create(0.5)), 0);
+
+    // unboxed arrays write and print exactly like their boxed equivalents
+    String written = "{\"doubles\":[0.5,-0.0,1000.0],\"empty\":[],\"ints\":[1,-2,3]," +
+      "\"longs\":[1,12345678901],\"mixed\":[1,2.5],\"other\":[1,\"two\"]}";
+    assertEquals(written, JsonStringWriter.toString(obj));
+    assertEquals(JsonArray.from(1, -2, 3).toString(), iarray.toString());
+    assertEquals(JsonArray.from(0.5, -0.0, 1000.0).toString(), obj.getArray("doubles").toString());
+
+    // mutating an unboxed array switches it to boxed storage
+    iarray.add("four");
+    iarray.set(0, 10);
+    iarray.remove(1);
+    assertEquals("[10, 3, four]", iarray.toString());
+    JsonArray darray = (JsonArray)obj.getArray("doubles");
+    darray.addInt(4);
+    assertEquals(Integer.valueOf(4), darray.get(3));
+    assertEquals(Double.valueOf(0.5), darray.get(0));
+  }
+
+  /**
+   * Checks that ordered objects hold the same torture test document as sorted objects, and that
+   * lookups into a wide ordered object find every key.
+   */
+  @Test
+  public void testOrderedTortureTest() throws JsonParserException, IOException {
+    InputStream input = getClass().getResourceAsStream("torturetest.json.gz");
+    String json = new String(readAll(new GZIPInputStream(input)), "UTF-8");
+
+    JsonObject sorted = JsonParser.object().from(json);
+    JsonObject ordered = JsonParser.object().withOrderedObjects(true).from(json);
+    assertEquals(JsonStringWriter.toString(sorted),
+                 JsonStringWriter.toString(JsonParser.object().from(
+                                             JsonStringWriter.toString(ordered))));
+
+    // a wide object with a fixed schema keeps its field order, and finds every field
+    StringBuilder buf = new StringBuilder("{");
+    for (int ii = 0; ii < 200; ii++) buf.append(ii > 0 ? "," : "").append("\"field").append(ii)
+                                         .append("\":").append(ii);
+    String wide = buf.append("}").toString();
+    JsonObject wideOrdered = JsonParser.object().withOrderedObjects(true).from(wide);
+    assertEquals(wide, JsonStringWriter.toString(wideOrdered));
+    for (int ii = 0; ii < 200; ii++) assertEquals(ii, wideOrdered.getInt("field" + ii));
+  }
+
+  private byte[] readAll(InputStream input) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] b = new byte[64 * 1024];
+    for (int r; (r = input.read(b)) > 0; ) out.write(b, 0, r);
+    return out.toByteArray();
+  }
+
+  private static List<String> keys(Json.Object obj) {
+    List<String> keys = new ArrayList<String>();
+    for (String key : obj.keys()) keys.add(key);
+    return keys;
+  }
+
+  private static List<String> list(String... values) {
+    List<String> list = new ArrayList<String>();
+    for (String value : values) list.add(value);
+    return list;
+  }
+
+  private static int[] toInts(Json.TypedArray<?> array) {
+    return Json.TypedArray.Util.toIntArray(array);
+  }
+
+  private static double[] toDoubles(Json.TypedArray<?> array) {
+    return Json.TypedArray.Util.toDoubleArray(array);
+  }
+}
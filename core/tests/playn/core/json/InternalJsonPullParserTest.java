@@ -0,0 +1,208 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import playn.core.json.JsonPullParser.Event;
+import static playn.core.json.JsonPullParser.Event.*;
+
+public class InternalJsonPullParserTest {
+  @Test
+  public void testEvents() throws JsonParserException {
+    JsonPullParser p = JsonPullParser.from(
+      "{\"a\": [1, -2.5, \"x\", true, false, null, {}], \"b\": {\"c\": []}}");
+    List<Event> events = new ArrayList<Event>();
+    while (p.next() != END) events.add(p.current());
+    assertEquals(list(START_OBJECT, KEY, START_ARRAY, NUMBER, NUMBER, STRING, TRUE, FALSE, NULL,
+                      START_OBJECT, END_OBJECT, END_ARRAY, KEY, START_OBJECT, KEY, START_ARRAY,
+                      END_ARRAY, END_OBJECT, END_OBJECT), events);
+    // END is sticky
+    assertEquals(END, p.next());
+  }
+
+  @Test
+  public void testTypedAccessors() throws JsonParserException {
+    JsonPullParser p = JsonPullParser.from(
+      "{\"name\": \"Bob\", \"pos\": [3, -4, 2.5e1], \"big\": 12345678901234, \"huge\": " +
+      "123456789012345678901, \"ok\": true}");
+    assertEquals(START_OBJECT, p.next());
+    assertEquals("name", p.nextKey());
+    StringBuilder name = new StringBuilder(">");
+    assertEquals(">Bob", p.nextString(name).toString());
+    assertEquals("pos", p.nextKey());
+    assertEquals(START_ARRAY, p.next());
+    assertEquals(2, p.depth());
+    assertEquals(3, p.nextInt());
+    assertEquals(-4, p.nextLong());
+    assertEquals(25.0, p.nextDouble(), 0);
+    assertEquals(END_ARRAY, p.next());
+    assertEquals("big", p.nextKey());
+    assertEquals(12345678901234L, p.nextLong());
+    assertEquals(Long.valueOf(12345678901234L), p.numberValue());
+    assertEquals("huge", p.nextKey());
+    p.next();
+    assertEquals("123456789012345678901", p.text().toString());
+    assertEquals("123456789012345678901", p.numberValue().toString());
+    assertEquals(1.2345678901234568E20, p.doubleValue(), 0);
+    assertEquals("ok", p.nextKey());
+    assertTrue(p.nextBoolean());
+    assertEquals(END_OBJECT, p.next());
+    assertEquals(END, p.next());
+  }
+
+  @Test
+  public void testSkipValue() throws JsonParserException {
+    JsonPullParser p = JsonPullParser.from(
+      "{\"skip\": {\"a\": [1, [2, {\"b\": 3}]]}, \"keep\": 4}");
+    p.next();
+    assertEquals("skip", p.nextKey());
+    p.next();
+    p.skipValue();
+    assertEquals(END_OBJECT, p.current());
+    assertEquals("keep", p.nextKey());
+    assertEquals(4, p.nextInt());
+  }
+
+  @Test
+  public void testTypeMismatch() {
+    try {
+      JsonPullParser p = JsonPullParser.from("[\"abc\"]");
+      p.next();
+      p.nextInt();
+      fail();
+    } catch (JsonParserException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("Expected NUMBER, got STRING"));
+      assertEquals(2, e.getCharPosition());
+    }
+  }
+
+  @Test
+  public void testSources() throws JsonParserException, IOException {
+    // make a document long enough to span several buffers, with multibyte and surrogate chars
+    StringBuilder buf = new StringBuilder("[");
+    for (int ii = 0; ii < 2000; ii++) {
+      if (ii > 0) buf.append(",");
+      buf.append("\"\u00e9\u4e2d\ud83d\ude00").append(ii).append("\"");
+    }
+    String json = buf.append("]").toString();
+
+    String expected = JsonStringWriter.toString(JsonParser.any().from(json));
+    assertEquals(expected, JsonStringWriter.toString(
+                   JsonParser.any().from(json.getBytes("UTF-8"))));
+    assertEquals(expected, JsonStringWriter.toString(
+                   parseAll(JsonPullParser.from(new StringBuilder(json)))));
+    assertEquals(expected, JsonStringWriter.toString(
+                   parseAll(JsonPullParser.from(json.getBytes("UTF-8")))));
+    assertEquals(expected, JsonStringWriter.toString(
+                   parseAll(JsonPullParser.from(new StringReader(json)))));
+  }
+
+  @Test
+  public void testMalformed() {
+    String[] cases = { "[1 2]", "{\"a\" 1}", "[1,]", "{\"a\":1,}", "01", "1.", "1e", "-", "[" };
+    for (String json : cases) {
+      try {
+        JsonPullParser p = JsonPullParser.from(json);
+        while (p.next() != END) ;
+        fail("Should have failed: " + json);
+      } catch (JsonParserException e) {
+        // expected
+      }
+    }
+  }
+
+  /**
+   * Checks that the pull parser sees the same document as {@link JsonParser} on the torture test
+   * document, whether it reads from a string or from UTF-8 bytes.
+   */
+  @Test
+  public void testTortureTest() throws JsonParserException, IOException {
+    InputStream input = getClass().getResourceAsStream("torturetest.json.gz");
+    byte[] data = readAll(new GZIPInputStream(input));
+    String json = new String(data, "UTF-8");
+
+    String tree = JsonStringWriter.toString(JsonParser.object().from(json));
+    assertEquals(tree, JsonStringWriter.toString(parseAll(JsonPullParser.from(json))));
+    assertEquals(tree, JsonStringWriter.toString(parseAll(JsonPullParser.from(data))));
+    long events = scan(JsonPullParser.from(json));
+    assertTrue(events > 0);
+    assertEquals(events, scan(JsonPullParser.from(data)));
+  }
+
+  // reads every event, converting numbers to doubles, returns the number of events
+  private long scan(JsonPullParser p) throws JsonParserException {
+    long events = 0;
+    for (Event e = p.next(); e != END; e = p.next()) {
+      if (e == NUMBER) p.doubleValue();
+      events++;
+    }
+    return events;
+  }
+
+  // builds a tree using the pull parser's primitive accessors
+  private Object parseAll(JsonPullParser p) throws JsonParserException {
+    Object value = value(p, p.next());
+    assertEquals(END, p.next());
+    return value;
+  }
+
+  private Object value(JsonPullParser p, Event event) throws JsonParserException {
+    switch (event) {
+    case START_ARRAY:
+      JsonArray array = new JsonArray();
+      while ((event = p.next()) != END_ARRAY) array.add(value(p, event));
+      return array;
+    case START_OBJECT:
+      JsonObject object = new JsonObject();
+      while (p.next() != END_OBJECT) {
+        String key = p.stringValue();
+        object.put(key, value(p, p.next()));
+      }
+      return object;
+    case STRING: return p.stringValue();
+    case NUMBER: return p.numberValue();
+    case TRUE: case FALSE: return p.booleanValue();
+    case NULL: return null;
+    default:
+      fail("Unexpected event " + event);
+      return null;
+    }
+  }
+
+  private byte[] readAll(InputStream input) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] b = new byte[64 * 1024];
+    for (int r; (r = input.read(b)) > 0; ) out.write(b, 0, r);
+    return out.toByteArray();
+  }
+
+  private static List<Event> list(Event... events) {
+    List<Event> list = new ArrayList<Event>();
+    for (Event e : events) list.add(e);
+    return list;
+  }
+}
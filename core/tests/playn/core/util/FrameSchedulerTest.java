@@ -0,0 +1,74 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static playn.core.util.FrameScheduler.Lane.*;
+
+/**
+ * Tests {@link FrameScheduler}.
+ */
+public class FrameSchedulerTest {
+
+  @Test public void testRunsLanesInOrder() {
+    RunQueueTest.TestPlatform platform = new RunQueueTest.TestPlatform();
+    FrameScheduler sched = new FrameScheduler(platform);
+    List<Integer> ran = new ArrayList<Integer>();
+    sched.add(BACKGROUND, new RunQueueTest.Appender(ran, 3));
+    sched.add(ASSETS, new RunQueueTest.Appender(ran, 2));
+    sched.add(UPDATE, new RunQueueTest.Appender(ran, 1));
+    sched.add(INPUT, new RunQueueTest.Appender(ran, 0));
+    sched.execute();
+    assertEquals(Arrays.asList(0, 1, 2, 3), ran);
+    for (FrameScheduler.Lane lane : FrameScheduler.Lane.values()) {
+      assertEquals(1, sched.lastExecuted(lane));
+      assertEquals(0, sched.pending(lane));
+    }
+  }
+
+  @Test public void testBudgetsCarryOver() {
+    final RunQueueTest.TestPlatform platform = new RunQueueTest.TestPlatform();
+    FrameScheduler sched = new FrameScheduler(platform);
+    sched.setBudget(ASSETS, 2);
+    Runnable slow = new Runnable() {
+      public void run() {
+        platform.now += 1;
+      }
+    };
+    for (int ii = 0; ii < 5; ii++) sched.add(ASSETS, slow);
+    sched.add(BACKGROUND, slow);
+
+    // the assets lane stops at its budget, but later lanes still run
+    sched.execute();
+    assertEquals(2, sched.lastExecuted(ASSETS));
+    assertEquals(2, sched.lastTime(ASSETS), 0);
+    assertEquals(3, sched.pending(ASSETS));
+    assertEquals(1, sched.lastExecuted(BACKGROUND));
+    assertEquals(1, sched.lastTime(BACKGROUND), 0);
+
+    sched.execute();
+    sched.execute();
+    assertEquals(1, sched.lastExecuted(ASSETS));
+    assertEquals(0, sched.pending(ASSETS));
+    assertEquals(0, sched.lastTime(BACKGROUND), 0);
+  }
+}
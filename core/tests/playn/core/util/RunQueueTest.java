@@ -0,0 +1,164 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.core.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import playn.core.StubPlatform;
+
+/**
+ * Tests {@link RunQueue}.
+ */
+public class RunQueueTest {
+
+  @Test public void testExecutesInOrder() {
+    TestPlatform platform = new TestPlatform();
+    final RunQueue queue = new RunQueue(platform);
+    final List<Integer> ran = new ArrayList<Integer>();
+    for (int ii = 0; ii < 3; ii++) queue.add(new Appender(ran, ii));
+    // runnables added during execution are run on the next call
+    queue.add(new Runnable() {
+      public void run() {
+        queue.add(new Appender(ran, 4));
+      }
+    });
+    assertEquals(4, queue.pending());
+
+    queue.execute();
+    assertEquals(4, queue.lastExecuted());
+    assertEquals(1, queue.pending());
+    assertEquals(3, ran.size());
+
+    queue.execute();
+    assertEquals(0, queue.pending());
+    assertEquals(4, ran.get(3).intValue());
+    queue.execute();
+    assertEquals(0, queue.lastExecuted());
+  }
+
+  @Test public void testReportsErrors() {
+    TestPlatform platform = new TestPlatform();
+    RunQueue queue = new RunQueue(platform);
+    List<Integer> ran = new ArrayList<Integer>();
+    queue.add(new Runnable() {
+      public void run() {
+        throw new RuntimeException("Boom");
+      }
+    });
+    queue.add(new Appender(ran, 1));
+    queue.execute();
+    assertEquals(1, platform.errors);
+    assertEquals(1, ran.size());
+  }
+
+  @Test public void testTimeBudget() {
+    final TestPlatform platform = new TestPlatform();
+    RunQueue queue = new RunQueue(platform);
+    queue.setTimeBudget(3);
+    final List<Integer> ran = new ArrayList<Integer>();
+    for (int ii = 0; ii < 5; ii++) {
+      final int value = ii;
+      queue.add(new Runnable() {
+        public void run() {
+          ran.add(value);
+          platform.now += 1; // each runnable takes a millisecond
+        }
+      });
+    }
+
+    platform.now += 10;
+    queue.execute();
+    assertEquals(3, queue.lastExecuted());
+    assertEquals(10, queue.lastLatency(), 0);
+    assertEquals(2, queue.pending());
+
+    queue.execute();
+    assertEquals(2, queue.lastExecuted());
+    assertEquals(13, queue.lastLatency(), 0);
+    assertEquals(5, ran.size());
+    for (int ii = 0; ii < 5; ii++) assertEquals(ii, ran.get(ii).intValue());
+  }
+
+  @Test public void testConcurrentProducers() throws Exception {
+    final int producers = 4, adds = 25000;
+    final RunQueue queue = new RunQueue(new StubPlatform());
+    final int[] lastSeen = new int[producers];
+    final int[] count = new int[1];
+    final boolean[] ordered = { true };
+
+    Thread[] threads = new Thread[producers];
+    for (int pp = 0; pp < producers; pp++) {
+      final int producer = pp;
+      lastSeen[pp] = -1;
+      threads[pp] = new Thread() {
+        public void run() {
+          for (int ii = 0; ii < adds; ii++) {
+            final int seq = ii;
+            queue.add(new Runnable() {
+              public void run() {
+                // only the consumer thread touches these
+                if (lastSeen[producer] != seq-1) ordered[0] = false;
+                lastSeen[producer] = seq;
+                count[0]++;
+              }
+            });
+          }
+        }
+      };
+      threads[pp].start();
+    }
+
+    // consume on this thread while the producers are adding
+    long deadline = System.currentTimeMillis() + 30*1000;
+    while (count[0] < producers*adds && System.currentTimeMillis() < deadline) queue.execute();
+    for (Thread thread : threads) thread.join();
+
+    assertEquals(producers*adds, count[0]);
+    assertTrue("Runnables from a single producer must run in order", ordered[0]);
+    assertEquals(0, queue.pending());
+  }
+
+  protected static class TestPlatform extends StubPlatform {
+    public double now;
+    public int errors;
+
+    @Override public double time() {
+      return now;
+    }
+
+    @Override public void reportError(String message, Throwable cause) {
+      errors++;
+    }
+  }
+
+  protected static class Appender implements Runnable {
+    private final List<Integer> list;
+    private final int value;
+
+    public Appender(List<Integer> list, int value) {
+      this.list = list;
+      this.value = value;
+    }
+
+    public void run() {
+      list.add(value);
+    }
+  }
+}
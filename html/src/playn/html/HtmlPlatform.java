@@ -264,7 +264,7 @@ public class HtmlPlatform extends AbstractPlatform {
       @Override
       public void fire() {
         requestAnimationFrame(paintCallback);
-        runQueue.execute(); // process pending actions
+        scheduler.execute(); // process pending actions
         game.tick(tick());  // update the game
         graphics.paint();   // draw the scene graph
       }
@@ -0,0 +1,28 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package java.io;
+
+/**
+ * Allows code that reads from a Reader (like the streaming JSON parser) to compile in GWT mode.
+ */
+public abstract class Reader {
+
+  public int read(char[] cbuf) throws IOException {
+    return read(cbuf, 0, cbuf.length);
+  }
+
+  public abstract int read(char[] cbuf, int off, int len) throws IOException;
+
+  public abstract void close() throws IOException;
+}
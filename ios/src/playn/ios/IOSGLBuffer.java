@@ -187,6 +187,13 @@ public abstract class IOSGLBuffer implements GLBuffer {
                       DrawElementsType.wrap(DrawElementsType.UnsignedShort), new IntPtr(0));
     }
 
+    @Override
+    public void drawElements(int mode, int count, int offset) {
+      GL.DrawElements(BeginMode.wrap(mode), count,
+                      DrawElementsType.wrap(DrawElementsType.UnsignedShort),
+                      new IntPtr(offset * bytesPerElement()));
+    }
+
     @Override
     IntPtr pointer() {
       return handle.AddrOfPinnedObject();
@@ -200,6 +207,8 @@ public abstract class IOSGLBuffer implements GLBuffer {
 
   private final int bufferId;
   protected int position;
+  // the size of, and write position in, our GL data store when streaming (in bytes)
+  private int storeSize, storePos;
 
   @Override
   public int position() {
@@ -223,9 +232,29 @@ public abstract class IOSGLBuffer implements GLBuffer {
                   BufferUsage.wrap(usage));
     int oposition = position;
     position = 0;
+    storeSize = 0; // our data store no longer matches the streaming data store
     return oposition;
   }
 
+  @Override
+  public int stream(int target, int storeCapacity) {
+    int byteSize = byteSize();
+    int needSize = Math.max(storeCapacity * bytesPerElement(), byteSize);
+    if (needSize > storeSize || storePos + byteSize > storeSize) {
+      // (re)allocate the data store; if it's still in use by GL, GL orphans it rather than stall
+      storeSize = Math.max(storeSize, needSize);
+      GL.BufferData(BufferTarget.wrap(target), new IntPtr(storeSize), new IntPtr(0),
+                    BufferUsage.wrap(BufferUsage.StreamDraw));
+      storePos = 0;
+    }
+    GL.BufferSubData(BufferTarget.wrap(target), new IntPtr(storePos), new IntPtr(byteSize),
+                     pointer());
+    int offset = storePos / bytesPerElement();
+    storePos += byteSize;
+    position = 0;
+    return offset;
+  }
+
   @Override
   public void flush() {
     // nothing needed here because we have no backing NIO buffer
@@ -67,7 +67,7 @@ public class IOSGLContext extends GLContext {
                  BlendingFactorDest.wrap(BlendingFactorDest.OneMinusSrcAlpha));
     GL.ClearColor(0, 0, 0, 1);
     quadShader = createQuadShader();
-    trisShader = new IndexedTrisShader(this);
+    trisShader = new IndexedTrisShader(this, shouldStreamTris());
   }
 
   boolean setOrientation(UIDeviceOrientation orientation) {
@@ -236,6 +236,16 @@ public class IOSGLContext extends GLContext {
     }
   }
 
+  @Override
+  protected void setScissor(Rectangle rect) {
+    if (rect == null) GL.Disable(EnableCap.wrap(EnableCap.ScissorTest));
+    else {
+      GL.Scissor(rect.x, rect.y, rect.width, rect.height);
+      checkGLError("GL.Scissor");
+      GL.Enable(EnableCap.wrap(EnableCap.ScissorTest));
+    }
+  }
+
   @Override
   public void clear(float r, float g, float b, float a) {
     GL.ClearColor(r, g, b, a);
@@ -329,6 +339,7 @@ public class IOSGLContext extends GLContext {
   }
 
   void paint(GroupLayerGL rootLayer) {
+    beginFrame();
     if (rootLayer.size() > 0) {
       checkGLError("paint");
       bindFramebuffer();
@@ -451,7 +451,7 @@ public class IOSPlatform extends AbstractPlatform {
 
   void update() {
     // process pending actions
-    runQueue.execute();
+    scheduler.execute();
     // perform the game updates
     game.tick(tick());
     // flush any pending draw calls (to surfaces)
@@ -177,6 +177,11 @@ public class JavaAssets extends AbstractAssets<BufferedImage> {
     return recv.loadFailed(error != null ? error : new FileNotFoundException(fullPath));
   }
 
+  @Override
+  protected void prepareImage(AsyncImage<BufferedImage> image, BufferedImage impl) {
+    if (image instanceof JavaAsyncImage) ((JavaAsyncImage)image).prepare(impl);
+  }
+
   protected Sound getSound(String path, boolean music) {
     Exception err = null;
     for (String suff : SUFFIXES) {
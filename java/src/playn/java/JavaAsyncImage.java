@@ -35,6 +35,9 @@ public class JavaAsyncImage extends JavaImage implements AsyncImage<BufferedImag
   private Throwable error;
   private float preWidth, preHeight;
 
+  // set on the loading thread by prepare and consumed on the game thread by setImage
+  private BufferedImage preparedSource, preparedImage;
+
   public JavaAsyncImage(GLContext ctx, float preWidth, float preHeight) {
     super(ctx, null, Scale.ONE);
     this.preWidth = preWidth;
@@ -61,8 +64,25 @@ public class JavaAsyncImage extends JavaImage implements AsyncImage<BufferedImag
       callbacks = Callbacks.createAdd(callbacks, callback);
   }
 
+  /**
+   * Converts {@code img} to our preferred format for texture upload. This is called on the loading
+   * thread, prior to {@link #setImage}, so that the game thread need only copy the pixels into
+   * its upload buffer when the image is first drawn.
+   */
+  void prepare(BufferedImage img) {
+    BufferedImage converted = JavaGLContext.convertImage(img);
+    synchronized (this) {
+      preparedSource = img;
+      preparedImage = converted;
+    }
+  }
+
   @Override
   public void setImage(BufferedImage img, Scale scale) {
+    synchronized (this) {
+      if (img == preparedSource) img = preparedImage;
+      preparedSource = preparedImage = null;
+    }
     this.img = img;
     this.scale = scale;
     callbacks = Callbacks.dispatchSuccessClear(callbacks, this);
@@ -15,19 +15,53 @@
  */
 package playn.java;
 
+import java.io.File;
 import java.io.InputStream;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+
+import playn.core.AbstractSound;
 import playn.core.AudioImpl;
 
 import javax.sound.sampled.Clip;
 
 public class JavaAudio extends AudioImpl {
 
+  /** The sample rate at which sounds are mixed when software mixing is enabled. */
+  public static final float MIXER_SAMPLE_RATE = 44100;
+
+  private final int mixerVoices;
+  private final boolean streamMusic;
+  private final JavaPCMCache pcmCache;
+  private JavaMixer mixer;
+  private boolean mixerFailed;
+
   public JavaAudio(JavaPlatform platform) {
+    this(platform, new JavaPlatform.Config());
+  }
+
+  /**
+   * Creates the audio service, configured by {@code config}'s {@link
+   * JavaPlatform.Config#mixerVoices}, {@link JavaPlatform.Config#streamMusic} and {@link
+   * JavaPlatform.Config#pcmCacheSize}.
+   */
+  public JavaAudio(JavaPlatform platform, JavaPlatform.Config config) {
     super(platform);
+    this.mixerVoices = config.mixerVoices;
+    this.streamMusic = config.streamMusic;
+    if (config.pcmCacheSize <= 0 || config.storageDir == null) pcmCache = null;
+    else pcmCache = new JavaPCMCache(
+      new File(config.storageDir, config.storageFileName + "-pcm-cache"), config.pcmCacheSize);
+  }
+
+  /**
+   * Stops the software mixer, if one is in use.
+   */
+  public synchronized void shutdown() {
+    if (mixer != null) mixer.shutdown();
   }
 
   /**
@@ -36,14 +70,44 @@ public class JavaAudio extends AudioImpl {
    * @param rsrc a resource via which the audio data can be read.
    * @param music if true, a custom {@link Clip} implementation will be used which can handle long
    * audio clips; if false, the default Java clip implementation is used which cannot handle long
-   * audio clips.
+   * audio clips. If music streaming is enabled, music is instead played by a {@link JavaMusic}.
+   * Otherwise, when sounds are mixed in software, music is decoded into memory like other sounds.
    */
-  public JavaSound createSound(final JavaAssets.Resource rsrc, final boolean music) {
+  public AbstractSound<?> createSound(final JavaAssets.Resource rsrc, final boolean music) {
+    if (music && streamMusic) {
+      final JavaMusic sound = new JavaMusic((JavaPlatform) platform);
+      ((JavaPlatform) platform).invokeAsync(new Runnable() {
+        public void run () {
+          try {
+            dispatchLoaded(sound, new JavaMusicStream(rsrc));
+          } catch (Exception e) {
+            dispatchLoadError(sound, e);
+          }
+        }
+      });
+      return sound;
+    }
+
+    final JavaMixer mixer = mixer();
+    if (mixer != null) {
+      final JavaMixerSound sound = new JavaMixerSound(mixer);
+      ((JavaPlatform) platform).invokeAsync(new Runnable() {
+        public void run () {
+          try {
+            dispatchLoaded(sound, mixer.decode(openAudioStream(rsrc)));
+          } catch (Exception e) {
+            dispatchLoadError(sound, e);
+          }
+        }
+      });
+      return sound;
+    }
+
     final JavaSound sound = new JavaSound();
     ((JavaPlatform) platform).invokeAsync(new Runnable() {
       public void run () {
         try {
-          AudioInputStream ais = rsrc.openAudioStream();
+          AudioInputStream ais = openAudioStream(rsrc);
           Clip clip = AudioSystem.getClip();
           if (music) {
             clip = new BigClip(clip);
@@ -70,4 +134,28 @@ public class JavaAudio extends AudioImpl {
     });
     return sound;
   }
+
+  // opens the audio in rsrc, via the decoded audio cache if it is enabled
+  private AudioInputStream openAudioStream(JavaAssets.Resource rsrc) throws Exception {
+    return (pcmCache == null) ? rsrc.openAudioStream() : pcmCache.open(rsrc);
+  }
+
+  // creates and starts the mixer on first use, falling back to clips if it can't be started
+  private synchronized JavaMixer mixer() {
+    if (mixer == null && mixerVoices > 0 && !mixerFailed) {
+      JavaMixer mixer = new JavaMixer(MIXER_SAMPLE_RATE, mixerVoices);
+      try {
+        mixer.start();
+        this.mixer = mixer;
+      } catch (LineUnavailableException e) {
+        platform.log().warn("Unable to open audio line for mixing, using clips instead.", e);
+        mixerFailed = true;
+      } catch (IllegalArgumentException e) {
+        // thrown by AudioSystem when no line supports the mixer's format
+        platform.log().warn("Unable to open audio line for mixing, using clips instead.", e);
+        mixerFailed = true;
+      }
+    }
+    return mixer;
+  }
 }
@@ -15,6 +15,7 @@
  */
 package playn.java;
 
+import pythagoras.f.IRectangle;
 import pythagoras.f.MathUtil;
 
 import playn.core.Canvas;
@@ -26,6 +27,8 @@ import playn.core.gl.AbstractCanvasGL;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Line2D;
@@ -43,6 +46,7 @@ class JavaCanvas extends AbstractCanvasGL<Graphics2D> {
   private Line2D.Float line = new Line2D.Float();
   private Rectangle2D.Float rect = new Rectangle2D.Float();
   private RoundRectangle2D.Float roundRect = new RoundRectangle2D.Float();
+  private Rectangle2D.Float dirtyRect = new Rectangle2D.Float();
 
   JavaCanvas(Graphics2D graphics, float width, float height) {
     super(width, height);
@@ -63,7 +67,7 @@ class JavaCanvas extends AbstractCanvasGL<Graphics2D> {
   public Canvas clear() {
     currentState().prepareClear(gfx);
     gfx.clearRect(0, 0, MathUtil.iceil(width), MathUtil.iceil(height));
-    isDirty = true;
+    addDirtyRect(0, 0, width, height);
     return this;
   }
 
@@ -72,7 +76,7 @@ class JavaCanvas extends AbstractCanvasGL<Graphics2D> {
     currentState().prepareClear(gfx);
     gfx.clearRect(MathUtil.ifloor(x), MathUtil.ifloor(y),
                   MathUtil.iceil(width), MathUtil.iceil(height));
-    isDirty = true;
+    addDirtyRect(x, y, width, height);
     return this;
   }
 
@@ -104,7 +108,7 @@ class JavaCanvas extends AbstractCanvasGL<Graphics2D> {
     currentState().prepareStroke(gfx);
     line.setLine(x0, y0, x1, y1);
     gfx.draw(line);
-    isDirty = true;
+    addDirtyShape(line, true);
     return this;
   }
 
@@ -112,7 +116,7 @@ class JavaCanvas extends AbstractCanvasGL<Graphics2D> {
   public Canvas drawPoint(float x, float y) {
     currentState().prepareStroke(gfx);
     gfx.drawLine((int) x, (int) y, (int) x, (int) y);
-    isDirty = true;
+    addDirtyRect((int) x, (int) y, 1, 1);
     return this;
   }
 
@@ -120,7 +124,7 @@ class JavaCanvas extends AbstractCanvasGL<Graphics2D> {
   public Canvas drawText(String text, float x, float y) {
     currentState().prepareFill(gfx);
     gfx.drawString(text, x, y);
-    isDirty = true;
+    addDirtyBounds(gfx.getFont().getStringBounds(text, gfx.getFontRenderContext()), x, y);
     return this;
   }
 
@@ -129,7 +133,7 @@ class JavaCanvas extends AbstractCanvasGL<Graphics2D> {
     currentState().prepareFill(gfx);
     ellipse.setFrame(x - radius, y - radius, 2 * radius, 2 * radius);
     gfx.fill(ellipse);
-    isDirty = true;
+    addDirtyShape(ellipse, false);
     return this;
   }
 
@@ -137,7 +141,7 @@ class JavaCanvas extends AbstractCanvasGL<Graphics2D> {
   public Canvas fillPath(Path path) {
     currentState().prepareFill(gfx);
     gfx.fill(((JavaPath) path).path);
-    isDirty = true;
+    addDirtyShape(((JavaPath) path).path, false);
     return this;
   }
 
@@ -146,7 +150,7 @@ class JavaCanvas extends AbstractCanvasGL<Graphics2D> {
     currentState().prepareFill(gfx);
     rect.setRect(x, y, width, height);
     gfx.fill(rect);
-    isDirty = true;
+    addDirtyShape(rect, false);
     return this;
   }
 
@@ -155,7 +159,7 @@ class JavaCanvas extends AbstractCanvasGL<Graphics2D> {
     currentState().prepareFill(gfx);
     roundRect.setRoundRect(x, y, width, height, radius*2, radius*2);
     gfx.fill(roundRect);
-    isDirty = true;
+    addDirtyShape(roundRect, false);
     return this;
   }
 
@@ -163,7 +167,8 @@ class JavaCanvas extends AbstractCanvasGL<Graphics2D> {
   public Canvas fillText(TextLayout layout, float x, float y) {
     currentState().prepareFill(gfx);
     ((JavaTextLayout)layout).fill(gfx, x, y);
-    isDirty = true;
+    IRectangle bounds = layout.bounds();
+    addDirtyRect(x + bounds.x(), y + bounds.y(), bounds.width(), bounds.height());
     return this;
   }
 
@@ -266,7 +271,7 @@ class JavaCanvas extends AbstractCanvasGL<Graphics2D> {
     currentState().prepareStroke(gfx);
     ellipse.setFrame(x - radius, y - radius, 2 * radius, 2 * radius);
     gfx.draw(ellipse);
-    isDirty = true;
+    addDirtyShape(ellipse, true);
     return this;
   }
 
@@ -275,7 +280,7 @@ class JavaCanvas extends AbstractCanvasGL<Graphics2D> {
     currentState().prepareStroke(gfx);
     gfx.setColor(new Color(currentState().strokeColor, false));
     gfx.draw(((JavaPath) path).path);
-    isDirty = true;
+    addDirtyShape(((JavaPath) path).path, true);
     return this;
   }
 
@@ -284,7 +289,7 @@ class JavaCanvas extends AbstractCanvasGL<Graphics2D> {
     currentState().prepareStroke(gfx);
     rect.setRect(x, y, width, height);
     gfx.draw(rect);
-    isDirty = true;
+    addDirtyShape(rect, true);
     return this;
   }
 
@@ -293,7 +298,7 @@ class JavaCanvas extends AbstractCanvasGL<Graphics2D> {
     currentState().prepareStroke(gfx);
     roundRect.setRoundRect(x, y, width, height, radius*2, radius*2);
     gfx.draw(roundRect);
-    isDirty = true;
+    addDirtyShape(roundRect, true);
     return this;
   }
 
@@ -301,7 +306,9 @@ class JavaCanvas extends AbstractCanvasGL<Graphics2D> {
   public Canvas strokeText(TextLayout layout, float x, float y) {
     currentState().prepareStroke(gfx);
     ((JavaTextLayout)layout).stroke(gfx, x, y);
-    isDirty = true;
+    IRectangle bounds = layout.bounds();
+    rect.setRect(x + bounds.x(), y + bounds.y(), bounds.width(), bounds.height());
+    addDirtyShape(rect, true);
     return this;
   }
 
@@ -317,12 +324,39 @@ class JavaCanvas extends AbstractCanvasGL<Graphics2D> {
     return this;
   }
 
+  @Override
+  protected void addDirtyRect(float x, float y, float width, float height) {
+    dirtyRect.setRect(x, y, width, height);
+    addDirtyBounds(dirtyRect, 0, 0);
+  }
+
   @Override
   protected Graphics2D gc() {
     currentState().prepareFill(gfx);
     return gfx;
   }
 
+  private void addDirtyShape(Shape shape, boolean stroked) {
+    if (stroked) shape = gfx.getStroke().createStrokedShape(shape);
+    addDirtyBounds(shape.getBounds2D(), 0, 0);
+  }
+
+  // notes that the pixels under bounds (offset by dx, dy) have been modified; the current transform
+  // and clip are applied to obtain the modified pixels
+  private void addDirtyBounds(Rectangle2D bounds, float dx, float dy) {
+    dirtyRect.setRect(bounds.getX() + dx, bounds.getY() + dy,
+                      bounds.getWidth(), bounds.getHeight());
+    Rectangle clip = gfx.getClipBounds();
+    if (clip != null) Rectangle2D.intersect(dirtyRect, clip, dirtyRect);
+    if (dirtyRect.isEmpty()) return;
+    Rectangle2D pixels = gfx.getTransform().createTransformedShape(dirtyRect).getBounds2D();
+    // antialiasing may touch the pixels just outside the bounds, so we include those as well
+    addDirtyRegion(MathUtil.ifloor((float) pixels.getMinX()) - 1,
+                   MathUtil.ifloor((float) pixels.getMinY()) - 1,
+                   MathUtil.iceil((float) pixels.getMaxX()) + 1,
+                   MathUtil.iceil((float) pixels.getMaxY()) + 1);
+  }
+
   private JavaCanvasState currentState() {
     return stateStack.getFirst();
   }
@@ -21,6 +21,8 @@ import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.WritableRaster;
 
+import pythagoras.i.Rectangle;
+
 import playn.core.Canvas;
 import playn.core.CanvasImage;
 import playn.core.Image;
@@ -62,10 +64,19 @@ class JavaCanvasImage extends JavaImage implements CanvasImage {
   @Override
   public int ensureTexture() {
     // if we have a canvas, and it's dirty, force the recreation of our texture which will obtain
-    // the latest canvas data
+    // the latest canvas data; if only part of the canvas changed, we upload just that part
     if (canvas.dirty()) {
+      Rectangle region = canvas.dirtyRegion();
       canvas.clearDirty();
-      refreshTexture();
+      if (region != null && tex > 0 && !(repeatX || repeatY || mipmapped)) {
+        int left = Math.max(region.x, 0), top = Math.max(region.y, 0);
+        int right = Math.min(region.x + region.width, img.getWidth());
+        int bottom = Math.min(region.y + region.height, img.getHeight());
+        if (right > left && bottom > top) ((JavaGLContext) ctx).updateTexture(
+          tex, img, left, top, right - left, bottom - top);
+      } else {
+        refreshTexture();
+      }
     }
     return super.ensureTexture();
   }
@@ -21,10 +21,12 @@ import java.awt.image.DataBufferByte;
 import java.awt.image.DataBufferInt;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL12;
 
+import playn.core.gl.GL20;
 import playn.core.gl.GL20Context;
 
 public class JavaGLContext extends GL20Context {
@@ -55,7 +57,16 @@ public class JavaGLContext extends GL20Context {
   }
 
   public JavaGLContext(JavaPlatform platform, float scaleFactor) {
-    super(platform, new JavaGL20(), scaleFactor, CHECK_ERRORS);
+    this(platform, new JavaGL20(), scaleFactor);
+  }
+
+  JavaGLContext(JavaPlatform platform, GL20 gl, float scaleFactor) {
+    super(platform, gl, scaleFactor, CHECK_ERRORS);
+  }
+
+  @Override
+  protected boolean shouldStreamTris() {
+    return true;
   }
 
   void updateTexture(int tex, BufferedImage image) {
@@ -91,8 +102,33 @@ public class JavaGLContext extends GL20Context {
     }
 
     bindTexture(tex);
-    GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA, image.getWidth(), image.getHeight(), 0,
-                      format, type, bbuf);
+    gl.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA, image.getWidth(), image.getHeight(), 0,
+                    format, type, bbuf);
+    checkGLError("updateTexture");
+  }
+
+  /**
+   * Uploads the pixels in the specified region of {@code image} into the same region of {@code
+   * tex}, which must already contain the rest of the image. Images not in {@code
+   * TYPE_INT_ARGB_PRE} format are uploaded in their entirety.
+   */
+  void updateTexture(int tex, BufferedImage image, int x, int y, int width, int height) {
+    if (image.getType() != BufferedImage.TYPE_INT_ARGB_PRE) {
+      updateTexture(tex, image);
+      return;
+    }
+
+    // copy just the rows of the region into our upload buffer
+    int[] data = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+    int iSize = width*height*4, stride = image.getWidth();
+    ByteBuffer bbuf = checkGetImageBuffer(iSize);
+    IntBuffer ibuf = bbuf.asIntBuffer();
+    for (int row = y, rows = y+height; row < rows; row++) ibuf.put(data, row*stride + x, width);
+    bbuf.limit(iSize);
+
+    bindTexture(tex);
+    gl.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, x, y, width, height,
+                       GL12.GL_BGRA, GL12.GL_UNSIGNED_INT_8_8_8_8_REV, bbuf);
     checkGLError("updateTexture");
   }
 
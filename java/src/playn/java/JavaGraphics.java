@@ -47,6 +47,7 @@ public class JavaGraphics extends GraphicsGL {
   protected final JavaPlatform platform;
   protected final GL20Context ctx;
   protected final GroupLayerGL rootLayer;
+  protected final JavaTextLayoutCache textLayoutCache;
   // antialiased font context and aliased font context
   final FontRenderContext aaFontContext, aFontContext;
 
@@ -58,6 +59,8 @@ public class JavaGraphics extends GraphicsGL {
     this.ctx = config.headless ? new GL20Context(platform, null, config.scaleFactor, false) :
       new JavaGLContext(platform, config.scaleFactor);
     this.rootLayer = new GroupLayerGL(ctx);
+    this.textLayoutCache = (config.textLayoutCacheSize > 0) ?
+      new JavaTextLayoutCache(config.textLayoutCacheSize) : null;
 
     // set up the dummy font contexts
     Graphics2D aaGfx = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
@@ -82,12 +85,26 @@ public class JavaGraphics extends GraphicsGL {
    */
   public void registerFont(String name, String path) {
     try {
-      _fonts.put(name, ((JavaAssets) assets()).requireResource(path).createFont());
+      registerFont(name, ((JavaAssets) assets()).requireResource(path).createFont());
     } catch (Exception e) {
       platform.reportError("Failed to load font [name=" + name + ", path=" + path + "]", e);
     }
   }
 
+  void registerFont(String name, java.awt.Font font) {
+    _fonts.put(name, font);
+    // cached layouts may have been made with a previous (or fallback) font of this name
+    if (textLayoutCache != null) textLayoutCache.clear();
+  }
+
+  /**
+   * Returns the cache used by {@link #layoutText}, or null if text layouts are not cached. See
+   * {@link JavaPlatform.Config#textLayoutCacheSize}.
+   */
+  public JavaTextLayoutCache textLayoutCache() {
+    return textLayoutCache;
+  }
+
   /**
    * Changes the size of the PlayN window.
    */
@@ -172,12 +189,14 @@ public class JavaGraphics extends GraphicsGL {
 
   @Override
   public TextLayout layoutText(String text, TextFormat format) {
-    return JavaTextLayout.layoutText(this, text, format);
+    return (textLayoutCache == null) ? JavaTextLayout.layoutText(this, text, format) :
+      textLayoutCache.layoutText(this, text, format);
   }
 
   @Override
   public TextLayout[] layoutText(String text, TextFormat format, TextWrap wrap) {
-    return JavaTextLayout.layoutText(this, text, format, wrap);
+    return (textLayoutCache == null) ? JavaTextLayout.layoutText(this, text, format, wrap) :
+      textLayoutCache.layoutText(this, text, format, wrap);
   }
 
   @Override
@@ -0,0 +1,959 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package playn.java;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import playn.core.Log;
+
+/**
+ * A non-blocking HTTP/1.1 client used by {@link JavaNet}.
+ *
+ * <p>All {@code http} connections are serviced by a single network thread using a {@link
+ * Selector}, so requests never tie up the {@link JavaPlatform#invokeAsync} threads that load
+ * assets. Connections are kept alive and reused for later requests to the same host, and at most
+ * {@code maxPerHost} connections are opened to any one host; further requests to that host wait
+ * for one of them to become free. Responses are requested with gzip content encoding, chunked and
+ * gzipped payloads are decoded incrementally, and the decoded payload is passed to the request's
+ * {@link Handler} as it arrives. Redirects are followed, and the proxy configured by the standard
+ * {@code http.proxyHost}, {@code http.proxyPort} and {@code http.nonProxyHosts} properties is
+ * used. Host names are resolved on a separate thread, as that may block.</p>
+ *
+ * <p>{@code https} requests are made with {@link HttpURLConnection} (which does its own keep-alive
+ * and proxying) on threads owned by this client, at most {@code maxPerHost} at a time to any one
+ * host.</p>
+ */
+class JavaHttpClient {
+
+  /** Receives the response to a request. All methods are called on a network thread. */
+  interface Handler {
+    /** Called when the response code and headers have been received. */
+    void onHeaders(int code, Map<String,List<String>> headers);
+
+    /** Called with each chunk of the decoded payload. The array is reused after this call. */
+    void onData(byte[] data, int offset, int length);
+
+    /** Called once the entire payload has been received. */
+    void onComplete();
+
+    /** Called if the request fails. No further methods are called after this one. */
+    void onFailure(Throwable cause);
+  }
+
+  /** A request made via {@link #execute}. */
+  class Exchange {
+    final List<String> headers;
+    final Handler handler;
+    // these are changed when a redirect is followed
+    String method;
+    URL url;
+    byte[] body;
+
+    Exchange(String method, URL url, List<String> headers, byte[] body, Handler handler) {
+      this.method = method;
+      this.url = url;
+      this.headers = headers;
+      this.body = body;
+      this.handler = handler;
+    }
+
+    /** Cancels this request. Its handler will not be notified of anything that happens after
+     * this call, though it may already be in the middle of a notification. */
+    public void cancel() {
+      cancelled = true;
+      synchronized (this) {
+        notifyAll(); // wake an https thread waiting for us to be resumed
+      }
+      if (selector != null) selector.wakeup();
+    }
+
+    /** Stops reading the response until this is called again with false, for handlers that
+     * can't keep up with the data. A paused request does not time out. This may be called on any
+     * thread, including from a handler method. */
+    public synchronized void setPaused(boolean paused) {
+      this.paused = paused;
+      notifyAll();
+      if (!paused && selector != null) selector.wakeup();
+    }
+
+    // blocks an https thread while we're paused
+    synchronized void awaitResumed() throws IOException {
+      while (paused && !cancelled) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException("Interrupted while paused");
+        }
+      }
+    }
+
+    volatile boolean cancelled, paused;
+    // the address to which we connect, which is that of a proxy if proxied
+    InetSocketAddress address;
+    boolean proxied;
+    int redirects;
+    // these are only used by the network thread
+    boolean received, retried;
+    long deadline;
+  }
+
+  /** The default time after which an idle connection is closed, in milliseconds. */
+  public static final long DEFAULT_KEEP_ALIVE = 30 * 1000;
+
+  /** The default time after which a request that is receiving no data fails, in milliseconds. */
+  public static final long DEFAULT_TIMEOUT = 30 * 1000;
+
+  /** The maximum number of redirects followed for a single request. This matches the default
+   * used by {@link HttpURLConnection}. */
+  public static final int MAX_REDIRECTS = 20;
+
+  public JavaHttpClient(Log log, int maxPerHost) {
+    this(log, maxPerHost, DEFAULT_KEEP_ALIVE, DEFAULT_TIMEOUT);
+  }
+
+  public JavaHttpClient(Log log, int maxPerHost, long keepAlive, long timeout) {
+    this.log = log;
+    this.maxPerHost = Math.max(maxPerHost, 1);
+    this.keepAlive = keepAlive;
+    this.timeout = timeout;
+  }
+
+  /**
+   * Issues a request. Its response is delivered to {@code handler} on a network thread.
+   *
+   * @param headers the request headers, as alternating names and values.
+   * @param body the request body, or null.
+   */
+  public Exchange execute(String method, URL url, List<String> headers, byte[] body,
+                          Handler handler) {
+    Exchange ex = new Exchange(method, url, headers, body, handler);
+    submit(ex);
+    return ex;
+  }
+
+  /** Returns the number of connections this client has opened, for testing and diagnostics. */
+  public int connectionsOpened() {
+    return connectionsOpened;
+  }
+
+  /** Closes all connections and stops the network threads. Requests in progress are dropped. */
+  public synchronized void shutdown() {
+    shutdown = true;
+    if (selector != null) selector.wakeup();
+    if (resolver != null) resolver.shutdownNow();
+    if (blockingExec != null) blockingExec.shutdownNow();
+  }
+
+  /** Returns the first value of the header named {@code name}, ignoring case, or null. */
+  static String header(Map<String,List<String>> headers, String name) {
+    for (Map.Entry<String,List<String>> entry : headers.entrySet()) {
+      if (name.equalsIgnoreCase(entry.getKey()) && !entry.getValue().isEmpty())
+        return entry.getValue().get(0);
+    }
+    return null;
+  }
+
+  // header names are case-insensitive, so we look them up that way
+  private static Map<String,List<String>> newHeaders() {
+    return new TreeMap<String,List<String>>(String.CASE_INSENSITIVE_ORDER);
+  }
+
+  private static boolean isIdempotent(String method) {
+    return "GET".equals(method) || "HEAD".equals(method) || "PUT".equals(method) ||
+      "DELETE".equals(method);
+  }
+
+  private static boolean isRedirect(int code) {
+    return code == 301 || code == 302 || code == 303 || code == 307 || code == 308;
+  }
+
+  private static String hostKey(URL url) {
+    int port = (url.getPort() == -1) ? url.getDefaultPort() : url.getPort();
+    return url.getHost() + ":" + port;
+  }
+
+  private static ThreadFactory daemonThreads(final String name) {
+    return new ThreadFactory() {
+      public Thread newThread(Runnable action) {
+        Thread thread = new Thread(action, name);
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+  }
+
+  // starts (or after a redirect, restarts) a request; this may be called on any thread
+  private void submit(final Exchange ex) {
+    if ("https".equals(ex.url.getProtocol())) {
+      executeBlocking(ex);
+      return;
+    }
+    if (!"http".equals(ex.url.getProtocol())) {
+      ex.handler.onFailure(new IOException("Unsupported protocol: " + ex.url));
+      return;
+    }
+    try {
+      // resolving the host may block, so we do it before handing the request to the network thread
+      start().execute(new Runnable() {
+        public void run() {
+          if (ex.cancelled) return;
+          try {
+            resolve(ex);
+          } catch (IOException e) {
+            if (!ex.cancelled) ex.handler.onFailure(e);
+            return;
+          }
+          submitted.add(ex);
+          selector.wakeup();
+        }
+      });
+    } catch (IOException e) {
+      ex.handler.onFailure(e);
+    } catch (RejectedExecutionException e) {
+      ex.handler.onFailure(new IOException("HTTP client has been shut down"));
+    }
+  }
+
+  // determines (and resolves) the address to which we must connect to make the request
+  private void resolve(Exchange ex) throws IOException {
+    URL url = ex.url;
+    String name = url.getHost();
+    int port = (url.getPort() == -1) ? url.getDefaultPort() : url.getPort();
+    ex.proxied = false;
+    // the default proxy selector applies the http.proxyHost, etc. system properties
+    ProxySelector chooser = ProxySelector.getDefault();
+    if (chooser != null) {
+      List<Proxy> proxies;
+      try {
+        proxies = chooser.select(url.toURI());
+      } catch (URISyntaxException e) {
+        proxies = new ArrayList<Proxy>(); // we can't match it against the proxy settings
+      }
+      for (Proxy proxy : proxies) {
+        SocketAddress paddr = proxy.address();
+        if (proxy.type() == Proxy.Type.HTTP && paddr instanceof InetSocketAddress) {
+          // the proxy's address is unresolved, so getHostName will not do a reverse lookup
+          name = ((InetSocketAddress)paddr).getHostName();
+          port = ((InetSocketAddress)paddr).getPort();
+          ex.proxied = true;
+          break;
+        }
+        if (proxy.type() == Proxy.Type.DIRECT) break;
+      }
+    }
+    InetSocketAddress addr = new InetSocketAddress(name, port);
+    if (addr.isUnresolved()) throw new UnknownHostException(name);
+    ex.address = addr;
+  }
+
+  // sends ex on to the location to which it was redirected
+  private void follow(Exchange ex, int code, URL location) {
+    ex.redirects++;
+    // like browsers, we switch to GET after a 303, or after a 301 or 302 in response to a POST
+    if ((code == 303 && !"HEAD".equals(ex.method)) ||
+        ((code == 301 || code == 302) && "POST".equals(ex.method))) {
+      ex.method = "GET";
+      ex.body = null;
+    }
+    ex.url = location;
+    ex.received = ex.retried = false;
+    submit(ex);
+  }
+
+  private synchronized ExecutorService start() throws IOException {
+    if (shutdown) throw new IOException("HTTP client has been shut down");
+    if (selector != null) return resolver;
+    selector = Selector.open();
+    resolver = Executors.newCachedThreadPool(daemonThreads("PlayN HTTP resolver"));
+    Thread thread = new Thread("PlayN HTTP") {
+      @Override public void run() {
+        loop();
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+    return resolver;
+  }
+
+  private void loop() {
+    while (!shutdown) {
+      try {
+        selector.select(SELECT_INTERVAL);
+      } catch (IOException e) {
+        log.warn("HTTP client select failed", e);
+      }
+      now = System.currentTimeMillis();
+
+      for (Exchange ex; (ex = submitted.poll()) != null; ) {
+        Host host = host(ex);
+        host.waiting.add(ex);
+        dispatch(host);
+      }
+
+      Set<SelectionKey> keys = selector.selectedKeys();
+      for (SelectionKey key : keys) ((Connection)key.attachment()).handle();
+      keys.clear();
+
+      // fail requests that have timed out, drop those that were cancelled and stop (or resume)
+      // reading responses whose handlers have paused (or resumed) them
+      for (Connection conn : new ArrayList<Connection>(busy)) {
+        conn.throttle(conn.exchange.paused);
+        if (conn.exchange.cancelled) conn.fail(new IOException("Cancelled"));
+        else if (conn.throttled) conn.exchange.deadline = now + timeout;
+        else if (now > conn.exchange.deadline) conn.fail(
+          new SocketTimeoutException("Timed out waiting for " + conn.exchange.url));
+      }
+      // close connections that have been idle for too long
+      for (Host host : hosts.values()) {
+        for (Connection conn : new ArrayList<Connection>(host.idle)) {
+          if (now - conn.idleSince > keepAlive) conn.close();
+        }
+      }
+    }
+
+    for (Host host : hosts.values()) {
+      for (Connection conn : new ArrayList<Connection>(host.idle)) conn.close();
+    }
+    for (Connection conn : new ArrayList<Connection>(busy)) conn.close();
+    try {
+      selector.close();
+    } catch (IOException e) {
+      // nothing to be done
+    }
+  }
+
+  private Host host(Exchange ex) {
+    // connections via a proxy are pooled separately from direct ones
+    String key = hostKey(ex.url);
+    if (ex.proxied) key += " via " + ex.address;
+    Host host = hosts.get(key);
+    if (host == null) hosts.put(key, host = new Host());
+    return host;
+  }
+
+  // starts as many of the host's waiting requests as its connection limit allows
+  private void dispatch(Host host) {
+    while (!host.waiting.isEmpty()) {
+      Exchange ex = host.waiting.getFirst();
+      if (ex.cancelled) {
+        host.waiting.removeFirst();
+        continue;
+      }
+      // prefer the most recently used connection, as it is the least likely to have been closed
+      Connection conn = host.idle.pollLast();
+      if (conn == null) {
+        if (host.connections >= maxPerHost) return;
+        host.waiting.removeFirst();
+        try {
+          conn = new Connection(host, ex.address);
+        } catch (IOException e) {
+          ex.handler.onFailure(e);
+          continue;
+        }
+      } else {
+        host.waiting.removeFirst();
+      }
+      conn.start(ex);
+    }
+  }
+
+  private void executeBlocking(final Exchange ex) {
+    ExecutorService exec;
+    final BlockingHost host;
+    synchronized (this) {
+      if (shutdown) {
+        ex.handler.onFailure(new IOException("HTTP client has been shut down"));
+        return;
+      }
+      if (blockingExec == null)
+        blockingExec = Executors.newCachedThreadPool(daemonThreads("PlayN HTTPS"));
+      exec = blockingExec;
+      String key = hostKey(ex.url);
+      BlockingHost bhost = blockingHosts.get(key);
+      if (bhost == null) blockingHosts.put(key, bhost = new BlockingHost(key));
+      // requests beyond the host's limit are made by one of its threads when it is done
+      if (bhost.active >= maxPerHost) {
+        bhost.waiting.add(ex);
+        return;
+      }
+      bhost.active++;
+      host = bhost;
+    }
+    exec.execute(new Runnable() {
+      public void run() {
+        for (Exchange next = ex; next != null; next = nextBlocking(host)) executeNow(next);
+      }
+    });
+  }
+
+  // returns the next request waiting for host, or null (freeing host's slot) if there is none
+  private synchronized Exchange nextBlocking(BlockingHost host) {
+    Exchange next = host.waiting.poll();
+    if (next == null && --host.active == 0) blockingHosts.remove(host.key);
+    return next;
+  }
+
+  // makes a request with HttpURLConnection on the calling thread
+  private void executeNow(Exchange ex) {
+    if (ex.cancelled) return;
+    try {
+      HttpURLConnection conn = (HttpURLConnection)ex.url.openConnection();
+      conn.setConnectTimeout((int)timeout);
+      conn.setReadTimeout((int)timeout);
+      conn.setRequestMethod(ex.method);
+      // we follow redirects ourselves, as HttpURLConnection won't follow them to http
+      conn.setInstanceFollowRedirects(false);
+      for (int ii = 0; ii < ex.headers.size(); ii += 2)
+        conn.addRequestProperty(ex.headers.get(ii), ex.headers.get(ii+1));
+      if (conn.getRequestProperty("Accept-Encoding") == null)
+        conn.setRequestProperty("Accept-Encoding", "gzip");
+      if (ex.body != null) {
+        conn.setDoOutput(true);
+        conn.setFixedLengthStreamingMode(ex.body.length);
+        OutputStream out = conn.getOutputStream();
+        out.write(ex.body);
+        out.close();
+      }
+
+      int code = conn.getResponseCode();
+      URL location = null;
+      if (isRedirect(code) && ex.redirects < MAX_REDIRECTS) {
+        String target = conn.getHeaderField("Location");
+        try {
+          if (target != null) location = new URL(conn.getURL(), target.trim());
+        } catch (MalformedURLException e) {
+          // then we report the redirect itself
+        }
+      }
+      InputStream in = (code >= 400) ? conn.getErrorStream() : conn.getInputStream();
+      if (location != null) {
+        if (in != null) in.close();
+        follow(ex, code, location);
+        return;
+      }
+
+      Map<String,List<String>> headers = newHeaders();
+      for (Map.Entry<String,List<String>> entry : conn.getHeaderFields().entrySet()) {
+        // the status line is reported as a header with a null name
+        if (entry.getKey() != null) headers.put(entry.getKey(), entry.getValue());
+      }
+      if (ex.cancelled) return;
+      ex.handler.onHeaders(code, headers);
+
+      // we don't disconnect the connection, so that it can be kept alive
+      if (in != null) {
+        try {
+          if ("gzip".equalsIgnoreCase(conn.getContentEncoding())) in = new GZIPInputStream(in);
+          byte[] buffer = new byte[BUFFER_SIZE];
+          for (int read; !ex.cancelled && (read = in.read(buffer)) != -1; ) {
+            if (read > 0) ex.handler.onData(buffer, 0, read);
+            ex.awaitResumed();
+          }
+        } finally {
+          in.close();
+        }
+      }
+      if (!ex.cancelled) ex.handler.onComplete();
+    } catch (IOException e) {
+      if (!ex.cancelled) ex.handler.onFailure(e);
+    }
+  }
+
+  // the https requests being made to a single host:port, and those waiting their turn
+  private static class BlockingHost {
+    final String key;
+    final LinkedList<Exchange> waiting = new LinkedList<Exchange>();
+    int active;
+
+    BlockingHost(String key) {
+      this.key = key;
+    }
+  }
+
+  // the connections to a single host:port, and the requests waiting for one
+  private class Host {
+    final LinkedList<Connection> idle = new LinkedList<Connection>();
+    final LinkedList<Exchange> waiting = new LinkedList<Exchange>();
+    int connections;
+  }
+
+  // the states of a connection's response parser
+  private static final int STATUS = 0, HEADERS = 1, LENGTH = 2, CHUNK_SIZE = 3, CHUNK_DATA = 4,
+    CHUNK_END = 5, TRAILERS = 6, UNTIL_CLOSE = 7, DONE = 8;
+
+  private class Connection {
+    final Host host;
+    final SocketChannel channel;
+    final SelectionKey key;
+    final ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+    final StringBuilder line = new StringBuilder();
+    ByteBuffer out;
+    Exchange exchange;
+    int requests;
+    long idleSince;
+    boolean closed, reading, throttled;
+    URL redirect;
+
+    // the state of the response being parsed
+    int state, code;
+    boolean http10, keepAlive;
+    long remaining;
+    Map<String,List<String>> headers;
+    GzipDecoder gzip;
+
+    Connection(Host host, InetSocketAddress addr) throws IOException {
+      this.host = host;
+      channel = SocketChannel.open();
+      try {
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        boolean connected = channel.connect(addr);
+        key = channel.register(selector, connected ? 0 : SelectionKey.OP_CONNECT, this);
+      } catch (IOException e) {
+        channel.close();
+        throw e;
+      }
+      host.connections++;
+      connectionsOpened++;
+    }
+
+    void start(Exchange ex) {
+      exchange = ex;
+      ex.deadline = now + timeout;
+      requests++;
+      out = ByteBuffer.wrap(encode(ex));
+      state = STATUS;
+      line.setLength(0);
+      headers = newHeaders();
+      gzip = null;
+      redirect = null;
+      reading = throttled = false;
+      busy.add(this);
+      if (channel.isConnected()) key.interestOps(SelectionKey.OP_WRITE);
+    }
+
+    void handle() {
+      try {
+        if (!key.isValid()) return;
+        if (key.isConnectable() && channel.finishConnect()) key.interestOps(SelectionKey.OP_WRITE);
+        else if (key.isWritable()) {
+          channel.write(out);
+          if (!out.hasRemaining()) {
+            reading = true;
+            key.interestOps(throttled ? 0 : SelectionKey.OP_READ);
+          }
+        }
+        else if (key.isReadable()) read();
+      } catch (Exception e) {
+        fail(e);
+      }
+    }
+
+    void read() throws IOException {
+      int read = channel.read(in);
+      if (exchange == null) {
+        // the server closed (or wrote junk to) an idle connection
+        close();
+        return;
+      }
+      if (read < 0) {
+        if (state != UNTIL_CLOSE) throw new IOException("Connection closed by server");
+        keepAlive = false;
+        finishBody();
+        in.clear();
+        finish();
+        return;
+      }
+      if (read == 0) return;
+      exchange.received = true;
+      exchange.deadline = now + timeout;
+      in.flip();
+      if (parse()) {
+        in.clear();
+        finish();
+      } else in.compact();
+    }
+
+    // consumes the contents of the input buffer, returning true when the response is complete
+    boolean parse() throws IOException {
+      while (true) {
+        String l;
+        switch (state) {
+        case STATUS:
+          if ((l = readLine()) == null) return false;
+          int sp = l.indexOf(' ');
+          if (!l.startsWith("HTTP/") || sp < 0)
+            throw new IOException("Malformed status line: " + l);
+          int sp2 = l.indexOf(' ', sp+1);
+          try {
+            code = Integer.parseInt(l.substring(sp+1, (sp2 < 0) ? l.length() : sp2));
+          } catch (NumberFormatException e) {
+            throw new IOException("Malformed status line: " + l);
+          }
+          http10 = l.startsWith("HTTP/1.0");
+          state = HEADERS;
+          break;
+
+        case HEADERS:
+          if ((l = readLine()) == null) return false;
+          if (l.length() > 0) {
+            int colon = l.indexOf(':');
+            if (colon > 0) addHeader(l.substring(0, colon).trim(), l.substring(colon+1).trim());
+          } else if (code / 100 == 1) {
+            // skip interim responses like 100 Continue
+            headers.clear();
+            state = STATUS;
+          } else {
+            startBody();
+            // the response to a redirect we will follow is not passed on
+            if (!exchange.cancelled && redirect == null)
+              exchange.handler.onHeaders(code, headers);
+            if (state == DONE) return finishBody();
+          }
+          break;
+
+        case LENGTH:
+        case CHUNK_DATA:
+          int length = (int)Math.min(remaining, in.remaining());
+          if (length == 0) return false;
+          deliver(length);
+          remaining -= length;
+          if (remaining == 0) {
+            if (state == CHUNK_DATA) state = CHUNK_END;
+            else return finishBody();
+          }
+          break;
+
+        case CHUNK_SIZE:
+          if ((l = readLine()) == null) return false;
+          int semi = l.indexOf(';');
+          try {
+            remaining = Long.parseLong((semi < 0 ? l : l.substring(0, semi)).trim(), 16);
+          } catch (NumberFormatException e) {
+            throw new IOException("Malformed chunk size: " + l);
+          }
+          state = (remaining == 0) ? TRAILERS : CHUNK_DATA;
+          break;
+
+        case CHUNK_END:
+          if (readLine() == null) return false;
+          state = CHUNK_SIZE;
+          break;
+
+        case TRAILERS:
+          if ((l = readLine()) == null) return false;
+          if (l.length() == 0) return finishBody();
+          break;
+
+        case UNTIL_CLOSE:
+          if (!in.hasRemaining()) return false;
+          deliver(in.remaining());
+          break;
+
+        default:
+          throw new IOException("Unexpected data after response");
+        }
+      }
+    }
+
+    String readLine() throws IOException {
+      while (in.hasRemaining()) {
+        char c = (char)(in.get() & 0xFF);
+        if (c == '\n') {
+          int length = line.length();
+          if (length > 0 && line.charAt(length-1) == '\r') line.setLength(length-1);
+          String l = line.toString();
+          line.setLength(0);
+          return l;
+        }
+        if (line.length() >= MAX_LINE) throw new IOException("Response line too long");
+        line.append(c);
+      }
+      return null;
+    }
+
+    void addHeader(String name, String value) {
+      List<String> values = headers.get(name);
+      if (values == null) headers.put(name, values = new ArrayList<String>());
+      values.add(value);
+    }
+
+    void startBody() {
+      String connection = header(headers, "Connection");
+      keepAlive = http10 ? "keep-alive".equalsIgnoreCase(connection) :
+        !"close".equalsIgnoreCase(connection);
+      String encoding = header(headers, "Content-Encoding");
+      if (encoding != null && encoding.trim().equalsIgnoreCase("gzip")) gzip = new GzipDecoder();
+      String location = header(headers, "Location");
+      if (isRedirect(code) && location != null && exchange.redirects < MAX_REDIRECTS) {
+        try {
+          redirect = new URL(exchange.url, location.trim());
+        } catch (MalformedURLException e) {
+          // then we report the redirect itself
+        }
+      }
+
+      String transfer = header(headers, "Transfer-Encoding");
+      String length = header(headers, "Content-Length");
+      if ("HEAD".equals(exchange.method) || code == 204 || code == 304) state = DONE;
+      else if (transfer != null && transfer.toLowerCase().indexOf("chunked") >= 0)
+        state = CHUNK_SIZE;
+      else if (length != null) {
+        try {
+          remaining = Long.parseLong(length.trim());
+        } catch (NumberFormatException e) {
+          remaining = -1;
+        }
+        if (remaining < 0) {
+          state = UNTIL_CLOSE;
+          keepAlive = false;
+        } else state = (remaining == 0) ? DONE : LENGTH;
+      } else {
+        state = UNTIL_CLOSE;
+        keepAlive = false;
+      }
+    }
+
+    void deliver(int length) throws IOException {
+      byte[] data = in.array();
+      int offset = in.arrayOffset() + in.position();
+      in.position(in.position() + length);
+      if (exchange.cancelled || redirect != null) return;
+      if (gzip != null) gzip.inflate(data, offset, length, exchange.handler);
+      else exchange.handler.onData(data, offset, length);
+    }
+
+    boolean finishBody() throws IOException {
+      if (gzip != null) gzip.finish();
+      state = DONE;
+      return true;
+    }
+
+    // stops or resumes reading the response; the request's timeout starts over when it resumes
+    void throttle(boolean paused) {
+      if (paused == throttled) return;
+      throttled = paused;
+      exchange.deadline = now + timeout;
+      if (reading && key.isValid()) key.interestOps(paused ? 0 : SelectionKey.OP_READ);
+    }
+
+    // completes the current request and returns this connection to the pool if possible
+    void finish() {
+      Exchange ex = exchange;
+      URL redirect = this.redirect;
+      int code = this.code;
+      exchange = null;
+      busy.remove(this);
+      if (!ex.cancelled && redirect == null) ex.handler.onComplete();
+      if (keepAlive && !ex.cancelled) {
+        idleSince = now;
+        key.interestOps(SelectionKey.OP_READ);
+        host.idle.add(this);
+      } else close();
+      dispatch(host);
+      // we follow a redirect once we're back in the pool, so that it can reuse this connection
+      if (!ex.cancelled && redirect != null) follow(ex, code, redirect);
+    }
+
+    void fail(Throwable cause) {
+      Exchange ex = exchange;
+      exchange = null;
+      close();
+      if (ex != null && !ex.cancelled) {
+        // a reused connection may have been closed by the server while it was idle, in which
+        // case the request may not have reached the server; if repeating it is harmless, we
+        // retry it (once)
+        if (!ex.received && requests > 1 && !ex.retried && isIdempotent(ex.method)) {
+          ex.retried = true;
+          host.waiting.addFirst(ex);
+        } else ex.handler.onFailure(cause);
+      }
+      dispatch(host);
+    }
+
+    void close() {
+      if (closed) return;
+      closed = true;
+      key.cancel();
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // nothing to be done
+      }
+      if (gzip != null) gzip.end();
+      host.connections--;
+      host.idle.remove(this);
+      busy.remove(this);
+    }
+
+    byte[] encode(Exchange ex) {
+      StringBuilder buf = new StringBuilder();
+      String path = ex.url.getFile(), host = ex.url.getHost();
+      if (ex.url.getPort() != -1) host += ":" + ex.url.getPort();
+      buf.append(ex.method).append(' ');
+      // a proxy must be given the absolute URL
+      if (ex.proxied) buf.append("http://").append(host);
+      buf.append(path.length() == 0 ? "/" : path).append(" HTTP/1.1\r\n");
+      buf.append("Host: ").append(host).append("\r\n");
+      boolean acceptEncoding = false;
+      for (int ii = 0; ii < ex.headers.size(); ii += 2) {
+        String name = ex.headers.get(ii);
+        acceptEncoding |= name.equalsIgnoreCase("Accept-Encoding");
+        buf.append(name).append(": ").append(ex.headers.get(ii+1)).append("\r\n");
+      }
+      if (!acceptEncoding) buf.append("Accept-Encoding: gzip\r\n");
+      if (ex.body != null) buf.append("Content-Length: ").append(ex.body.length).append("\r\n");
+      buf.append("\r\n");
+
+      byte[] head;
+      try {
+        head = buf.toString().getBytes("ISO-8859-1");
+      } catch (IOException e) {
+        throw new AssertionError(e); // every JVM supports ISO-8859-1
+      }
+      if (ex.body == null) return head;
+      byte[] request = new byte[head.length + ex.body.length];
+      System.arraycopy(head, 0, request, 0, head.length);
+      System.arraycopy(ex.body, 0, request, head.length, ex.body.length);
+      return request;
+    }
+  }
+
+  /** Incrementally decodes a gzip stream. */
+  static class GzipDecoder {
+    /** Decodes {@code length} bytes of gzip data, passing what is inflated to {@code handler}. */
+    void inflate(byte[] data, int offset, int length, Handler handler) throws IOException {
+      if (length > 0) received = true;
+      if (header != null) {
+        // accumulate the gzip header until we have all of it
+        byte[] nheader = new byte[header.length + length];
+        System.arraycopy(header, 0, nheader, 0, header.length);
+        System.arraycopy(data, offset, nheader, header.length, length);
+        int headerLength = headerLength(nheader);
+        if (headerLength < 0) {
+          header = nheader;
+          return;
+        }
+        header = null;
+        data = nheader;
+        offset = headerLength;
+        length = nheader.length - headerLength;
+      }
+      // anything after the end of the deflated data is the gzip trailer, which we ignore
+      if (length == 0 || inflater.finished()) return;
+      inflater.setInput(data, offset, length);
+      try {
+        for (int read; (read = inflater.inflate(output)) > 0; ) handler.onData(output, 0, read);
+      } catch (DataFormatException e) {
+        throw new IOException("Malformed gzip data: " + e.getMessage());
+      }
+      if (inflater.needsDictionary()) throw new IOException("Malformed gzip data");
+    }
+
+    /** Checks that the entire gzip stream was received and frees the decoder's resources. */
+    void finish() throws IOException {
+      boolean truncated = received && !inflater.finished();
+      end();
+      if (truncated) throw new IOException("Truncated gzip data");
+    }
+
+    /** Frees this decoder's resources. */
+    void end() {
+      inflater.end();
+    }
+
+    // returns the length of the gzip header at the start of data, or -1 if it is incomplete
+    private static int headerLength(byte[] data) throws IOException {
+      if (data.length < 10) return -1;
+      if ((data[0] & 0xFF) != 0x1F || (data[1] & 0xFF) != 0x8B || data[2] != 8)
+        throw new IOException("Not in gzip format");
+      int flags = data[3] & 0xFF, pos = 10;
+      if ((flags & FEXTRA) != 0) {
+        if (data.length < pos + 2) return -1;
+        pos += 2 + ((data[pos] & 0xFF) | ((data[pos+1] & 0xFF) << 8));
+      }
+      if ((flags & FNAME) != 0) pos = skipString(data, pos);
+      if (pos >= 0 && (flags & FCOMMENT) != 0) pos = skipString(data, pos);
+      if (pos >= 0 && (flags & FHCRC) != 0) pos += 2;
+      return (pos >= 0 && pos <= data.length) ? pos : -1;
+    }
+
+    private static int skipString(byte[] data, int pos) {
+      for (int ii = pos; ii < data.length; ii++) if (data[ii] == 0) return ii + 1;
+      return -1;
+    }
+
+    private static final int FHCRC = 2, FEXTRA = 4, FNAME = 8, FCOMMENT = 16;
+
+    private final Inflater inflater = new Inflater(true);
+    private final byte[] output = new byte[BUFFER_SIZE];
+    private byte[] header = new byte[0];
+    private boolean received;
+  }
+
+  private static final int BUFFER_SIZE = 16 * 1024;
+  private static final int MAX_LINE = 64 * 1024;
+  private static final long SELECT_INTERVAL = 250;
+
+  private final Log log;
+  private final int maxPerHost;
+  private final long keepAlive, timeout;
+  private final Queue<Exchange> submitted = new ConcurrentLinkedQueue<Exchange>();
+  private volatile Selector selector;
+  private volatile boolean shutdown;
+  private volatile int connectionsOpened;
+  private ExecutorService resolver, blockingExec;
+  private final Map<String,BlockingHost> blockingHosts = new HashMap<String,BlockingHost>();
+
+  // these are only used by the network thread
+  private final Map<String,Host> hosts = new HashMap<String,Host>();
+  private final Set<Connection> busy = new HashSet<Connection>();
+  private long now;
+}
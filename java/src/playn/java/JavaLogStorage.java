@@ -0,0 +1,412 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import playn.core.BatchImpl;
+import playn.core.Storage;
+
+/**
+ * A {@link Storage} which keeps its data in memory and persists changes by appending them to a log
+ * file. Each {@link #setItem}, {@link #removeItem} or committed {@link Storage.Batch} is written as
+ * a single checksummed record and synced to disk, which costs far less than the full rewrite that
+ * {@link JavaStorage} incurs on every change.
+ *
+ * <p>When reopened, the log is replayed up to the first incomplete or corrupt record (such as one
+ * which was being written when the process died), and anything after it is discarded. When the
+ * log grows well beyond the size of the live data, it is compacted on a background thread.</p>
+ */
+class JavaLogStorage implements Storage {
+
+  /** Compaction is not attempted until the log is at least this large. */
+  static final long COMPACT_MIN_BYTES = 64 * 1024;
+
+  /** Compaction is started when the log is this many times larger than the live data. */
+  static final int COMPACT_RATIO = 2;
+
+  JavaLogStorage(JavaPlatform platform, File file) {
+    this.platform = platform;
+    this.file = file;
+    try {
+      open();
+      isPersisted = true;
+    } catch (IOException e) {
+      platform.log().warn("Couldn't open storage log " + file + ": " + e.getMessage());
+      close();
+    }
+  }
+
+  @Override
+  public synchronized void setItem(String key, String data) {
+    if (data == null) throw new IllegalArgumentException("Storage data must not be null");
+    put(key, data);
+    append(new String[] { key }, new String[] { data });
+  }
+
+  @Override
+  public synchronized void removeItem(String key) {
+    if (!values.containsKey(key)) return;
+    put(key, null);
+    append(new String[] { key }, new String[] { null });
+  }
+
+  @Override
+  public synchronized String getItem(String key) {
+    return values.get(key);
+  }
+
+  @Override
+  public Batch startBatch() {
+    return new BatchImpl(this) {
+      private final List<String> keys = new ArrayList<String>();
+      private final List<String> datas = new ArrayList<String>();
+      @Override protected void setImpl(String key, String data) {
+        keys.add(key);
+        datas.add(data);
+      }
+      @Override protected void removeImpl(String key) {
+        keys.add(key);
+        datas.add(null);
+      }
+      @Override protected void onAfterCommit() {
+        apply(keys.toArray(new String[keys.size()]), datas.toArray(new String[datas.size()]));
+      }
+    };
+  }
+
+  @Override
+  public synchronized Iterable<String> keys() {
+    return new ArrayList<String>(values.keySet());
+  }
+
+  @Override
+  public synchronized boolean isPersisted() {
+    return isPersisted;
+  }
+
+  /**
+   * Returns the current size of the log file, in bytes.
+   */
+  synchronized long logSize() {
+    return end;
+  }
+
+  /**
+   * Returns whether a background compaction is in progress.
+   */
+  synchronized boolean isCompacting() {
+    return compacting;
+  }
+
+  /**
+   * Closes the log file. Changes made after this are kept in memory only.
+   */
+  synchronized void close() {
+    try {
+      if (raf != null) raf.close();
+    } catch (IOException e) {
+      platform.log().info("Error closing storage log: " + e.getMessage());
+    }
+    raf = null;
+    channel = null;
+    isPersisted = false;
+  }
+
+  /**
+   * Rewrites the log so that it contains only the live data. This is normally done on a
+   * background thread when the log has accumulated enough obsolete records; it is exposed for
+   * testing.
+   */
+  void compact() {
+    Map<String, String> snapshot;
+    long snapEnd;
+    synchronized (this) {
+      if (channel == null) return;
+      snapshot = new HashMap<String, String>(values);
+      snapEnd = end;
+      compacting = true;
+    }
+
+    File tmp = tmpFile();
+    RandomAccessFile out = null;
+    boolean keepTmp = false;
+    try {
+      // write the snapshot without holding our lock, so that the game can keep writing
+      out = new RandomAccessFile(tmp, "rw");
+      out.setLength(0);
+      FileChannel och = out.getChannel();
+      String[] keys = snapshot.keySet().toArray(new String[snapshot.size()]);
+      String[] datas = new String[keys.length];
+      for (int ii = 0; ii < keys.length; ii++) datas[ii] = snapshot.get(keys[ii]);
+      writeFully(och, header(), 0);
+      writeFully(och, encode(keys, datas), HEADER_SIZE);
+      och.force(false);
+
+      synchronized (this) {
+        if (channel == null) return;
+        // copy over anything that was appended while we were writing the snapshot
+        och.position(och.size());
+        for (long from = snapEnd; from < end; ) {
+          long copied = channel.transferTo(from, end - from, och);
+          if (copied <= 0) throw new IOException("Failed to copy log tail");
+          from += copied;
+        }
+        och.force(true);
+        out.close();
+        out = null;
+
+        raf.close();
+        boolean replaced = tmp.renameTo(file) || (file.delete() && tmp.renameTo(file));
+        if (!replaced && !file.exists()) {
+          // the old log is gone but the new one is complete; keep it for open() to recover from,
+          // rather than starting an empty log over it
+          keepTmp = true;
+          close();
+          throw new IOException("Failed to move " + tmp + " to " + file);
+        }
+        // reopen whichever log is now in place
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        end = channel.size();
+        if (!replaced) throw new IOException("Failed to replace " + file);
+      }
+
+    } catch (IOException e) {
+      platform.log().warn("Failed to compact storage log: " + e.getMessage());
+    } finally {
+      try {
+        if (out != null) out.close();
+      } catch (IOException ioe) {
+        // nothing to do
+      }
+      if (!keepTmp) tmp.delete();
+      synchronized (this) {
+        compacting = false;
+      }
+    }
+  }
+
+  private synchronized void apply(String[] keys, String[] datas) {
+    for (int ii = 0; ii < keys.length; ii++) put(keys[ii], datas[ii]);
+    append(keys, datas);
+  }
+
+  private void put(String key, String data) {
+    String old = (data == null) ? values.remove(key) : values.put(key, data);
+    if (old != null) liveBytes -= entrySize(key, old);
+    if (data != null) liveBytes += entrySize(key, data);
+  }
+
+  private void append(String[] keys, String[] datas) {
+    if (channel == null) return;
+    try {
+      ByteBuffer record = encode(keys, datas);
+      int size = record.remaining();
+      writeFully(channel, record, end);
+      channel.force(false);
+      end += size;
+    } catch (IOException e) {
+      platform.log().warn("Error writing storage log: " + e.getMessage());
+      close();
+      return;
+    }
+
+    boolean wasteful = end > COMPACT_RATIO * (liveBytes + HEADER_SIZE);
+    if (!compacting && end > COMPACT_MIN_BYTES && wasteful) {
+      compacting = true;
+      platform.invokeAsync(new Runnable() {
+        public void run() {
+          compact();
+        }
+      });
+    }
+  }
+
+  private void open() throws IOException {
+    // a compacted log is only moved into place once it is complete, so if one was left over by an
+    // interrupted compaction and the main log did not survive, the compacted log has our data
+    File tmp = tmpFile();
+    if (tmp.exists()) {
+      if (hasHeader(file) || !hasHeader(tmp)) tmp.delete();
+      else if (tmp.renameTo(file) || (file.delete() && tmp.renameTo(file)))
+        platform.log().info("Recovered storage log from " + tmp);
+      else throw new IOException("Couldn't recover " + file + " from " + tmp);
+    }
+    File dir = file.getAbsoluteFile().getParentFile();
+    if (dir != null && !dir.isDirectory() && !dir.mkdirs())
+      throw new IOException("Couldn't create " + dir);
+    raf = new RandomAccessFile(file, "rw");
+    channel = raf.getChannel();
+
+    long size = channel.size();
+    if (size < HEADER_SIZE) {
+      // a new log, or one which died before its header was written
+      channel.truncate(0);
+      writeFully(channel, header(), 0);
+      channel.force(true);
+      end = HEADER_SIZE;
+      return;
+    }
+
+    ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE);
+    readFully(channel, head, 0);
+    if (head.getInt(0) != MAGIC || head.getInt(4) != VERSION)
+      throw new IOException("Not a storage log");
+
+    // replay records until we run out or reach one which is incomplete or corrupt
+    long pos = HEADER_SIZE;
+    ByteBuffer rhead = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+    CRC32 crc = new CRC32();
+    while (size - pos >= RECORD_HEADER_SIZE) {
+      rhead.clear();
+      readFully(channel, rhead, pos);
+      int length = rhead.getInt(0);
+      if (length < 4 || length > size - pos - RECORD_HEADER_SIZE) break;
+      ByteBuffer payload = ByteBuffer.allocate(length);
+      readFully(channel, payload, pos + RECORD_HEADER_SIZE);
+      payload.flip();
+      crc.reset();
+      crc.update(payload.array(), 0, length);
+      if ((int)crc.getValue() != rhead.getInt(4) || !replay(payload)) break;
+      pos += RECORD_HEADER_SIZE + length;
+    }
+
+    if (pos < size) {
+      platform.log().info("Discarding " + (size - pos) + " bytes of incomplete storage log");
+      channel.truncate(pos);
+      channel.force(true);
+    }
+    end = pos;
+  }
+
+  // applies the changes in a record, returning false if it is malformed
+  private boolean replay(ByteBuffer payload) throws UnsupportedEncodingException {
+    int count = payload.getInt();
+    if (count < 0 || count > payload.remaining() / 5) return false;
+    String[] keys = new String[count], datas = new String[count];
+    for (int ii = 0; ii < count; ii++) {
+      if (payload.remaining() < 1) return false;
+      byte op = payload.get();
+      if ((keys[ii] = readString(payload)) == null) return false;
+      if (op == OP_SET) {
+        if ((datas[ii] = readString(payload)) == null) return false;
+      } else if (op != OP_REMOVE) return false;
+    }
+    if (payload.hasRemaining()) return false;
+    for (int ii = 0; ii < count; ii++) put(keys[ii], datas[ii]);
+    return true;
+  }
+
+  private static String readString(ByteBuffer buf) throws UnsupportedEncodingException {
+    if (buf.remaining() < 4) return null;
+    int length = buf.getInt();
+    if (length < 0 || length > buf.remaining()) return null;
+    String s = new String(buf.array(), buf.position(), length, "UTF-8");
+    buf.position(buf.position() + length);
+    return s;
+  }
+
+  // encodes a record: its payload length and checksum, then the changes it contains
+  private static ByteBuffer encode(String[] keys, String[] datas) throws IOException {
+    int count = keys.length;
+    byte[][] bytes = new byte[count*2][];
+    int length = 4;
+    for (int ii = 0; ii < count; ii++) {
+      bytes[2*ii] = keys[ii].getBytes("UTF-8");
+      length += 1 + 4 + bytes[2*ii].length;
+      if (datas[ii] != null) {
+        bytes[2*ii+1] = datas[ii].getBytes("UTF-8");
+        length += 4 + bytes[2*ii+1].length;
+      }
+    }
+    ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+    record.position(RECORD_HEADER_SIZE);
+    record.putInt(count);
+    for (int ii = 0; ii < count; ii++) {
+      record.put(datas[ii] == null ? OP_REMOVE : OP_SET);
+      record.putInt(bytes[2*ii].length).put(bytes[2*ii]);
+      if (datas[ii] != null) record.putInt(bytes[2*ii+1].length).put(bytes[2*ii+1]);
+    }
+    CRC32 crc = new CRC32();
+    crc.update(record.array(), RECORD_HEADER_SIZE, length);
+    record.putInt(0, length).putInt(4, (int)crc.getValue());
+    record.flip();
+    return record;
+  }
+
+  private File tmpFile() {
+    return new File(file.getPath() + ".tmp");
+  }
+
+  // returns whether the supplied file starts with a valid log header
+  private static boolean hasHeader(File file) throws IOException {
+    if (!file.isFile() || file.length() < HEADER_SIZE) return false;
+    RandomAccessFile in = new RandomAccessFile(file, "r");
+    try {
+      return in.readInt() == MAGIC && in.readInt() == VERSION;
+    } finally {
+      in.close();
+    }
+  }
+
+  private static ByteBuffer header() {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(MAGIC).putInt(VERSION).flip();
+    return header;
+  }
+
+  // the approximate number of bytes needed to record an entry in a compacted log
+  private static long entrySize(String key, String data) {
+    return 9 + key.length() + data.length();
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buf, long pos) throws IOException {
+    while (buf.hasRemaining()) pos += channel.write(buf, pos);
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buf, long pos) throws IOException {
+    while (buf.hasRemaining()) {
+      int read = channel.read(buf, pos);
+      if (read < 0) throw new IOException("Unexpected end of storage log");
+      pos += read;
+    }
+  }
+
+  private static final int MAGIC = 0x504c4f47; // PLOG
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 8;
+  private static final int RECORD_HEADER_SIZE = 8; // length, crc
+  private static final byte OP_SET = 0, OP_REMOVE = 1;
+
+  private final JavaPlatform platform;
+  private final File file;
+  private final Map<String, String> values = new HashMap<String, String>();
+  private RandomAccessFile raf;
+  private FileChannel channel;
+  private long end, liveBytes;
+  private boolean isPersisted, compacting;
+}
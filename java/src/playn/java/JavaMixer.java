@@ -0,0 +1,271 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package playn.java;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Mixes sounds in software into a single {@link SourceDataLine}.
+ *
+ * <p>Sounds are decoded once into {@link Samples}, which are shared by all of the voices that play
+ * them, so a sound can overlap itself. The mixer has a fixed number of voices; when all of them
+ * are in use, playing another sound steals a voice, preferring the oldest voice that is not
+ * looping. Output is 16-bit signed little-endian stereo at the mixer's sample rate.</p>
+ */
+class JavaMixer {
+
+  /** Decoded PCM data, as 16-bit samples at the mixer's sample rate. */
+  static class Samples {
+    /** The samples, interleaved if there are two channels. */
+    public final short[] data;
+    /** The number of channels, one or two. */
+    public final int channels;
+    /** The number of frames (samples per channel). */
+    public final int frames;
+
+    public Samples(short[] data, int channels) {
+      this.data = data;
+      this.channels = channels;
+      this.frames = data.length / channels;
+    }
+  }
+
+  /** The number of output channels. */
+  public static final int CHANNELS = 2;
+
+  public JavaMixer(float sampleRate, int voices) {
+    this.sampleRate = sampleRate;
+    this.voices = new Voice[Math.max(voices, 1)];
+    for (int ii = 0; ii < this.voices.length; ii++) this.voices[ii] = new Voice();
+  }
+
+  /** Returns the format of this mixer's output. */
+  public AudioFormat format() {
+    return new AudioFormat(sampleRate, 16, CHANNELS, true, false);
+  }
+
+  /**
+   * Opens the output line and starts the thread that writes the mix to it.
+   *
+   * @throws LineUnavailableException if the output line could not be opened, in which case the
+   * mixer is left stopped.
+   */
+  public synchronized void start() throws LineUnavailableException {
+    if (thread != null) return;
+    AudioFormat format = format();
+    final SourceDataLine line = AudioSystem.getSourceDataLine(format);
+    line.open(format, LINE_FRAMES * CHANNELS * 2);
+    line.start();
+    thread = new Thread("PlayN Mixer") {
+      @Override public void run() {
+        byte[] buffer = new byte[CHUNK_FRAMES * CHANNELS * 2];
+        while (!stopped) {
+          mix(buffer, CHUNK_FRAMES);
+          // this blocks until the line has room, which paces the mixing
+          line.write(buffer, 0, buffer.length);
+        }
+        line.stop();
+        line.close();
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /** Stops the output thread and closes the output line. */
+  public synchronized void shutdown() {
+    stopped = true;
+  }
+
+  /**
+   * Reads all of the audio from {@code ais}, decoding it and converting it to this mixer's sample
+   * rate as needed. Audio with more than two channels is reduced to its first two channels.
+   */
+  public Samples decode(AudioInputStream ais) throws IOException {
+    try {
+      AudioFormat base = ais.getFormat();
+      AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, base.getSampleRate(), 16,
+                                        base.getChannels(), base.getChannels()*2,
+                                        base.getSampleRate(), false);
+      if (!base.matches(pcm)) ais = AudioSystem.getAudioInputStream(pcm, ais);
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[16*1024];
+      for (int read; (read = ais.read(buffer)) != -1; ) out.write(buffer, 0, read);
+      byte[] bytes = out.toByteArray();
+      short[] data = new short[bytes.length/2];
+      for (int ii = 0; ii < data.length; ii++)
+        data[ii] = (short)((bytes[2*ii] & 0xFF) | (bytes[2*ii+1] << 8));
+      return convert(data, pcm.getChannels(), pcm.getSampleRate());
+    } finally {
+      ais.close();
+    }
+  }
+
+  /**
+   * Converts interleaved 16-bit samples with {@code channels} channels at {@code rate} to this
+   * mixer's sample rate, using linear interpolation.
+   */
+  public Samples convert(short[] data, int channels, float rate) {
+    int outChannels = Math.min(channels, CHANNELS);
+    int frames = data.length / channels;
+    if (rate == sampleRate && channels == outChannels) return new Samples(data, channels);
+
+    double step = rate / sampleRate;
+    int outFrames = (int)Math.floor(frames / step);
+    short[] out = new short[outFrames * outChannels];
+    for (int ff = 0, oo = 0; ff < outFrames; ff++) {
+      double pos = ff * step;
+      int frame = (int)pos;
+      double frac = pos - frame;
+      int next = Math.min(frame + 1, frames - 1);
+      for (int cc = 0; cc < outChannels; cc++) {
+        int a = data[frame * channels + cc], b = data[next * channels + cc];
+        out[oo++] = (short)Math.round(a + (b - a) * frac);
+      }
+    }
+    return new Samples(out, outChannels);
+  }
+
+  /**
+   * Starts a voice playing {@code samples} on behalf of {@code owner}, stealing a voice if none
+   * are free.
+   */
+  public synchronized void play(Object owner, Samples samples, float volume, boolean looping) {
+    Voice voice = null;
+    for (Voice v : voices) {
+      if (v.samples == null) {
+        voice = v;
+        break;
+      }
+      // prefer to steal one-shot voices over looping ones, and older voices over newer ones
+      if (voice == null || (voice.looping && !v.looping) ||
+          (voice.looping == v.looping && v.started < voice.started)) voice = v;
+    }
+    if (voice.samples != null) stolen++;
+    voice.owner = owner;
+    voice.samples = samples;
+    voice.position = 0;
+    voice.started = ++voiceSerial;
+    voice.looping = looping;
+    voice.setVolume(volume);
+  }
+
+  /** Stops all voices playing on behalf of {@code owner}. */
+  public synchronized void stop(Object owner) {
+    for (Voice v : voices) if (v.owner == owner) v.clear();
+  }
+
+  /** Returns true if any voice is playing on behalf of {@code owner}. */
+  public synchronized boolean isPlaying(Object owner) {
+    for (Voice v : voices) if (v.owner == owner) return true;
+    return false;
+  }
+
+  /** Updates the volume of all voices playing on behalf of {@code owner}. */
+  public synchronized void setVolume(Object owner, float volume) {
+    for (Voice v : voices) if (v.owner == owner) v.setVolume(volume);
+  }
+
+  /** Updates whether the voices playing on behalf of {@code owner} loop. */
+  public synchronized void setLooping(Object owner, boolean looping) {
+    for (Voice v : voices) if (v.owner == owner) v.looping = looping;
+  }
+
+  /** Returns the number of voices that are currently playing. */
+  public synchronized int activeVoices() {
+    int active = 0;
+    for (Voice v : voices) if (v.samples != null) active++;
+    return active;
+  }
+
+  /** Returns the number of voices that have been stolen to play another sound. */
+  public synchronized int stolenVoices() {
+    return stolen;
+  }
+
+  /**
+   * Mixes the next {@code frames} frames of all active voices into {@code out}, as 16-bit signed
+   * little-endian stereo samples. Samples that exceed the 16-bit range are clamped.
+   */
+  public synchronized void mix(byte[] out, int frames) {
+    int samples = frames * CHANNELS;
+    if (accum.length < samples) accum = new int[samples];
+    Arrays.fill(accum, 0, samples, 0);
+    for (Voice v : voices) if (v.samples != null) v.mix(accum, frames);
+    for (int ii = 0; ii < samples; ii++) {
+      int sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, accum[ii]));
+      out[2*ii] = (byte)sample;
+      out[2*ii+1] = (byte)(sample >> 8);
+    }
+  }
+
+  private static class Voice {
+    Object owner;
+    Samples samples;
+    int position, gain;
+    long started;
+    boolean looping;
+
+    void setVolume(float volume) {
+      gain = Math.round(Math.max(0, Math.min(1, volume)) * (1 << GAIN_BITS));
+    }
+
+    void mix(int[] accum, int frames) {
+      short[] data = samples.data;
+      int channels = samples.channels, length = samples.frames;
+      for (int ff = 0, ii = 0; ff < frames; ff++) {
+        if (position >= length) {
+          if (!looping || length == 0) {
+            clear();
+            return;
+          }
+          position = 0;
+        }
+        int idx = position++ * channels;
+        int left = data[idx], right = (channels > 1) ? data[idx+1] : left;
+        accum[ii++] += (left * gain) >> GAIN_BITS;
+        accum[ii++] += (right * gain) >> GAIN_BITS;
+      }
+    }
+
+    void clear() {
+      owner = null;
+      samples = null;
+    }
+  }
+
+  // volumes are applied as fixed point gains with this many fractional bits
+  private static final int GAIN_BITS = 15;
+  // the number of frames mixed at a time, and the size of the output line's buffer
+  private static final int CHUNK_FRAMES = 512, LINE_FRAMES = 2048;
+
+  private final float sampleRate;
+  private final Voice[] voices;
+  private int[] accum = new int[0];
+  private long voiceSerial;
+  private int stolen;
+  private Thread thread;
+  private volatile boolean stopped;
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package playn.java;
+
+import playn.core.AbstractSound;
+
+/**
+ * A sound played by a {@link JavaMixer}. This holds only a reference to the sound's decoded
+ * samples; each call to {@link #play} starts a new mixer voice, so a sound can overlap itself.
+ */
+class JavaMixerSound extends AbstractSound<JavaMixer.Samples> {
+
+  private final JavaMixer mixer;
+
+  public JavaMixerSound(JavaMixer mixer) {
+    this.mixer = mixer;
+  }
+
+  @Override
+  protected boolean playingImpl() {
+    return mixer.isPlaying(this);
+  }
+
+  @Override
+  protected boolean playImpl() {
+    mixer.play(this, impl, volume, looping);
+    return true;
+  }
+
+  @Override
+  protected void stopImpl() {
+    mixer.stop(this);
+  }
+
+  @Override
+  protected void setLoopingImpl(boolean looping) {
+    mixer.setLooping(this, looping);
+  }
+
+  @Override
+  protected void setVolumeImpl(float volume) {
+    mixer.setVolume(this, volume);
+  }
+
+  @Override
+  protected int byteSizeImpl() {
+    return impl.data.length * 2;
+  }
+
+  @Override
+  protected void releaseImpl() {
+    mixer.stop(this);
+  }
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package playn.java;
+
+import java.io.IOException;
+
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.FloatControl;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+import playn.core.AbstractSound;
+
+/**
+ * Music that is decoded while it plays, by a {@link JavaMusicStream}, rather than being decoded
+ * into memory up front. The decoded audio is written to a {@link SourceDataLine} by a player
+ * thread.
+ */
+public class JavaMusic extends AbstractSound<JavaMusicStream> {
+
+  public JavaMusic(JavaPlatform platform) {
+    this.platform = platform;
+  }
+
+  /**
+   * Moves the playback position to {@code seconds} from the start of the music. This may be
+   * called whether or not the music is playing.
+   */
+  public void seek(float seconds) {
+    if (impl == null) return;
+    impl.seek((long)(seconds * impl.format().getFrameRate()));
+    if (line != null) line.flush();
+  }
+
+  /**
+   * Returns the position of the decoder, in seconds from the start of the music. This leads what
+   * is audible by the latency of the output line, and does not wrap when the music loops.
+   */
+  public float position() {
+    return (impl == null) ? 0 : impl.position() / impl.format().getFrameRate();
+  }
+
+  @Override
+  protected boolean playingImpl() {
+    return player != null && !player.stopped && player.isAlive();
+  }
+
+  @Override
+  protected boolean playImpl() {
+    stopImpl();
+    try {
+      if (line == null) {
+        line = AudioSystem.getSourceDataLine(impl.format());
+        line.open(impl.format());
+        if (line.isControlSupported(FloatControl.Type.MASTER_GAIN)) setVolumeImpl(volume);
+      }
+    } catch (LineUnavailableException e) {
+      onPlayError(e);
+      return false;
+    } catch (IllegalArgumentException e) {
+      onPlayError(e); // no line supports our format
+      return false;
+    }
+    impl.seek(0);
+    line.start();
+    player = new Player(player);
+    player.start();
+    return true;
+  }
+
+  @Override
+  protected void stopImpl() {
+    if (player != null) {
+      player.stopped = true;
+      // unblock the player if it is writing to the line
+      line.stop();
+      line.flush();
+    }
+  }
+
+  @Override
+  protected void setLoopingImpl(boolean looping) {
+    impl.setLooping(looping);
+  }
+
+  @Override
+  protected void setVolumeImpl(float volume) {
+    if (line != null && line.isControlSupported(FloatControl.Type.MASTER_GAIN)) {
+      FloatControl volctrl = (FloatControl) line.getControl(FloatControl.Type.MASTER_GAIN);
+      volctrl.setValue(JavaSound.toGain(volume, volctrl.getMinimum(), volctrl.getMaximum()));
+    }
+  }
+
+  @Override
+  protected int byteSizeImpl() {
+    return impl.bufferSize();
+  }
+
+  @Override
+  protected void releaseImpl() {
+    stopImpl();
+    impl.close();
+    if (line != null) {
+      line.close();
+      line = null;
+    }
+  }
+
+  protected void onPlayError(Exception e) {
+    platform.log().warn("Unable to open audio line for music.", e);
+  }
+
+  protected class Player extends Thread {
+    public volatile boolean stopped;
+
+    public Player(Player previous) {
+      super("PlayN Music Player");
+      setDaemon(true);
+      this.previous = previous;
+    }
+
+    @Override public void run() {
+      // wait for the previous player to notice that it was stopped, so that we don't both write
+      try {
+        if (previous != null) previous.join();
+      } catch (InterruptedException ie) {
+        return;
+      }
+      previous = null;
+
+      // capture these, as they are cleared on the game thread when the music is released
+      JavaMusicStream stream = impl;
+      SourceDataLine line = JavaMusic.this.line;
+      if (stream == null || line == null) return;
+      byte[] buffer = new byte[stream.format().getFrameSize() * 2048];
+      try {
+        while (!stopped) {
+          int read = stream.read(buffer, 0, buffer.length, 100);
+          if (read < 0) {
+            line.drain();
+            break;
+          }
+          if (!stopped) line.write(buffer, 0, read);
+        }
+      } catch (IOException e) {
+        platform.log().warn("Music decoding failed.", e);
+      }
+    }
+
+    protected Player previous;
+  }
+
+  protected final JavaPlatform platform;
+  protected SourceDataLine line;
+  protected Player player;
+}
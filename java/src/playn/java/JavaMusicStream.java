@@ -0,0 +1,240 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package playn.java;
+
+import java.io.IOException;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+/**
+ * Decodes an audio resource incrementally into a ring buffer, on a dedicated thread.
+ *
+ * <p>The decoder stays at most {@link #BUFFER_SECONDS} ahead of the reader, so memory use does not
+ * depend on the length of the audio. When looping, the decoder reopens the resource as soon as it
+ * reaches the end, so the start of the audio is buffered before the reader gets there. Seeking
+ * discards the buffered audio and reopens the resource at the requested position.</p>
+ *
+ * <p>Audio is decoded to 16-bit signed little-endian PCM at the resource's sample rate.</p>
+ */
+class JavaMusicStream {
+
+  /** The amount of decoded audio that is buffered ahead of the reader, in seconds. */
+  public static final float BUFFER_SECONDS = 1;
+
+  /**
+   * Opens {@code rsrc} and starts decoding it.
+   *
+   * @throws Exception if the resource cannot be opened or decoded.
+   */
+  public JavaMusicStream(JavaAssets.Resource rsrc) throws Exception {
+    this.rsrc = rsrc;
+    AudioInputStream first = open();
+    format = first.getFormat();
+    int frameSize = format.getFrameSize();
+    // keep the buffer a whole number of frames so that reads and writes never split a frame
+    int frames = Math.max((int)(format.getSampleRate() * BUFFER_SECONDS), CHUNK_FRAMES);
+    ring = new byte[frames * frameSize];
+    chunk = new byte[CHUNK_FRAMES * frameSize];
+    decoder = new Decoder(first);
+    decoder.setName("PlayN Music Decoder");
+    decoder.setDaemon(true);
+    decoder.start();
+  }
+
+  /** Returns the format of the decoded audio. */
+  public AudioFormat format() {
+    return format;
+  }
+
+  /** Returns the size of the ring buffer, in bytes. */
+  public int bufferSize() {
+    return ring.length;
+  }
+
+  /** Configures whether the audio loops when it reaches its end. */
+  public synchronized void setLooping(boolean looping) {
+    this.looping = looping;
+    notifyAll();
+  }
+
+  /** Discards the buffered audio and restarts decoding from {@code frame}. */
+  public synchronized void seek(long frame) {
+    seekFrame = Math.max(frame, 0);
+    position = seekFrame;
+    generation++;
+    head = count = 0;
+    ended = false;
+    notifyAll();
+  }
+
+  /** Returns the frame that will next be returned by {@link #read}. This does not wrap when the
+   * audio loops. */
+  public synchronized long position() {
+    return position;
+  }
+
+  /**
+   * Copies up to {@code length} bytes of decoded audio into {@code buffer}, waiting up to {@code
+   * timeout} milliseconds for audio to be decoded if none is buffered. {@code length} must be a
+   * multiple of the frame size.
+   *
+   * @return the number of bytes copied, which may be zero if the wait timed out, or -1 if the end
+   * of the (non-looping) audio has been reached or the stream has been closed.
+   * @throws IOException if decoding failed.
+   */
+  public synchronized int read(byte[] buffer, int offset, int length, long timeout)
+    throws IOException {
+    if (count == 0 && !ended && !closed && error == null && timeout > 0) {
+      try {
+        wait(timeout);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (error != null) throw error;
+    if (count == 0) return (ended || closed) ? -1 : 0;
+
+    int read = Math.min(length, count);
+    int first = Math.min(read, ring.length - head);
+    System.arraycopy(ring, head, buffer, offset, first);
+    System.arraycopy(ring, 0, buffer, offset + first, read - first);
+    head = (head + read) % ring.length;
+    count -= read;
+    position += read / format.getFrameSize();
+    notifyAll();
+    return read;
+  }
+
+  /** Stops the decoder and releases the resource. */
+  public synchronized void close() {
+    closed = true;
+    notifyAll();
+  }
+
+  protected AudioInputStream open() throws Exception {
+    AudioInputStream ais = rsrc.openAudioStream();
+    AudioFormat base = ais.getFormat();
+    AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, base.getSampleRate(), 16,
+                                      base.getChannels(), base.getChannels()*2,
+                                      base.getSampleRate(), false);
+    return base.matches(pcm) ? ais : AudioSystem.getAudioInputStream(pcm, ais);
+  }
+
+  protected class Decoder extends Thread {
+    public Decoder(AudioInputStream first) {
+      this.in = first;
+    }
+
+    @Override public void run() {
+      int gen = 0;
+      try {
+        while (true) {
+          long skip = 0;
+          synchronized (JavaMusicStream.this) {
+            while (ended && gen == generation && !closed) JavaMusicStream.this.wait();
+            if (closed) return;
+            if (gen != generation) {
+              gen = generation;
+              skip = seekFrame * format.getFrameSize();
+              if (in != null) in.close();
+              in = null;
+            }
+          }
+          if (in == null) {
+            in = open();
+            while (skip > 0) {
+              long skipped = in.skip(skip);
+              if (skipped <= 0) break;
+              skip -= skipped;
+            }
+          }
+
+          int read = readChunk();
+          if (read > 0) write(read, gen);
+          if (read < chunk.length) {
+            // we've reached the end of the audio, so either loop or wait to be sought
+            in.close();
+            in = null;
+            synchronized (JavaMusicStream.this) {
+              if (gen == generation && !looping) {
+                ended = true;
+                JavaMusicStream.this.notifyAll();
+              }
+            }
+          }
+        }
+      } catch (Exception e) {
+        synchronized (JavaMusicStream.this) {
+          error = (e instanceof IOException) ? (IOException)e : new IOException(e.toString());
+          JavaMusicStream.this.notifyAll();
+        }
+      } finally {
+        try {
+          if (in != null) in.close();
+        } catch (IOException ioe) {
+          // nothing to be done
+        }
+      }
+    }
+
+    // reads until the chunk is full or the audio ends
+    protected int readChunk() throws IOException {
+      int read = 0;
+      while (read < chunk.length) {
+        int got = in.read(chunk, read, chunk.length - read);
+        if (got < 0) break;
+        read += got;
+      }
+      return read;
+    }
+
+    // copies the chunk into the ring, waiting for room as needed, unless we've been sought
+    protected void write(int length, int gen) throws InterruptedException {
+      int offset = 0;
+      synchronized (JavaMusicStream.this) {
+        while (offset < length) {
+          while (count == ring.length && gen == generation && !closed) JavaMusicStream.this.wait();
+          if (gen != generation || closed) return;
+          int tail = (head + count) % ring.length;
+          int write = Math.min(length - offset, Math.min(ring.length - count, ring.length - tail));
+          System.arraycopy(chunk, offset, ring, tail, write);
+          count += write;
+          offset += write;
+          JavaMusicStream.this.notifyAll();
+        }
+      }
+    }
+
+    protected AudioInputStream in;
+  }
+
+  // the number of frames decoded at a time
+  protected static final int CHUNK_FRAMES = 4096;
+
+  protected final JavaAssets.Resource rsrc;
+  protected final AudioFormat format;
+  protected final Decoder decoder;
+  protected final byte[] chunk;
+
+  // the ring buffer and its state; all of these are guarded by this stream's monitor
+  protected final byte[] ring;
+  protected int head, count, generation;
+  protected long seekFrame, position;
+  protected boolean looping, ended, closed;
+  protected IOException error;
+}
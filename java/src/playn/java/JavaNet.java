@@ -15,24 +15,38 @@
  */
 package playn.java;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 import playn.core.NetImpl;
 import playn.core.util.Callback;
 
+/**
+ * Makes HTTP requests using a {@link JavaHttpClient}, which pools connections and has its own
+ * network threads, so that network traffic does not compete with asset loading.
+ */
 public class JavaNet extends NetImpl {
 
   private final int draft;
+  private final int connectionsPerHost;
+  private JavaHttpClient client;
 
   public JavaNet(JavaPlatform platform, int draft) {
+    this(platform, draft, 4);
+  }
+
+  /**
+   * @param connectionsPerHost the maximum number of simultaneous connections to any one host.
+   */
+  public JavaNet(JavaPlatform platform, int draft, int connectionsPerHost) {
     super(platform);
     this.draft = draft;
+    this.connectionsPerHost = connectionsPerHost;
   }
 
   @Override
@@ -40,61 +54,208 @@ public class JavaNet extends NetImpl {
     return new JavaWebSocket(platform, url, listener, draft);
   }
 
+  /**
+   * Closes all pooled connections and stops the network threads.
+   */
+  public synchronized void shutdown() {
+    if (client != null) client.shutdown();
+    client = null;
+  }
+
   @Override
   protected void execute(final BuilderImpl req, final Callback<Response> callback) {
-    platform.invokeAsync(new Runnable() {
-      @Override
-      public void run() {
-        try {
-          // configure the request
-          URL url = new URL(canonicalizeUrl(req.url));
-          final HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-          for (Header header : req.headers) {
-            conn.setRequestProperty(header.name, header.value);
-          }
-          conn.setRequestMethod(req.method());
-          if (req.isPost()) {
-            conn.setDoOutput(true);
-            conn.setDoInput(true);
-            conn.setAllowUserInteraction(false);
-            conn.setRequestProperty("Content-type", req.contentType());
-            conn.connect();
-            conn.getOutputStream().write(
-              (req.payloadString == null) ? req.payloadBytes : req.payloadString.getBytes(UTF8));
-            conn.getOutputStream().close();
+    send(req, new JavaHttpClient.Handler() {
+      private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+      private int code;
+      private Map<String,List<String>> headers;
+
+      public void onHeaders(int code, Map<String,List<String>> headers) {
+        this.code = code;
+        this.headers = headers;
+      }
+      public void onData(byte[] data, int offset, int length) {
+        payload.write(data, offset, length);
+      }
+      public void onComplete() {
+        final Map<String,List<String>> headers = this.headers;
+        platform.notifySuccess(callback, new BinaryResponse(
+                                 code, payload.toByteArray(), charset(headers)) {
+          @Override
+          protected Map<String,List<String>> extractHeaders() {
+            return headers;
           }
+        });
+      }
+      public void onFailure(Throwable cause) {
+        platform.notifyFailure(callback, cause);
+      }
+    });
+  }
 
-          // issue the request and process the response
-          try {
-            int code = conn.getResponseCode();
+  @Override
+  protected void stream(BuilderImpl req, StreamingResponse.Listener listener) {
+    StreamHandler handler = new StreamHandler(listener);
+    handler.exchange = send(req, handler);
+  }
+
+  private JavaHttpClient.Exchange send(BuilderImpl req, JavaHttpClient.Handler handler) {
+    URL url;
+    byte[] body = null;
+    List<String> headers = new ArrayList<String>();
+    try {
+      url = new URL(canonicalizeUrl(req.url));
+      if (req.isPost()) body = (req.payloadString == null) ?
+        req.payloadBytes : req.payloadString.getBytes(UTF8);
+    } catch (MalformedURLException e) {
+      handler.onFailure(e);
+      return null;
+    } catch (UnsupportedEncodingException e) {
+      handler.onFailure(e);
+      return null;
+    }
+    for (Header header : req.headers) {
+      headers.add(header.name);
+      headers.add(header.value);
+    }
+    if (req.isPost()) {
+      headers.add("Content-Type");
+      headers.add(req.contentType());
+    }
+    return client().execute(req.method(), url, headers, body, handler);
+  }
 
-            InputStream stream = code >= 400 ? conn.getErrorStream() : conn.getInputStream();
-            byte[] payload = stream == null ? new byte[0] : JavaAssets.toByteArray(stream);
+  private synchronized JavaHttpClient client() {
+    if (client == null) client = new JavaHttpClient(platform.log(), connectionsPerHost);
+    return client;
+  }
 
-            String encoding = conn.getContentEncoding();
-            if (encoding == null) encoding = UTF8;
+  /** The number of bytes of a streaming response that may be waiting for delivery on the game
+   * thread. Once this many are queued, we stop reading the response until half have been
+   * delivered, so that a listener that falls behind doesn't end up with the payload in memory. */
+  protected static final int MAX_STREAM_QUEUED = 256 * 1024;
 
-            platform.notifySuccess(callback, new BinaryResponse(code, payload, encoding) {
-              @Override
-              protected Map<String,List<String>> extractHeaders() {
-                return conn.getHeaderFields();
-              }
-            });
-          } finally {
-            conn.disconnect();
-          }
+  // relays a response to a streaming listener on the game thread
+  private class StreamHandler implements JavaHttpClient.Handler {
+    public final StreamingResponse.Listener listener;
+    public volatile JavaHttpClient.Exchange exchange;
+    public volatile boolean cancelled;
+    // the bytes passed to invokeLater but not yet delivered, and whether we have paused the
+    // exchange as a result; guarded by this
+    private int queued;
+    private boolean paused;
+
+    public StreamHandler(StreamingResponse.Listener listener) {
+      this.listener = listener;
+    }
 
-        } catch (MalformedURLException e) {
-          platform.notifyFailure(callback, e);
-        } catch (IOException e) {
-          platform.notifyFailure(callback, e);
+    public void cancel() {
+      cancelled = true;
+      if (exchange != null) exchange.cancel();
+    }
+
+    public void onHeaders(int code, final Map<String,List<String>> headers) {
+      final StreamingResponse rsp = new StreamingResponseImpl(code, headers, this);
+      post(new Runnable() {
+        public void run() {
+          listener.onResponse(rsp);
+        }
+      });
+    }
+    public void onData(byte[] data, int offset, int length) {
+      final byte[] chunk = new byte[length];
+      System.arraycopy(data, offset, chunk, 0, length);
+      queue(length);
+      platform.invokeLater(new Runnable() {
+        public void run() {
+          if (!cancelled) listener.onData(chunk);
+          dequeue(chunk.length);
+        }
+      });
+    }
+    public void onComplete() {
+      post(new Runnable() {
+        public void run() {
+          listener.onComplete();
         }
+      });
+    }
+    public void onFailure(final Throwable cause) {
+      post(new Runnable() {
+        public void run() {
+          listener.onFailure(cause);
+        }
+      });
+    }
+
+    private synchronized void queue(int length) {
+      queued += length;
+      JavaHttpClient.Exchange ex = exchange;
+      if (!paused && queued >= MAX_STREAM_QUEUED && ex != null) {
+        paused = true;
+        ex.setPaused(true);
       }
-      @Override
-      public String toString() {
-        return "JavaNet." + req.method().toLowerCase() + "(" + req.url + ")";
+    }
+
+    private synchronized void dequeue(int length) {
+      queued -= length;
+      if (paused && queued <= MAX_STREAM_QUEUED / 2) {
+        paused = false;
+        exchange.setPaused(false);
       }
-    });
+    }
+
+    private void post(final Runnable action) {
+      // events are queued in order, and checked for cancellation on the game thread
+      platform.invokeLater(new Runnable() {
+        public void run() {
+          if (!cancelled) action.run();
+        }
+      });
+    }
+  }
+
+  private class StreamingResponseImpl extends ResponseImpl implements StreamingResponse {
+    private final Map<String,List<String>> headers;
+    private final StreamHandler handler;
+
+    public StreamingResponseImpl(int code, Map<String,List<String>> headers,
+                                 StreamHandler handler) {
+      super(code);
+      this.headers = headers;
+      this.handler = handler;
+    }
+
+    @Override
+    public void cancel() {
+      handler.cancel();
+    }
+
+    @Override
+    public String payloadString() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public byte[] payload() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected Map<String,List<String>> extractHeaders() {
+      return headers;
+    }
+  }
+
+  // extracts the character set from the response's content type
+  private static String charset(Map<String,List<String>> headers) {
+    String type = JavaHttpClient.header(headers, "Content-Type");
+    int idx = (type == null) ? -1 : type.toLowerCase().indexOf("charset=");
+    if (idx < 0) return UTF8;
+    String charset = type.substring(idx + "charset=".length());
+    int semi = charset.indexOf(';');
+    if (semi >= 0) charset = charset.substring(0, semi);
+    charset = charset.trim().replace("\"", "");
+    return (charset.length() == 0) ? UTF8 : charset;
   }
 
   // Super-simple url-cleanup: assumes it either starts with "http", or that
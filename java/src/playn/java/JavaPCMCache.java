@@ -0,0 +1,260 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package playn.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+/**
+ * Caches decoded audio on disk, so that compressed sounds are only decoded the first time they
+ * are loaded.
+ *
+ * <p>Entries are keyed by a hash of the compressed data, so a changed asset is decoded afresh, and
+ * hold 16-bit signed little-endian PCM. Cached entries are memory mapped when they are loaded.
+ * Entries written by a different version of the cache are ignored and replaced. When the cache
+ * exceeds its size limit, the least recently used entries are deleted.</p>
+ */
+class JavaPCMCache {
+
+  /** The version of the cache file format. Bump this when the format or decoding changes. */
+  public static final int VERSION = 1;
+
+  public JavaPCMCache(File dir, long maxBytes) {
+    this.dir = dir;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Returns the audio in {@code rsrc} as 16-bit signed little-endian PCM. Audio that is already
+   * PCM is returned as is. Compressed audio is read from the cache if possible, and otherwise
+   * decoded and added to the cache. If the cache cannot be read or written, the audio is simply
+   * decoded.
+   */
+  public AudioInputStream open(JavaAssets.Resource rsrc) throws Exception {
+    AudioInputStream ais = rsrc.openAudioStream();
+    AudioFormat base = ais.getFormat();
+    if (base.getEncoding() == AudioFormat.Encoding.PCM_SIGNED ||
+        base.getEncoding() == AudioFormat.Encoding.PCM_UNSIGNED) return ais;
+
+    File file = new File(dir, key(rsrc) + SUFFIX);
+    AudioInputStream cached;
+    try {
+      cached = read(file);
+    } catch (IOException e) {
+      cached = null;
+    }
+    if (cached != null) {
+      ais.close();
+      synchronized (this) {
+        hits++;
+      }
+      // note that this entry was used, for the benefit of trim()
+      file.setLastModified(System.currentTimeMillis());
+      return cached;
+    }
+
+    synchronized (this) {
+      misses++;
+    }
+    AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, base.getSampleRate(), 16,
+                                      base.getChannels(), base.getChannels()*2,
+                                      base.getSampleRate(), false);
+    try {
+      write(AudioSystem.getAudioInputStream(pcm, ais), file);
+      trim();
+      cached = read(file);
+    } catch (IOException e) {
+      // the cache is only an optimization, so failing to write it (say, because the disk is full)
+      // should not prevent the sound from loading
+      cached = null;
+    }
+    // if the audio could not be cached, or was too big to remain in the cache, decode it again
+    return (cached != null) ? cached :
+      AudioSystem.getAudioInputStream(pcm, rsrc.openAudioStream());
+  }
+
+  /** Returns the number of loads that were satisfied from the cache. */
+  public synchronized int hits() {
+    return hits;
+  }
+
+  /** Returns the number of loads that decoded the audio. */
+  public synchronized int misses() {
+    return misses;
+  }
+
+  /** Returns the total size of the cache entries, in bytes. */
+  public long size() {
+    long size = 0;
+    for (File file : entries()) size += file.length();
+    return size;
+  }
+
+  /** Deletes the least recently used entries until the cache is within its size limit. */
+  public synchronized void trim() {
+    File[] entries = entries();
+    long size = 0;
+    for (File file : entries) size += file.length();
+    if (size <= maxBytes) return;
+    Arrays.sort(entries, new Comparator<File>() {
+      public int compare(File a, File b) {
+        long am = a.lastModified(), bm = b.lastModified();
+        return (am < bm) ? -1 : (am == bm ? 0 : 1);
+      }
+    });
+    for (int ii = 0; ii < entries.length && size > maxBytes; ii++) {
+      long length = entries[ii].length();
+      // this fails on some platforms if the entry is mapped, in which case we leave it be
+      if (entries[ii].delete()) size -= length;
+    }
+  }
+
+  protected File[] entries() {
+    File[] entries = dir.listFiles();
+    if (entries == null) return new File[0];
+    int count = 0;
+    for (File file : entries) if (file.getName().endsWith(SUFFIX)) entries[count++] = file;
+    return Arrays.copyOf(entries, count);
+  }
+
+  protected String key(JavaAssets.Resource rsrc) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e.toString()); // every JVM supports SHA-1
+    }
+    InputStream in = rsrc.openStream();
+    try {
+      byte[] buffer = new byte[16*1024];
+      for (int read; (read = in.read(buffer)) != -1; ) digest.update(buffer, 0, read);
+    } finally {
+      in.close();
+    }
+    StringBuilder key = new StringBuilder();
+    for (byte b : digest.digest()) key.append(Character.forDigit((b >> 4) & 0xF, 16)).
+                                     append(Character.forDigit(b & 0xF, 16));
+    return key.toString();
+  }
+
+  // returns the cached audio in file, or null if there is no (valid) entry
+  protected AudioInputStream read(File file) throws IOException {
+    if (!file.exists()) return null;
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      long length = raf.length();
+      if (length < HEADER_SIZE) return invalid(file);
+      FileChannel channel = raf.getChannel();
+      MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+      if (data.getInt() != MAGIC || data.getInt() != VERSION) return invalid(file);
+      float sampleRate = data.getFloat();
+      int channels = data.getInt();
+      long frames = data.getLong();
+      if (channels <= 0 || HEADER_SIZE + frames * channels * 2 != length) return invalid(file);
+      AudioFormat format = new AudioFormat(sampleRate, 16, channels, true, false);
+      return new AudioInputStream(new BufferInputStream(data), format, frames);
+    } finally {
+      // the mapping remains valid after the file is closed
+      raf.close();
+    }
+  }
+
+  protected AudioInputStream invalid(File file) {
+    file.delete();
+    return null;
+  }
+
+  // decodes ais into a temporary file, then moves it into place
+  protected void write(AudioInputStream ais, File file) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Can't create " + dir);
+    File temp = File.createTempFile("pcm", ".tmp", dir);
+    try {
+      AudioFormat format = ais.getFormat();
+      RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+      long bytes = 0;
+      try {
+        raf.seek(HEADER_SIZE);
+        byte[] buffer = new byte[64*1024];
+        for (int read; (read = ais.read(buffer)) != -1; bytes += read) raf.write(buffer, 0, read);
+        raf.seek(0);
+        raf.writeInt(MAGIC);
+        raf.writeInt(VERSION);
+        raf.writeFloat(format.getSampleRate());
+        raf.writeInt(format.getChannels());
+        raf.writeLong(bytes / format.getFrameSize());
+        raf.setLength(HEADER_SIZE + bytes - bytes % format.getFrameSize());
+      } finally {
+        raf.close();
+        ais.close();
+      }
+      // another thread may have cached the same audio in the meantime, which is fine
+      if (!temp.renameTo(file) && !file.exists())
+        throw new IOException("Failed to move " + temp + " to " + file);
+    } finally {
+      temp.delete();
+    }
+  }
+
+  protected static class BufferInputStream extends InputStream {
+    public BufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override public int read() {
+      return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+    }
+
+    @Override public int read(byte[] buf, int off, int len) {
+      if (!buffer.hasRemaining()) return -1;
+      int read = Math.min(len, buffer.remaining());
+      buffer.get(buf, off, read);
+      return read;
+    }
+
+    @Override public long skip(long n) {
+      int skip = (int)Math.max(0, Math.min(n, buffer.remaining()));
+      buffer.position(buffer.position() + skip);
+      return skip;
+    }
+
+    @Override public int available() {
+      return buffer.remaining();
+    }
+
+    protected final ByteBuffer buffer;
+  }
+
+  protected static final String SUFFIX = ".pcm";
+  protected static final int MAGIC = 0x504C4E50; // PLNP
+  protected static final int HEADER_SIZE = 24;
+
+  protected final File dir;
+  protected final long maxBytes;
+  protected int hits, misses;
+}
@@ -28,7 +28,6 @@ import org.lwjgl.opengl.Display;
 
 import playn.core.AbstractPlatform;
 import playn.core.Game;
-import playn.core.Json;
 import playn.core.Key;
 import playn.core.Keyboard;
 import playn.core.Mouse;
@@ -38,6 +37,7 @@ import playn.core.Storage;
 import playn.core.Touch;
 import playn.core.TouchImpl;
 import playn.core.TouchStub;
+import playn.core.WriteBehindStorage;
 import playn.core.json.JsonImpl;
 
 public class JavaPlatform extends AbstractPlatform {
@@ -54,6 +54,21 @@ public class JavaPlatform extends AbstractPlatform {
      * want to run multiple sessions without overwriting one another's storage. */
     public String storageFileName = "playn";
 
+    /** If set, storage is kept in an append-only log file in this directory (named for {@link
+     * #storageFileName}) rather than in the Java Preferences system. Preferences rewrites all of
+     * its data on every change, whereas the log only appends the change. See {@link
+     * JavaLogStorage}. */
+    public File storageDir;
+
+    /** If greater than zero, storage changes are written on a background thread at most this many
+     * milliseconds after they are made, rather than immediately on the game thread. See {@link
+     * WriteBehindStorage}. */
+    public double storageFlushInterval;
+
+    /** The number of threads used to run {@link JavaPlatform#invokeAsync} actions, which include
+     * asset loading and {@link playn.core.AssetPreloader} workers. */
+    public int asyncThreads = 4;
+
     /** The width of the PlayN window, in pixels. */
     public int width = 640;
 
@@ -89,6 +104,30 @@ public class JavaPlatform extends AbstractPlatform {
 
     /** Configure the web socket RFC draft number: 10, 17, 75 or 76 */
     public int wsDraft = 10;
+
+    /** The maximum number of text layouts retained by {@link JavaTextLayoutCache}. Zero disables
+     * caching of text layouts. */
+    public int textLayoutCacheSize = 256;
+
+    /** The maximum number of simultaneous HTTP connections made to any one host by {@link
+     * JavaNet}. Further requests to that host wait for a connection to become free. */
+    public int httpConnectionsPerHost = 4;
+
+    /** If greater than zero, sounds are mixed in software into a single audio line, with at most
+     * this many sounds playing at once (the oldest sound is cut off to play another). This allows
+     * a sound to overlap itself, and avoids running out of lines when many sounds are loaded. If
+     * zero, each sound is played with its own {@link javax.sound.sampled.Clip}. */
+    public int mixerVoices;
+
+    /** If set, music is decoded while it plays, using a small buffer, rather than being decoded
+     * into memory when it is loaded. See {@link JavaMusic}. */
+    public boolean streamMusic = true;
+
+    /** The maximum size of the on-disk cache of decoded audio, in bytes, or zero to disable it.
+     * Compressed sounds are decoded the first time they are loaded and read from the cache
+     * thereafter. The cache is kept in {@link #storageDir}, and is only used if that is set.
+     * Streamed music is not cached. */
+    public long pcmCacheSize = 64 * 1024 * 1024;
   }
 
   /**
@@ -131,9 +170,9 @@ public class JavaPlatform extends AbstractPlatform {
   public final boolean convertImagesOnLoad;
 
   private final Config config;
-  private final JavaAudio audio = new JavaAudio(this);
+  private final JavaAudio audio;
   private final JavaNet net;
-  private final JavaStorage storage;
+  private final Storage storage;
   private final JsonImpl json = new JsonImpl();
   private final JavaKeyboard keyboard;
   private final JavaPointer pointer = new JavaPointer();
@@ -144,25 +183,30 @@ public class JavaPlatform extends AbstractPlatform {
   private final Keyboard.Listener keyListener;
   private boolean active = true;
 
-  private final ExecutorService _exec = Executors.newFixedThreadPool(4);
+  private final ExecutorService _exec;
   private final long start = System.nanoTime();
 
   public JavaPlatform(Config config) {
     super(new JavaLog());
     this.config = config;
+    audio = new JavaAudio(this, config);
+    _exec = Executors.newFixedThreadPool(Math.max(config.asyncThreads, 1));
     if (!config.headless) {
       unpackNatives();
     }
     graphics = createGraphics(config);
     keyboard = createKeyboard();
-    storage = new JavaStorage(this, config);
+    Storage backing = (config.storageDir == null) ? new JavaStorage(this, config) :
+      new JavaLogStorage(this, new File(config.storageDir, config.storageFileName + ".log"));
+    storage = (config.storageFlushInterval <= 0) ? backing : new WriteBehindStorage(
+      this, backing, config.storageFlushInterval, WriteBehindStorage.DEFAULT_FLUSH_THRESHOLD);
     touch = createTouch(config);
     if (touch instanceof JavaEmulatedTouch) {
       mouse = ((JavaEmulatedTouch)touch).createMouse(this);
     } else {
       mouse = createMouse();
     }
-    net = new JavaNet(this, config.wsDraft);
+    net = new JavaNet(this, config.wsDraft, config.httpConnectionsPerHost);
 
     if (touch instanceof JavaEmulatedTouch || config.activationKey != null) {
       final Key pivotKey = (touch instanceof JavaEmulatedTouch) ? config.pivotKey : null;
@@ -215,7 +259,7 @@ public class JavaPlatform extends AbstractPlatform {
   }
 
   @Override
-  public Json json() {
+  public JsonImpl json() {
     return json;
   }
 
@@ -346,7 +390,9 @@ public class JavaPlatform extends AbstractPlatform {
     // let the game run any of its exit hooks
     onExit();
 
-    // shutdown our thread pool
+    // shutdown our thread pool and network connections
+    net.shutdown();
+    audio.shutdown();
     try {
       _exec.shutdown();
       _exec.awaitTermination(1, TimeUnit.SECONDS);
@@ -365,7 +411,7 @@ public class JavaPlatform extends AbstractPlatform {
     pointer.update();
 
     // Execute any pending runnables.
-    runQueue.execute();
+    scheduler.execute();
 
     // Run the game loop, render the scene graph, and update the display.
     game.tick(tick());
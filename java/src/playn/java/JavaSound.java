@@ -57,6 +57,12 @@ class JavaSound extends AbstractSound<Clip> {
     }
   }
 
+  @Override
+  protected int byteSizeImpl() {
+    int frameSize = impl.getFormat().getFrameSize();
+    return (frameSize > 0) ? impl.getFrameLength() * frameSize : 0;
+  }
+
   @Override
   protected void releaseImpl() {
     impl.close();
@@ -0,0 +1,140 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.java;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import playn.core.TextFormat;
+import playn.core.TextWrap;
+
+/**
+ * Caches the results of {@link JavaGraphics#layoutText}, so that games which lay out the same
+ * text every frame (scores, timers, etc.) don't repeatedly create AWT text layouts. Layouts are
+ * immutable, so a cached layout is shared by all callers that lay out the same text with the same
+ * format and wrap. The least recently used layouts are evicted once the cache is full.
+ */
+public class JavaTextLayoutCache {
+
+  /** Creates a cache which holds at most {@code capacity} layouts. */
+  public JavaTextLayoutCache(int capacity) {
+    this.capacity = capacity;
+  }
+
+  /** Returns the maximum number of layouts held by this cache. */
+  public int capacity() {
+    return capacity;
+  }
+
+  /** Returns the number of layouts currently held by this cache. */
+  public synchronized int size() {
+    return layouts.size();
+  }
+
+  /** Returns the number of lookups that were satisfied by a cached layout. */
+  public synchronized int hits() {
+    return hits;
+  }
+
+  /** Returns the number of lookups that required a new layout. */
+  public synchronized int misses() {
+    return misses;
+  }
+
+  /** Returns the number of layouts that were evicted to make room for new layouts. */
+  public synchronized int evictions() {
+    return evictions;
+  }
+
+  /** Removes all layouts from this cache. Does not reset the hit, miss and eviction counts. */
+  public synchronized void clear() {
+    layouts.clear();
+  }
+
+  /** Resets the hit, miss and eviction counts. */
+  public synchronized void resetStats() {
+    hits = misses = evictions = 0;
+  }
+
+  JavaTextLayout layoutText(JavaGraphics gfx, String text, TextFormat format) {
+    Key key = new Key(text, format, null);
+    JavaTextLayout layout = (JavaTextLayout)lookup(key);
+    if (layout == null) {
+      layout = JavaTextLayout.layoutText(gfx, text, format);
+      store(key, layout);
+    }
+    return layout;
+  }
+
+  JavaTextLayout[] layoutText(JavaGraphics gfx, String text, TextFormat format, TextWrap wrap) {
+    Key key = new Key(text, format, wrap);
+    JavaTextLayout[] layouts = (JavaTextLayout[])lookup(key);
+    if (layouts == null) {
+      layouts = JavaTextLayout.layoutText(gfx, text, format, wrap);
+      store(key, layouts);
+    }
+    // the caller owns the returned array, so we don't hand out our copy
+    return layouts.clone();
+  }
+
+  private synchronized Object lookup(Key key) {
+    Object value = layouts.get(key);
+    if (value == null) misses++;
+    else hits++;
+    return value;
+  }
+
+  private synchronized void store(Key key, Object value) {
+    layouts.put(key, value);
+  }
+
+  private static class Key {
+    public final String text;
+    public final TextFormat format;
+    public final TextWrap wrap;
+
+    public Key(String text, TextFormat format, TextWrap wrap) {
+      this.text = text;
+      this.format = format;
+      this.wrap = wrap;
+    }
+
+    @Override public int hashCode() {
+      int hash = text.hashCode() ^ format.hashCode();
+      if (wrap != null) hash ^= 31 * wrap.hashCode();
+      return hash;
+    }
+
+    @Override public boolean equals(Object other) {
+      if (!(other instanceof Key)) return false;
+      Key okey = (Key)other;
+      return text.equals(okey.text) && format.equals(okey.format) &&
+        (wrap == okey.wrap || (wrap != null && wrap.equals(okey.wrap)));
+    }
+  }
+
+  private final int capacity;
+  private int hits, misses, evictions;
+
+  // an access ordered map, so that the eldest entry is the least recently used
+  private final Map<Key,Object> layouts = new LinkedHashMap<Key,Object>(16, 0.75f, true) {
+    @Override protected boolean removeEldestEntry(Map.Entry<Key,Object> eldest) {
+      if (size() <= capacity) return false;
+      evictions++;
+      return true;
+    }
+  };
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.java;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import playn.core.Font;
+import playn.core.PlayN;
+import playn.core.Surface;
+import playn.core.TextFormat;
+import playn.core.util.GlyphAtlas;
+import playn.tests.AbstractPlayNTest;
+
+/**
+ * Tests {@link GlyphAtlas}.
+ */
+public class GlyphAtlasTest extends AbstractPlayNTest {
+
+  @Test
+  public void testRendersGlyphsOnce() {
+    GlyphAtlas atlas = new GlyphAtlas(format());
+    List<Object[]> draws = new ArrayList<Object[]>();
+    Surface surf = recordingSurface(draws);
+
+    float end = atlas.draw(surf, "a ab", 10, 5);
+    assertEquals(3, atlas.glyphCount()); // the space is measured but has no image
+    assertEquals(1, atlas.pageCount());
+    assertEquals(3, draws.size()); // the space is not drawn
+    assertEquals(10 + atlas.width("a ab"), end, 0.001f);
+    assertTrue(atlas.width(" ") > 0);
+
+    // both 'a's are drawn from the same place in the atlas
+    assertSame(draws.get(0)[0], draws.get(1)[0]);
+    assertEquals(draws.get(0)[5], draws.get(1)[5]);
+    assertEquals(draws.get(0)[6], draws.get(1)[6]);
+
+    draws.clear();
+    atlas.draw(surf, "ba", 0, 0);
+    assertEquals(3, atlas.glyphCount());
+    assertEquals(2, draws.size());
+  }
+
+  @Test
+  public void testAddsPages() {
+    GlyphAtlas atlas = new GlyphAtlas(format(), 32);
+    atlas.prepare("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+    assertEquals(26, atlas.glyphCount());
+    assertTrue(atlas.pageCount() > 1);
+  }
+
+  protected TextFormat format() {
+    Font font = PlayN.graphics().createFont("Helvetica", Font.Style.PLAIN, 16);
+    return new TextFormat().withFont(font);
+  }
+
+  protected Surface recordingSurface(final List<Object[]> draws) {
+    return (Surface)Proxy.newProxyInstance(
+      Surface.class.getClassLoader(), new Class<?>[] { Surface.class }, new InvocationHandler() {
+        public Object invoke(Object proxy, Method method, Object[] args) {
+          if (method.getName().equals("drawImage")) draws.add(args);
+          return proxy;
+        }
+      });
+  }
+}
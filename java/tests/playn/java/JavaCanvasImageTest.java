@@ -0,0 +1,100 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.java;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import playn.core.Canvas;
+import playn.core.gl.GL20;
+import playn.tests.AbstractPlayNTest;
+
+/**
+ * Tests the uploading of {@link JavaCanvasImage} textures.
+ */
+public class JavaCanvasImageTest extends AbstractPlayNTest {
+
+  @Test
+  public void testUploadsDirtyRegion() {
+    JavaCanvasImage image = new JavaCanvasImage(createContext(), 100, 100);
+    Canvas canvas = image.canvas();
+    image.ensureTexture();
+    assertUploads("glTexImage2D 100x100");
+
+    // nothing changed, so nothing is uploaded
+    image.ensureTexture();
+    assertUploads();
+
+    // only the region that was drawn (plus a pixel of slop for antialiasing) is uploaded
+    canvas.fillRect(10, 20, 10, 5);
+    image.ensureTexture();
+    assertUploads("glTexSubImage2D 9,19 12x7");
+
+    // regions drawn between uploads are combined, and transforms and clips are applied
+    canvas.save();
+    canvas.translate(50, 50);
+    canvas.clipRect(0, 0, 10, 10);
+    canvas.fillRect(0, 0, 20, 20);
+    canvas.restore();
+    canvas.fillRect(40, 45, 2, 2);
+    image.ensureTexture();
+    assertUploads("glTexSubImage2D 39,44 22x17");
+
+    // strokes include the width of the stroke, and regions are clamped to the image
+    canvas.setStrokeWidth(4).strokeRect(90, 90, 20, 20);
+    image.ensureTexture();
+    assertUploads("glTexSubImage2D 87,87 13x13");
+
+    // clearing the canvas uploads the whole thing
+    canvas.clear();
+    image.ensureTexture();
+    assertUploads("glTexSubImage2D 0,0 100x100");
+  }
+
+  protected JavaGLContext createContext() {
+    GL20 gl = (GL20)Proxy.newProxyInstance(
+      GL20.class.getClassLoader(), new Class<?>[] { GL20.class }, new InvocationHandler() {
+        public Object invoke(Object proxy, Method method, Object[] args) {
+          String name = method.getName();
+          if (name.equals("glGenTextures")) {
+            ((int[])args[1])[(Integer)args[2]] = ++lastId;
+          } else if (name.equals("glTexImage2D")) {
+            uploads.add(name + " " + args[3] + "x" + args[4]);
+          } else if (name.equals("glTexSubImage2D")) {
+            uploads.add(name + " " + args[2] + "," + args[3] + " " + args[4] + "x" + args[5]);
+          }
+          return method.getReturnType() == Integer.TYPE ? (Object)0 : null;
+        }
+      });
+    return new JavaGLContext(null, gl, 1);
+  }
+
+  protected void assertUploads(String... expected) {
+    List<String> actual = new ArrayList<String>(uploads);
+    uploads.clear();
+    assertEquals(Arrays.asList(expected), actual);
+  }
+
+  protected final List<String> uploads = new ArrayList<String>();
+  protected int lastId;
+}
@@ -0,0 +1,495 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.java;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import playn.core.Net;
+import playn.core.PlayN;
+import playn.core.util.Callback;
+import playn.tests.AbstractPlayNTest;
+
+/**
+ * Tests {@link JavaHttpClient} and {@link JavaNet} against an in-process HTTP server.
+ */
+public class JavaHttpClientTest extends AbstractPlayNTest {
+
+  private HttpServer server;
+  private String base;
+  private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+
+  @Before public void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.createContext("/hello", new Handler() {
+      void handle(HttpExchange ex, byte[] body) throws IOException {
+        respond(ex, 200, "hello".getBytes("UTF-8"));
+      }
+    });
+    server.createContext("/echo", new Handler() {
+      void handle(HttpExchange ex, byte[] body) throws IOException {
+        ex.getResponseHeaders().add("Content-Type", ex.getRequestHeaders().getFirst("Content-Type"));
+        respond(ex, 200, body);
+      }
+    });
+    server.createContext("/gzip", new Handler() {
+      void handle(HttpExchange ex, byte[] body) throws IOException {
+        String accept = ex.getRequestHeaders().getFirst("Accept-Encoding");
+        if (accept == null || !accept.contains("gzip")) {
+          respond(ex, 400, "gzip not accepted".getBytes("UTF-8"));
+          return;
+        }
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        GZIPOutputStream gout = new GZIPOutputStream(bout);
+        for (int ii = 0; ii < 1000; ii++) gout.write(("line " + ii + "\n").getBytes("UTF-8"));
+        gout.close();
+        ex.getResponseHeaders().add("Content-Encoding", "gzip");
+        respond(ex, 200, bout.toByteArray());
+      }
+    });
+    server.createContext("/method", new Handler() {
+      void handle(HttpExchange ex, byte[] body) throws IOException {
+        respond(ex, 200, (ex.getRequestMethod() + " " + ex.getRequestURI() + " " +
+                          ex.getRequestHeaders().getFirst("Host")).getBytes("UTF-8"));
+      }
+    });
+    server.start();
+    base = "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  @After public void stopServer() {
+    server.stop(0);
+  }
+
+  @Test public void testReusesConnections() throws Exception {
+    JavaHttpClient client = new JavaHttpClient(PlayN.log(), 2);
+    for (int ii = 0; ii < 3; ii++) {
+      Recorder rec = get(client, "/hello");
+      assertTrue(rec.await());
+      assertEquals(200, rec.code);
+      assertEquals("hello", rec.body());
+    }
+    assertEquals(1, client.connectionsOpened());
+    assertEquals(1, clientPorts.size());
+    client.shutdown();
+  }
+
+  @Test public void testPostsBody() throws Exception {
+    JavaHttpClient client = new JavaHttpClient(PlayN.log(), 2);
+    List<String> headers = new ArrayList<String>();
+    headers.add("Content-Type");
+    headers.add("text/plain");
+    Recorder rec = new Recorder();
+    client.execute("POST", new URL(base + "/echo"), headers, "ping".getBytes("UTF-8"), rec);
+    assertTrue(rec.await());
+    assertEquals("ping", rec.body());
+    assertEquals("text/plain", JavaHttpClient.header(rec.headers, "content-type"));
+    client.shutdown();
+  }
+
+  @Test public void testDecodesGzip() throws Exception {
+    JavaHttpClient client = new JavaHttpClient(PlayN.log(), 2);
+    Recorder rec = get(client, "/gzip");
+    assertTrue(rec.await());
+    assertEquals(200, rec.code);
+    String body = rec.body();
+    assertTrue(body.startsWith("line 0\nline 1\n"));
+    assertTrue(body.endsWith("line 999\n"));
+    client.shutdown();
+  }
+
+  @Test public void testStreamsChunks() throws Exception {
+    final CountDownLatch firstReceived = new CountDownLatch(1);
+    server.createContext("/stream", new Handler() {
+      void handle(HttpExchange ex, byte[] body) throws IOException {
+        ex.sendResponseHeaders(200, 0); // chunked
+        OutputStream out = ex.getResponseBody();
+        out.write("first".getBytes("UTF-8"));
+        out.flush();
+        // don't send the rest until the client has seen the first chunk
+        try {
+          firstReceived.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+          // fall through
+        }
+        out.write("second".getBytes("UTF-8"));
+        out.close();
+      }
+    });
+    JavaHttpClient client = new JavaHttpClient(PlayN.log(), 2);
+    Recorder rec = new Recorder() {
+      @Override public void onData(byte[] data, int offset, int length) {
+        super.onData(data, offset, length);
+        if (new String(data, offset, length).contains("first")) firstReceived.countDown();
+      }
+    };
+    client.execute("GET", new URL(base + "/stream"), new ArrayList<String>(), null, rec);
+    assertTrue(rec.await());
+    assertEquals("firstsecond", rec.body());
+    assertEquals(0, firstReceived.getCount());
+    client.shutdown();
+  }
+
+  @Test public void testLimitsConnectionsPerHost() throws Exception {
+    final AtomicInteger active = new AtomicInteger(), maxActive = new AtomicInteger();
+    final CountDownLatch release = new CountDownLatch(1);
+    server.createContext("/slow", new Handler() {
+      void handle(HttpExchange ex, byte[] body) throws IOException {
+        int now = active.incrementAndGet();
+        synchronized (maxActive) {
+          maxActive.set(Math.max(maxActive.get(), now));
+        }
+        try {
+          release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+          // fall through
+        }
+        active.decrementAndGet();
+        respond(ex, 200, "slow".getBytes("UTF-8"));
+      }
+    });
+    JavaHttpClient client = new JavaHttpClient(PlayN.log(), 2);
+    List<Recorder> recs = new ArrayList<Recorder>();
+    for (int ii = 0; ii < 5; ii++) recs.add(get(client, "/slow"));
+    long deadline = System.currentTimeMillis() + 5000;
+    while (active.get() < 2 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+    Thread.sleep(100);
+    assertEquals(2, active.get());
+    release.countDown();
+    for (Recorder rec : recs) {
+      assertTrue(rec.await());
+      assertEquals("slow", rec.body());
+    }
+    assertEquals(2, maxActive.get());
+    assertEquals(2, client.connectionsOpened());
+    client.shutdown();
+  }
+
+  @Test public void testCancels() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    server.createContext("/never", new Handler() {
+      void handle(HttpExchange ex, byte[] body) throws IOException {
+        try {
+          release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+          // fall through
+        }
+        respond(ex, 200, "late".getBytes("UTF-8"));
+      }
+    });
+    JavaHttpClient client = new JavaHttpClient(PlayN.log(), 1);
+    Recorder never = get(client, "/never");
+    never.exchange.cancel();
+    // the cancelled request's connection is closed, so the next request can proceed
+    Recorder hello = get(client, "/hello");
+    assertTrue(hello.await());
+    assertEquals("hello", hello.body());
+    assertFalse(never.await(100));
+    release.countDown();
+    client.shutdown();
+  }
+
+  @Test public void testPausesReading() throws Exception {
+    final byte[] big = new byte[1024*1024];
+    for (int ii = 0; ii < big.length; ii++) big[ii] = (byte)ii;
+    server.createContext("/big", new Handler() {
+      void handle(HttpExchange ex, byte[] body) throws IOException {
+        respond(ex, 200, big);
+      }
+    });
+    // a paused request must not time out, however long it is paused
+    JavaHttpClient client = new JavaHttpClient(
+      PlayN.log(), 2, JavaHttpClient.DEFAULT_KEEP_ALIVE, 100);
+    Recorder rec = get(client, "/big");
+    rec.exchange.setPaused(true);
+    assertFalse(rec.await(500));
+    assertNull(rec.failure);
+    assertEquals(0, rec.data.size());
+
+    rec.exchange.setPaused(false);
+    assertTrue(rec.await());
+    assertArrayEquals(big, rec.data.toByteArray());
+    client.shutdown();
+  }
+
+  @Test public void testFollowsRedirects() throws Exception {
+    final AtomicInteger loops = new AtomicInteger();
+    server.createContext("/redirect", new Handler() {
+      void handle(HttpExchange ex, byte[] body) throws IOException {
+        // redirects /redirect/target/code to /target, except for target loop
+        String path = ex.getRequestURI().getPath();
+        String[] parts = path.split("/");
+        boolean loop = parts[2].equals("loop");
+        if (loop) loops.incrementAndGet();
+        ex.getResponseHeaders().add("Location", loop ? path : "/" + parts[2]);
+        respond(ex, Integer.parseInt(parts[3]), "moved".getBytes("UTF-8"));
+      }
+    });
+    JavaHttpClient client = new JavaHttpClient(PlayN.log(), 2);
+    Recorder rec = get(client, "/redirect/hello/301");
+    assertTrue(rec.await());
+    assertEquals(200, rec.code);
+    assertEquals("hello", rec.body());
+
+    // a POST is repeated after a 307, but becomes a GET after a 302 or 303
+    assertEquals("ping", post(client, "/redirect/echo/307", "ping"));
+    assertTrue(post(client, "/redirect/method/302", "ping").startsWith("GET /method "));
+    assertTrue(post(client, "/redirect/method/303", "ping").startsWith("GET /method "));
+
+    // eventually we give up, and report the redirect
+    rec = get(client, "/redirect/loop/302");
+    assertTrue(rec.await());
+    assertEquals(302, rec.code);
+    assertEquals("moved", rec.body());
+    assertEquals(JavaHttpClient.MAX_REDIRECTS + 1, loops.get());
+    client.shutdown();
+  }
+
+  @Test public void testUsesProxy() throws Exception {
+    String oldHost = System.getProperty("http.proxyHost");
+    String oldPort = System.getProperty("http.proxyPort");
+    System.setProperty("http.proxyHost", "127.0.0.1");
+    System.setProperty("http.proxyPort", "" + server.getAddress().getPort());
+    try {
+      // our server stands in for the proxy, so the request reaches it despite the unknown host
+      JavaHttpClient client = new JavaHttpClient(PlayN.log(), 2);
+      Recorder rec = new Recorder();
+      client.execute("GET", new URL("http://playn.invalid:1234/method"),
+                     new ArrayList<String>(), null, rec);
+      assertTrue(rec.await());
+      assertEquals("GET http://playn.invalid:1234/method playn.invalid:1234", rec.body());
+
+      // local addresses are in the default http.nonProxyHosts
+      rec = get(client, "/method");
+      assertTrue(rec.await());
+      assertEquals("GET /method 127.0.0.1:" + server.getAddress().getPort(), rec.body());
+      client.shutdown();
+    } finally {
+      restoreProperty("http.proxyHost", oldHost);
+      restoreProperty("http.proxyPort", oldPort);
+    }
+  }
+
+  @Test public void testRetriesOnlyIdempotentRequests() throws Exception {
+    // a server that answers the first request on each connection, and closes the connection on
+    // receiving the second, as if it had timed out the idle connection
+    final ServerSocket ssock = new ServerSocket(0, 10, InetAddress.getByName("127.0.0.1"));
+    Thread thread = new Thread() {
+      @Override public void run() {
+        try {
+          while (true) {
+            Socket sock = ssock.accept();
+            readRequest(sock.getInputStream());
+            sock.getOutputStream().write(
+              "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok".getBytes("UTF-8"));
+            readRequest(sock.getInputStream());
+            sock.close();
+          }
+        } catch (IOException e) {
+          // the test is over
+        }
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+    String sbase = "http://127.0.0.1:" + ssock.getLocalPort();
+
+    JavaHttpClient client = new JavaHttpClient(PlayN.log(), 1);
+    Recorder rec = new Recorder();
+    client.execute("GET", new URL(sbase + "/a"), new ArrayList<String>(), null, rec);
+    assertTrue(rec.await());
+    // the second GET fails on the reused connection, so it is retried on a new one
+    rec = new Recorder();
+    client.execute("GET", new URL(sbase + "/b"), new ArrayList<String>(), null, rec);
+    assertTrue(rec.await());
+    assertEquals("ok", rec.body());
+    assertEquals(2, client.connectionsOpened());
+    // but a POST might have reached the server, so it is not
+    rec = new Recorder();
+    client.execute("POST", new URL(sbase + "/c"), new ArrayList<String>(),
+                   "data".getBytes("UTF-8"), rec);
+    assertFalse(rec.await());
+    assertNotNull(rec.failure);
+    assertEquals(2, client.connectionsOpened());
+    client.shutdown();
+    ssock.close();
+  }
+
+  @Test public void testNetExecuteAndStream() throws Exception {
+    JavaPlatform platform = (JavaPlatform)playn.core.PlayN.platform();
+    final List<String> events = new ArrayList<String>();
+    platform.net().req(base + "/echo").setPayload("\u00e9t\u00e9").execute(
+      new Callback<Net.Response>() {
+        public void onSuccess(Net.Response rsp) {
+          events.add(rsp.responseCode() + ":" + rsp.payloadString());
+        }
+        public void onFailure(Throwable cause) {
+          events.add("failed:" + cause);
+        }
+      });
+    pump(platform, events, 1);
+    assertEquals("200:\u00e9t\u00e9", events.get(0));
+
+    events.clear();
+    platform.net().req(base + "/gzip").stream(new Net.StreamingResponse.Listener() {
+      private int bytes;
+      public void onResponse(Net.StreamingResponse rsp) {
+        events.add("response:" + rsp.responseCode() + ":" + rsp.header("Content-Encoding"));
+      }
+      public void onData(byte[] data) {
+        bytes += data.length;
+      }
+      public void onComplete() {
+        events.add("complete:" + bytes);
+      }
+      public void onFailure(Throwable cause) {
+        events.add("failed:" + cause);
+      }
+    });
+    pump(platform, events, 2);
+    int expected = 0;
+    for (int ii = 0; ii < 1000; ii++) expected += ("line " + ii + "\n").length();
+    assertEquals("[response:200:gzip, complete:" + expected + "]", events.toString());
+  }
+
+  protected Recorder get(JavaHttpClient client, String path) throws IOException {
+    Recorder rec = new Recorder();
+    rec.exchange = client.execute("GET", new URL(base + path), new ArrayList<String>(), null, rec);
+    return rec;
+  }
+
+  protected String post(JavaHttpClient client, String path, String body) throws Exception {
+    List<String> headers = new ArrayList<String>();
+    headers.add("Content-Type");
+    headers.add("text/plain");
+    Recorder rec = new Recorder();
+    client.execute("POST", new URL(base + path), headers, body.getBytes("UTF-8"), rec);
+    assertTrue(rec.await());
+    assertEquals(200, rec.code);
+    return rec.body();
+  }
+
+  // reads a request's headers and any body from in
+  protected static void readRequest(InputStream in) throws IOException {
+    StringBuilder head = new StringBuilder();
+    while (!head.toString().endsWith("\r\n\r\n")) {
+      int c = in.read();
+      if (c < 0) throw new IOException("Connection closed");
+      head.append((char)c);
+    }
+    String lower = head.toString().toLowerCase();
+    int idx = lower.indexOf("content-length:");
+    if (idx < 0) return;
+    int length = Integer.parseInt(lower.substring(idx + 15, lower.indexOf('\r', idx)).trim());
+    for (int ii = 0; ii < length; ii++) in.read();
+  }
+
+  protected static void restoreProperty(String name, String value) {
+    if (value == null) System.clearProperty(name);
+    else System.setProperty(name, value);
+  }
+
+  protected void pump(JavaPlatform platform, List<String> events, int count)
+    throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (events.size() < count && System.currentTimeMillis() < deadline) {
+      platform.scheduler().execute();
+      Thread.sleep(10);
+    }
+  }
+
+  protected static class Recorder implements JavaHttpClient.Handler {
+    public JavaHttpClient.Exchange exchange;
+    public int code;
+    public Map<String,List<String>> headers;
+    public Throwable failure;
+    public final ByteArrayOutputStream data = new ByteArrayOutputStream();
+    public final CountDownLatch done = new CountDownLatch(1);
+
+    public boolean await() throws InterruptedException {
+      return await(5000);
+    }
+    public boolean await(long millis) throws InterruptedException {
+      return done.await(millis, TimeUnit.MILLISECONDS) && failure == null;
+    }
+    public String body() throws IOException {
+      return data.toString("UTF-8");
+    }
+
+    public void onHeaders(int code, Map<String,List<String>> headers) {
+      this.code = code;
+      this.headers = headers;
+    }
+    public void onData(byte[] data, int offset, int length) {
+      this.data.write(data, offset, length);
+    }
+    public void onComplete() {
+      done.countDown();
+    }
+    public void onFailure(Throwable cause) {
+      failure = cause;
+      done.countDown();
+    }
+  }
+
+  protected abstract class Handler implements HttpHandler {
+    public void handle(HttpExchange ex) throws IOException {
+      clientPorts.add(ex.getRemoteAddress().getPort());
+      InputStream in = ex.getRequestBody();
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1024];
+      for (int read; (read = in.read(buffer)) != -1; ) body.write(buffer, 0, read);
+      handle(ex, body.toByteArray());
+    }
+
+    abstract void handle(HttpExchange ex, byte[] body) throws IOException;
+
+    protected void respond(HttpExchange ex, int code, byte[] body) throws IOException {
+      ex.sendResponseHeaders(code, body.length);
+      OutputStream out = ex.getResponseBody();
+      out.write(body);
+      out.close();
+    }
+  }
+}
@@ -3,12 +3,15 @@
 
 package playn.java;
 
+import java.awt.image.BufferedImage;
+
 import org.junit.Test;
 import static org.junit.Assert.*;
 
 import playn.core.PlayN;
 import playn.core.Log;
 import playn.core.Image;
+import playn.core.gl.Scale;
 import playn.tests.AbstractPlayNTest;
 
 /**
@@ -46,4 +49,23 @@ public class JavaImageTest extends AbstractPlayNTest {
     assertTrue(errlog + " must contain 'missing.png'",
                errlog.contains("missing.png"));
   }
+
+  @Test
+  public void testPreparesImages() {
+    BufferedImage source = new BufferedImage(4, 2, BufferedImage.TYPE_INT_RGB);
+    source.setRGB(1, 1, 0x123456);
+    JavaAsyncImage image = ((JavaPlatform)PlayN.platform()).graphics().createAsyncImage(0, 0);
+
+    // preparing converts to our upload format, leaving only the copy to the upload buffer to be
+    // done when the image is first drawn
+    image.prepare(source);
+    image.setImage(source, Scale.ONE);
+    assertEquals(BufferedImage.TYPE_INT_ARGB_PRE, image.bufferedImage().getType());
+    assertEquals(0xFF123456, image.bufferedImage().getRGB(1, 1));
+
+    // an image that was not prepared is used as is
+    JavaAsyncImage other = ((JavaPlatform)PlayN.platform()).graphics().createAsyncImage(0, 0);
+    other.setImage(source, Scale.ONE);
+    assertSame(source, other.bufferedImage());
+  }
 }
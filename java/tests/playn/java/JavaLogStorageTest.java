@@ -0,0 +1,244 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import playn.core.Storage;
+import playn.tests.AbstractPlayNTest;
+
+/**
+ * Tests {@link JavaLogStorage}.
+ */
+public class JavaLogStorageTest extends AbstractPlayNTest {
+
+  private JavaPlatform platform;
+  private File file;
+
+  @Before public void createFile() throws IOException {
+    JavaPlatform.Config config = new JavaPlatform.Config();
+    config.headless = true;
+    platform = JavaPlatform.register(config);
+    file = File.createTempFile("playn-storage", ".log");
+    file.delete();
+  }
+
+  @After public void deleteFile() {
+    file.delete();
+    tmpFile().delete();
+  }
+
+  @Test
+  public void testPersistence() {
+    JavaLogStorage storage = new JavaLogStorage(platform, file);
+    assertTrue(storage.isPersisted());
+    storage.setItem("a", "one");
+    storage.setItem("b", "two");
+    storage.setItem("a", "uno");
+    storage.removeItem("b");
+    Storage.Batch batch = storage.startBatch();
+    batch.setItem("c", "three");
+    batch.setItem("\u00e9t\u00e9", "\u4e2d");
+    batch.removeItem("a");
+    batch.commit();
+    storage.close();
+
+    JavaLogStorage reopened = new JavaLogStorage(platform, file);
+    assertNull(reopened.getItem("a"));
+    assertNull(reopened.getItem("b"));
+    assertEquals("three", reopened.getItem("c"));
+    assertEquals("\u4e2d", reopened.getItem("\u00e9t\u00e9"));
+    reopened.close();
+  }
+
+  @Test
+  public void testRecoversFromTruncation() throws IOException {
+    JavaLogStorage storage = new JavaLogStorage(platform, file);
+    storage.setItem("first", "1");
+    long goodSize = storage.logSize();
+    Storage.Batch batch = storage.startBatch();
+    batch.setItem("second", "2");
+    batch.setItem("third", "3");
+    batch.commit();
+    long fullSize = storage.logSize();
+    storage.close();
+
+    // a crash at any point while writing the batch loses exactly the batch
+    byte[] full = readFile();
+    for (long size = goodSize; size < fullSize; size++) {
+      writeFile(full, (int)size);
+      JavaLogStorage reopened = new JavaLogStorage(platform, file);
+      assertEquals("1", reopened.getItem("first"));
+      assertNull(reopened.getItem("second"));
+      assertNull(reopened.getItem("third"));
+      assertEquals(goodSize, reopened.logSize());
+      assertEquals(goodSize, file.length());
+
+      // and we can carry on writing after the recovered records
+      reopened.setItem("fourth", "4");
+      reopened.close();
+      JavaLogStorage again = new JavaLogStorage(platform, file);
+      assertEquals("1", again.getItem("first"));
+      assertEquals("4", again.getItem("fourth"));
+      again.close();
+    }
+  }
+
+  @Test
+  public void testRecoversFromCorruption() throws IOException {
+    JavaLogStorage storage = new JavaLogStorage(platform, file);
+    storage.setItem("first", "1");
+    long goodSize = storage.logSize();
+    storage.setItem("second", "2");
+    storage.close();
+
+    byte[] data = readFile();
+    for (int pos = (int)goodSize; pos < data.length; pos++) {
+      byte[] corrupt = data.clone();
+      corrupt[pos] ^= 0x40;
+      writeFile(corrupt, corrupt.length);
+      JavaLogStorage reopened = new JavaLogStorage(platform, file);
+      assertEquals("1", reopened.getItem("first"));
+      assertNull(reopened.getItem("second"));
+      reopened.close();
+    }
+
+    // a file that isn't a log is left alone, and we fall back to memory
+    writeFile("not a log at all".getBytes("UTF-8"), 16);
+    JavaLogStorage other = new JavaLogStorage(platform, file);
+    assertFalse(other.isPersisted());
+    other.setItem("key", "value");
+    assertEquals("value", other.getItem("key"));
+    assertEquals(16, file.length());
+  }
+
+  @Test
+  public void testCompaction() throws InterruptedException {
+    JavaLogStorage storage = new JavaLogStorage(platform, file);
+    Map<String, String> expect = new HashMap<String, String>();
+    StringBuilder value = new StringBuilder();
+    for (int ii = 0; ii < 100; ii++) value.append('x');
+    // overwrite a few keys many times, which will trigger background compaction
+    for (int ii = 0; ii < 2000; ii++) {
+      String key = "key" + (ii % 10), data = value + "" + ii;
+      storage.setItem(key, data);
+      expect.put(key, data);
+    }
+    while (storage.isCompacting()) Thread.sleep(5);
+    storage.compact();
+    assertTrue(storage.logSize() < JavaLogStorage.COMPACT_MIN_BYTES);
+    assertEquals(file.length(), storage.logSize());
+
+    storage.setItem("after", "compaction");
+    expect.put("after", "compaction");
+    storage.close();
+    JavaLogStorage reopened = new JavaLogStorage(platform, file);
+    for (Map.Entry<String, String> entry : expect.entrySet())
+      assertEquals(entry.getValue(), reopened.getItem(entry.getKey()));
+    int keys = 0;
+    for (String key : reopened.keys()) keys++;
+    assertEquals(expect.size(), keys);
+    reopened.close();
+  }
+
+  @Test
+  public void testRecoversFromInterruptedCompaction() throws IOException {
+    JavaLogStorage storage = new JavaLogStorage(platform, file);
+    storage.setItem("first", "1");
+    storage.setItem("second", "2");
+    storage.close();
+    byte[] compacted = readFile();
+
+    // a crash after the old log was removed, but before the compacted log replaced it
+    file.delete();
+    writeFile(tmpFile(), compacted, compacted.length);
+    checkRecovered();
+
+    // or one which left the old log without its header
+    writeFile(file, compacted, 3);
+    writeFile(tmpFile(), compacted, compacted.length);
+    checkRecovered();
+
+    // a compacted log that was never completed is discarded while the old log is intact
+    JavaLogStorage current = new JavaLogStorage(platform, file);
+    current.setItem("third", "3");
+    current.close();
+    writeFile(tmpFile(), compacted, 3);
+    JavaLogStorage reopened = new JavaLogStorage(platform, file);
+    assertTrue(reopened.isPersisted());
+    assertEquals("3", reopened.getItem("third"));
+    assertFalse(tmpFile().exists());
+    reopened.close();
+  }
+
+  @Test
+  public void testWritesAppendOnlyTheChange() {
+    JavaLogStorage storage = new JavaLogStorage(platform, file);
+    storage.setItem("progress", "level 0");
+    long small = storage.logSize();
+    storage.setItem("progress", "level 1");
+    long recordSize = storage.logSize() - small;
+
+    // unlike the Preferences backend, a write costs the same however much other data is stored
+    for (int ii = 0; ii < 200; ii++) storage.setItem("filler" + ii, "some saved state " + ii);
+    long large = storage.logSize();
+    storage.setItem("progress", "level 2");
+    assertEquals(recordSize, storage.logSize() - large);
+    assertEquals(storage.logSize(), file.length());
+    storage.close();
+  }
+
+  private void checkRecovered() {
+    JavaLogStorage recovered = new JavaLogStorage(platform, file);
+    assertTrue(recovered.isPersisted());
+    assertEquals("1", recovered.getItem("first"));
+    assertEquals("2", recovered.getItem("second"));
+    assertFalse(tmpFile().exists());
+    recovered.close();
+  }
+
+  private File tmpFile() {
+    return new File(file.getPath() + ".tmp");
+  }
+
+  private byte[] readFile() throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    byte[] data = new byte[(int)raf.length()];
+    raf.readFully(data);
+    raf.close();
+    return data;
+  }
+
+  private void writeFile(byte[] data, int length) throws IOException {
+    writeFile(file, data, length);
+  }
+
+  private void writeFile(File file, byte[] data, int length) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    raf.setLength(0);
+    raf.write(data, 0, length);
+    raf.close();
+  }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.java;
+
+import java.io.ByteArrayInputStream;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link JavaMixer} by rendering mixes into byte arrays, without an audio device.
+ */
+public class JavaMixerTest {
+
+  @Test public void testMixesOverlappingVoices() {
+    JavaMixer mixer = new JavaMixer(100, 4);
+    JavaMixerSound sound = createSound(mixer, new short[] { 1000, 2000, 3000, 4000 }, 1);
+    sound.play();
+    short[] out = mix(mixer, 2);
+    assertArrayEquals(new short[] { 1000, 1000, 2000, 2000 }, out);
+
+    // playing again starts a second voice rather than rewinding the first
+    sound.play();
+    assertEquals(2, mixer.activeVoices());
+    out = mix(mixer, 3);
+    assertArrayEquals(new short[] { 4000, 4000, 6000, 6000, 3000, 3000 }, out);
+    assertTrue(sound.isPlaying());
+    mix(mixer, 2);
+    assertFalse(sound.isPlaying());
+    assertEquals(0, mixer.activeVoices());
+  }
+
+  @Test public void testAppliesVolumeAndLooping() {
+    JavaMixer mixer = new JavaMixer(100, 4);
+    JavaMixerSound sound = createSound(mixer, new short[] { 1000, -1000, 2000, -2000 }, 2);
+    sound.setVolume(0.5f);
+    sound.setLooping(true);
+    sound.play();
+    short[] out = mix(mixer, 3);
+    assertArrayEquals(new short[] { 500, -500, 1000, -1000, 500, -500 }, out);
+
+    sound.setVolume(1);
+    out = mix(mixer, 1);
+    assertArrayEquals(new short[] { 2000, -2000 }, out);
+    sound.stop();
+    assertFalse(sound.isPlaying());
+    assertArrayEquals(new short[] { 0, 0 }, mix(mixer, 1));
+  }
+
+  @Test public void testClampsToSampleRange() {
+    JavaMixer mixer = new JavaMixer(100, 4);
+    JavaMixerSound sound = createSound(mixer, new short[] { 30000, -30000 }, 2);
+    sound.play();
+    sound.play();
+    assertArrayEquals(new short[] { Short.MAX_VALUE, Short.MIN_VALUE }, mix(mixer, 1));
+  }
+
+  @Test public void testStealsOldestVoice() {
+    JavaMixer mixer = new JavaMixer(100, 2);
+    JavaMixerSound music = createSound(mixer, new short[] { 1, 1, 1, 1 }, 1);
+    JavaMixerSound a = createSound(mixer, new short[] { 10, 10, 10, 10 }, 1);
+    JavaMixerSound b = createSound(mixer, new short[] { 100, 100, 100, 100 }, 1);
+    music.setLooping(true);
+    music.play();
+    a.play();
+    mix(mixer, 1);
+    // the looping voice is older, but the one-shot voice is stolen in preference
+    b.play();
+    assertEquals(1, mixer.stolenVoices());
+    assertTrue(music.isPlaying());
+    assertFalse(a.isPlaying());
+    assertTrue(b.isPlaying());
+    assertArrayEquals(new short[] { 101, 101 }, mix(mixer, 1));
+  }
+
+  @Test public void testDecodesAndResamples() throws Exception {
+    // one second of big-endian mono at half the mixer's rate
+    AudioFormat format = new AudioFormat(50, 16, 1, true, true);
+    byte[] data = new byte[100];
+    for (int ii = 0; ii < data.length; ii += 4) data[ii+2] = 0x40; // 0, 16384, 0, 16384, ...
+    AudioInputStream ais = new AudioInputStream(new ByteArrayInputStream(data), format, 50);
+    JavaMixer.Samples samples = new JavaMixer(100, 1).decode(ais);
+    assertEquals(1, samples.channels);
+    assertEquals(100, samples.frames);
+    assertEquals(0, samples.data[0]);
+    assertEquals(8192, samples.data[1]); // interpolated halfway
+    assertEquals(16384, samples.data[2]);
+    assertEquals(8192, samples.data[3]);
+  }
+
+  protected JavaMixerSound createSound(JavaMixer mixer, short[] data, int channels) {
+    JavaMixerSound sound = new JavaMixerSound(mixer);
+    sound.onLoaded(new JavaMixer.Samples(data, channels));
+    return sound;
+  }
+
+  protected short[] mix(JavaMixer mixer, int frames) {
+    byte[] bytes = new byte[frames * JavaMixer.CHANNELS * 2];
+    mixer.mix(bytes, frames);
+    short[] out = new short[bytes.length / 2];
+    for (int ii = 0; ii < out.length; ii++)
+      out[ii] = (short)((bytes[2*ii] & 0xFF) | (bytes[2*ii+1] << 8));
+    return out;
+  }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.java;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link JavaMusicStream}.
+ */
+public class JavaMusicStreamTest {
+
+  @Test public void testLoopsSeamlessly() throws Exception {
+    JavaMusicStream stream = new JavaMusicStream(new PCMResource(10000, 1));
+    stream.setLooping(true);
+    checkFrames(stream, 0, 25000, 1, 10000);
+    assertEquals(25000, stream.position());
+    stream.close();
+  }
+
+  @Test public void testEndsWhenNotLooping() throws Exception {
+    JavaMusicStream stream = new JavaMusicStream(new PCMResource(10000, 2));
+    checkFrames(stream, 0, 10000, 2, 10000);
+    assertEquals(-1, stream.read(new byte[64], 0, 64, 1000));
+    // seeking back restarts the decoder
+    stream.seek(9990);
+    checkFrames(stream, 9990, 10, 2, 10000);
+    assertEquals(-1, stream.read(new byte[64], 0, 64, 1000));
+    stream.close();
+  }
+
+  @Test public void testSeeks() throws Exception {
+    JavaMusicStream stream = new JavaMusicStream(new PCMResource(100000, 2));
+    checkFrames(stream, 0, 100, 2, 100000);
+    stream.seek(50000);
+    assertEquals(50000, stream.position());
+    checkFrames(stream, 50000, 20000, 2, 100000);
+    stream.close();
+  }
+
+  @Test public void testBoundsDecoding() throws Exception {
+    // one minute of 44.1kHz stereo, which BigClip would decode in its entirety up front
+    PCMResource rsrc = new PCMResource(60 * 44100, 2);
+    JavaMusicStream stream = new JavaMusicStream(rsrc);
+    // the decoder stays no more than the ring buffer, and the chunk it is copying into it, ahead
+    // of what has been read
+    long ahead = stream.bufferSize() + JavaMusicStream.CHUNK_FRAMES * 4;
+    checkFrames(stream, 0, 1, 2, rsrc.frames);
+    assertTrue(rsrc.bytesRead <= 4 + ahead);
+    checkFrames(stream, 1, 3 * 44100, 2, rsrc.frames);
+    assertTrue(rsrc.bytesRead <= 4 * (3 * 44100 + 1) + ahead);
+    assertTrue(rsrc.bytesRead < rsrc.frames * 4);
+    stream.close();
+  }
+
+  // reads frames from the stream and checks them against the audio, which is length frames long
+  protected void checkFrames(JavaMusicStream stream, long start, int frames, int channels,
+                             int length) throws IOException {
+    byte[] buffer = new byte[1000 * channels * 2];
+    long frame = start;
+    while (frame < start + frames) {
+      int want = (int)Math.min(buffer.length, (start + frames - frame) * channels * 2);
+      int read = stream.read(buffer, 0, want, 1000);
+      assertTrue("Stream ended early at " + frame, read > 0);
+      for (int ii = 0; ii < read; ii += 2 * channels, frame++) {
+        for (int cc = 0; cc < channels; cc++) {
+          short value = (short)((buffer[ii+2*cc] & 0xFF) | (buffer[ii+2*cc+1] << 8));
+          assertEquals("Frame " + frame, PCMResource.sample(frame % length, cc), value);
+        }
+      }
+    }
+  }
+
+  /** Generates 16-bit little-endian PCM, counting the bytes that are read. */
+  protected static class PCMResource extends JavaAssets.Resource {
+    public final int frames, channels;
+    public volatile long bytesRead;
+
+    public static short sample(long frame, int channel) {
+      return (short)(frame % 20000 + channel);
+    }
+
+    public PCMResource(int frames, int channels) {
+      this.frames = frames;
+      this.channels = channels;
+    }
+
+    @Override public AudioInputStream openAudioStream() {
+      AudioFormat format = new AudioFormat(44100, 16, channels, true, false);
+      return new AudioInputStream(openStream(), format, frames);
+    }
+
+    @Override public InputStream openStream() {
+      return new InputStream() {
+        private long pos, length = (long)frames * channels * 2;
+
+        @Override public int read() {
+          byte[] one = new byte[1];
+          return (read(one, 0, 1) < 0) ? -1 : (one[0] & 0xFF);
+        }
+
+        @Override public int read(byte[] buf, int off, int len) {
+          if (pos >= length) return -1;
+          int count = (int)Math.min(Math.min(len, 64 * 1024), length - pos);
+          for (int ii = 0; ii < count; ii++, pos++) {
+            long sampleIdx = pos / 2;
+            short value = sample(sampleIdx / channels, (int)(sampleIdx % channels));
+            buf[off + ii] = (byte)((pos % 2 == 0) ? value : (value >> 8));
+          }
+          bytesRead += count;
+          return count;
+        }
+      };
+    }
+
+    @Override public BufferedImage readImage() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
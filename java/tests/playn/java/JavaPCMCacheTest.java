@@ -0,0 +1,219 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.java;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link JavaPCMCache}, using u-law audio, which the JDK decodes to PCM.
+ */
+public class JavaPCMCacheTest {
+
+  @Before public void createDir() throws IOException {
+    dir = File.createTempFile("pcmcache", "");
+    dir.delete();
+  }
+
+  @After public void deleteDir() {
+    File[] files = dir.listFiles();
+    if (files != null) for (File file : files) file.delete();
+    dir.delete();
+  }
+
+  @Test public void testCachesDecodedAudio() throws Exception {
+    ULawResource rsrc = new ULawResource(8000, 1, 0);
+    byte[] expect = readAll(decode(rsrc));
+
+    JavaPCMCache cache = new JavaPCMCache(dir, 1024 * 1024);
+    AudioInputStream cold = cache.open(rsrc);
+    assertEquals(1, cache.misses());
+    assertEquals(0, cache.hits());
+    assertArrayEquals(expect, readAll(cold));
+
+    // a new cache in the same directory (i.e. the next run) finds the decoded audio
+    cache = new JavaPCMCache(dir, 1024 * 1024);
+    AudioInputStream warm = cache.open(rsrc);
+    assertEquals(0, cache.misses());
+    assertEquals(1, cache.hits());
+    AudioFormat format = warm.getFormat();
+    assertEquals(AudioFormat.Encoding.PCM_SIGNED, format.getEncoding());
+    assertEquals(16, format.getSampleSizeInBits());
+    assertFalse(format.isBigEndian());
+    assertEquals(8000, warm.getFrameLength());
+    assertArrayEquals(expect, readAll(warm));
+
+    // different audio gets its own entry
+    cache.open(new ULawResource(8000, 1, 1));
+    assertEquals(1, cache.misses());
+    assertEquals(2, cache.entries().length);
+  }
+
+  @Test public void testPassesThroughPCM() throws Exception {
+    JavaPCMCache cache = new JavaPCMCache(dir, 1024 * 1024);
+    final AudioFormat format = new AudioFormat(8000, 16, 1, true, false);
+    JavaAssets.Resource rsrc = new ULawResource(100, 1, 0) {
+      @Override public AudioInputStream openAudioStream() {
+        return new AudioInputStream(openStream(), format, 50);
+      }
+    };
+    assertEquals(format, cache.open(rsrc).getFormat());
+    assertEquals(0, cache.misses());
+    assertEquals(0, cache.entries().length);
+  }
+
+  @Test public void testReplacesOtherVersions() throws Exception {
+    ULawResource rsrc = new ULawResource(8000, 2, 0);
+    JavaPCMCache cache = new JavaPCMCache(dir, 1024 * 1024);
+    cache.open(rsrc);
+    File entry = cache.entries()[0];
+
+    // rewrite the entry as if by a different version of the cache
+    RandomAccessFile raf = new RandomAccessFile(entry, "rw");
+    raf.seek(4);
+    raf.writeInt(JavaPCMCache.VERSION + 1);
+    raf.close();
+
+    assertArrayEquals(readAll(decode(rsrc)), readAll(cache.open(rsrc)));
+    assertEquals(2, cache.misses());
+    assertEquals(0, cache.hits());
+    cache.open(rsrc);
+    assertEquals(1, cache.hits());
+  }
+
+  @Test public void testTrimsLeastRecentlyUsed() throws Exception {
+    // each entry is 16000 bytes of audio plus its header, so the cache holds two
+    JavaPCMCache cache = new JavaPCMCache(dir, 40000);
+    ULawResource a = new ULawResource(8000, 1, 1), b = new ULawResource(8000, 1, 2);
+    ULawResource c = new ULawResource(8000, 1, 3);
+    cache.open(a);
+    cache.open(b);
+    String aKey = cache.key(a), bKey = cache.key(b);
+    // make a more recently used than b
+    new File(dir, bKey + JavaPCMCache.SUFFIX).setLastModified(System.currentTimeMillis() - 60000);
+    new File(dir, aKey + JavaPCMCache.SUFFIX).setLastModified(System.currentTimeMillis() - 30000);
+
+    cache.open(c);
+    assertEquals(2, cache.entries().length);
+    assertTrue(cache.size() <= 40000);
+    assertTrue(new File(dir, aKey + JavaPCMCache.SUFFIX).exists());
+    assertFalse(new File(dir, bKey + JavaPCMCache.SUFFIX).exists());
+
+    // audio too big to fit in the cache at all is still decoded
+    JavaPCMCache tiny = new JavaPCMCache(dir, 1000);
+    ULawResource big = new ULawResource(8000, 1, 4);
+    assertArrayEquals(readAll(decode(big)), readAll(tiny.open(big)));
+    assertEquals(0, tiny.entries().length);
+  }
+
+  @Test public void testDecodesWhenUnwritable() throws Exception {
+    // a file where the cache directory should be prevents anything being cached
+    new RandomAccessFile(dir, "rw").close();
+    ULawResource rsrc = new ULawResource(8000, 1, 0);
+    JavaPCMCache cache = new JavaPCMCache(dir, 1024 * 1024);
+    assertArrayEquals(readAll(decode(rsrc)), readAll(cache.open(rsrc)));
+    assertEquals(1, cache.misses());
+    assertEquals(0, cache.entries().length);
+  }
+
+  @Test public void testWarmStartupDoesNotDecode() throws Exception {
+    ULawResource[] sounds = new ULawResource[5];
+    for (int ii = 0; ii < sounds.length; ii++) sounds[ii] = new ULawResource(44100, 2, ii);
+
+    JavaPCMCache cache = new JavaPCMCache(dir, 64 * 1024 * 1024);
+    for (ULawResource sound : sounds) readAll(cache.open(sound));
+    assertEquals(sounds.length, cache.misses());
+    for (ULawResource sound : sounds) {
+      assertTrue(sound.decoded > 0);
+      sound.decoded = 0;
+    }
+
+    // the next run reads every sound from the cache, without reading any compressed audio
+    cache = new JavaPCMCache(dir, 64 * 1024 * 1024);
+    for (ULawResource sound : sounds) {
+      byte[] cached = readAll(cache.open(sound));
+      assertEquals(0, sound.decoded);
+      assertArrayEquals(readAll(decode(sound)), cached);
+    }
+    assertEquals(sounds.length, cache.hits());
+  }
+
+  protected static AudioInputStream decode(JavaAssets.Resource rsrc) throws Exception {
+    AudioInputStream ais = rsrc.openAudioStream();
+    AudioFormat base = ais.getFormat();
+    return AudioSystem.getAudioInputStream(
+      new AudioFormat(base.getSampleRate(), 16, base.getChannels(), true, false), ais);
+  }
+
+  protected static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    for (int read; (read = in.read(buffer)) != -1; ) out.write(buffer, 0, read);
+    in.close();
+    return out.toByteArray();
+  }
+
+  /** Generates u-law audio, counting the bytes of it that are decoded. */
+  protected static class ULawResource extends JavaAssets.Resource {
+    public final byte[] data;
+    public final int channels;
+    public int decoded;
+
+    public ULawResource(int frames, int channels, int seed) {
+      this.channels = channels;
+      this.data = new byte[frames * channels];
+      for (int ii = 0; ii < data.length; ii++) data[ii] = (byte)(ii * 7 + seed * 13);
+    }
+
+    @Override public AudioInputStream openAudioStream() {
+      AudioFormat format = new AudioFormat(AudioFormat.Encoding.ULAW, 44100, 8, channels,
+                                           channels, 44100, false);
+      InputStream in = new FilterInputStream(openStream()) {
+        @Override public int read(byte[] buf, int off, int len) throws IOException {
+          int read = super.read(buf, off, Math.min(len, 8 * 1024));
+          if (read > 0) decoded += read;
+          return read;
+        }
+      };
+      return new AudioInputStream(in, format, data.length / channels);
+    }
+
+    @Override public InputStream openStream() {
+      return new ByteArrayInputStream(data);
+    }
+
+    @Override public BufferedImage readImage() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  protected File dir;
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2014 The PlayN Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package playn.java;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import playn.core.Font;
+import playn.core.PlayN;
+import playn.core.TextFormat;
+import playn.core.TextLayout;
+import playn.core.TextWrap;
+import playn.tests.AbstractPlayNTest;
+
+/**
+ * Tests {@link JavaTextLayoutCache}.
+ */
+public class JavaTextLayoutCacheTest extends AbstractPlayNTest {
+
+  @Test
+  public void testReusesLayouts() {
+    JavaGraphics gfx = (JavaGraphics)PlayN.graphics();
+    JavaTextLayoutCache cache = new JavaTextLayoutCache(8);
+    Font font = gfx.createFont("Helvetica", Font.Style.PLAIN, 12);
+    TextFormat format = new TextFormat().withFont(font);
+
+    TextLayout layout = cache.layoutText(gfx, "Score: 10", format);
+    // an equal format (with an equal font) finds the same layout
+    TextFormat eqformat = new TextFormat().withFont(
+      gfx.createFont("Helvetica", Font.Style.PLAIN, 12));
+    assertSame(layout, cache.layoutText(gfx, "Score: 10", eqformat));
+    assertNotSame(layout, cache.layoutText(gfx, "Score: 10", format.withAntialias(false)));
+    assertEquals(1, cache.hits());
+    assertEquals(2, cache.misses());
+
+    TextWrap wrap = new TextWrap(50);
+    TextLayout[] lines = cache.layoutText(gfx, "Some text which wraps", format, wrap);
+    TextLayout[] again = cache.layoutText(gfx, "Some text which wraps", format, new TextWrap(50));
+    assertNotSame(lines, again);
+    assertArrayEquals(lines, again);
+    assertEquals(2, cache.hits());
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() {
+    JavaGraphics gfx = (JavaGraphics)PlayN.graphics();
+    JavaTextLayoutCache cache = new JavaTextLayoutCache(2);
+    TextFormat format = new TextFormat();
+
+    TextLayout one = cache.layoutText(gfx, "one", format);
+    cache.layoutText(gfx, "two", format);
+    assertSame(one, cache.layoutText(gfx, "one", format));
+    cache.layoutText(gfx, "three", format); // evicts "two"
+    assertEquals(1, cache.evictions());
+    assertEquals(2, cache.size());
+    assertSame(one, cache.layoutText(gfx, "one", format));
+    cache.layoutText(gfx, "two", format);
+    assertEquals(4, cache.misses());
+    assertEquals(2, cache.evictions());
+  }
+
+  @Test
+  public void testRegisteringFontClearsCache() {
+    JavaGraphics gfx = (JavaGraphics)PlayN.graphics();
+    JavaTextLayoutCache cache = gfx.textLayoutCache();
+    TextFormat format = new TextFormat().withFont(
+      gfx.createFont("CacheTestFont", Font.Style.PLAIN, 12));
+    TextLayout fallback = gfx.layoutText("Hello", format);
+    assertSame(fallback, gfx.layoutText("Hello", format));
+
+    // once a font is registered under that name, layouts must use it rather than the fallback
+    gfx.registerFont("CacheTestFont", new java.awt.Font("Monospaced", java.awt.Font.PLAIN, 1));
+    assertEquals(0, cache.size());
+    TextLayout layout = gfx.layoutText("Hello", format);
+    assertNotSame(fallback, layout);
+    assertSame(layout, gfx.layoutText("Hello", format));
+  }
+}
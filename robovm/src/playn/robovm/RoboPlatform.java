@@ -266,7 +266,7 @@ public class RoboPlatform extends AbstractPlatform {
 
   void update() {
     // process pending actions
-    runQueue.execute();
+    scheduler.execute();
     // perform the game updates
     game.tick(tick());
     // flush any pending draw calls (to surfaces)